@@ -0,0 +1,124 @@
+package de.hsmainz.gi.beaconrangeevaluation.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH result ({@code -rf json}) against a checked-in baseline.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar de.hsmainz.gi.beaconrangeevaluation.benchmarks.BaselineCheck \
+ *      baselines/baseline.json result.json [tolerance %]
+ * </pre>
+ *
+ * Throughput may not drop, sample times and normalised allocation
+ * ({@code -prof gc}) may not rise by more than the tolerance (default 10%).
+ * A change only counts as a regression if it also exceeds the combined
+ * {@code scoreError} of both runs, so noisy benchmarks do not fail on noise.
+ * Exits with 1 if any benchmark regressed, benchmarks missing on either side
+ * are reported but do not fail.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class BaselineCheck {
+
+    private static final String     ALLOCATION = "gc.alloc.rate.norm";
+
+    private BaselineCheck() {}
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineCheck baseline.json result.json [tolerance %]");
+            System.exit(2);
+        }
+        Map<String, double[]> baseline = read(args[0]);
+        Map<String, double[]> result = read(args[1]);
+        double tolerance = (args.length > 2 ? Double.parseDouble(args[2]) : 10.0) / 100.0;
+
+        int regressions = 0;
+        for (Map.Entry<String, double[]> e : result.entrySet()) {
+            double[] before = baseline.get(e.getKey());
+            double[] after = e.getValue();
+            if (before == null) {
+                System.out.println("NEW        " + e.getKey() + " = " + after[0]);
+                continue;
+            }
+            double difference = after[0] - before[0];
+            double change = difference / before[0];
+            double error = Math.hypot(before[1], after[1]);
+            boolean higherIsBetter = e.getKey().contains(" thrpt ") && !e.getKey().endsWith(ALLOCATION);
+            boolean worse = higherIsBetter ? change < -tolerance : change > tolerance;
+            boolean regressed = worse && Math.abs(difference) > error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-10s %s: %.3f -> %.3f +- %.3f (%+.1f%%)",
+                regressed ? "REGRESSED" : worse ? "noise" : "ok", e.getKey(), before[0], after[0], error,
+                change * 100));
+        }
+        for (String key : baseline.keySet()) {
+            if (!result.containsKey(key)) {
+                System.out.println("MISSING    " + key);
+            }
+        }
+        System.out.println(regressions + " regressions");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return  score and score error per "benchmark mode params [metric]"
+     */
+    private static Map<String, double[]> read(String file) throws IOException {
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                String key = run.get("benchmark").getAsString() + " " + run.get("mode").getAsString() + " "
+                    + params(run.getAsJsonObject("params"));
+                scores.put(key, score(run.getAsJsonObject("primaryMetric")));
+                JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+                if (secondary != null) {
+                    for (Map.Entry<String, JsonElement> metric : secondary.entrySet()) {
+                        if (metric.getKey().endsWith(ALLOCATION)) {
+                            scores.put(key + " " + ALLOCATION, score(metric.getValue().getAsJsonObject()));
+                        }
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return  score and score error of a metric, the error 0 if JMH could not estimate it
+     */
+    private static double[] score(JsonObject metric) {
+        JsonElement error = metric.get("scoreError");
+        double      e = error == null || !error.isJsonPrimitive() || !error.getAsJsonPrimitive().isNumber()
+            ? Double.NaN : error.getAsDouble();
+        return new double[] { metric.get("score").getAsDouble(), Double.isNaN(e) ? 0 : e };
+    }
+
+    private static String params(JsonObject params) {
+        if (params == null) {
+            return "{}";
+        }
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> e : params.entrySet()) {
+            sorted.put(e.getKey(), e.getValue().getAsString());
+        }
+        return sorted.toString();
+    }
+}
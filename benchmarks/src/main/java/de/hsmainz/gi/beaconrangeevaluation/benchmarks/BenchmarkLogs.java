@@ -0,0 +1,118 @@
+package de.hsmainz.gi.beaconrangeevaluation.benchmarks;
+
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileResult;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogGson;
+import de.hsmainz.gi.beaconrangeevaluation.io.BinaryLogWriter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic logs of a given size shared by all benchmarks.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+final class BenchmarkLogs {
+
+    private static final String UUID = "f7826da6-4fa2-4e98-8024-bc5b71e0893e";
+
+    private BenchmarkLogs() {}
+
+    /**
+     * @param   beacons         number of beacons
+     * @param   measurements    measurements per beacon
+     * @return  a log with {@code beacons * measurements} plausible measurements, always the same for the same sizes
+     */
+    static BeaconLog create(int beacons, int measurements) {
+        Random random = new Random(beacons * 31L + measurements);
+
+        BeaconLog.AndroidModel model = new BeaconLog.AndroidModel();
+        model.setmManufacturer("LGE");
+        model.setmModel("Nexus 5");
+        model.setmBuildNumber("LRX21O");
+        model.setmVersion("5.0");
+
+        BeaconLog bLog = new BeaconLog();
+        bLog.setModel(model);
+        bLog.setDistance(3.0);
+        bLog.setAverageOrientation(new BeaconLog.Orientation());
+        List<BeaconLogObject> blist = new ArrayList<>(beacons);
+        for (int b = 0; b < beacons; b++) {
+            BeaconLogObject bObj = new BeaconLogObject(UUID, Integer.toString(b + 1), "7", 3);
+            long timestamp = 1416000000000L;
+            for (int i = 0; i < measurements; i++) {
+                double rssi = Math.rint(-70 + 4 * random.nextGaussian());
+                timestamp += 100 + random.nextInt(20);
+                bObj.addMeasurement(timestamp, rssi, -59, Math.pow(10, (-59 - rssi) / 20.0));
+            }
+            blist.add(bObj);
+        }
+        bLog.setLoggedBeacons(blist);
+        return bLog;
+    }
+
+    /**
+     * @param   bLog    the log to write
+     * @param   dir     the directory to write to
+     * @return  the JSON file of {@code bLog}
+     * @throws  IOException if the file could not be written
+     */
+    static Path writeJson(BeaconLog bLog, Path dir) throws IOException {
+        Path json = dir.resolve("BLOG__bench.json");
+        Files.write(json, BeaconLogGson.create().toJson(bLog).getBytes(StandardCharsets.UTF_8));
+        return json;
+    }
+
+    /**
+     * @param   json    a JSON log
+     * @return  the binary log next to {@code json}
+     * @throws  IOException if the file could not be written
+     */
+    static Path writeBinary(Path json) throws IOException {
+        Path blog = json.resolveSibling("BLOG__bench.blog");
+        BinaryLogWriter.convert(json, StandardCharsets.UTF_8, blog);
+        return blog;
+    }
+
+    /**
+     * @param   file    the file the result claims to come from
+     * @param   bLog    the log to analyse
+     * @return  the result the batch mode would have for {@code bLog}
+     */
+    static FileResult result(Path file, BeaconLog bLog) {
+        List<StreamingStatistics> stats = new ArrayList<>();
+        for (BeaconLogObject bObj : bLog.getLoggedBeacons()) {
+            StreamingStatistics s = new StreamingStatistics();
+            for (int i = 0; i < bObj.getSeries().size(); i++) {
+                s.addValue(bObj.getSeries().getCalcDistance(i));
+            }
+            stats.add(s);
+        }
+        return new FileResult(file, bLog, stats);
+    }
+
+    /**
+     * Delete {@code dir} and everything in it.
+     *
+     * @param   dir the directory to delete
+     * @throws  IOException if a file could not be deleted
+     */
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        Files.walk(dir).forEach(paths::add);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            Files.delete(paths.get(i));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.hsmainz.gi.beaconrangeevaluation.benchmarks;
+
+import com.google.gson.Gson;
+import de.hsmainz.gi.beaconrangeevaluation.Main;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileAnalyzer;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileResult;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogGson;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogReader;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading one log file: the whole-file {@code readFile} + {@code fromJson}
+ * the GUI started with, the streaming reader, and the batch analysis of the
+ * JSON and the binary form.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"3", "20"})
+    public int          beacons;
+
+    @Param({"1000", "20000"})
+    public int          measurements;
+
+    private Path        dir;
+    private Path        json;
+    private Path        blog;
+    private Gson        gson;
+    private FileAnalyzer analyzer;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("parse-bench");
+        json = BenchmarkLogs.writeJson(BenchmarkLogs.create(beacons, measurements), dir);
+        blog = BenchmarkLogs.writeBinary(json);
+        gson = BeaconLogGson.create();
+        analyzer = new FileAnalyzer(StandardCharsets.UTF_8, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkLogs.delete(dir);
+    }
+
+    @Benchmark
+    public BeaconLog readFileFromJson() throws IOException {
+        return gson.fromJson(Main.readFile(json.toString(), StandardCharsets.UTF_8), BeaconLog.class);
+    }
+
+    @Benchmark
+    public BeaconLog streamingReader() throws IOException {
+        return BeaconLogReader.readBeaconLog(json, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public FileResult analyseJson() throws IOException {
+        return analyzer.analyse(json);
+    }
+
+    @Benchmark
+    public FileResult analyseBinary() throws IOException {
+        return analyzer.analyse(blog);
+    }
+}
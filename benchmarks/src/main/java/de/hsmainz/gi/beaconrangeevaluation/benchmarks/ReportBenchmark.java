@@ -0,0 +1,73 @@
+package de.hsmainz.gi.beaconrangeevaluation.benchmarks;
+
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileResult;
+import de.hsmainz.gi.beaconrangeevaluation.report.Report;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the report of one log with observation sheets, once per
+ * {@link de.hsmainz.gi.beaconrangeevaluation.report.ReportSink} backend.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"3", "20"})
+    public int          beacons;
+
+    @Param({"1000", "20000"})
+    public int          measurements;
+
+    @Param({"xls", "xlsx", "csv"})
+    public String       format;
+
+    private Path        dir;
+    private File        output;
+    private FileResult  result;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("report-bench");
+        output = dir.resolve("output." + format).toFile();
+        result = BenchmarkLogs.result(dir.resolve("BLOG__bench.json"), BenchmarkLogs.create(beacons, measurements));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkLogs.delete(dir);
+    }
+
+    @Benchmark
+    public File writeReport() throws IOException {
+        try (Report report = new Report(ReportSinks.open(output), true)) {
+            report.addFile(result);
+        }
+        return output;
+    }
+}
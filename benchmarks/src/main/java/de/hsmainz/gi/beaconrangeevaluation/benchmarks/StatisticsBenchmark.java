@@ -0,0 +1,94 @@
+package de.hsmainz.gi.beaconrangeevaluation.benchmarks;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of every beacon of one log: the {@link DescriptiveStatistics}
+ * loop the summary used to be computed with against {@link StreamingStatistics},
+ * and the average distances the GUI prints.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+
+    @Param({"3", "20"})
+    public int          beacons;
+
+    @Param({"1000", "20000"})
+    public int          measurements;
+
+    private BeaconLog   bLog;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bLog = BenchmarkLogs.create(beacons, measurements);
+    }
+
+    @Benchmark
+    public void descriptiveStatistics(Blackhole bh) {
+        for (BeaconLogObject bObj : bLog.getLoggedBeacons()) {
+            DescriptiveStatistics stats = new DescriptiveStatistics();
+            for (BeaconLogObject.Measurement m : bObj.getMeasurements()) {
+                stats.addValue(m.getCalcDistance());
+            }
+            bh.consume(stats.getMean());
+            bh.consume(stats.getStandardDeviation());
+            bh.consume(stats.getMin());
+            bh.consume(stats.getMax());
+            bh.consume(stats.getPercentile(50));
+            bh.consume(stats.getPercentile(5));
+            bh.consume(stats.getPercentile(95));
+        }
+    }
+
+    @Benchmark
+    public void streamingStatistics(Blackhole bh) {
+        for (BeaconLogObject bObj : bLog.getLoggedBeacons()) {
+            MeasurementSeries series = bObj.getSeries();
+            StreamingStatistics stats = new StreamingStatistics();
+            for (int i = 0; i < series.size(); i++) {
+                stats.addValue(series.getCalcDistance(i));
+            }
+            bh.consume(stats.getMean());
+            bh.consume(stats.getStandardDeviation());
+            bh.consume(stats.getMin());
+            bh.consume(stats.getMax());
+            bh.consume(stats.getMedian());
+            bh.consume(stats.getPercentile(5));
+            bh.consume(stats.getPercentile(95));
+        }
+    }
+
+    @Benchmark
+    public void averageDistances(Blackhole bh) {
+        for (BeaconLogObject bObj : bLog.getLoggedBeacons()) {
+            bh.consume(bObj.getAverageDistance());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.hsmainz.gi.beaconrangeevaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal command line parser for the headless modes.
+ *
+ * Everything starting with {@code --} is an option, it takes the next
+ * argument as value unless that one is an option itself. Options declared as
+ * flags never take a value, so a flag followed by a path leaves the path
+ * positional. Everything else is positional.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Arguments {
+
+    private final Map<String, String>   options = new HashMap<>();
+    private final List<String>          positional = new ArrayList<>();
+
+
+    /**
+     * Parse {@code args} without flags
+     *
+     * @param   args    the command line arguments
+     */
+    public Arguments(String... args) {
+        this(args, new String[0]);
+    }
+
+    /**
+     * Parse {@code args}
+     *
+     * @param   args    the command line arguments
+     * @param   flags   names of the options without the leading {@code --} that never take a value
+     */
+    public Arguments(String[] args, String... flags) {
+        Set<String> noValue = new HashSet<>(Arrays.asList(flags));
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                String name = args[i].substring(2);
+                if (!noValue.contains(name) && i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                    options.put(name, args[++i]);
+                } else {
+                    options.put(name, "");
+                }
+            } else {
+                positional.add(args[i]);
+            }
+        }
+    }
+
+    /**
+     * @param   name    name of the option without the leading {@code --}
+     * @return  whether or not the option was given
+     */
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * @param   name    name of the option without the leading {@code --}
+     * @param   def     the value to use if the option was not given
+     * @return  the value of the option
+     */
+    public String get(String name, String def) {
+        String value = options.get(name);
+        return value == null || value.isEmpty() ? def : value;
+    }
+
+    /**
+     * @param   name    name of the option without the leading {@code --}
+     * @param   def     the value to use if the option was not given
+     * @return  the value of the option
+     * @throws  IllegalArgumentException    if the value is not a number
+     */
+    public int getInt(String name, int def) {
+        String value = get(name, null);
+        try {
+            return value == null ? def : Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("--" + name + " expects a number, got " + value, ex);
+        }
+    }
+
+    /**
+     * @param   name    name of the option without the leading {@code --}
+     * @param   def     the value to use if the option was not given
+     * @return  the value of the option
+     * @throws  IllegalArgumentException    if the value is not a number
+     */
+    public double getDouble(String name, double def) {
+        String value = get(name, null);
+        try {
+            return value == null ? def : Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("--" + name + " expects a number, got " + value, ex);
+        }
+    }
+
+    /**
+     * @return  all arguments that are no options
+     */
+    public List<String> getPositional() {
+        return positional;
+    }
+}
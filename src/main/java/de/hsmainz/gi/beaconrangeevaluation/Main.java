@@ -1,13 +1,22 @@
 package de.hsmainz.gi.beaconrangeevaluation;
 
-import com.google.gson.Gson;
-import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.batch.BatchRunner;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileAnalyzer;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileResult;
+import de.hsmainz.gi.beaconrangeevaluation.batch.WatchRunner;
+import de.hsmainz.gi.beaconrangeevaluation.calibration.Calibrator;
+import de.hsmainz.gi.beaconrangeevaluation.cube.Cube;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogReader;
+import de.hsmainz.gi.beaconrangeevaluation.io.BinaryLogConverter;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogIndex;
 import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
-import jxl.Workbook;
-import jxl.write.*;
-import jxl.write.Number;
-import jxl.write.biff.RowsExceededException;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import de.hsmainz.gi.beaconrangeevaluation.positioning.Locator;
+import de.hsmainz.gi.beaconrangeevaluation.query.LogQuery;
+import de.hsmainz.gi.beaconrangeevaluation.report.Report;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import de.hsmainz.gi.beaconrangeevaluation.sync.Synchronizer;
+import de.hsmainz.gi.beaconrangeevaluation.synth.LogGenerator;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
@@ -15,12 +24,16 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -29,200 +42,56 @@ import java.util.Properties;
 public class Main {
 
     private static final Logger     L = Logger.getLogger(Main.class);
-    private static final Gson       gson = new Gson();
+
+    /** largest array the VM reliably allocates */
+    private static final int        MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
 
     public Main() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setMultiSelectionEnabled(true);
         fileChooser.setCurrentDirectory(new File(System.getProperty("user.home")));
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("JavaScript Object Files (*.json)", "json");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter(
+            "JavaScript Object Files (*.json, *.json.gz, *.json.zst, *.zip)", "json", "gz", "zst", "zip");
         fileChooser.setFileFilter(filter);
 
-        // Get a DescriptiveStatistics instance (Apache commons math)
-        ArrayList<DescriptiveStatistics> stats;
-        List<BeaconLogObject> blist = null;
-        BeaconLog bLog = null;
-
-        // Workbook for output
-        WritableWorkbook workbook = null;
-
+        FileAnalyzer analyzer = new FileAnalyzer(Charset.defaultCharset(), true);
+        analyzer.setPool(ForkJoinPool.commonPool());
 
         File[] selectedFiles = null;
 
-        // Details from the mobile phone
-        String manufacturer = "";
-        String model = "";
-        String androidVersion = "";
-
         int result = fileChooser.showOpenDialog(null);
         if (result == JFileChooser.APPROVE_OPTION) {
 
             selectedFiles = fileChooser.getSelectedFiles();
 
             // Open a new excel workbook
-            try {
-                workbook = Workbook.createWorkbook(new File(selectedFiles[0].getAbsoluteFile().getParent(),"output.xls"));
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("Creating output.xls failed failed.");
-            }
-
-            // Create cell formats
-            WritableFont arial12font = new WritableFont(WritableFont.ARIAL, 12);
-            WritableCellFormat textformat = new WritableCellFormat(arial12font);        // Text
-            NumberFormat fivedps = new NumberFormat("#.#####");
-            WritableCellFormat floatFormat = new WritableCellFormat(fivedps);           // Numbers
-            DateFormat customDateFormat = new DateFormat ("dd MMM yyyy hh:mm:ss");
-            WritableCellFormat dateFormat = new WritableCellFormat (customDateFormat);  // Dates
-
-
-            // Summary sheet
-            WritableSheet summarySheet = workbook.createSheet("Zusammenfassung", 0);
-            int sRow = 0;
-            int sCol = 0;
-
-            try {
-                summarySheet.addCell(new Label(sCol, sRow,    "UUID", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+1,  "Major", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+2,  "Minor", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+3,  "# der Messungen", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+4,  "Mittelwert", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+5,  "Stdabw.", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+6,  "Min", textformat));
-                summarySheet.addCell(new Label(sCol, sRow+7,  "Max", textformat));
-
-                sCol = 1;
-
-            } catch (WriteException e) {
-                e.printStackTrace();
-                System.out.println("Initialisieren der Zusammenfassung schlug fehl!");
-            }
-
+            File output = new File(selectedFiles[0].getAbsoluteFile().getParent(),"output.xlsx");
+            try (Report report = new Report(ReportSinks.open(output), true)) {
 
-            for (int k = 0; k < selectedFiles.length; k++) {
-
-                blist = null;
-                stats = new ArrayList<DescriptiveStatistics>();
-                bLog = null;
-                L.info("Selected file: " + selectedFiles[k].getAbsolutePath());
-
-                try {
-                    String json = readFile(selectedFiles[k].toString(), Charset.defaultCharset());
-                    bLog = gson.fromJson(json, BeaconLog.class);
-
-                    // Mobile phone details
-                    manufacturer = bLog.getModel().getmManufacturer();
-                    model = bLog.getModel().getmModel();
-                    androidVersion = bLog.getModel().getmVersion();
-
-/* ================= ADD YOUR CALCULATIONS HERE ================= */
-
-                /* example: get just the beacons, print them */
-                    blist = bLog.getLoggedBeacons();
-
-                    printAverageDistances(blist);
-                    List<BeaconLogObject.Measurement> tempObservation = null;
-
-                    for (int i = 0; i < blist.size(); i++) {
-                        tempObservation = blist.get(i).getMeasurements();
-                        DescriptiveStatistics tempStats = new DescriptiveStatistics();
-
-                        for (int j = 0; j < tempObservation.size(); j++) {
-                            tempStats.addValue(tempObservation.get(j).getCalcDistance());
-                            System.out.println(tempObservation.get(j).getCalcDistance());
-                        }
-                        stats.add(tempStats);
-
-                        System.out.println("Read dataset " + (i + 1) + "| # of Elements: " + tempObservation.size());
-                    }
-
-/* ================= END OF YOUR CALCULATIONS ================= */
-
-                } catch (IOException ex) {
-                    L.warn("failed to read file", ex);
+                // archives are replaced by the logs they contain
+                List<String> selected = new ArrayList<>();
+                for (File file : selectedFiles) {
+                    selected.add(file.getAbsolutePath());
                 }
+                for (Path file : LogFiles.expand(selected)) {
+                    L.info("Selected file: " + file.toUri());
 
-                // Write observations + statistics to excel
-                try {
-                    // Add sheet to workbook
-                    WritableSheet sheet = workbook.createSheet(selectedFiles[k].getName().substring(6), k+1);
-
-                    // Columns and rows for
-                    int row = 0;
-
-                    // Header
-                    sheet.addCell(new Label(6, row, "Hersteller:", textformat));
-                    sheet.addCell(new Label(7, row, manufacturer + " / " + model, textformat));
-
-                    sheet.addCell(new Label(6, row + 1, "Android Ver.:", textformat));
-                    sheet.addCell(new Label(7, row + 1, androidVersion, textformat));
+                    try {
+                        FileResult fileResult = analyzer.analyse(file);
+                        printAverageDistances(fileResult.getBeaconLog().getLoggedBeacons());
 
-                    //row = 4;
-
-                    // Observations + statistics
-                    for (int i = 0; i < stats.size(); i++) {
-
-
-                        for (int j = 0; j < blist.get(i).getMeasurements().size(); j++) {
-
-//                            sheet.addCell(new DateTime(0, j + row + 1, blist.get(i).getMeasurements().get(j).getTimestamp(), dateFormat));    // Timestamp
-                            sheet.addCell(new Number(1, j + row + 1, blist.get(i).getMeasurements().get(j).getCalcDistance(), floatFormat));    // Distance
-                            sheet.addCell(new Number(2, j + row + 1, blist.get(i).getMeasurements().get(j).getRssi(), floatFormat));            // RSSI
-                            sheet.addCell(new Number(3, j + row + 1, blist.get(i).getMeasurements().get(j).getTxPower(), floatFormat));         // txPower
-
-                            if (j == 0) {
-
-                                // Header
-                                sheet.addCell(new Label(0, row, "Zeit", textformat));
-                                sheet.addCell(new Label(1,row, "Distanz [m]", textformat));
-                                sheet.addCell(new Label(2,row, "RSSI [dBm]", textformat));
-                                sheet.addCell(new Label(3,row, "txPower [dBm]", textformat));
-
-                                // Details for beacon
-                                sheet.addCell(new Label(6, j + row + 2, "Beacon Major/Minor:", textformat));
-                                sheet.addCell(new Label(7, j + row + 2, bLog.getLoggedBeacons().get(i).getID(), textformat));
-
-                                // Add statistics to summarySheet
-
-                                summarySheet.addCell(new Label(sCol, sRow, blist.get(i).getIdentifier().getUuid(), textformat));                // UUID
-                                summarySheet.addCell(new Label(sCol, sRow+1, blist.get(i).getIdentifier().getMajor(), textformat));             // Major
-                                summarySheet.addCell(new Label(sCol, sRow+2,  blist.get(i).getIdentifier().getMinor(), textformat));            // Minor
-                                summarySheet.addCell(new Number(sCol, sRow+3, stats.get(i).getN()));                                            // # of measurements
-                                summarySheet.addCell(new Number(sCol, sRow+4, stats.get(i).getMean(), floatFormat));                            // Mean value
-                                summarySheet.addCell(new Number(sCol, sRow+5, stats.get(i).getStandardDeviation(), floatFormat));               // Standard deviation
-                                summarySheet.addCell(new Number(sCol, sRow+6, stats.get(i).getMin(), floatFormat));                             // Minimum value
-                                summarySheet.addCell(new Number(sCol, sRow+7, stats.get(i).getMax(), floatFormat));                             // Maximum value
-
-                                sCol = sCol +1;
-                            }
-
-
-                        }
-
-                        // Padding between multiple beacons in one .json
-                        row += blist.get(i).getMeasurements().size() + 2;
+                        // Write observations + statistics to excel
+                        report.addFile(fileResult);
+                    } catch (IOException ex) {
+                        L.warn("failed to process file", ex);
                     }
-                } catch (RowsExceededException e) {
-                    e.printStackTrace();
-                } catch (WriteException e) {
-                    e.printStackTrace();
                 }
 
-
-            }
-
             // Compiling and saving the workbook
-            try {
-                workbook.write();
-                workbook.close();
-            } catch (WriteException e) {
-                e.printStackTrace();
-                System.out.println("Writing the woorkbook failed. Check your rights!");
             } catch (IOException e) {
                 e.printStackTrace();
+                System.out.println("Writing " + output + " failed. Check your rights!");
             }
-
-
         }
 
     }
@@ -237,13 +106,7 @@ public class Main {
             .forEach(
                 (x) -> L.info(
                     x.toString() + "\t"
-                    + x.getMeasurements()
-                    .stream()
-                    .mapToDouble(
-                        BeaconLogObject.Measurement::getCalcDistance
-                    )
-                    .average()
-                    .getAsDouble()
+                    + x.getSeries().averageCalcDistance()
                     + "")
             );
     }
@@ -253,14 +116,40 @@ public class Main {
      * {@link java.io.File} containing the entire content of the file specified
      * by {@code path}
      *
+     * Prefer {@link BeaconLogReader} for log files, this keeps the whole file in memory.
+     * Compressed files are decompressed, see {@link LogFiles#open(Path)}.
+     *
      * @param path the path to the file to read
      * @param encoding the charset to use when reading the file
      * @return the entire content of the file specified by {@code path}
      * @throws IOException if the file could not be read
      */
     public static String readFile(String path, Charset encoding) throws IOException {
-        byte[] encoded = Files.readAllBytes(Paths.get(path));
-        return new String(encoded, encoding);
+        Path file = Paths.get(path);
+        try (InputStream in = LogFiles.open(file)) {
+            // the size on disk is exact for plain files, only decompressed content grows the array
+            byte[]  encoded = new byte[(int) Math.min(Files.size(file), MAX_ARRAY_LENGTH)];
+            int     length = 0;
+            while (true) {
+                if (length == encoded.length) {
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    if (length == MAX_ARRAY_LENGTH) {
+                        throw new IOException(path + " is too large to be read at once");
+                    }
+                    encoded = Arrays.copyOf(encoded, (int) Math.min(Math.max(2L * length, 64 * 1024), MAX_ARRAY_LENGTH));
+                    encoded[length++] = (byte) next;
+                }
+                int read = in.read(encoded, length, encoded.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return new String(encoded, 0, length, encoding);
+        }
     }
 
     public static void printFile(String fName){
@@ -269,9 +158,36 @@ public class Main {
     /**
      * starter
      *
-     * @param args starter params, IGNORED
+     * Without arguments the file chooser is opened, otherwise the first
+     * argument names the headless command to run:
+     * <pre>
+     * batch [--threads n] [--output file.xlsx|.csv|.xls] [--sheets] [--aggregate] [--cache dir]
+     *       [--window-samples n] [--window-ms ms] [--calibration table.tsv] [--kalman]
+     *       [--outliers hampel|mad|iqr] [--metrics file.json|.prom] [--histograms] [--rssi-bins spec]
+     *       [--distance-bins spec] [--index dir] [query criteria...] file|dir|glob...
+     *       (--outliers mad and iqr need --sheets or binary logs, and no query criteria)
+     * convert [--output dir] [--encoding charset] file|dir|glob...
+     * watch [--threads n] [--output file.xlsx|.csv|.xls] [--aggregate] [--cache dir] [--quiet ms] [--interval s] dir...
+     * generate [--output dir] [--logs n] [--beacons n] [--measurements n] [--distances 1,2,3] [--seed s] [--binary]
+     * calibrate [--threads n] [--output table.tsv] [--min-samples n] file|dir|glob...
+     * index [--index dir] [--encoding charset] file|dir|glob...
+     * query [--threads n] [--output file.xlsx|.csv|.xls] [--sheets] [--index dir] [--histograms]
+     *       [--beacons uuid[:major[:minor]],...] [--uuid u] [--major n] [--minor n]
+     *       [--distance m | --min-distance m --max-distance m] [--manufacturer name] [--model name]
+     *       [--from time] [--to time] file|dir|glob...
+     * locate --beacon-positions table.tsv [--truth track.tsv] [--epoch ms] [--dimensions 2|3] [--height m]
+     *       [--iterations n] [--tolerance m] [--calibration table.tsv] [--threads n]
+     *       [--output file.xlsx|.csv|.xls] [--positions] [--index dir] [query criteria...] file|dir|glob...
+     * sync [--epoch ms] [--threads n] [--output file.xlsx|.csv|.xls] [--index dir] [query criteria...] file|dir|glob...
+     * cube build [--output file.cube] [--sectors n] [--threads n] [--index dir] [query criteria...] file|dir|glob...
+     * cube query [--by device,beacon,distance,azimuth] [--azimuth from:to] [--output file.xlsx|.csv|.xls]
+     *       [query criteria...] file.cube
+     * </pre>
+     *
+     * @param args starter params
+     * @throws Exception if the headless command failed
      */
-    public static void main(String... args) {
+    public static void main(String... args) throws Exception {
         /* setup logger */
         Properties props = new Properties();
         props.put("log4j.rootLogger", "ALL, stdout");
@@ -280,7 +196,46 @@ public class Main {
         props.put("log4j.appender.stdout.layout", "org.apache.log4j.PatternLayout");
         props.put("log4j.appender.stdout.layout.ConversionPattern", "%d{HH:mm:ss.SSS} %-5p %c{1}:%L - %m%n");
         PropertyConfigurator.configure(props);
-        
-        Main m = new Main();
+
+        if (args.length == 0) {
+            Main m = new Main();
+            return;
+        }
+        String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
+        switch (args[0]) {
+            case "batch":
+                BatchRunner.main(commandArgs);
+                break;
+            case "convert":
+                BinaryLogConverter.main(commandArgs);
+                break;
+            case "watch":
+                WatchRunner.main(commandArgs);
+                break;
+            case "generate":
+                LogGenerator.main(commandArgs);
+                break;
+            case "calibrate":
+                Calibrator.main(commandArgs);
+                break;
+            case "index":
+                LogIndex.main(commandArgs);
+                break;
+            case "query":
+                LogQuery.main(commandArgs);
+                break;
+            case "locate":
+                Locator.main(commandArgs);
+                break;
+            case "sync":
+                Synchronizer.main(commandArgs);
+                break;
+            case "cube":
+                Cube.main(commandArgs);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + args[0] + ", expected batch, convert, watch, "
+                    + "generate, calibrate, index, query, locate, sync or cube");
+        }
     }
 }
@@ -0,0 +1,230 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Merges the statistics of the same beacon across files: one group per
+ * beacon {@link BeaconLogObject.Identifier}, nominal distance of the log and
+ * {@link BeaconLog.AndroidModel} of the phone. Histograms of the files are
+ * merged as well, if they were counted.
+ *
+ * Files can be added from any number of threads, a group is only locked
+ * while its accumulator is merged.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class AggregationIndex {
+
+    private final Map<Key, Group>   groups = new ConcurrentHashMap<>();
+
+
+    /**
+     * Merge the statistics of all beacons of {@code result} into their groups.
+     *
+     * @param   result  the {@link FileResult} to add
+     */
+    public void add(FileResult result) {
+        BeaconLog                   bLog = result.getBeaconLog();
+        List<BeaconLogObject>       blist = bLog.getLoggedBeacons();
+        List<StreamingStatistics>   stats = result.getStats();
+        List<Histogram>             rssi = result.getRssiHistograms();
+        List<Histogram>             distance = result.getDistanceHistograms();
+        BeaconLog.AndroidModel      model = bLog.getModel() != null ? bLog.getModel() : new BeaconLog.AndroidModel();
+
+        for (int i = 0; i < stats.size(); i++) {
+            StreamingStatistics s = stats.get(i);
+            if (s.getN() == 0) {
+                continue;
+            }
+            Histogram r = rssi != null ? rssi.get(i) : null;
+            Histogram d = distance != null ? distance.get(i) : null;
+            groups.compute(new Key(blist.get(i).getIdentifier(), bLog.getDistance(), model),
+                (key, group) -> (group != null ? group : new Group()).add(s, r, d));
+        }
+    }
+
+    /**
+     * @return  number of groups
+     */
+    public int size() {
+        return groups.size();
+    }
+
+    /**
+     * @return  all groups sorted by beacon, distance and phone; not to be
+     *          called while files are still added
+     */
+    public List<Map.Entry<Key, Group>> sorted() {
+        List<Map.Entry<Key, Group>> entries = new ArrayList<>(groups.entrySet());
+        Collections.sort(entries, (a, b) -> a.getKey().compareTo(b.getKey()));
+        return entries;
+    }
+
+    /**
+     * What the measurements of a group have in common.
+     */
+    public static final class Key implements Comparable<Key> {
+
+        private final BeaconLogObject.Identifier    identifier;
+        private final double                        distance;
+        private final String                        manufacturer;
+        private final String                        model;
+        private final String                        buildNumber;
+        private final String                        version;
+        private final int                           hash;
+
+        Key(BeaconLogObject.Identifier identifier, double distance, BeaconLog.AndroidModel model) {
+            this.identifier = identifier;
+            this.distance = distance;
+            this.manufacturer = model.getmManufacturer();
+            this.model = model.getmModel();
+            this.buildNumber = model.getmBuildNumber();
+            this.version = model.getmVersion();
+            this.hash = Objects.hash(identifier, distance, manufacturer, this.model, buildNumber, version);
+        }
+
+        /**
+         * @return  the beacon
+         */
+        public BeaconLogObject.Identifier getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return  the nominal distance of the logs
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * @return  the manufacturer of the phone
+         */
+        public String getManufacturer() {
+            return manufacturer;
+        }
+
+        /**
+         * @return  the model of the phone
+         */
+        public String getModel() {
+            return model;
+        }
+
+        /**
+         * @return  the build number of the phone
+         */
+        public String getBuildNumber() {
+            return buildNumber;
+        }
+
+        /**
+         * @return  the Android version of the phone
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int c = identifier.compareTo(other.identifier);
+            if (c == 0) c = Double.compare(distance, other.distance);
+            if (c == 0) c = compare(manufacturer, other.manufacturer);
+            if (c == 0) c = compare(model, other.model);
+            if (c == 0) c = compare(buildNumber, other.buildNumber);
+            if (c == 0) c = compare(version, other.version);
+            return c;
+        }
+
+        private static int compare(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash
+                && Double.compare(distance, key.distance) == 0
+                && identifier.equals(key.identifier)
+                && Objects.equals(manufacturer, key.manufacturer)
+                && Objects.equals(model, key.model)
+                && Objects.equals(buildNumber, key.buildNumber)
+                && Objects.equals(version, key.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The merged statistics of a group.
+     */
+    public static final class Group {
+
+        private final StreamingStatistics   stats = new StreamingStatistics();
+        private Histogram                   rssi;
+        private Histogram                   distance;
+        private int                         files;
+
+        private Group add(StreamingStatistics other, Histogram otherRssi, Histogram otherDistance) {
+            stats.merge(other);
+            if (otherRssi != null) {
+                rssi = rssi == null ? otherRssi.emptyCopy().merge(otherRssi) : rssi.merge(otherRssi);
+            }
+            if (otherDistance != null) {
+                distance = distance == null ? otherDistance.emptyCopy().merge(otherDistance) : distance.merge(otherDistance);
+            }
+            files++;
+            return this;
+        }
+
+        /**
+         * @return  number of files contributing to the group
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return  statistics of the calculated distances of all files
+         */
+        public StreamingStatistics getStats() {
+            return stats;
+        }
+
+        /**
+         * @return  histogram of the RSSI of all files, {@code null} if none was counted
+         */
+        public Histogram getRssiHistogram() {
+            return rssi;
+        }
+
+        /**
+         * @return  histogram of the calculated distances of all files, {@code null} if none was counted
+         */
+        public Histogram getDistanceHistogram() {
+            return distance;
+        }
+    }
+}
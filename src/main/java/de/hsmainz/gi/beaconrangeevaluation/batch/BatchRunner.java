@@ -0,0 +1,259 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.calibration.CalibrationTable;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogIndex;
+import de.hsmainz.gi.beaconrangeevaluation.query.LogQuery;
+import de.hsmainz.gi.beaconrangeevaluation.report.Report;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.KalmanFilter;
+import de.hsmainz.gi.beaconrangeevaluation.stats.OutlierFilter;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Headless batch mode: parses and analyses log files concurrently on a pool
+ * of worker threads while a single writer adds the results to the report in
+ * the order the files were given.
+ *
+ * At most {@code 2 * threads} results are waiting for the writer, so memory
+ * stays bounded no matter how many files are processed. Within a file the
+ * beacons are analysed in parallel too where possible, see
+ * {@link FileAnalyzer#setPool(java.util.concurrent.ForkJoinPool)}, so a few
+ * huge files use all threads as well. The files then run on that pool too,
+ * so files and beacons share the same {@code threads} workers.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class BatchRunner {
+
+    private static final Logger     L = Logger.getLogger(BatchRunner.class);
+
+    private final FileAnalyzer      analyzer;
+    private final int               threads;
+    private RunMetrics              metrics;
+
+
+    /**
+     * Default Constructor for a BatchRunner
+     *
+     * @param   analyzer    the {@link FileAnalyzer} shared by all workers
+     * @param   threads     number of worker threads
+     */
+    public BatchRunner(FileAnalyzer analyzer, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one worker thread, got " + threads);
+        }
+        this.analyzer = analyzer;
+        this.threads = threads;
+    }
+
+    /**
+     * Record the time spent adding every file to the report.
+     *
+     * @param   metrics the metrics to record to, {@code null} for none
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Analyse all {@code files} and add them to {@code report}.
+     *
+     * @param   files   the log files to analyse
+     * @param   report  the report to add the results to, in the order of {@code files}
+     * @return  number of files successfully added to the report, files not matching the filter of the analyzer are left out
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public int run(List<Path> files, Report report) throws InterruptedException {
+        ForkJoinPool                shared = analyzer.getPool();
+        ExecutorService             pool = shared != null ? shared : Executors.newFixedThreadPool(threads);
+        Deque<Future<FileResult>>   inFlight = new ArrayDeque<>();
+        int                         next = 0;
+        int                         written = 0;
+
+        try {
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < 2 * threads) {
+                    Path file = files.get(next++);
+                    inFlight.add(pool.submit(() -> analyzer.analyse(file)));
+                }
+                if (write(inFlight.poll(), report)) {
+                    written++;
+                }
+            }
+        } finally {
+            for (Future<FileResult> future : inFlight) {
+                future.cancel(true);
+            }
+            if (shared == null) {
+                pool.shutdownNow();
+            }
+        }
+        return written;
+    }
+
+    private boolean write(Future<FileResult> future, Report report) throws InterruptedException {
+        try {
+            FileResult result = future.get();
+            if (result == null) {
+                return false;
+            }
+            long begin = System.nanoTime();
+            report.addFile(result);
+            if (metrics != null) {
+                metrics.record(RunMetrics.Stage.WRITE, result.getFile(), System.nanoTime() - begin, 0, 0);
+            }
+            L.info("Processed file: " + result.getFile());
+            return true;
+        } catch (ExecutionException ex) {
+            L.warn("failed to read file", ex.getCause());
+        } catch (IOException ex) {
+            L.warn("failed to write file to report", ex);
+        }
+        return false;
+    }
+
+    /**
+     * Entry point of the {@code batch} command.
+     *
+     * <pre>
+     * batch [--threads n] [--output file.xlsx|.csv|.xls] [--sheets] [--aggregate] [--encoding charset]
+     *       [--cache dir] [--cache-size MiB] [--window-samples n] [--window-ms ms] [--calibration table.tsv]
+     *       [--kalman] [--kalman-q dB^2/s] [--kalman-r dB^2] [--kalman-velocity]
+     *       [--outliers hampel[:k[:t]]|mad[:t]|iqr[:f]] [--metrics file.json|.prom]
+     *       [--histograms] [--rssi-bins lin|log:lower:upper:bins] [--distance-bins lin|log:lower:upper:bins]
+     *       [--index dir] [query criteria...] file|dir|glob...
+     * </pre>
+     *
+     * With {@code --cache} the results of unchanged files are taken from a
+     * {@link ResultCache} in {@code dir}, bounded to {@code --cache-size}
+     * (default 1024 MiB). With {@code --aggregate} the report gets a sheet
+     * merging every beacon across files, see {@link AggregationIndex}. With
+     * {@code --window-samples} and/or {@code --window-ms} the observation
+     * sheets get rolling statistics over that many samples or milliseconds,
+     * see {@link Report#setRollingWindow(int, long)}. With {@code --calibration}
+     * the distances are recomputed with a table written by {@code calibrate}.
+     * With {@code --kalman} the observation sheets get the RSSI smoothed by a
+     * {@link KalmanFilter} with process noise {@code --kalman-q} (default 0.5)
+     * and measurement noise {@code --kalman-r} (default 16), a constant
+     * velocity model with {@code --kalman-velocity}, and the distance derived
+     * from it with the calibration if given. With {@code --outliers} the
+     * distances an {@link OutlierFilter} rejects are left out of the
+     * statistics and counted on the summary sheet, see {@link OutlierFilter#parse(String)};
+     * mad and iqr trim whole series and need {@code --sheets} or binary logs,
+     * and no query criteria.
+     * With {@code --metrics} the time, bytes and measurements of every stage
+     * are written to a JSON or Prometheus text file, see {@link RunMetrics}.
+     * With query criteria like {@code --beacons} or {@code --from} only the
+     * logs, beacons and measurements matching them are analysed, see
+     * {@link LogQuery#parse(Arguments)}. JSON logs are then read through a
+     * {@link LogIndex} kept in {@code --index}, or a valid one next to them
+     * written by {@code index}, so the other beacons are never parsed;
+     * without either they are streamed and no index is written. With {@code --histograms} the RSSI and
+     * distances of every beacon are counted into histograms of
+     * {@code --rssi-bins} and {@code --distance-bins}, see
+     * {@link Histogram#parse(String)} and the defaults of {@link FileAnalyzer},
+     * the summary gets their counts and {@code --aggregate} the merged
+     * histograms, see {@link Report}.
+     *
+     * @param   args    the arguments following {@code batch}
+     * @throws  IOException             if the files could not be listed or the report not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args, "sheets", "aggregate", "kalman", "kalman-velocity", "histograms");
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        if (files.isEmpty()) {
+            L.warn("no log files given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        File        output = new File(arguments.get("output",
+                new File(LogFiles.location(files.get(0)).toAbsolutePath().getParent().toFile(), "output.xlsx").getPath()));
+
+        long start = System.currentTimeMillis();
+        int written;
+        boolean     sheets = arguments.has("sheets");
+        String      cacheDir = arguments.get("cache", null);
+        ResultCache cache = cacheDir == null ? null
+                : new ResultCache(Paths.get(cacheDir), arguments.getInt("cache-size", 1024) * 1024L * 1024L);
+        String      calibrationFile = arguments.get("calibration", null);
+        CalibrationTable calibration = calibrationFile == null ? null : CalibrationTable.load(Paths.get(calibrationFile));
+        String      outlierSpec = arguments.get("outliers", null);
+        Supplier<OutlierFilter> outliers = outlierSpec == null ? null : OutlierFilter.parse(outlierSpec);
+        LogQuery    query = LogQuery.parse(arguments);
+        if (outliers != null && !outliers.get().isStreaming()
+                && (query != null || !sheets && !files.stream().allMatch(LogFiles::isBinary))) {
+            throw new IllegalArgumentException("--outliers " + outlierSpec
+                + " trims whole series, it needs --sheets or binary logs and no query criteria");
+        }
+        AggregationIndex aggregation = arguments.has("aggregate") ? new AggregationIndex() : null;
+        int         windowSamples = arguments.getInt("window-samples", 0);
+        long        windowMillis = arguments.getInt("window-ms", 0);
+        if ((windowSamples > 0 || windowMillis > 0) && !sheets) {
+            throw new IllegalArgumentException("--window-samples and --window-ms need --sheets");
+        }
+        boolean     kalman = arguments.has("kalman") || arguments.has("kalman-velocity");
+        if (kalman && !sheets) {
+            throw new IllegalArgumentException("--kalman needs --sheets");
+        }
+        String      metricsFile = arguments.get("metrics", null);
+        RunMetrics  metrics = metricsFile == null ? null : new RunMetrics();
+        String      indexDir = arguments.get("index", null);
+        long        closing;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (Report report = new Report(ReportSinks.open(output), sheets, aggregation)) {
+            if (windowSamples > 0 || windowMillis > 0) {
+                report.setRollingWindow(windowSamples, windowMillis);
+            }
+            if (kalman) {
+                report.setRssiFilter(new KalmanFilter(arguments.getDouble("kalman-q", 0.5),
+                    arguments.getDouble("kalman-r", 16.0), arguments.has("kalman-velocity")), calibration);
+            }
+            FileAnalyzer analyzer = new FileAnalyzer(encoding, sheets, cache, calibration, outliers);
+            // also with a single thread, so results do not depend on --threads
+            analyzer.setPool(pool);
+            analyzer.setMetrics(metrics);
+            if (query != null) {
+                analyzer.setFilter(query, indexDir == null ? null : Paths.get(indexDir));
+            }
+            if (arguments.has("histograms") || arguments.has("rssi-bins") || arguments.has("distance-bins")) {
+                analyzer.setHistograms(Histogram.parse(arguments.get("rssi-bins", FileAnalyzer.DEFAULT_RSSI_BINS)),
+                    Histogram.parse(arguments.get("distance-bins", FileAnalyzer.DEFAULT_DISTANCE_BINS)));
+            }
+            BatchRunner runner = new BatchRunner(analyzer, threads);
+            runner.setMetrics(metrics);
+            written = runner.run(files, report);
+            closing = System.nanoTime();
+        } finally {
+            pool.shutdown();
+        }
+        if (metrics != null) {
+            metrics.record(RunMetrics.Stage.REPORT, null, System.nanoTime() - closing, Files.size(output.toPath()), 0);
+            metrics.finish();
+            metrics.write(Paths.get(metricsFile));
+        }
+        L.info(written + "/" + files.size() + " files processed on " + threads + " threads in "
+                + (System.currentTimeMillis() - start) + "ms, report written to " + output);
+    }
+}
@@ -0,0 +1,509 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.calibration.CalibrationTable;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogCollector;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogReader;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFilter;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogIndex;
+import de.hsmainz.gi.beaconrangeevaluation.io.MappedBeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.OutlierFilter;
+import de.hsmainz.gi.beaconrangeevaluation.stats.ParallelHistogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.ParallelStatistics;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * Reads and analyses a single log file. Holds no state between files, so one
+ * instance can be shared by all worker threads.
+ *
+ * The statistics are fed straight from the {@link BeaconLogReader} (or the
+ * mapped columns of a binary log), the measurements themselves are only kept
+ * if they are needed for the report. Histograms of RSSI and distance are
+ * counted along if wanted, see {@link #setHistograms(Histogram, Histogram)}.
+ *
+ * @author  KekS, Martin Saufaus
+ */
+public class FileAnalyzer {
+
+    private static final Logger     L = Logger.getLogger(FileAnalyzer.class);
+
+    /** bins of the RSSI histograms unless given, 1 dB wide */
+    public static final String      DEFAULT_RSSI_BINS = "lin:-110:-20:90";
+
+    /** bins of the distance histograms unless given, 10 per decade */
+    public static final String      DEFAULT_DISTANCE_BINS = "log:0.1:100:30";
+
+    private final Charset           encoding;
+    private final boolean           keepMeasurements;
+    private final ResultCache       cache;
+    private final CalibrationTable  calibration;
+    private final Supplier<OutlierFilter> outliers;
+    private ForkJoinPool            pool;
+    private RunMetrics              metrics;
+    private LogFilter               filter;
+    private Path                    indexDirectory;
+    private Histogram               rssiBins;
+    private Histogram               distanceBins;
+
+
+    /**
+     * Default Constructor for a FileAnalyzer
+     *
+     * @param   encoding            the charset to use when reading the files
+     * @param   keepMeasurements    whether or not to keep all measurements in the {@link FileResult}
+     */
+    public FileAnalyzer(Charset encoding, boolean keepMeasurements) {
+        this(encoding, keepMeasurements, null);
+    }
+
+    /**
+     * Constructor for a FileAnalyzer looking up results in a {@link ResultCache} first
+     *
+     * @param   encoding            the charset to use when reading the files
+     * @param   keepMeasurements    whether or not to keep all measurements in the {@link FileResult}
+     * @param   cache               the cache of results, {@code null} to always analyse
+     */
+    public FileAnalyzer(Charset encoding, boolean keepMeasurements, ResultCache cache) {
+        this(encoding, keepMeasurements, cache, null);
+    }
+
+    /**
+     * Constructor for a FileAnalyzer recomputing the distances with a {@link CalibrationTable}.
+     * The cache only holds results of the phones' distances, it is not used
+     * with a calibration.
+     *
+     * @param   encoding            the charset to use when reading the files
+     * @param   keepMeasurements    whether or not to keep all measurements in the {@link FileResult}
+     * @param   cache               the cache of results, {@code null} to always analyse
+     * @param   calibration         the path loss parameters to recompute the distances with, {@code null} for none
+     */
+    public FileAnalyzer(Charset encoding, boolean keepMeasurements, ResultCache cache, CalibrationTable calibration) {
+        this(encoding, keepMeasurements, cache, calibration, null);
+    }
+
+    /**
+     * Constructor for a FileAnalyzer recomputing the distances with a
+     * {@link CalibrationTable} and leaving outliers out of the statistics.
+     * The cache only holds results of the phones' unfiltered distances, it
+     * is not used with a calibration or outlier filter.
+     *
+     * @param   encoding            the charset to use when reading the files
+     * @param   keepMeasurements    whether or not to keep all measurements in the {@link FileResult}
+     * @param   cache               the cache of results, {@code null} to always analyse
+     * @param   calibration         the path loss parameters to recompute the distances with, {@code null} for none
+     * @param   outliers            creates the outlier filter of each file, {@code null} for none
+     */
+    public FileAnalyzer(Charset encoding, boolean keepMeasurements, ResultCache cache, CalibrationTable calibration,
+            Supplier<OutlierFilter> outliers) {
+        this.encoding = encoding;
+        this.keepMeasurements = keepMeasurements;
+        this.cache = calibration == null && outliers == null ? cache : null;
+        this.calibration = calibration;
+        this.outliers = outliers;
+        if (cache != null && this.cache == null) {
+            L.warn("results are not cached when recomputing distances or filtering outliers");
+        }
+    }
+
+    /**
+     * Accumulate the statistics of the beacons of a file in parallel, see
+     * {@link ParallelStatistics}. Results do not depend on the parallelism
+     * of the pool. To be set before the analyzer is shared.
+     *
+     * @param   pool    the pool to run the beacons on, {@code null} to analyse them one after the other
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return  the pool the beacons are analysed on, {@code null} if none
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Record the time spent reading and analysing every file, to be set
+     * before the analyzer is shared.
+     *
+     * @param   metrics the metrics to record to, {@code null} for none
+     */
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Only analyse what {@code filter} accepts. The filter is pushed down into
+     * reading, plain JSON logs are read through their {@link LogIndex}, so the
+     * measurements of rejected beacons are skipped without being parsed, see
+     * {@link LogFiles#read(Path, Charset, de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler, LogFilter, Path)}.
+     * Beacons left without measurements are dropped from the result. The
+     * cache holds results of whole files, it is not used with a filter. To be
+     * set before the analyzer is shared.
+     *
+     * @param   filter          selects the logs, beacons and measurements to analyse, {@code null} for all
+     * @param   indexDirectory  the directory to keep the index files in, {@code null} to only use valid ones next to the logs
+     */
+    public void setFilter(LogFilter filter, Path indexDirectory) {
+        this.filter = filter;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * Count the RSSI and calculated distances of every beacon into histograms
+     * of the given bins. They count every measurement, outliers included, and
+     * are cached along with the statistics. To be set before the analyzer is
+     * shared.
+     *
+     * @param   rssiBins        a histogram with the bins of the RSSI, {@code null} to count none
+     * @param   distanceBins    a histogram with the bins of the distances, {@code null} to count none
+     */
+    public void setHistograms(Histogram rssiBins, Histogram distanceBins) {
+        if ((rssiBins == null) != (distanceBins == null)) {
+            throw new IllegalArgumentException("need the bins of both RSSI and distance or neither");
+        }
+        this.rssiBins = rssiBins;
+        this.distanceBins = distanceBins;
+    }
+
+    /**
+     * Read and analyse the log file specified by {@code file}.
+     *
+     * @param   file    the path to the file to analyse
+     * @return  the {@link FileResult} of the file, {@code null} if nothing in it matches the filter
+     * @throws  IOException if the file could not be read
+     */
+    public FileResult analyse(Path file) throws IOException {
+        if (cache == null || filter != null) {
+            return read(file, null);
+        }
+        long begin = System.nanoTime();
+        FileResult result = cache.get(file, encoding, keepMeasurements);
+        if (result != null && rssiBins != null && !(sameBins(result.getRssiHistograms(), rssiBins)
+                && sameBins(result.getDistanceHistograms(), distanceBins))) {
+            result = null;
+        } else if (result != null && rssiBins == null && result.getRssiHistograms() != null) {
+            result = new FileResult(file, result.getBeaconLog(), result.getStats());
+        }
+        if (result != null) {
+            L.debug("cached: " + file);
+            if (metrics != null) {
+                metrics.record(RunMetrics.Stage.CACHE, file, System.nanoTime() - begin, Files.size(file),
+                    measurements(result));
+            }
+            return result;
+        }
+        // taken before reading, a file changing meanwhile is not mistaken for the cached one
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        MessageDigest       digest = ResultCache.digest();
+        result = read(file, digest);
+        cache.put(result, encoding, keepMeasurements, attributes.size(), attributes.lastModifiedTime(),
+            digest.digest());
+        return result;
+    }
+
+    private static boolean sameBins(List<Histogram> histograms, Histogram bins) {
+        if (histograms == null) {
+            return false;
+        }
+        for (Histogram histogram : histograms) {
+            if (!histogram.hasSameBins(bins)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param   digest  updated with the content of {@code file} while it is read, {@code null} for none
+     */
+    private FileResult read(Path file, MessageDigest digest) throws IOException {
+        long begin = System.nanoTime();
+        if (pool != null && keepMeasurements && filter == null) {
+            return readKept(file, digest, begin);
+        }
+        if (pool != null && LogFiles.isBinary(file) && filter == null) {
+            return readMapped(file, digest, begin);
+        }
+        Analysis analysis = new Analysis(true);
+        if (filter == null) {
+            LogFiles.read(file, encoding, analysis, digest);
+        } else if (!LogFiles.read(file, encoding, analysis, filter, indexDirectory) || !analysis.dropEmpty()) {
+            if (metrics != null) {
+                metrics.record(RunMetrics.Stage.READ, file, System.nanoTime() - begin, Files.size(file), 0);
+            }
+            return null;
+        }
+        long[] rejected = null;
+        if (analysis.outlierFilter != null) {
+            rejected = new long[analysis.rejected.size()];
+            for (int i = 0; i < rejected.length; i++) {
+                rejected[i] = analysis.rejected.get(i);
+            }
+        }
+        FileResult result = new FileResult(file, analysis.getBeaconLog(), analysis.stats, rejected,
+            analysis.rssiHistograms, analysis.distanceHistograms);
+        if (metrics != null) {
+            metrics.record(RunMetrics.Stage.READ, file, System.nanoTime() - begin, Files.size(file),
+                measurements(result));
+        }
+        return result;
+    }
+
+    /**
+     * @return  number of measurements analysed, rejected outliers included
+     */
+    private static long measurements(FileResult result) {
+        long n = 0;
+        for (StreamingStatistics stats : result.getStats()) {
+            n += stats.getN();
+        }
+        if (result.getRejected() != null) {
+            for (long rejected : result.getRejected()) {
+                n += rejected;
+            }
+        }
+        return n;
+    }
+
+    private FileResult readKept(Path file, MessageDigest digest, long begin) throws IOException {
+        Analysis analysis = new Analysis(false);
+        LogFiles.read(file, encoding, analysis, digest);
+        BeaconLog               bLog = analysis.getBeaconLog();
+        List<BeaconLogObject>   blist = bLog.getLoggedBeacons();
+        IntToDoubleFunction[]   columns = new IntToDoubleFunction[blist.size()];
+        IntToDoubleFunction[]   rssi = new IntToDoubleFunction[blist.size()];
+        int[]                   sizes = new int[blist.size()];
+        for (int b = 0; b < columns.length; b++) {
+            MeasurementSeries series = blist.get(b).getSeries();
+            columns[b] = series::getCalcDistance;       // calibrated while read
+            rssi[b] = series::getRssi;
+            sizes[b] = series.size();
+        }
+        return statistics(file, bLog, columns, rssi, sizes, begin);
+    }
+
+    private FileResult readMapped(Path file, MessageDigest digest, long begin) throws IOException {
+        try (MappedBeaconLog log = MappedBeaconLog.open(file)) {
+            BeaconLog               bLog = new BeaconLog();
+            IntToDoubleFunction[]   columns = new IntToDoubleFunction[log.getBeaconCount()];
+            IntToDoubleFunction[]   rssiColumns = new IntToDoubleFunction[log.getBeaconCount()];
+            int[]                   sizes = new int[log.getBeaconCount()];
+            bLog.setModel(log.getModel());
+            bLog.setAverageOrientation(log.getAverageOrientation());
+            bLog.setDistance(log.getDistance());
+            bLog.setLoggedBeacons(new ArrayList<>(columns.length));
+            for (int b = 0; b < columns.length; b++) {
+                MappedBeaconLog.Beacon beacon = log.getBeacon(b);
+                bLog.getLoggedBeacons().add(new BeaconLogObject(beacon.getIdentifier(), beacon.getDistance()));
+                CalibrationTable.Entry entry = calibration != null
+                    ? calibration.get(log.getModel(), beacon.getIdentifier()) : null;
+                DoubleBuffer rssi = beacon.getRssi();
+                if (entry == null) {
+                    DoubleBuffer calcDistance = beacon.getCalcDistance();
+                    columns[b] = calcDistance::get;
+                } else {
+                    IntBuffer txPower = beacon.getTxPower();
+                    columns[b] = i -> entry.distance(rssi.get(i), txPower.get(i));
+                }
+                rssiColumns[b] = rssi::get;
+                sizes[b] = beacon.size();
+            }
+            FileResult result = statistics(file, bLog, columns, rssiColumns, sizes, begin);
+            if (digest != null) {
+                log.digest(digest);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Accumulate the statistics of all beacons on the pool, in file order,
+     * and count their histograms if wanted.
+     */
+    private FileResult statistics(Path file, BeaconLog bLog, IntToDoubleFunction[] columns,
+            IntToDoubleFunction[] rssi, int[] sizes, long begin) throws IOException {
+        long read = System.nanoTime();
+        List<ForkJoinTask<StreamingStatistics>> tasks = new ArrayList<>(columns.length);
+        long[]                                  rejected = outliers != null ? new long[columns.length] : null;
+        for (int b = 0; b < columns.length; b++) {
+            IntToDoubleFunction column = columns[b];
+            int                 size = sizes[b];
+            if (outliers == null) {
+                tasks.add(pool.submit(new ParallelStatistics(column, 0, size)));
+            } else {
+                // filters need the whole series in order
+                int index = b;
+                tasks.add(pool.submit(() -> {
+                    OutlierFilter       outlierFilter = outliers.get();
+                    StreamingStatistics stats = new StreamingStatistics();
+                    outlierFilter.filter(column, size, stats);
+                    rejected[index] = outlierFilter.getRejected();
+                    return stats;
+                }));
+            }
+        }
+        List<ForkJoinTask<Histogram>>           histogramTasks = new ArrayList<>();
+        if (rssiBins != null) {
+            for (int b = 0; b < columns.length; b++) {
+                histogramTasks.add(pool.submit(new ParallelHistogram(rssiBins, rssi[b], 0, sizes[b])));
+                histogramTasks.add(pool.submit(new ParallelHistogram(distanceBins, columns[b], 0, sizes[b])));
+            }
+        }
+        List<StreamingStatistics> stats = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<StreamingStatistics> task : tasks) {
+            stats.add(task.join());
+        }
+        List<Histogram> rssiHistograms = null;
+        List<Histogram> distanceHistograms = null;
+        if (rssiBins != null) {
+            rssiHistograms = new ArrayList<>(columns.length);
+            distanceHistograms = new ArrayList<>(columns.length);
+            for (int b = 0; b < columns.length; b++) {
+                rssiHistograms.add(histogramTasks.get(2 * b).join());
+                distanceHistograms.add(histogramTasks.get(2 * b + 1).join());
+            }
+        }
+        FileResult result = new FileResult(file, bLog, stats, rejected, rssiHistograms, distanceHistograms);
+        if (metrics != null) {
+            long n = measurements(result);
+            metrics.record(RunMetrics.Stage.READ, file, read - begin, Files.size(file), n);
+            metrics.record(RunMetrics.Stage.ANALYSE, file, System.nanoTime() - read, 0, n);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the {@link de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog}
+     * and accumulates the statistics of every beacon on the fly, unless
+     * they are accumulated afterwards.
+     */
+    private class Analysis extends BeaconLogCollector {
+
+        private final List<StreamingStatistics> stats = new ArrayList<>();
+        private StreamingStatistics             tempStats;
+        private CalibrationTable.Entry          tempCalibration;
+        private final OutlierFilter             outlierFilter;
+        private final List<Long>                rejected = new ArrayList<>();
+        private final List<Histogram>           rssiHistograms;
+        private final List<Histogram>           distanceHistograms;
+        private Histogram                       tempRssi;
+        private Histogram                       tempDistance;
+        private final boolean                   accumulate;
+
+        Analysis(boolean accumulate) {
+            this.accumulate = accumulate;
+            this.outlierFilter = accumulate && outliers != null ? outliers.get() : null;
+            if (outlierFilter != null && !outlierFilter.isStreaming()) {
+                throw new IllegalArgumentException("the outlier filter needs whole series, only kept measurements"
+                    + " and mapped binary logs without a filter can be trimmed");
+            }
+            this.rssiHistograms = accumulate && rssiBins != null ? new ArrayList<>() : null;
+            this.distanceHistograms = accumulate && rssiBins != null ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+            super.beginBeacon(beaconId, distance);
+            if (accumulate) {
+                tempStats = new StreamingStatistics();
+                stats.add(tempStats);
+                if (rssiHistograms != null) {
+                    tempRssi = rssiBins.emptyCopy();
+                    tempDistance = distanceBins.emptyCopy();
+                    rssiHistograms.add(tempRssi);
+                    distanceHistograms.add(tempDistance);
+                }
+            }
+            // the model precedes the beacons
+            tempCalibration = calibration != null ? calibration.get(getBeaconLog().getModel(), beaconId) : null;
+        }
+
+        @Override
+        public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+            if (tempCalibration != null) {
+                calcDistance = tempCalibration.distance(rssi, txPower);
+            }
+            if (keepMeasurements) {
+                super.measurement(timestamp, rssi, txPower, calcDistance);
+            }
+            if (!accumulate) {
+                return;
+            }
+
+/* ================= ADD YOUR CALCULATIONS HERE ================= */
+
+            if (rssiHistograms != null) {
+                tempRssi.addValue(rssi);
+                tempDistance.addValue(calcDistance);
+            }
+
+            if (outlierFilter != null) {
+                outlierFilter.add(calcDistance, tempStats);
+            } else {
+                tempStats.addValue(calcDistance);
+            }
+
+/* ================= END OF YOUR CALCULATIONS ================= */
+        }
+
+        @Override
+        public void endBeacon() {
+            super.endBeacon();
+            if (!accumulate) {
+                return;
+            }
+            if (outlierFilter != null) {
+                outlierFilter.finish(tempStats);
+                rejected.add(outlierFilter.getRejected());
+                outlierFilter.reset();
+            }
+            L.debug("read dataset " + stats.size() + "| # of Elements: " + tempStats.getN()
+                + (outlierFilter != null ? "| # of outliers: " + rejected.get(rejected.size() - 1) : ""));
+        }
+
+        /**
+         * Drop the beacons the log filter left without any measurement.
+         *
+         * @return  whether any beacon is left
+         */
+        boolean dropEmpty() {
+            List<BeaconLogObject> blist = getBeaconLog().getLoggedBeacons();
+            for (int b = stats.size() - 1; b >= 0; b--) {
+                if (stats.get(b).getN() == 0 && (outlierFilter == null || rejected.get(b) == 0)) {
+                    stats.remove(b);
+                    blist.remove(b);
+                    if (outlierFilter != null) {
+                        rejected.remove(b);
+                    }
+                    if (rssiHistograms != null) {
+                        rssiHistograms.remove(b);
+                        distanceHistograms.remove(b);
+                    }
+                }
+            }
+            return !stats.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Everything the analysis of one log file yields, ready to be written to the report.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class FileResult {
+
+    private final Path                          file;
+    private final BeaconLog                     beaconLog;
+    private final List<StreamingStatistics>     stats;
+    private final long[]                        rejected;
+    private final List<Histogram>               rssiHistograms;
+    private final List<Histogram>               distanceHistograms;
+
+
+    /**
+     * Default Constructor for a FileResult
+     *
+     * @param   file        the analysed file
+     * @param   beaconLog   the content of the file, measurements only if they were kept
+     * @param   stats       statistics of the calculated distances, one per logged beacon
+     */
+    public FileResult(Path file, BeaconLog beaconLog, List<StreamingStatistics> stats) {
+        this(file, beaconLog, stats, null);
+    }
+
+    /**
+     * Constructor for a FileResult of statistics without outliers
+     *
+     * @param   file        the analysed file
+     * @param   beaconLog   the content of the file, measurements only if they were kept
+     * @param   stats       statistics of the calculated distances, one per logged beacon
+     * @param   rejected    number of outliers left out of the statistics, one per logged beacon
+     */
+    public FileResult(Path file, BeaconLog beaconLog, List<StreamingStatistics> stats, long[] rejected) {
+        this(file, beaconLog, stats, rejected, null, null);
+    }
+
+    /**
+     * Constructor for a FileResult with distributions
+     *
+     * @param   file                the analysed file
+     * @param   beaconLog           the content of the file, measurements only if they were kept
+     * @param   stats               statistics of the calculated distances, one per logged beacon
+     * @param   rejected            number of outliers left out of the statistics, one per logged beacon, {@code null} for none
+     * @param   rssiHistograms      histograms of the RSSI, one per logged beacon, {@code null} for none
+     * @param   distanceHistograms  histograms of the calculated distances, one per logged beacon, {@code null} for none
+     */
+    public FileResult(Path file, BeaconLog beaconLog, List<StreamingStatistics> stats, long[] rejected,
+            List<Histogram> rssiHistograms, List<Histogram> distanceHistograms) {
+        this.file = file;
+        this.beaconLog = beaconLog;
+        this.stats = stats;
+        this.rejected = rejected;
+        this.rssiHistograms = rssiHistograms;
+        this.distanceHistograms = distanceHistograms;
+    }
+
+    /**
+     * @return  the analysed file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return  the content of the file
+     */
+    public BeaconLog getBeaconLog() {
+        return beaconLog;
+    }
+
+    /**
+     * @return  statistics of the calculated distances in the order of {@link BeaconLog#getLoggedBeacons()}
+     */
+    public List<StreamingStatistics> getStats() {
+        return stats;
+    }
+
+    /**
+     * @return  number of outliers left out of the statistics in the order of
+     *          {@link BeaconLog#getLoggedBeacons()}, {@code null} if outliers were not filtered
+     */
+    public long[] getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return  histograms of the RSSI in the order of {@link BeaconLog#getLoggedBeacons()},
+     *          {@code null} if they were not counted
+     */
+    public List<Histogram> getRssiHistograms() {
+        return rssiHistograms;
+    }
+
+    /**
+     * @return  histograms of the calculated distances in the order of
+     *          {@link BeaconLog#getLoggedBeacons()}, {@code null} if they were not counted
+     */
+    public List<Histogram> getDistanceHistograms() {
+        return distanceHistograms;
+    }
+}
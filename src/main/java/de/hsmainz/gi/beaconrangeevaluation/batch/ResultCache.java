@@ -0,0 +1,330 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+import de.hsmainz.gi.beaconrangeevaluation.stats.TDigest;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk cache of {@link FileResult}s, so unchanged log files skip parsing
+ * and statistics on the next run.
+ *
+ * Every analysed file gets one entry file in the cache directory, named after
+ * the hash of its absolute path and the charset it was read with. An entry is
+ * valid if size and modification time of the log still match, if only the
+ * modification time differs the SHA-256 of the content decides. Entries are
+ * read back accepting only the classes a result consists of, see
+ * {@link EntryInputStream}. Entries are written to a temporary file and
+ * moved into place atomically, so concurrent workers and even concurrent runs
+ * never see half an entry. The least recently used entries are removed once
+ * the cache grows beyond its maximum size.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class ResultCache {
+
+    private static final Logger         L = Logger.getLogger(ResultCache.class);
+
+    /** extension of the entry files */
+    public static final String          EXTENSION = ".cache";
+
+    private final Path                  directory;
+    private final long                  maxSize;
+    /** entry file name to its size, in access order */
+    private final Map<String, Long>     index = new LinkedHashMap<>(16, 0.75f, true);
+    private long                        size;
+
+
+    /**
+     * Default Constructor for a ResultCache
+     *
+     * @param   directory   the directory to keep the entries in, created if missing
+     * @param   maxSize     the maximum size of all entries in bytes
+     * @throws  IOException if the directory could not be created or listed
+     */
+    public ResultCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+
+        // the modification time of an entry is its last access
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+        final Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+        for (Path entry : entries) {
+            try {
+                attributes.put(entry, Files.readAttributes(entry, BasicFileAttributes.class));
+            } catch (IOException ex) {
+                L.debug("cache entry vanished: " + entry);
+            }
+        }
+        List<Path> sorted = new ArrayList<>(attributes.keySet());
+        sorted.sort((a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+        for (Path entry : sorted) {
+            long bytes = attributes.get(entry).size();
+            index.put(entry.getFileName().toString(), bytes);
+            size += bytes;
+        }
+        L.debug("cache " + directory + " holds " + index.size() + " entries, " + size + " bytes");
+    }
+
+    /**
+     * Look up the result of {@code file}.
+     *
+     * @param   file                the log file
+     * @param   encoding            the charset the log is read with
+     * @param   needMeasurements    whether the result must contain the measurements
+     * @return  the cached result, {@code null} if there is no valid one
+     * @throws  IOException if {@code file} could not be read
+     */
+    public FileResult get(Path file, Charset encoding, boolean needMeasurements) throws IOException {
+        String  key = key(file, encoding);
+        Path    path = entryPath(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Entry entry;
+        try (ObjectInputStream in = new EntryInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            entry = (Entry) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            L.debug("dropping unreadable cache entry " + path + ": " + ex);
+            remove(path);
+            return null;
+        }
+
+        if (!entry.path.equals(key) || entry.size != attributes.size()
+                || (needMeasurements && !entry.measurements)) {
+            return null;
+        }
+        if (entry.modified != attributes.lastModifiedTime().toMillis()) {
+            if (!Arrays.equals(entry.hash, hash(file))) {
+                return null;
+            }
+            // same content, remember the new time so the next lookup needs no hash
+            entry.modified = attributes.lastModifiedTime().toMillis();
+            write(path, entry);
+        } else {
+            touch(path);
+        }
+        return new FileResult(file, entry.beaconLog, entry.stats, null, entry.rssiHistograms, entry.distanceHistograms);
+    }
+
+    /**
+     * Store the result of {@code file}, replacing any previous entry.
+     *
+     * @param   result          the result to store
+     * @param   encoding        the charset the log was read with
+     * @param   measurements    whether {@code result} contains the measurements
+     * @param   size            the size of the log file before it was analysed
+     * @param   modified        the modification time of the log file before it was analysed
+     * @param   hash            the SHA-256 of the log file as it was analysed, see {@link #digest()}
+     * @throws  IOException if the entry could not be written
+     */
+    public void put(FileResult result, Charset encoding, boolean measurements, long size, FileTime modified,
+            byte[] hash) throws IOException {
+        String key = key(result.getFile(), encoding);
+        Entry entry = new Entry();
+        entry.path = key;
+        entry.size = size;
+        entry.modified = modified.toMillis();
+        entry.hash = hash;
+        entry.measurements = measurements;
+        entry.beaconLog = result.getBeaconLog();
+        entry.stats = result.getStats();
+        entry.rssiHistograms = result.getRssiHistograms();
+        entry.distanceHistograms = result.getDistanceHistograms();
+
+        write(entryPath(key), entry);
+    }
+
+    private void write(Path path, Entry entry) throws IOException {
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        long bytes;
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeObject(entry);
+            }
+            bytes = Files.size(temp);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        added(path.getFileName().toString(), bytes);
+    }
+
+    private synchronized void added(String name, long bytes) throws IOException {
+        Long previous = index.put(name, bytes);
+        size += bytes - (previous == null ? 0 : previous);
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            Map.Entry<String, Long> e = eldest.next();
+            if (e.getKey().equals(name)) {
+                continue;
+            }
+            Files.deleteIfExists(directory.resolve(e.getKey()));
+            size -= e.getValue();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void touch(Path path) {
+        index.get(path.getFileName().toString());
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            L.debug("could not touch cache entry " + path + ": " + ex);
+        }
+    }
+
+    private synchronized void remove(Path path) throws IOException {
+        Long bytes = index.remove(path.getFileName().toString());
+        if (bytes != null) {
+            size -= bytes;
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private static String key(Path file, Charset encoding) {
+        // entries of archives all share the root of their zip file system
+        String location = file.getFileSystem() == FileSystems.getDefault()
+            ? file.toAbsolutePath().normalize().toString() : file.toUri().toString();
+        return location + '\n' + encoding.name();
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(hex(digest().digest(key.getBytes(StandardCharsets.UTF_8))) + EXTENSION);
+    }
+
+    /**
+     * @param   file    the log file
+     * @return  the SHA-256 of the content of {@code file}, compressed as on disk
+     * @throws  IOException if {@code file} could not be read
+     */
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return  a new digest of the kind the content of log files is hashed with
+     */
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Deserializes {@link Entry}s, refusing every class an entry does not
+     * consist of, so a tampered cache file cannot instantiate anything else.
+     */
+    private static class EntryInputStream extends ObjectInputStream {
+
+        private static final Set<String>    ALLOWED = new HashSet<>(Arrays.asList(
+            Entry.class.getName(),
+            BeaconLog.class.getName(),
+            BeaconLog.AndroidModel.class.getName(),
+            BeaconLog.Orientation.class.getName(),
+            BeaconLogObject.class.getName(),
+            BeaconLogObject.Identifier.class.getName(),
+            MeasurementSeries.class.getName(),
+            StreamingStatistics.class.getName(),
+            TDigest.class.getName(),
+            Histogram.class.getName(),
+            ArrayList.class.getName(),
+            byte[].class.getName(),
+            int[].class.getName(),
+            long[].class.getName(),
+            double[].class.getName()
+        ));
+
+        EntryInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not allowed in a cache entry");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy", "not allowed in a cache entry");
+        }
+    }
+
+    /**
+     * What is stored per log file.
+     */
+    private static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String                      path;
+        private long                        size;
+        private long                        modified;
+        private byte[]                      hash;
+        private boolean                     measurements;
+        private BeaconLog                   beaconLog;
+        private List<StreamingStatistics>   stats;
+        private List<Histogram>             rssiHistograms;
+        private List<Histogram>             distanceHistograms;
+    }
+}
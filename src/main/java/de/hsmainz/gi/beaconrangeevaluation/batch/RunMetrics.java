@@ -0,0 +1,264 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import com.google.gson.stream.JsonWriter;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time, bytes and measurements spent in every stage of a run, in total and
+ * per file, written as JSON or in the Prometheus text format at the end.
+ *
+ * Stages run concurrently on the workers, so the time of a stage is the sum
+ * over all threads and may exceed the wall time of the run. Recording is a
+ * few counter increments per file and stage, cheap enough to stay on.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class RunMetrics {
+
+    /**
+     * Stages of a run.
+     */
+    public enum Stage {
+        /** a result taken from the {@link ResultCache} */
+        CACHE,
+        /** reading a file; for JSON logs whose measurements are not kept including the analysis */
+        READ,
+        /** accumulating the statistics of measurements already read */
+        ANALYSE,
+        /** adding a file to the report */
+        WRITE,
+        /** writing the summary and closing the report */
+        REPORT;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final String         PREFIX = "beaconrange_";
+
+    private final LongAdder[]           nanos = adders();
+    private final LongAdder[]           bytes = adders();
+    private final LongAdder[]           measurements = adders();
+    private final LongAdder[]           calls = adders();
+    private final Map<Path, long[]>     files = new ConcurrentHashMap<>();
+    private final long                  start = System.nanoTime();
+    private long                        end;
+
+
+    /**
+     * Default Constructor for RunMetrics, the run starts now. The peak heap
+     * usage is reset, it is shared by the whole JVM.
+     */
+    public RunMetrics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Stage.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Record one pass through a stage.
+     *
+     * @param   stage           the stage
+     * @param   file            the file passed through, {@code null} if the stage is not per file
+     * @param   nanos           time spent in nanoseconds
+     * @param   bytes           bytes processed
+     * @param   measurements    measurements processed
+     */
+    public void record(Stage stage, Path file, long nanos, long bytes, long measurements) {
+        int s = stage.ordinal();
+        this.nanos[s].add(nanos);
+        this.bytes[s].add(bytes);
+        this.measurements[s].add(measurements);
+        this.calls[s].increment();
+        if (file != null) {
+            long[] times = files.computeIfAbsent(file, f -> new long[Stage.values().length + 2]);
+            synchronized (times) {
+                times[s] += nanos;
+                times[times.length - 2] = Math.max(times[times.length - 2], bytes);
+                times[times.length - 1] = Math.max(times[times.length - 1], measurements);
+            }
+        }
+    }
+
+    /**
+     * Mark the end of the run.
+     */
+    public void finish() {
+        end = System.nanoTime();
+    }
+
+    private double seconds() {
+        return ((end != 0 ? end : System.nanoTime()) - start) / 1e9;
+    }
+
+    private long totalMeasurements() {
+        return measurements[Stage.READ.ordinal()].sum() + measurements[Stage.CACHE.ordinal()].sum();
+    }
+
+    private long totalBytes() {
+        return bytes[Stage.READ.ordinal()].sum() + bytes[Stage.CACHE.ordinal()].sum();
+    }
+
+    /**
+     * @return  sum of the peak usage of all heap memory pools since construction
+     */
+    public static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Write the metrics to {@code output}, in the Prometheus text format if
+     * its name ends with {@code .prom}, else as JSON with one entry per file.
+     *
+     * @param   output  the file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void write(Path output) throws IOException {
+        try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            if (output.getFileName().toString().endsWith(".prom")) {
+                writePrometheus(out);
+            } else {
+                writeJson(out);
+            }
+        }
+    }
+
+    /**
+     * Write the totals in the Prometheus text exposition format.
+     *
+     * @param   out the writer to write to, not closed
+     * @throws  IOException if writing failed
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        double seconds = seconds();
+        gauge(out, "run_seconds", "wall time of the run", seconds);
+        gauge(out, "files", "number of files processed", files.size());
+        gauge(out, "bytes", "bytes of all files processed", totalBytes());
+        gauge(out, "measurements", "measurements of all files processed", totalMeasurements());
+        gauge(out, "measurements_per_second", "measurements processed per second of wall time",
+            seconds > 0 ? totalMeasurements() / seconds : 0);
+        gauge(out, "heap_peak_bytes", "peak heap usage", heapPeak());
+        stage(out, "stage_seconds", "time spent in a stage, summed over all threads", nanos, 1e-9);
+        stage(out, "stage_calls", "passes through a stage", calls, 1);
+        stage(out, "stage_bytes", "bytes processed by a stage", bytes, 1);
+        stage(out, "stage_measurements", "measurements processed by a stage", measurements, 1);
+    }
+
+    private static void gauge(Writer out, String name, String help, double value) throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " gauge\n");
+        out.write(PREFIX + name + " " + number(value) + "\n");
+    }
+
+    private static void stage(Writer out, String name, String help, LongAdder[] values, double scale)
+            throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " gauge\n");
+        for (Stage stage : Stage.values()) {
+            out.write(PREFIX + name + "{stage=\"" + stage.label() + "\"} "
+                + number(values[stage.ordinal()].sum() * scale) + "\n");
+        }
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * @return  {@code archive!entry} for a log in an archive, else the path of the file
+     */
+    private static String name(Path file) {
+        Path archive = LogFiles.location(file);
+        return archive.equals(file) ? file.toString() : archive + "!" + file;
+    }
+
+    /**
+     * Write totals, stages and files as JSON.
+     *
+     * @param   out the writer to write to, not closed
+     * @throws  IOException if writing failed
+     */
+    public void writeJson(Writer out) throws IOException {
+        JsonWriter  json = new JsonWriter(out);
+        double      seconds = seconds();
+        json.setIndent("  ");
+        json.beginObject();
+        json.name("seconds").value(seconds);
+        json.name("files").value(files.size());
+        json.name("bytes").value(totalBytes());
+        json.name("measurements").value(totalMeasurements());
+        json.name("measurementsPerSecond").value(seconds > 0 ? totalMeasurements() / seconds : 0);
+        json.name("heapPeakBytes").value(heapPeak());
+
+        json.name("stages").beginObject();
+        for (Stage stage : Stage.values()) {
+            int     s = stage.ordinal();
+            double  stageSeconds = nanos[s].sum() / 1e9;
+            json.name(stage.label()).beginObject();
+            json.name("calls").value(calls[s].sum());
+            json.name("seconds").value(stageSeconds);
+            json.name("bytes").value(bytes[s].sum());
+            json.name("measurements").value(measurements[s].sum());
+            json.name("measurementsPerSecond").value(stageSeconds > 0 ? measurements[s].sum() / stageSeconds : 0);
+            json.endObject();
+        }
+        json.endObject();
+
+        List<Path> paths = new ArrayList<>(files.keySet());
+        // logs in archives are on other file systems and cannot be compared with plain files
+        Collections.sort(paths, Comparator.comparing(path -> path.toUri().toString()));
+        json.name("perFile").beginArray();
+        for (Path path : paths) {
+            long[] times = files.get(path);
+            json.beginObject();
+            json.name("file").value(name(path));
+            synchronized (times) {
+                json.name("bytes").value(times[times.length - 2]);
+                json.name("measurements").value(times[times.length - 1]);
+                for (Stage stage : Stage.values()) {
+                    if (times[stage.ordinal()] > 0) {
+                        json.name(stage.label() + "Seconds").value(times[stage.ordinal()] / 1e9);
+                    }
+                }
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+}
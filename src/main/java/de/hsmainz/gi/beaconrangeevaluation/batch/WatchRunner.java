@@ -0,0 +1,376 @@
+package de.hsmainz.gi.beaconrangeevaluation.batch;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.report.Report;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long running mode: watches directories for new or changed log files and
+ * keeps the summary report up to date.
+ *
+ * Only files that were created or modified are analysed, the results of all
+ * other files are kept in memory (statistics only, no measurements), so the
+ * cost of an update depends on the new data alone. New files are merged into
+ * the live {@link AggregationIndex}; merged statistics cannot be taken apart
+ * again, so it is only rebuilt once a file it holds was modified or deleted.
+ * A file is taken once it did not change for the quiet period, files still
+ * being written are thus not read half way. The summary is rewritten at most
+ * once per interval into a temporary directory, its files then replace the
+ * report and the sheets CSV reports keep in files of their own, readers
+ * never see a partial file.
+ *
+ * Archives ({@link LogFiles#ARCHIVE_PATTERN}) are not watched: they are
+ * rewritten as a whole, so every change would mean reading all their logs
+ * again, and {@link LogFiles} keeps every archive it opened open for the
+ * rest of the run. Unpack them into a watched directory instead.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class WatchRunner {
+
+    private static final Logger             L = Logger.getLogger(WatchRunner.class);
+
+    private final FileAnalyzer              analyzer;
+    private final int                       threads;
+    /** the pool of the analyzer if it has one, else a pool of our own */
+    private ExecutorService                 pool;
+    private final File                      output;
+    /** where the report is written before it replaces {@link #output} */
+    private final Path                      temp;
+    private final long                      quiet;
+    private final long                      interval;
+    /** all results merged, {@code null} if not wanted */
+    private AggregationIndex                aggregation;
+    /** whether {@link #aggregation} holds results that changed or were removed */
+    private boolean                         stale;
+
+    private final WatchService              watcher;
+    private final Map<WatchKey, Path>       directories = new HashMap<>();
+    private final PathMatcher               logs = FileSystems.getDefault().getPathMatcher(LogFiles.LOG_PATTERN);
+    private final PathMatcher               archives = FileSystems.getDefault().getPathMatcher(LogFiles.ARCHIVE_PATTERN);
+    private final Set<Path>                 ignored = new HashSet<>();
+
+    /** analysed files, sorted by path like {@link LogFiles#expand(List)} */
+    private final Map<Path, FileResult>     results = new TreeMap<>();
+    /** changed files to the time of their last change and their size then */
+    private final Map<Path, long[]>         pending = new HashMap<>();
+    private boolean                         dirty;
+    private long                            written;
+
+
+    /**
+     * Default Constructor for a WatchRunner
+     *
+     * @param   analyzer    the {@link FileAnalyzer} shared by all workers, should not keep measurements
+     * @param   threads     number of worker threads if the analyzer has no pool
+     * @param   output      the report to rewrite
+     * @param   quiet       milliseconds a file must not change before it is analysed
+     * @param   interval    minimum milliseconds between two rewrites of the report
+     * @param   aggregate   whether or not to add the sheet merging every beacon across files
+     * @throws  IOException if no {@link WatchService} is available
+     */
+    public WatchRunner(FileAnalyzer analyzer, int threads, File output, long quiet, long interval,
+            boolean aggregate) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one worker thread, got " + threads);
+        }
+        this.analyzer = analyzer;
+        this.threads = threads;
+        this.output = output;
+        this.temp = output.getAbsoluteFile().toPath().normalize().resolveSibling("~" + output.getName());
+        this.quiet = quiet;
+        this.interval = interval;
+        this.aggregation = aggregate ? new AggregationIndex() : null;
+        this.watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Analyse all log files below {@code roots} and keep watching them until interrupted.
+     *
+     * @param   roots   the directories to watch, recursively
+     * @throws  IOException             if a directory could not be watched
+     * @throws  InterruptedException    if interrupted, the report is up to date then
+     */
+    public void run(List<Path> roots) throws IOException, InterruptedException {
+        // files run on the pool of their beacons if there is one, so both share its workers
+        pool = analyzer.getPool() != null ? analyzer.getPool() : Executors.newFixedThreadPool(threads);
+        try {
+            for (Path root : roots) {
+                register(root.toAbsolutePath().normalize());
+            }
+            // everything already there is complete
+            analyse(new ArrayList<>(pending.keySet()));
+            pending.clear();
+            writeReport();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(Math.max(1, Math.min(quiet, interval)), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                analyse(settled());
+                if (dirty && System.currentTimeMillis() - written >= interval) {
+                    writeReport();
+                }
+            }
+        } finally {
+            if (dirty) {
+                writeReport();
+            }
+            if (pool != analyzer.getPool()) {
+                pool.shutdownNow();
+            }
+            watcher.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void register(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(temp)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                changed(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, look at everything again
+                L.warn("too many changes in " + dir + ", rescanning");
+                register(dir);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // a deleted directory takes everything below it along, without events of their own
+                pending.keySet().removeIf(file -> file.startsWith(path));
+                ignored.removeIf(file -> file.startsWith(path));
+                Iterator<Path> it = results.keySet().iterator();
+                while (it.hasNext()) {
+                    Path file = it.next();
+                    if (file.startsWith(path)) {
+                        it.remove();
+                        L.info("Removed file: " + file);
+                        dirty = true;
+                        stale = true;
+                    }
+                }
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    register(path);
+                }
+            } else {
+                changed(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void changed(Path file) {
+        if (archives.matches(file)) {
+            if (ignored.add(file)) {
+                L.warn("archives are not watched, ignoring " + file);
+            }
+            return;
+        }
+        if (!logs.matches(file) || file.equals(output.toPath().toAbsolutePath().normalize())) {
+            return;
+        }
+        pending.put(file, new long[] {System.currentTimeMillis(), size(file)});
+    }
+
+    /**
+     * @return  the pending files that did not change for the quiet period
+     */
+    private List<Path> settled() {
+        List<Path> settled = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, long[]>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, long[]> e = it.next();
+            if (now - e.getValue()[0] < quiet) {
+                continue;
+            }
+            long size = size(e.getKey());
+            if (size != e.getValue()[1]) {
+                // changed without an event, some file systems only report the creation
+                e.setValue(new long[] {now, size});
+                continue;
+            }
+            settled.add(e.getKey());
+            it.remove();
+        }
+        return settled;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private void analyse(List<Path> files) throws InterruptedException {
+        List<Future<FileResult>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(pool.submit(() -> analyzer.analyse(file)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                FileResult result = futures.get(i).get();
+                if (results.put(files.get(i), result) != null) {
+                    stale = true;
+                } else if (aggregation != null && !stale) {
+                    aggregation.add(result);
+                }
+                dirty = true;
+                L.info("Processed file: " + files.get(i));
+            } catch (ExecutionException ex) {
+                L.warn("failed to read file " + files.get(i), ex.getCause());
+            }
+        }
+    }
+
+    private void writeReport() throws IOException {
+        if (aggregation != null && stale) {
+            aggregation = new AggregationIndex();
+            for (FileResult result : results.values()) {
+                aggregation.add(result);
+            }
+            stale = false;
+        }
+        // the report keeps its name, CSV reports name the files of further sheets after it
+        Files.createDirectories(temp);
+        try (Report report = new Report(ReportSinks.open(temp.resolve(output.getName()).toFile()), false,
+                aggregation, false)) {
+            for (FileResult result : results.values()) {
+                report.addFile(result);
+            }
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(temp)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        for (Path file : files) {
+            Files.move(file, temp.resolveSibling(file.getFileName()), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        written = System.currentTimeMillis();
+        dirty = false;
+        L.info("report of " + results.size() + " files written to " + output);
+    }
+
+    /**
+     * Entry point of the {@code watch} command.
+     *
+     * <pre>
+     * watch [--threads n] [--output file.xlsx|.csv|.xls] [--aggregate] [--encoding charset] [--cache dir]
+     *       [--quiet ms] [--interval s] dir...
+     * </pre>
+     *
+     * Files are taken after {@code --quiet} milliseconds without change
+     * (default 2000), the report is rewritten at most every {@code --interval}
+     * seconds (default 10).
+     *
+     * @param   args    the arguments following {@code watch}
+     * @throws  IOException             if the directories could not be watched or the report not be written
+     * @throws  InterruptedException    if interrupted
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args, "aggregate");
+        List<Path>  roots = new ArrayList<>();
+        for (String dir : arguments.getPositional()) {
+            Path root = Paths.get(dir);
+            if (!Files.isDirectory(root)) {
+                throw new IllegalArgumentException("not a directory: " + dir);
+            }
+            roots.add(root);
+        }
+        if (roots.isEmpty()) {
+            L.warn("no directories given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        File        output = new File(arguments.get("output",
+                new File(roots.get(0).toAbsolutePath().toFile(), "output.xlsx").getPath()));
+        String      cacheDir = arguments.get("cache", null);
+        ResultCache cache = cacheDir == null ? null : new ResultCache(Paths.get(cacheDir), 1024L * 1024L * 1024L);
+
+        FileAnalyzer analyzer = new FileAnalyzer(encoding, false, cache);
+        WatchRunner runner = new WatchRunner(analyzer, threads, output,
+                arguments.getInt("quiet", 2000), arguments.getInt("interval", 10) * 1000L, arguments.has("aggregate"));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        analyzer.setPool(pool);
+        Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            main.interrupt();
+            try {
+                main.join(10000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            runner.run(roots);
+        } catch (InterruptedException ex) {
+            L.info("stopped watching");
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
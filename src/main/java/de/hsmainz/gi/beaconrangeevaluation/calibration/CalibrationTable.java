@@ -0,0 +1,349 @@
+package de.hsmainz.gi.beaconrangeevaluation.calibration;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Log-distance path loss parameters per phone model and beacon
+ *
+ * <pre>
+ * rssi = txPower + offset - 10 * exponent * log10(distance)
+ * </pre>
+ *
+ * as fitted by the {@link Calibrator}, used to recompute the distance of
+ * measurements from their RSSI. Besides an entry for every beacon a phone
+ * logged there is one for the phone and all beacons, used for beacons
+ * without an entry of their own.
+ *
+ * Stored as a tab separated text file with a header line, one entry per line,
+ * {@code *} for the beacon of the entries of all beacons. Immutable once
+ * loaded, so one table can be shared by any number of threads.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class CalibrationTable {
+
+    /** uuid, major and minor of the entries for all beacons of a phone */
+    public static final String      ALL_BEACONS = "*";
+
+    /** parameters of free space path loss, for phones without an entry */
+    public static final Entry       FREE_SPACE = new Entry(0, 0.0, 2.0, Double.NaN, Double.NaN);
+
+    private static final String     HEADER = "manufacturer\tmodel\tuuid\tmajor\tminor\tn\toffset\texponent\trmse\tr2";
+
+    private final Map<Key, Entry>   entries;
+
+
+    /**
+     * Default Constructor for a CalibrationTable
+     *
+     * @param   entries the parameters of every phone and beacon
+     */
+    public CalibrationTable(Map<Key, Entry> entries) {
+        this.entries = new HashMap<>(entries);
+    }
+
+    /**
+     * Look up the parameters for a beacon logged by a phone.
+     *
+     * @param   model       the phone
+     * @param   identifier  the beacon
+     * @return  the parameters of the beacon, else the ones of all beacons of
+     *          the phone, {@code null} if the phone is unknown
+     */
+    public Entry get(BeaconLog.AndroidModel model, BeaconLogObject.Identifier identifier) {
+        String manufacturer = model != null ? model.getmManufacturer() : null;
+        String phone = model != null ? model.getmModel() : null;
+        Entry entry = entries.get(new Key(manufacturer, phone, identifier));
+        return entry != null ? entry : entries.get(new Key(manufacturer, phone, null));
+    }
+
+    /**
+     * Recompute the distance of all measurements of {@code series}.
+     *
+     * @param   model       the phone that logged {@code series}
+     * @param   identifier  the beacon of {@code series}
+     * @param   series      the measurements
+     * @param   distances   receives the distance of every measurement, at least {@code series.size()} long
+     * @return  {@code false} if there are no parameters for the phone, {@code distances} is untouched then
+     */
+    public boolean apply(BeaconLog.AndroidModel model, BeaconLogObject.Identifier identifier,
+            MeasurementSeries series, double[] distances) {
+        Entry entry = get(model, identifier);
+        if (entry == null) {
+            return false;
+        }
+        for (int i = 0; i < series.size(); i++) {
+            distances[i] = entry.distance(series.getRssi(i), series.getTxPower(i));
+        }
+        return true;
+    }
+
+    /**
+     * @return  number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return  all entries sorted by phone and beacon, the one for all beacons first
+     */
+    public List<Map.Entry<Key, Entry>> sorted() {
+        List<Map.Entry<Key, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        Collections.sort(sorted, (a, b) -> a.getKey().compareTo(b.getKey()));
+        return sorted;
+    }
+
+    /**
+     * Write the table to {@code file}.
+     *
+     * @param   file    the file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void save(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.newLine();
+            for (Map.Entry<Key, Entry> e : sorted()) {
+                Key     key = e.getKey();
+                Entry   entry = e.getValue();
+                BeaconLogObject.Identifier id = key.identifier;
+                out.write(field(key.manufacturer) + '\t' + field(key.model) + '\t'
+                    + (id != null ? field(id.getUuid()) + '\t' + field(id.getMajor()) + '\t' + field(id.getMinor())
+                        : ALL_BEACONS + '\t' + ALL_BEACONS + '\t' + ALL_BEACONS) + '\t'
+                    + entry.n + '\t' + entry.offset + '\t' + entry.exponent + '\t'
+                    + entry.rmse + '\t' + entry.rSquared);
+                out.newLine();
+            }
+        }
+    }
+
+    private static String field(String value) {
+        return value == null ? "" : value.replaceAll("[\t\r\n]", " ");
+    }
+
+    /**
+     * Read a table written by {@link #save(Path)}.
+     *
+     * @param   file    the file to read
+     * @return  the table
+     * @throws  IOException if the file could not be read or is not a calibration table
+     */
+    public static CalibrationTable load(Path file) throws IOException {
+        Map<Key, Entry> entries = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("not a calibration table: " + file);
+            }
+            int number = 1;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] f = line.split("\t", -1);
+                if (f.length != 10) {
+                    throw new IOException(file + ":" + number + ": expected 10 fields, got " + f.length);
+                }
+                try {
+                    BeaconLogObject.Identifier id = ALL_BEACONS.equals(f[2]) ? null
+                        : BeaconLogObject.Identifier.of(f[2], f[3], f[4]);
+                    entries.put(new Key(nullIfEmpty(f[0]), nullIfEmpty(f[1]), id),
+                        new Entry(Long.parseLong(f[5]), Double.parseDouble(f[6]), Double.parseDouble(f[7]),
+                            Double.parseDouble(f[8]), Double.parseDouble(f[9])));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(file + ":" + number + ": " + ex.getMessage(), ex);
+                }
+            }
+        }
+        return new CalibrationTable(entries);
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Phone model and beacon of an entry.
+     */
+    public static final class Key implements Comparable<Key> {
+
+        private final String                        manufacturer;
+        private final String                        model;
+        private final BeaconLogObject.Identifier    identifier;
+        private final int                           hash;
+
+        /**
+         * Default Constructor for a Key
+         *
+         * @param   manufacturer    the manufacturer of the phone
+         * @param   model           the model of the phone
+         * @param   identifier      the beacon, {@code null} for all beacons
+         */
+        public Key(String manufacturer, String model, BeaconLogObject.Identifier identifier) {
+            this.manufacturer = manufacturer;
+            this.model = model;
+            this.identifier = identifier;
+            this.hash = Objects.hash(manufacturer, model, identifier);
+        }
+
+        /**
+         * @return  the manufacturer of the phone
+         */
+        public String getManufacturer() {
+            return manufacturer;
+        }
+
+        /**
+         * @return  the model of the phone
+         */
+        public String getModel() {
+            return model;
+        }
+
+        /**
+         * @return  the beacon, {@code null} for all beacons
+         */
+        public BeaconLogObject.Identifier getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int c = compare(manufacturer, other.manufacturer);
+            if (c == 0) c = compare(model, other.model);
+            if (c == 0) {
+                if (identifier == null || other.identifier == null) {
+                    c = identifier == null ? (other.identifier == null ? 0 : -1) : 1;
+                } else {
+                    c = identifier.compareTo(other.identifier);
+                }
+            }
+            return c;
+        }
+
+        private static int compare(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash
+                && Objects.equals(manufacturer, key.manufacturer)
+                && Objects.equals(model, key.model)
+                && Objects.equals(identifier, key.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Fitted parameters of one phone model and beacon.
+     */
+    public static final class Entry {
+
+        private final long      n;
+        private final double    offset;
+        private final double    exponent;
+        private final double    rmse;
+        private final double    rSquared;
+        // 1 / (10 * exponent), distance() is called for every measurement
+        private final double    scale;
+
+        /**
+         * Default Constructor for an Entry
+         *
+         * @param   n           number of measurements fitted
+         * @param   offset      RSSI at one metre relative to the beacon's txPower in dB
+         * @param   exponent    the path loss exponent
+         * @param   rmse        standard deviation of the RSSI around the fit in dB
+         * @param   rSquared    coefficient of determination of the fit
+         */
+        public Entry(long n, double offset, double exponent, double rmse, double rSquared) {
+            if (!(exponent > 0)) {
+                throw new IllegalArgumentException("path loss exponent must be positive, got " + exponent);
+            }
+            this.n = n;
+            this.offset = offset;
+            this.exponent = exponent;
+            this.rmse = rmse;
+            this.rSquared = rSquared;
+            this.scale = 1.0 / (10.0 * exponent);
+        }
+
+        /**
+         * The distance at which the model expects {@code rssi}.
+         *
+         * @param   rssi    received signal strength in dBm
+         * @param   txPower calibrated RSSI of the beacon at one metre in dBm
+         * @return  the distance in metres
+         */
+        public double distance(double rssi, int txPower) {
+            return Math.pow(10.0, (txPower + offset - rssi) * scale);
+        }
+
+        /**
+         * @return  number of measurements fitted
+         */
+        public long getN() {
+            return n;
+        }
+
+        /**
+         * @return  RSSI at one metre relative to the beacon's txPower in dB
+         */
+        public double getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return  the path loss exponent
+         */
+        public double getExponent() {
+            return exponent;
+        }
+
+        /**
+         * @return  standard deviation of the RSSI around the fit in dB
+         */
+        public double getRmse() {
+            return rmse;
+        }
+
+        /**
+         * @return  coefficient of determination of the fit
+         */
+        public double getRSquared() {
+            return rSquared;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package de.hsmainz.gi.beaconrangeevaluation.calibration;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.stats.LinearRegression;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fits the log-distance path loss model of a {@link CalibrationTable} to the
+ * nominal distances of the logs.
+ *
+ * For every phone model and beacon, and for every phone model over all its
+ * beacons, {@code rssi - txPower} is regressed on {@code log10(distance)} by
+ * ordinary least squares: the intercept is the offset, the slope
+ * {@code -10 * exponent}. The measurements are streamed, per beacon of a log
+ * only count, mean and spread of the RSSI are kept, as all of them share the
+ * distance. Files are read concurrently, their fits merged in the order the
+ * files were given, so the table does not depend on the number of threads.
+ *
+ * The nominal distance of a beacon is its own if positive, else the one of
+ * the log.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Calibrator {
+
+    private static final Logger     L = Logger.getLogger(Calibrator.class);
+
+    private final Charset           encoding;
+    private final int               threads;
+    private final long              minSamples;
+
+
+    /**
+     * Default Constructor for a Calibrator
+     *
+     * @param   encoding    the charset to use when reading the files
+     * @param   threads     number of worker threads
+     * @param   minSamples  minimum number of measurements of an entry of the table
+     */
+    public Calibrator(Charset encoding, int threads, long minSamples) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one worker thread, got " + threads);
+        }
+        this.encoding = encoding;
+        this.threads = threads;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Fit the path loss model to all {@code files}.
+     *
+     * @param   files   the log files to fit
+     * @return  the table of every phone and beacon with enough measurements at
+     *          two or more distances
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public CalibrationTable fit(List<Path> files) throws InterruptedException {
+        ExecutorService                                         pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<Map<CalibrationTable.Key, LinearRegression>>> inFlight = new ArrayDeque<>();
+        Map<CalibrationTable.Key, LinearRegression>             total = new HashMap<>();
+        int                                                     next = 0;
+
+        try {
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < 2 * threads) {
+                    Path file = files.get(next++);
+                    inFlight.add(pool.submit(() -> fit(file)));
+                }
+                try {
+                    for (Map.Entry<CalibrationTable.Key, LinearRegression> e : inFlight.poll().get().entrySet()) {
+                        LinearRegression fit = total.get(e.getKey());
+                        if (fit == null) {
+                            total.put(e.getKey(), e.getValue());
+                        } else {
+                            fit.merge(e.getValue());
+                        }
+                    }
+                } catch (ExecutionException ex) {
+                    L.warn("failed to read file", ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<CalibrationTable.Key, CalibrationTable.Entry> entries = new HashMap<>();
+        for (Map.Entry<CalibrationTable.Key, LinearRegression> e : total.entrySet()) {
+            LinearRegression fit = e.getValue();
+            if (fit.getN() < minSamples || !fit.isDetermined() || !(fit.getSlope() < 0)) {
+                L.info("no calibration for " + describe(e.getKey()) + ": " + fit.getN() + " measurements"
+                    + (fit.isDetermined() ? ", slope " + fit.getSlope() : " at a single distance"));
+                continue;
+            }
+            entries.put(e.getKey(), new CalibrationTable.Entry(fit.getN(), fit.getIntercept(), -fit.getSlope() / 10.0,
+                fit.getResidualStandardDeviation(), fit.getRSquared()));
+        }
+        return new CalibrationTable(entries);
+    }
+
+    /**
+     * Fit the path loss model to a single file.
+     *
+     * @param   file    the log file to fit
+     * @return  the fit of every phone and beacon of the file
+     * @throws  IOException if the file could not be read
+     */
+    public Map<CalibrationTable.Key, LinearRegression> fit(Path file) throws IOException {
+        Fit fit = new Fit();
+        LogFiles.read(file, encoding, fit);
+        return fit.fits;
+    }
+
+    private static String describe(CalibrationTable.Key key) {
+        return key.getManufacturer() + " / " + key.getModel() + ", "
+            + (key.getIdentifier() != null ? key.getIdentifier().toString() : "all beacons");
+    }
+
+    /**
+     * Accumulates the RSSI of every beacon of a log, the distance of the log
+     * may come last.
+     */
+    private static class Fit implements BeaconLogHandler {
+
+        private final Map<CalibrationTable.Key, LinearRegression>   fits = new HashMap<>();
+        private final List<Beacon>                                  beacons = new ArrayList<>();
+        private BeaconLog.AndroidModel                              model;
+        private double                                              distance;
+        private Beacon                                              current;
+
+        @Override
+        public void model(BeaconLog.AndroidModel model) {
+            this.model = model;
+        }
+
+        @Override
+        public void distance(double distance) {
+            this.distance = distance;
+        }
+
+        @Override
+        public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+            current = new Beacon(beaconId, distance);
+            beacons.add(current);
+        }
+
+        @Override
+        public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+            double y = rssi - txPower;
+            if (Double.isNaN(y)) {
+                return;
+            }
+            current.n++;
+            double delta = y - current.mean;
+            current.mean += delta / current.n;
+            current.m2 += delta * (y - current.mean);
+        }
+
+        @Override
+        public void endLog() {
+            String manufacturer = model != null ? model.getmManufacturer() : null;
+            String phone = model != null ? model.getmModel() : null;
+            for (Beacon beacon : beacons) {
+                double d = beacon.distance > 0 ? beacon.distance : distance;
+                if (beacon.n == 0 || !(d > 0) || Double.isInfinite(d)) {
+                    continue;
+                }
+                double x = Math.log10(d);
+                add(new CalibrationTable.Key(manufacturer, phone, beacon.identifier), x, beacon);
+                add(new CalibrationTable.Key(manufacturer, phone, null), x, beacon);
+            }
+        }
+
+        private void add(CalibrationTable.Key key, double x, Beacon beacon) {
+            LinearRegression fit = fits.get(key);
+            if (fit == null) {
+                fit = new LinearRegression();
+                fits.put(key, fit);
+            }
+            fit.addBlock(x, beacon.n, beacon.mean, beacon.m2);
+        }
+    }
+
+    /**
+     * RSSI relative to txPower of one beacon of a log.
+     */
+    private static class Beacon {
+        final BeaconLogObject.Identifier    identifier;
+        final double                        distance;
+        long                                n;
+        double                              mean;
+        double                              m2;
+
+        Beacon(BeaconLogObject.Identifier identifier, double distance) {
+            this.identifier = identifier;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Entry point of the {@code calibrate} command.
+     *
+     * <pre>
+     * calibrate [--threads n] [--output table.tsv] [--min-samples n] [--encoding charset] file|dir|glob...
+     * </pre>
+     *
+     * Writes the {@link CalibrationTable} to {@code --output} (default
+     * {@code calibration.tsv} next to the first file), entries need at least
+     * {@code --min-samples} measurements (default 100). The table is applied
+     * with {@code batch --calibration table.tsv}.
+     *
+     * @param   args    the arguments following {@code calibrate}
+     * @throws  IOException             if the files could not be listed or the table not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args);
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        if (files.isEmpty()) {
+            L.warn("no log files given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        Path        output = Paths.get(arguments.get("output",
+                LogFiles.location(files.get(0)).toAbsolutePath().resolveSibling("calibration.tsv").toString()));
+
+        long start = System.currentTimeMillis();
+        CalibrationTable table = new Calibrator(encoding, threads, arguments.getInt("min-samples", 100)).fit(files);
+        table.save(output);
+        for (Map.Entry<CalibrationTable.Key, CalibrationTable.Entry> e : table.sorted()) {
+            if (e.getKey().getIdentifier() == null) {
+                CalibrationTable.Entry entry = e.getValue();
+                L.info(describe(e.getKey()) + ": offset " + entry.getOffset() + " dB, exponent " + entry.getExponent()
+                    + ", rmse " + entry.getRmse() + " dB over " + entry.getN() + " measurements");
+            }
+        }
+        L.info(table.size() + " entries from " + files.size() + " files on " + threads + " threads in "
+                + (System.currentTimeMillis() - start) + "ms written to " + output);
+    }
+}
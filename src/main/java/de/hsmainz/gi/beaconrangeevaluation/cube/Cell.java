@@ -0,0 +1,99 @@
+package de.hsmainz.gi.beaconrangeevaluation.cube;
+
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.io.Serializable;
+
+/**
+ * The mergeable accumulators of a cell of a {@link Cube}: RSSI, calculated
+ * distance and its error against the nominal distance of all measurements
+ * of the cell, and the number of logs they came from.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Cell implements Serializable {
+
+    private static final long           serialVersionUID = 1L;
+
+    /** compression of the quantile sketches, a cube holds many cells of few measurements each */
+    static final double                 COMPRESSION = 50.0;
+
+    private long                        logs;
+    private final StreamingStatistics   rssi = new StreamingStatistics(COMPRESSION);
+    private final StreamingStatistics   distance = new StreamingStatistics(COMPRESSION);
+    private final StreamingStatistics   error = new StreamingStatistics(COMPRESSION);
+
+
+    /**
+     * Add a measurement.
+     *
+     * @param   rssi            received signal strength indicator
+     * @param   calcDistance    calculated distance
+     * @param   nominal         the nominal distance, not positive if unknown
+     */
+    public void add(double rssi, double calcDistance, double nominal) {
+        this.rssi.addValue(rssi);
+        this.distance.addValue(calcDistance);
+        if (nominal > 0) {
+            this.error.addValue(calcDistance - nominal);
+        }
+    }
+
+    /**
+     * Add the error of a measurement whose nominal distance was not known when it was added.
+     *
+     * @param   error   calculated minus nominal distance
+     */
+    void addError(double error) {
+        this.error.addValue(error);
+    }
+
+    /**
+     * Count one more log.
+     */
+    void addLog() {
+        logs++;
+    }
+
+    /**
+     * Merge the accumulators of {@code other} into this cell.
+     *
+     * @param   other   the cell to merge, unchanged
+     * @return  this
+     */
+    public Cell merge(Cell other) {
+        logs += other.logs;
+        rssi.merge(other.rssi);
+        distance.merge(other.distance);
+        error.merge(other.error);
+        return this;
+    }
+
+    /**
+     * @return  number of logs contributing to the cell
+     */
+    public long getLogs() {
+        return logs;
+    }
+
+    /**
+     * @return  RSSI of the measurements
+     */
+    public StreamingStatistics getRssi() {
+        return rssi;
+    }
+
+    /**
+     * @return  calculated distances of the measurements
+     */
+    public StreamingStatistics getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return  calculated minus nominal distance of the measurements with a known nominal distance
+     */
+    public StreamingStatistics getError() {
+        return error;
+    }
+}
@@ -0,0 +1,584 @@
+package de.hsmainz.gi.beaconrangeevaluation.cube;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFilter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.query.LogQuery;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSink;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Pre-aggregated measurements of many logs by phone, beacon, nominal
+ * distance and sector of the averaged azimuth of the phone, see
+ * {@link Dimension}.
+ *
+ * Every cell holds the mergeable accumulators of a {@link Cell}. The cube is
+ * built in one pass over the logs, which are read concurrently and added in
+ * the order of the files, and saved to a single file. Roll-ups over any
+ * subset of the dimensions and slices by phone, beacon, distance and
+ * azimuth are answered from the cells alone, without reading a log again.
+ *
+ * The nominal distance of a beacon is its own if positive, else the one of
+ * the log. Azimuths are in degrees, the first sector starts at north; logs
+ * without an orientation get a cell of their own.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Cube implements Serializable {
+
+    private static final long                       serialVersionUID = 1L;
+
+    private static final Logger                     L = Logger.getLogger(Cube.class);
+
+    /** default number of azimuth sectors, 45 degrees each */
+    public static final int                         DEFAULT_SECTORS = 8;
+
+    /** sector of logs without an orientation */
+    public static final int                         NO_SECTOR = -1;
+
+    /** value of a dimension that was rolled up */
+    public static final int                         ALL = -2;
+
+    /** name of the sheet of a query */
+    public static final String                      SHEET = "Auswertung";
+
+    private static final int                        MAX_MEMBERS = 0xffff;
+
+    private static final String[]                   LABELS = {
+        "Hersteller", "Modell", "UUID", "Major", "Minor", "Distanz [m]", "Azimut von", "Azimut bis", "# Logs",
+        "# Messungen", "RSSI Mittelwert [dBm]", "RSSI Stdabw. [dBm]", "RSSI Median [dBm]", "Distanz Mittelwert [m]",
+        "Distanz Median [m]", "# mit Soll", "Fehler Mittelwert [m]", "Fehler Stdabw. [m]", "Fehler RMSE [m]",
+        "Fehler Median [m]", "Fehler 95%-Quantil [m]"
+    };
+
+    private final int                               sectors;
+    private final List<String[]>                    devices = new ArrayList<>();
+    private final Map<List<String>, Integer>        deviceIndex = new HashMap<>();
+    private final List<BeaconLogObject.Identifier>  beacons = new ArrayList<>();
+    private final Map<BeaconLogObject.Identifier, Integer> beaconIndex = new HashMap<>();
+    private final List<Double>                      distances = new ArrayList<>();
+    private final Map<Double, Integer>              distanceIndex = new HashMap<>();
+    private final Map<Long, Cell>                   cells = new HashMap<>();
+    private long                                    logs;
+
+
+    /**
+     * Default Constructor for an empty Cube
+     *
+     * @param   sectors number of equal azimuth sectors
+     */
+    public Cube(int sectors) {
+        if (sectors < 1 || sectors >= MAX_MEMBERS) {
+            throw new IllegalArgumentException("need 1 to " + (MAX_MEMBERS - 1) + " azimuth sectors, got " + sectors);
+        }
+        this.sectors = sectors;
+    }
+
+    /**
+     * Add all beacons of a log.
+     *
+     * @param   log     the accumulated log
+     */
+    public void add(CubeBuilder log) {
+        BeaconLog.AndroidModel  model = log.getModel();
+        int                     device = member(devices, deviceIndex, Arrays.asList(
+                                    model != null ? model.getmManufacturer() : null,
+                                    model != null ? model.getmModel() : null),
+                                    key -> key.toArray(new String[2]));
+        int                     sector = sector(log.getOrientation());
+        for (int b = 0; b < log.size(); b++) {
+            Cell cell = log.getCell(b);
+            if (cell.getRssi().getN() == 0) {
+                continue;
+            }
+            int beacon = member(beacons, beaconIndex, log.getIdentifier(b), id -> id);
+            int distance = member(distances, distanceIndex, log.getDistance(b), d -> d);
+            cell.addLog();
+            cells.merge(key(device, beacon, distance, sector), cell, Cell::merge);
+        }
+        logs++;
+    }
+
+    /**
+     * @return  the index of {@code key} in a dictionary of the members of a dimension, added if new
+     */
+    private static <K, V> int member(List<V> members, Map<K, Integer> index, K key, Function<K, V> value) {
+        Integer i = index.get(key);
+        if (i == null) {
+            if (members.size() == MAX_MEMBERS) {
+                throw new IllegalStateException("more than " + MAX_MEMBERS + " members of a dimension");
+            }
+            i = members.size();
+            members.add(value.apply(key));
+            index.put(key, i);
+        }
+        return i;
+    }
+
+    private static long key(int device, int beacon, int distance, int sector) {
+        return (long) device << 48 | (long) beacon << 32 | (long) distance << 16 | (sector + 1);
+    }
+
+    /**
+     * @param   orientation the averaged orientation of a phone, {@code null} if unknown
+     * @return  the number of its azimuth sector, {@link #NO_SECTOR} if unknown
+     */
+    public int sector(BeaconLog.Orientation orientation) {
+        if (orientation == null || Double.isNaN(orientation.getAzimuth()) || Double.isInfinite(orientation.getAzimuth())) {
+            return NO_SECTOR;
+        }
+        double azimuth = (orientation.getAzimuth() % 360 + 360) % 360;
+        return Math.min((int) (azimuth / (360.0 / sectors)), sectors - 1);
+    }
+
+    /**
+     * @return  number of azimuth sectors
+     */
+    public int getSectors() {
+        return sectors;
+    }
+
+    /**
+     * @return  number of logs added
+     */
+    public long getLogs() {
+        return logs;
+    }
+
+    /**
+     * @return  number of cells
+     */
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * Roll up the cube to the dimensions {@code by}, only counting the cells
+     * in the slice.
+     *
+     * @param   by              the dimensions to keep, all others are rolled up
+     * @param   slice           phones, beacons and distances to count, {@code null} for all; times are ignored
+     * @param   azimuthFrom     count sectors whose middle is at or after this azimuth in degrees, {@code NaN} for all
+     * @param   azimuthTo       and before this one, wrapping around north if smaller than {@code azimuthFrom}
+     * @return  the merged cells sorted by phone, beacon, distance and sector
+     */
+    public List<Row> query(Set<Dimension> by, LogFilter slice, double azimuthFrom, double azimuthTo) {
+        boolean[]       acceptedDevices = new boolean[devices.size()];
+        boolean[]       acceptedBeacons = new boolean[beacons.size()];
+        boolean[]       acceptedDistances = new boolean[distances.size()];
+        boolean[]       acceptedSectors = new boolean[sectors + 1];
+        for (int i = 0; i < devices.size(); i++) {
+            BeaconLog.AndroidModel model = new BeaconLog.AndroidModel();
+            model.setmManufacturer(devices.get(i)[0]);
+            model.setmModel(devices.get(i)[1]);
+            acceptedDevices[i] = slice == null || slice.acceptsModel(model);
+        }
+        for (int i = 0; i < beacons.size(); i++) {
+            acceptedBeacons[i] = slice == null || slice.acceptsBeacon(beacons.get(i));
+        }
+        for (int i = 0; i < distances.size(); i++) {
+            acceptedDistances[i] = slice == null || slice.acceptsDistance(distances.get(i));
+        }
+        acceptedSectors[0] = Double.isNaN(azimuthFrom);
+        for (int s = 0; s < sectors; s++) {
+            double middle = (s + 0.5) * 360.0 / sectors;
+            acceptedSectors[s + 1] = Double.isNaN(azimuthFrom)
+                || (azimuthFrom <= azimuthTo
+                    ? middle >= azimuthFrom && middle < azimuthTo
+                    : middle >= azimuthFrom || middle < azimuthTo);
+        }
+
+        Map<Long, Cell> groups = new HashMap<>();
+        for (Map.Entry<Long, Cell> e : cells.entrySet()) {
+            long    key = e.getKey();
+            int     device = (int) (key >>> 48);
+            int     beacon = (int) (key >>> 32) & 0xffff;
+            int     distance = (int) (key >>> 16) & 0xffff;
+            int     sector = (int) key & 0xffff;
+            if (!acceptedDevices[device] || !acceptedBeacons[beacon] || !acceptedDistances[distance]
+                    || !acceptedSectors[sector]) {
+                continue;
+            }
+            long group = key(
+                by.contains(Dimension.DEVICE) ? device : MAX_MEMBERS,
+                by.contains(Dimension.BEACON) ? beacon : MAX_MEMBERS,
+                by.contains(Dimension.DISTANCE) ? distance : MAX_MEMBERS,
+                by.contains(Dimension.AZIMUTH) ? sector - 1 : MAX_MEMBERS - 1);
+            groups.computeIfAbsent(group, k -> new Cell()).merge(e.getValue());
+        }
+
+        List<Row> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<Long, Cell> e : groups.entrySet()) {
+            long key = e.getKey();
+            rows.add(new Row(
+                rolledUp((int) (key >>> 48)),
+                rolledUp((int) (key >>> 32) & 0xffff),
+                rolledUp((int) (key >>> 16) & 0xffff),
+                ((int) key & 0xffff) == MAX_MEMBERS ? ALL : ((int) key & 0xffff) - 1,
+                e.getValue()));
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static int rolledUp(int index) {
+        return index == MAX_MEMBERS ? ALL : index;
+    }
+
+    /**
+     * Save the cube, the file is replaced atomically.
+     *
+     * @param   file    the file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "cube", ".tmp");
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeObject(this);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a saved cube.
+     *
+     * @param   file    the file to read
+     * @return  the cube
+     * @throws  IOException if the file could not be read or is no cube
+     */
+    public static Cube load(Path file) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return (Cube) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("not a cube: " + file, ex);
+        }
+    }
+
+    /**
+     * Build a cube of all {@code files}.
+     *
+     * @param   files           the log files
+     * @param   encoding        the charset to use when reading the files
+     * @param   threads         number of files read at once
+     * @param   sectors         number of azimuth sectors
+     * @param   filter          selects the logs, beacons and measurements to add, {@code null} for all
+     * @param   indexDirectory  the directory to keep the index files in, {@code null} to only use valid ones next to the logs
+     * @return  the cube
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static Cube build(List<Path> files, Charset encoding, int threads, int sectors, LogFilter filter,
+            Path indexDirectory) throws InterruptedException {
+        Cube                        cube = new Cube(sectors);
+        ExecutorService             readers = Executors.newFixedThreadPool(threads);
+        Deque<Future<CubeBuilder>>  inFlight = new ArrayDeque<>();
+        int                         next = 0;
+        try {
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < 2 * threads) {
+                    Path file = files.get(next++);
+                    inFlight.add(readers.submit(() -> {
+                        CubeBuilder builder = new CubeBuilder();
+                        if (filter == null) {
+                            LogFiles.read(file, encoding, builder);
+                        } else if (!LogFiles.read(file, encoding, builder, filter, indexDirectory)) {
+                            return null;
+                        }
+                        return builder;
+                    }));
+                }
+                try {
+                    CubeBuilder log = inFlight.poll().get();
+                    if (log != null) {
+                        cube.add(log);
+                    }
+                } catch (ExecutionException ex) {
+                    L.warn("failed to read file", ex.getCause());
+                }
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        return cube;
+    }
+
+    /**
+     * Write the result of a query.
+     *
+     * @param   rows    the rows of {@link #query(Set, LogFilter, double, double)}
+     * @param   sink    the {@link ReportSink} to write to, closed when done
+     * @throws  IOException if the report could not be written
+     */
+    public void write(List<Row> rows, ReportSink sink) throws IOException {
+        try {
+            sink.beginSheet(SHEET, 0);
+            sink.beginRow(0);
+            for (int c = 0; c < LABELS.length; c++) {
+                sink.text(c, LABELS[c]);
+            }
+            sink.endRow();
+            for (int r = 0; r < rows.size() && r + 1 < sink.getMaxRows(); r++) {
+                Row     row = rows.get(r);
+                Cell    cell = row.getCell();
+                sink.beginRow(r + 1);
+                if (row.device != ALL) {
+                    sink.text(0, row.getManufacturer());
+                    sink.text(1, row.getModel());
+                }
+                if (row.beacon != ALL) {
+                    sink.text(2, row.getIdentifier().getUuid());
+                    sink.text(3, row.getIdentifier().getMajor());
+                    sink.text(4, row.getIdentifier().getMinor());
+                }
+                if (row.distance != ALL) {
+                    sink.number(5, row.getDistance());
+                }
+                if (row.sector == NO_SECTOR) {
+                    sink.text(6, "ohne");
+                } else if (row.sector != ALL) {
+                    sink.number(6, row.getAzimuthFrom());
+                    sink.number(7, row.getAzimuthTo());
+                }
+                sink.integer(8, cell.getLogs());
+                sink.integer(9, cell.getRssi().getN());
+                sink.number(10, cell.getRssi().getMean());
+                sink.number(11, cell.getRssi().getStandardDeviation());
+                sink.number(12, cell.getRssi().getMedian());
+                sink.number(13, cell.getDistance().getMean());
+                sink.number(14, cell.getDistance().getMedian());
+                StreamingStatistics error = cell.getError();
+                long                n = error.getN();
+                sink.integer(15, n);
+                if (n > 0) {
+                    sink.number(16, error.getMean());
+                    sink.number(17, error.getStandardDeviation());
+                    sink.number(18, Math.sqrt(error.getMean() * error.getMean() + error.getVariance() * (n - 1) / n));
+                    sink.number(19, error.getMedian());
+                    sink.number(20, error.getPercentile(95));
+                }
+                sink.endRow();
+            }
+            if (rows.size() + 1 > sink.getMaxRows()) {
+                L.warn("only " + (sink.getMaxRows() - 1) + " of " + rows.size() + " rows fit on the sheet");
+            }
+            sink.endSheet();
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * A cell of a roll-up: the values of the dimensions kept and the merged accumulators.
+     */
+    public final class Row implements Comparable<Row> {
+
+        private final int   device;
+        private final int   beacon;
+        private final int   distance;
+        private final int   sector;
+        private final Cell  cell;
+
+        Row(int device, int beacon, int distance, int sector, Cell cell) {
+            this.device = device;
+            this.beacon = beacon;
+            this.distance = distance;
+            this.sector = sector;
+            this.cell = cell;
+        }
+
+        /**
+         * @return  the manufacturer of the phone, {@code null} if rolled up
+         */
+        public String getManufacturer() {
+            return device != ALL ? devices.get(device)[0] : null;
+        }
+
+        /**
+         * @return  the model of the phone, {@code null} if rolled up
+         */
+        public String getModel() {
+            return device != ALL ? devices.get(device)[1] : null;
+        }
+
+        /**
+         * @return  the beacon, {@code null} if rolled up
+         */
+        public BeaconLogObject.Identifier getIdentifier() {
+            return beacon != ALL ? beacons.get(beacon) : null;
+        }
+
+        /**
+         * @return  the nominal distance, {@code NaN} if rolled up
+         */
+        public double getDistance() {
+            return distance != ALL ? distances.get(distance) : Double.NaN;
+        }
+
+        /**
+         * @return  the azimuth sector, {@link #NO_SECTOR} for logs without orientation, {@link #ALL} if rolled up
+         */
+        public int getSector() {
+            return sector;
+        }
+
+        /**
+         * @return  the azimuth the sector starts at in degrees, {@code NaN} if none
+         */
+        public double getAzimuthFrom() {
+            return sector >= 0 ? sector * 360.0 / sectors : Double.NaN;
+        }
+
+        /**
+         * @return  the azimuth the sector ends before in degrees, {@code NaN} if none
+         */
+        public double getAzimuthTo() {
+            return sector >= 0 ? (sector + 1) * 360.0 / sectors : Double.NaN;
+        }
+
+        /**
+         * @return  the merged accumulators
+         */
+        public Cell getCell() {
+            return cell;
+        }
+
+        @Override
+        public int compareTo(Row other) {
+            int c = compare(getManufacturer(), other.getManufacturer());
+            if (c == 0) {
+                c = compare(getModel(), other.getModel());
+            }
+            if (c == 0 && beacon != ALL && other.beacon != ALL) {
+                c = getIdentifier().compareTo(other.getIdentifier());
+            }
+            if (c == 0) {
+                c = Double.compare(getDistance(), other.getDistance());
+            }
+            return c != 0 ? c : Integer.compare(sector, other.sector);
+        }
+
+        private int compare(String a, String b) {
+            if (Objects.equals(a, b)) {
+                return 0;
+            }
+            return a == null ? -1 : b == null ? 1 : a.compareTo(b);
+        }
+    }
+
+    /**
+     * Entry point of the {@code cube} command.
+     *
+     * <pre>
+     * cube build [--output file.cube] [--sectors n] [--threads n] [--encoding charset] [--index dir]
+     *            [query criteria...] file|dir|glob...
+     * cube query [--by device,beacon,distance,azimuth] [--azimuth from:to] [--output file.xlsx|.csv|.xls]
+     *            [query criteria...] file.cube
+     * </pre>
+     *
+     * {@code build} adds all logs matching the query criteria, see
+     * {@link LogQuery#parse(Arguments)}, into a cube of {@code --sectors}
+     * (default {@value #DEFAULT_SECTORS}) azimuth sectors, saved next to the
+     * first file by default. {@code query} rolls the cube up to the
+     * dimensions {@code --by}, default all, {@code none} for the grand total,
+     * counting only the phones, beacons and distances matching the query
+     * criteria and the sectors whose middle lies within {@code --azimuth}
+     * degrees. Time criteria cannot be applied to a cube.
+     *
+     * @param   args    the arguments following {@code cube}
+     * @throws  IOException             if the files could not be read or written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length == 0 || !"build".equals(args[0]) && !"query".equals(args[0])) {
+            throw new IllegalArgumentException("expected cube build or cube query");
+        }
+        Arguments   arguments = new Arguments(Arrays.copyOfRange(args, 1, args.length));
+        LogQuery    query = LogQuery.parse(arguments);
+
+        if ("build".equals(args[0])) {
+            List<Path> files = LogFiles.expand(arguments.getPositional());
+            if (files.isEmpty()) {
+                L.warn("no log files given");
+                return;
+            }
+            int     threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+            Charset encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+            Path    output = Paths.get(arguments.get("output",
+                    LogFiles.location(files.get(0)).toAbsolutePath().resolveSibling("beacons.cube").toString()));
+            String  indexDir = arguments.get("index", null);
+
+            long start = System.currentTimeMillis();
+            Cube cube = build(files, encoding, threads, arguments.getInt("sectors", DEFAULT_SECTORS), query,
+                indexDir == null ? null : Paths.get(indexDir));
+            cube.save(output);
+            L.info(cube.getLogs() + "/" + files.size() + " files in " + cube.size() + " cells on " + threads
+                + " threads in " + (System.currentTimeMillis() - start) + "ms, cube written to " + output);
+            return;
+        }
+
+        List<String> positional = arguments.getPositional();
+        if (positional.size() != 1) {
+            throw new IllegalArgumentException("expected exactly one cube file, got " + positional);
+        }
+        Path    file = Paths.get(positional.get(0));
+        File    output = new File(arguments.get("output",
+                file.toAbsolutePath().resolveSibling("rollup.xlsx").toString()));
+        double  azimuthFrom = Double.NaN;
+        double  azimuthTo = Double.NaN;
+        String  azimuth = arguments.get("azimuth", null);
+        if (azimuth != null) {
+            String[] range = azimuth.split(":");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("expected --azimuth from:to, got " + azimuth);
+            }
+            azimuthFrom = Double.parseDouble(range[0]);
+            azimuthTo = Double.parseDouble(range[1]);
+        }
+
+        long        start = System.currentTimeMillis();
+        Cube        cube = load(file);
+        long        loaded = System.currentTimeMillis();
+        List<Row>   rows = cube.query(Dimension.parse(arguments.get("by", "device,beacon,distance,azimuth")), query,
+                        azimuthFrom, azimuthTo);
+        long        answered = System.currentTimeMillis();
+        cube.write(rows, ReportSinks.open(output));
+        L.info(rows.size() + " rows of " + cube.size() + " cells, loaded in " + (loaded - start) + "ms, answered in "
+            + (answered - loaded) + "ms, written to " + output);
+    }
+}
@@ -0,0 +1,147 @@
+package de.hsmainz.gi.beaconrangeevaluation.cube;
+
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accumulates one log into the cells of its beacons, to be added to a
+ * {@link Cube} once the log ended.
+ *
+ * Orientation and distance of the log may come after its beacons, so the
+ * cells are only placed in the cube at the end. The calculated distances of
+ * a beacon without a nominal distance of its own are kept until then, as
+ * their error is only known with the distance of the log.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class CubeBuilder implements BeaconLogHandler {
+
+    private BeaconLog.AndroidModel                      model;
+    private BeaconLog.Orientation                       orientation;
+    private double                                      logDistance;
+    private final List<BeaconLogObject.Identifier>      identifiers = new ArrayList<>();
+    private final List<Double>                          distances = new ArrayList<>();
+    private final List<Cell>                            cells = new ArrayList<>();
+
+    // the beacon being read
+    private Cell                                        current;
+    private double                                      currentDistance;
+    private double[]                                    pending = new double[0];
+    private int                                         pendingSize;
+
+    // beacons without a nominal distance of their own and their calculated distances
+    private final List<Integer>                         pendingBeacons = new ArrayList<>();
+    private final List<double[]>                        pendingDistances = new ArrayList<>();
+
+
+    @Override
+    public void model(BeaconLog.AndroidModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public void averageOrientation(BeaconLog.Orientation orientation) {
+        this.orientation = orientation;
+    }
+
+    @Override
+    public void distance(double distance) {
+        this.logDistance = distance;
+    }
+
+    @Override
+    public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+        current = new Cell();
+        currentDistance = distance;
+        identifiers.add(beaconId);
+        distances.add(distance);
+        cells.add(current);
+    }
+
+    @Override
+    public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+        current.add(rssi, calcDistance, currentDistance);
+        if (!(currentDistance > 0)) {
+            if (pendingSize == pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(1024, 2 * pendingSize));
+            }
+            pending[pendingSize++] = calcDistance;
+        }
+    }
+
+    @Override
+    public void endBeacon() {
+        if (!(currentDistance > 0)) {
+            pendingBeacons.add(cells.size() - 1);
+            pendingDistances.add(Arrays.copyOf(pending, pendingSize));
+            pendingSize = 0;
+        }
+        current = null;
+    }
+
+    @Override
+    public void endLog() {
+        for (int i = 0; i < pendingBeacons.size(); i++) {
+            int b = pendingBeacons.get(i);
+            distances.set(b, logDistance);
+            if (logDistance > 0) {
+                for (double d : pendingDistances.get(i)) {
+                    cells.get(b).addError(d - logDistance);
+                }
+            }
+        }
+        pendingBeacons.clear();
+        pendingDistances.clear();
+        pending = new double[0];
+    }
+
+    /**
+     * @return  the phone of the log, {@code null} if it had none
+     */
+    public BeaconLog.AndroidModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return  the averaged orientation of the phone, {@code null} if it had none
+     */
+    public BeaconLog.Orientation getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * @return  number of beacons of the log
+     */
+    public int size() {
+        return cells.size();
+    }
+
+    /**
+     * @param   beacon  number of the beacon in the log
+     * @return  the beacon
+     */
+    public BeaconLogObject.Identifier getIdentifier(int beacon) {
+        return identifiers.get(beacon);
+    }
+
+    /**
+     * @param   beacon  number of the beacon in the log
+     * @return  the nominal distance of the beacon, its own if positive, else the one of the log
+     */
+    public double getDistance(int beacon) {
+        return distances.get(beacon);
+    }
+
+    /**
+     * @param   beacon  number of the beacon in the log
+     * @return  the accumulated measurements of the beacon
+     */
+    public Cell getCell(int beacon) {
+        return cells.get(beacon);
+    }
+}
@@ -0,0 +1,46 @@
+package de.hsmainz.gi.beaconrangeevaluation.cube;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * The dimensions of a {@link Cube}.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public enum Dimension {
+
+    /** manufacturer and model of the phone */
+    DEVICE,
+    /** the beacon */
+    BEACON,
+    /** the nominal distance */
+    DISTANCE,
+    /** the sector of the averaged azimuth of the phone */
+    AZIMUTH;
+
+
+    /**
+     * Parse a comma separated list of dimensions, e.g. {@code device,azimuth}.
+     *
+     * @param   spec    the names of the dimensions, case insensitive, empty or {@code none} for none
+     * @return  the dimensions
+     * @throws  IllegalArgumentException if a name is unknown
+     */
+    public static EnumSet<Dimension> parse(String spec) {
+        EnumSet<Dimension> dimensions = EnumSet.noneOf(Dimension.class);
+        for (String name : spec.split(",")) {
+            name = name.trim();
+            if (name.isEmpty() || name.equalsIgnoreCase("none")) {
+                continue;
+            }
+            try {
+                dimensions.add(valueOf(name.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("unknown dimension " + name + ", expected one of "
+                    + EnumSet.allOf(Dimension.class).toString().toLowerCase(Locale.ROOT));
+            }
+        }
+        return dimensions;
+    }
+}
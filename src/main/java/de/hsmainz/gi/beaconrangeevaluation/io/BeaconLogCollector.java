@@ -0,0 +1,66 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+import java.util.ArrayList;
+
+/**
+ * {@link BeaconLogHandler} that materialises everything it gets into a
+ * complete {@link BeaconLog}, just like {@code gson.fromJson(json, BeaconLog.class)} did.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class BeaconLogCollector implements BeaconLogHandler {
+
+    private final BeaconLog     beaconLog = new BeaconLog();
+    private BeaconLogObject     current;
+
+
+    /**
+     * Default Constructor for a BeaconLogCollector
+     */
+    public BeaconLogCollector() {
+        beaconLog.setLoggedBeacons(new ArrayList<>());
+    }
+
+    @Override
+    public void model(BeaconLog.AndroidModel model) {
+        beaconLog.setModel(model);
+    }
+
+    @Override
+    public void averageOrientation(BeaconLog.Orientation orientation) {
+        beaconLog.setAverageOrientation(orientation);
+    }
+
+    @Override
+    public void distance(double distance) {
+        beaconLog.setDistance(distance);
+    }
+
+    @Override
+    public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+        current = new BeaconLogObject(beaconId, distance);
+        beaconLog.getLoggedBeacons().add(current);
+    }
+
+    @Override
+    public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+        current.addMeasurement(timestamp, rssi, txPower, calcDistance);
+    }
+
+    @Override
+    public void endBeacon() {
+        current = null;
+    }
+
+    /**
+     * Getter for the collected {@link BeaconLog}
+     *
+     * @return  the {@link BeaconLog} read so far
+     */
+    public BeaconLog getBeaconLog() {
+        return beaconLog;
+    }
+}
@@ -0,0 +1,169 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+
+import java.io.IOException;
+
+/**
+ * {@link Gson} configured for the {@link BeaconLog} file format.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class BeaconLogGson {
+
+    private BeaconLogGson() {}
+
+    /**
+     * @return  a {@link Gson} instance able to (de-)serialize {@link BeaconLog}s
+     */
+    public static Gson create() {
+        return builder().create();
+    }
+
+    /**
+     * @return  a {@link GsonBuilder} with all type adapters for {@link BeaconLog}s registered
+     */
+    public static GsonBuilder builder() {
+        return new GsonBuilder()
+            .registerTypeAdapter(MeasurementSeries.class, new MeasurementSeriesAdapter())
+            .registerTypeAdapter(BeaconLogObject.Identifier.class, new IdentifierAdapter());
+    }
+
+    /**
+     * Reads a {@code beaconId} object into the shared
+     * {@link BeaconLogObject.Identifier} and writes it back as strings.
+     */
+    static class IdentifierAdapter extends TypeAdapter<BeaconLogObject.Identifier> {
+
+        @Override
+        public void write(JsonWriter out, BeaconLogObject.Identifier id) throws IOException {
+            if (id == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("uuid").value(id.getUuid());
+            out.name("major").value(id.getMajor());
+            out.name("minor").value(id.getMinor());
+            out.endObject();
+        }
+
+        @Override
+        public BeaconLogObject.Identifier read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String uuid = null;
+            String major = null;
+            String minor = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "uuid":    uuid = in.nextString();     break;
+                    case "major":   major = in.nextString();    break;
+                    case "minor":   minor = in.nextString();    break;
+                    default:        in.skipValue();
+                }
+            }
+            in.endObject();
+            return BeaconLogObject.Identifier.of(uuid, major, minor);
+        }
+    }
+
+    /**
+     * Reads a {@code measurements[]} array straight into the columns of a
+     * {@link MeasurementSeries} and writes it back in the same format.
+     */
+    static class MeasurementSeriesAdapter extends TypeAdapter<MeasurementSeries> {
+
+        @Override
+        public void write(JsonWriter out, MeasurementSeries series) throws IOException {
+            if (series == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (int i = 0; i < series.size(); i++) {
+                out.beginObject();
+                out.name("timestamp").value(series.getTimestamp(i));
+                out.name("rssi").value(series.getRssi(i));
+                out.name("txPower").value(series.getTxPower(i));
+                out.name("calcDistance").value(series.getCalcDistance(i));
+                out.endObject();
+            }
+            out.endArray();
+        }
+
+        @Override
+        public MeasurementSeries read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            MeasurementSeries   series = new MeasurementSeries();
+            MeasurementSink     sink = series::add;
+            in.beginArray();
+            while (in.hasNext()) {
+                readMeasurement(in, sink);
+            }
+            in.endArray();
+            return series;
+        }
+    }
+
+    /**
+     * Receives the values of one measurement, {@link MeasurementSeries#add(long, double, int, double)}
+     * and {@link BeaconLogHandler#measurement(long, double, int, double)} both fit.
+     */
+    interface MeasurementSink {
+
+        void measurement(long timestamp, double rssi, int txPower, double calcDistance);
+    }
+
+    /**
+     * Read one {@code measurements[]} element and hand its values to {@code sink}.
+     *
+     * @param   in      the reader positioned at the element
+     * @param   sink    the {@link MeasurementSink} to hand the values to
+     * @throws  IOException if the element could not be read
+     */
+    static void readMeasurement(JsonReader in, MeasurementSink sink) throws IOException {
+        long    timestamp = 0L;
+        double  rssi = 0.0;
+        int     txPower = 0;
+        double  calcDistance = 0.0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "timestamp":       timestamp = in.nextLong();        break;
+                case "rssi":            rssi = in.nextDouble();           break;
+                case "txPower":         txPower = in.nextInt();           break;
+                case "calcDistance":    calcDistance = in.nextDouble();   break;
+                default:                in.skipValue();
+            }
+        }
+        in.endObject();
+        sink.measurement(timestamp, rssi, txPower, calcDistance);
+    }
+}
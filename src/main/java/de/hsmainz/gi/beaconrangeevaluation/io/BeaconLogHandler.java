@@ -0,0 +1,66 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+/**
+ * Callback for the {@link BeaconLogReader}.
+ *
+ * Every part of a {@link BeaconLog} is handed over in the order it appears in
+ * the file. Measurements are passed as primitives, so nothing has to be
+ * materialised unless the handler wants to keep it.
+ * All methods default to doing nothing, implement the ones you need.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public interface BeaconLogHandler {
+
+    /**
+     * Called once the {@link BeaconLog.AndroidModel} of the logging phone has been read.
+     *
+     * @param   model   details of the mobile phone
+     */
+    default void model(BeaconLog.AndroidModel model) {}
+
+    /**
+     * Called once the {@link BeaconLog.Orientation} of the logging phone has been read.
+     *
+     * @param   orientation     the average orientation while logging
+     */
+    default void averageOrientation(BeaconLog.Orientation orientation) {}
+
+    /**
+     * Called once the nominal distance of the whole log has been read.
+     *
+     * @param   distance    the nominal distance of this log
+     */
+    default void distance(double distance) {}
+
+    /**
+     * Called before the first {@link #measurement(long, double, int, double)} of a beacon.
+     *
+     * @param   beaconId    the beacon the following measurements belong to
+     * @param   distance    the nominal distance of the beacon
+     */
+    default void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {}
+
+    /**
+     * Called for every {@link BeaconLogObject.Measurement} of the current beacon.
+     *
+     * @param   timestamp       timestamp of the Measurement
+     * @param   rssi            received signal strength indicator
+     * @param   txPower         transmit power
+     * @param   calcDistance    calculated distance
+     */
+    default void measurement(long timestamp, double rssi, int txPower, double calcDistance) {}
+
+    /**
+     * Called after the last measurement of the current beacon.
+     */
+    default void endBeacon() {}
+
+    /**
+     * Called when the whole log has been read.
+     */
+    default void endLog() {}
+}
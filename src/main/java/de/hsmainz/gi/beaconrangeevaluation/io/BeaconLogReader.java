@@ -0,0 +1,240 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streaming reader for {@link BeaconLog} files.
+ *
+ * Instead of reading the whole file into a {@link String} and building the
+ * complete object graph with {@link Gson#fromJson(String, Class)} the file is
+ * walked token by token with a {@link JsonReader}. {@code model},
+ * {@code loggedBeacons[]} and every {@code measurements[]} array are handed to
+ * a {@link BeaconLogHandler} as soon as they are read, so the memory needed
+ * does not depend on the size of the file. A {@link LogFilter} is pushed down
+ * into the parsing: all beacons of a rejected phone and the measurements of
+ * rejected beacons are skipped token by token without building any values,
+ * rejected measurements are not handed on.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class BeaconLogReader {
+
+    private static final Gson       gson = BeaconLogGson.create();
+
+    private final BeaconLogHandler  handler;
+    private final LogFilter         filter;
+
+
+    /**
+     * Default Constructor for a BeaconLogReader
+     *
+     * @param   handler     the {@link BeaconLogHandler} to hand everything read to
+     */
+    public BeaconLogReader(BeaconLogHandler handler) {
+        this(handler, LogFilter.ALL);
+    }
+
+    /**
+     * Constructor for a BeaconLogReader only handing on what {@code filter} accepts
+     *
+     * @param   handler     the {@link BeaconLogHandler} to hand everything read to
+     * @param   filter      the {@link LogFilter} to push down
+     */
+    public BeaconLogReader(BeaconLogHandler handler, LogFilter filter) {
+        this.handler = handler;
+        this.filter = filter;
+    }
+
+    /**
+     * Read the file specified by {@code path}.
+     *
+     * @param   path        the path to the file to read
+     * @param   encoding    the charset to use when reading the file
+     * @return  whether the filter accepted phone and distance of the log
+     * @throws  IOException if the file could not be read
+     */
+    public boolean read(Path path, Charset encoding) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(path, encoding)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a {@link BeaconLog} from {@code in}. The reader is not closed.
+     *
+     * The nominal distance is only known at the end of a log, the handler
+     * may thus get the beacons of a log the filter rejects after all.
+     *
+     * @param   in  the reader to read from
+     * @return  whether the filter accepted phone and distance of the log
+     * @throws  IOException if the content could not be read or is no {@link BeaconLog}
+     */
+    public boolean read(Reader in) throws IOException {
+        JsonReader  reader = new JsonReader(in);
+        boolean     modelAccepted = filter.acceptsModel(null);
+        double      distance = 0.0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "model":
+                    BeaconLog.AndroidModel model = gson.fromJson(reader, BeaconLog.AndroidModel.class);
+                    modelAccepted = filter.acceptsModel(model);
+                    handler.model(model);
+                    break;
+                case "averageOrientation":
+                    handler.averageOrientation(gson.<BeaconLog.Orientation>fromJson(reader, BeaconLog.Orientation.class));
+                    break;
+                case "distance":
+                    distance = reader.nextDouble();
+                    handler.distance(distance);
+                    break;
+                case "loggedBeacons":
+                    if (!modelAccepted) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readBeacon(reader);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        handler.endLog();
+        return modelAccepted && filter.acceptsDistance(distance);
+    }
+
+    /**
+     * Read a bare {@code measurements} array from {@code in} and hand every
+     * measurement to the handler, nothing else is called. Used to parse the
+     * byte range of a single beacon found through a {@link LogIndex}.
+     *
+     * @param   in  the reader positioned at the opening bracket, not closed
+     * @throws  IOException if the content could not be read or is no array of measurements
+     */
+    void readMeasurements(Reader in) throws IOException {
+        JsonReader                      reader = new JsonReader(in);
+        BeaconLogGson.MeasurementSink   sink = accepted(handler::measurement);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            BeaconLogGson.readMeasurement(reader, sink);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Read one {@link BeaconLogObject}. Measurements are only buffered if the
+     * {@code beaconId} follows the {@code measurements} in the file, which
+     * never happens for files written by the logger. Beacons the filter
+     * rejects are not handed on at all.
+     */
+    private void readBeacon(JsonReader reader) throws IOException {
+        BeaconLogObject.Identifier          beaconId = null;
+        double                              distance = 0.0;
+        boolean                             begun = false;
+        boolean                             skipped = false;
+        MeasurementSeries                   pending = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "beaconId":
+                    beaconId = gson.fromJson(reader, BeaconLogObject.Identifier.class);
+                    break;
+                case "distance":
+                    distance = reader.nextDouble();
+                    break;
+                case "measurements":
+                    if (beaconId != null && !begun && !skipped) {
+                        skipped = !filter.acceptsBeacon(beaconId);
+                        if (!skipped) {
+                            handler.beginBeacon(beaconId, distance);
+                            begun = true;
+                        }
+                    }
+                    if (skipped) {
+                        reader.skipValue();
+                        break;
+                    } else if (!begun && pending == null) {
+                        pending = new MeasurementSeries();
+                    }
+                    // measurements go to pending until the beacon is known
+                    BeaconLogGson.MeasurementSink sink = accepted(begun ? handler::measurement : pending::add);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        BeaconLogGson.readMeasurement(reader, sink);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (skipped || !begun && !filter.acceptsBeacon(beaconId)) {
+            return;
+        }
+        if (!begun) {
+            handler.beginBeacon(beaconId, distance);
+            if (pending != null) {
+                for (int i = 0; i < pending.size(); i++) {
+                    handler.measurement(pending.getTimestamp(i), pending.getRssi(i), pending.getTxPower(i), pending.getCalcDistance(i));
+                }
+            }
+        }
+        handler.endBeacon();
+    }
+
+    /**
+     * @return  a {@link BeaconLogGson.MeasurementSink} handing the measurements
+     *          the filter accepts on to {@code sink}
+     */
+    private BeaconLogGson.MeasurementSink accepted(BeaconLogGson.MeasurementSink sink) {
+        return (timestamp, rssi, txPower, calcDistance) -> {
+            if (filter.acceptsTimestamp(timestamp)) {
+                sink.measurement(timestamp, rssi, txPower, calcDistance);
+            }
+        };
+    }
+
+    /**
+     * Read the whole {@link BeaconLog} specified by {@code path} into memory.
+     *
+     * @param   path        the path to the file to read
+     * @param   encoding    the charset to use when reading the file
+     * @return  the {@link BeaconLog} stored in the file
+     * @throws  IOException if the file could not be read
+     */
+    public static BeaconLog readBeaconLog(Path path, Charset encoding) throws IOException {
+        BeaconLogCollector collector = new BeaconLogCollector();
+        new BeaconLogReader(collector).read(path, encoding);
+        return collector.getBeaconLog();
+    }
+}
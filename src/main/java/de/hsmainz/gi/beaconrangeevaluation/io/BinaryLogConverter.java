@@ -0,0 +1,79 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Converts JSON logs to binary logs, see {@link BinaryLogFormat}.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class BinaryLogConverter {
+
+    private static final Logger L = Logger.getLogger(BinaryLogConverter.class);
+
+    private BinaryLogConverter() {}
+
+    /**
+     * @param   json    a JSON log
+     * @param   dir     the directory to put the binary log into, {@code null} for the one of {@code json}
+     * @return  the path of the binary log for {@code json}, logs in an archive
+     *          get theirs next to the archive unless {@code dir} is given
+     */
+    public static Path target(Path json, Path dir) {
+        String name = json.getFileName().toString();
+        if (name.endsWith(".gz") || name.endsWith(".zst")) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        int dot = name.lastIndexOf('.');
+        name = (dot > 0 ? name.substring(0, dot) : name) + BinaryLogFormat.EXTENSION;
+        return (dir != null ? dir : LogFiles.location(json).toAbsolutePath().getParent()).resolve(name);
+    }
+
+    /**
+     * Entry point of the {@code convert} command.
+     *
+     * <pre>
+     * convert [--output dir] [--encoding charset] file|dir|glob...
+     * </pre>
+     *
+     * Binary logs given among the files are skipped.
+     *
+     * @param   args    the arguments following {@code convert}
+     * @throws  IOException if the files could not be listed or the output directory not be created
+     */
+    public static void main(String... args) throws IOException {
+        Arguments   arguments = new Arguments(args);
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        String      output = arguments.get("output", null);
+        Path        dir = output != null ? Paths.get(output) : null;
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+
+        int converted = 0;
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(BinaryLogFormat.EXTENSION)) {
+                continue;
+            }
+            Path target = target(file, dir);
+            try {
+                BinaryLogWriter.convert(file, encoding, target);
+                converted++;
+                L.debug(file + " -> " + target);
+            } catch (IOException | RuntimeException ex) {
+                L.warn("could not convert " + file, ex);
+                Files.deleteIfExists(target);
+            }
+        }
+        L.info(converted + " files converted");
+    }
+}
@@ -0,0 +1,82 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and helpers of the binary {@link de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog} container.
+ *
+ * All numbers are little endian, everything that is mapped later is aligned
+ * to 8 bytes.
+ * <pre>
+ * preamble     int magic "BLOG", int version, long header offset
+ * block*       one per beacon:
+ *                  string uuid, string major, string minor, double distance,
+ *                  int count, padding to 8 bytes,
+ *                  long[count] timestamp, double[count] rssi,
+ *                  double[count] calcDistance, int[count] txPower,
+ *                  padding to 8 bytes
+ * header       string manufacturer, string model, string buildNumber, string version,
+ *              byte hasOrientation, double azimuth, double pitch, double roll,
+ *              double distance, int beacon count, long[beacon count] block offsets
+ * </pre>
+ * Strings are an int byte length ({@code -1} for {@code null}) followed by UTF-8.
+ * The header is written last as the nominal distance and orientation only
+ * become known at the end of a log, the preamble points to it.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class BinaryLogFormat {
+
+    /** "BLOG" */
+    public static final int         MAGIC = 0x474f4c42;
+    public static final int         VERSION = 1;
+    public static final int         PREAMBLE_SIZE = 16;
+
+    /** file extension of binary logs */
+    public static final String      EXTENSION = ".blog";
+
+    public static final ByteOrder   ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** bytes per measurement in a block */
+    public static final int         MEASUREMENT_SIZE = 8 + 8 + 8 + 4;
+
+    private BinaryLogFormat() {}
+
+    /**
+     * @param   value   the string to encode, may be {@code null}
+     * @return  the number of bytes {@link #putString(ByteBuffer, String)} needs
+     */
+    static int stringSize(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,227 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link BeaconLogHandler} writing everything it gets to a binary log as
+ * described in {@link BinaryLogFormat}.
+ *
+ * Only the measurements of the current beacon are buffered, the block is
+ * written as soon as the beacon ends.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class BinaryLogWriter implements BeaconLogHandler, Closeable {
+
+    private final FileChannel               channel;
+    private final MeasurementSeries         series = new MeasurementSeries(1024);
+
+    private BeaconLog.AndroidModel          model;
+    private BeaconLog.Orientation           orientation;
+    private double                          distance;
+
+    private BeaconLogObject.Identifier      beaconId;
+    private double                          beaconDistance;
+    private long[]                          blocks = new long[16];
+    private int                             beacons;
+    private long                            position = BinaryLogFormat.PREAMBLE_SIZE;
+    private boolean                         finished;
+
+
+    /**
+     * Default Constructor for a BinaryLogWriter
+     *
+     * @param   output  the file to write, replaced if it exists
+     * @throws  IOException if the file could not be created
+     */
+    public BinaryLogWriter(Path output) throws IOException {
+        this.channel = FileChannel.open(output,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void model(BeaconLog.AndroidModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public void averageOrientation(BeaconLog.Orientation orientation) {
+        this.orientation = orientation;
+    }
+
+    @Override
+    public void distance(double distance) {
+        this.distance = distance;
+    }
+
+    @Override
+    public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+        this.beaconId = beaconId;
+        this.beaconDistance = distance;
+        series.clear();
+    }
+
+    @Override
+    public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+        series.add(timestamp, rssi, txPower, calcDistance);
+    }
+
+    @Override
+    public void endBeacon() {
+        try {
+            writeBlock();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void endLog() {
+        try {
+            writeHeader();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        String uuid = beaconId == null ? null : beaconId.getUuid();
+        String major = beaconId == null ? null : beaconId.getMajor();
+        String minor = beaconId == null ? null : beaconId.getMinor();
+        int n = series.size();
+        if ((long) n * BinaryLogFormat.MEASUREMENT_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("beacon " + beaconId + " has " + n
+                + " measurements, more than a block of a binary log can map");
+        }
+
+        int head = BinaryLogFormat.align(BinaryLogFormat.stringSize(uuid) + BinaryLogFormat.stringSize(major)
+            + BinaryLogFormat.stringSize(minor) + 8 + 4);
+        ByteBuffer buffer = ByteBuffer.allocate(head).order(BinaryLogFormat.ORDER);
+        BinaryLogFormat.putString(buffer, uuid);
+        BinaryLogFormat.putString(buffer, major);
+        BinaryLogFormat.putString(buffer, minor);
+        buffer.putDouble(beaconDistance);
+        buffer.putInt(n);
+        buffer.position(0);
+
+        if (beacons == blocks.length) {
+            blocks = Arrays.copyOf(blocks, beacons << 1);
+        }
+        blocks[beacons++] = position;
+        write(buffer);
+
+        // columns, written in chunks so the buffer stays small
+        ByteBuffer chunk = ByteBuffer.allocate(8 * 8192).order(BinaryLogFormat.ORDER);
+        for (int i = 0; i < n; i++) {
+            ensure(chunk, 8).putLong(series.getTimestamp(i));
+        }
+        for (int i = 0; i < n; i++) {
+            ensure(chunk, 8).putDouble(series.getRssi(i));
+        }
+        for (int i = 0; i < n; i++) {
+            ensure(chunk, 8).putDouble(series.getCalcDistance(i));
+        }
+        for (int i = 0; i < n; i++) {
+            ensure(chunk, 4).putInt(series.getTxPower(i));
+        }
+        // padding to 8 bytes
+        while ((position + chunk.position()) % 8 != 0) {
+            ensure(chunk, 1).put((byte) 0);
+        }
+        flip(chunk);
+        series.clear();
+        beaconId = null;
+    }
+
+    private ByteBuffer ensure(ByteBuffer chunk, int bytes) throws IOException {
+        if (chunk.remaining() < bytes) {
+            flip(chunk);
+        }
+        return chunk;
+    }
+
+    private void flip(ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        write(chunk);
+        chunk.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        BeaconLog.AndroidModel m = model != null ? model : new BeaconLog.AndroidModel();
+        int size = BinaryLogFormat.stringSize(m.getmManufacturer()) + BinaryLogFormat.stringSize(m.getmModel())
+            + BinaryLogFormat.stringSize(m.getmBuildNumber()) + BinaryLogFormat.stringSize(m.getmVersion())
+            + 1 + 3 * 8 + 8 + 4 + 8 * beacons;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(BinaryLogFormat.ORDER);
+        BinaryLogFormat.putString(buffer, m.getmManufacturer());
+        BinaryLogFormat.putString(buffer, m.getmModel());
+        BinaryLogFormat.putString(buffer, m.getmBuildNumber());
+        BinaryLogFormat.putString(buffer, m.getmVersion());
+        buffer.put((byte) (orientation != null ? 1 : 0));
+        buffer.putDouble(orientation != null ? orientation.getAzimuth() : 0.0);
+        buffer.putDouble(orientation != null ? orientation.getPitch() : 0.0);
+        buffer.putDouble(orientation != null ? orientation.getRoll() : 0.0);
+        buffer.putDouble(distance);
+        buffer.putInt(beacons);
+        for (int i = 0; i < beacons; i++) {
+            buffer.putLong(blocks[i]);
+        }
+        buffer.flip();
+
+        long header = position;
+        write(buffer);
+
+        ByteBuffer preamble = ByteBuffer.allocate(BinaryLogFormat.PREAMBLE_SIZE).order(BinaryLogFormat.ORDER);
+        preamble.putInt(BinaryLogFormat.MAGIC).putInt(BinaryLogFormat.VERSION).putLong(header).flip();
+        while (preamble.hasRemaining()) {
+            channel.write(preamble, preamble.position());
+        }
+        finished = true;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws  IOException if the file could not be closed or the log was not complete
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (!finished) {
+            throw new IOException("binary log closed before the end of the log was reached");
+        }
+    }
+
+    /**
+     * Convert the JSON log {@code json} to the binary log {@code output}.
+     *
+     * @param   json        the JSON log to read
+     * @param   encoding    the charset of the JSON log
+     * @param   output      the binary log to write
+     * @throws  IOException if either file could not be read or written
+     */
+    public static void convert(Path json, Charset encoding, Path output) throws IOException {
+        try (BinaryLogWriter writer = new BinaryLogWriter(output)) {
+            LogFiles.read(json, encoding, writer);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import com.google.gson.stream.JsonWriter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * {@link BeaconLogHandler} writing everything it gets as a JSON log, the
+ * same format the phones write and {@link BeaconLogReader} reads.
+ *
+ * Nothing but the orientation and distance of the log is buffered, so logs
+ * of any size can be written. Averaged orientation and distance are written
+ * after the beacons, as that is where they arrive.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class JsonLogWriter implements BeaconLogHandler, Closeable, Flushable {
+
+    private final JsonWriter                out;
+    private BeaconLog.Orientation           orientation;
+    private Double                          distance;
+    private boolean                         begun;
+    private boolean                         beacons;
+
+
+    /**
+     * Default Constructor for a JsonLogWriter
+     *
+     * @param   writer  the writer to write the log to, closed with this
+     */
+    public JsonLogWriter(Writer writer) {
+        this.out = new JsonWriter(writer);
+    }
+
+    @Override
+    public void model(BeaconLog.AndroidModel model) {
+        try {
+            begin();
+            out.name("model").beginObject();
+            out.name("mManufacturer").value(model.getmManufacturer());
+            out.name("mModel").value(model.getmModel());
+            out.name("mBuildNumber").value(model.getmBuildNumber());
+            out.name("mVersion").value(model.getmVersion());
+            out.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void averageOrientation(BeaconLog.Orientation orientation) {
+        this.orientation = orientation;
+    }
+
+    @Override
+    public void distance(double distance) {
+        this.distance = distance;
+    }
+
+    @Override
+    public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+        try {
+            begin();
+            if (!beacons) {
+                out.name("loggedBeacons").beginArray();
+                beacons = true;
+            }
+            out.beginObject();
+            out.name("beaconId").beginObject();
+            out.name("uuid").value(beaconId.getUuid());
+            out.name("major").value(beaconId.getMajor());
+            out.name("minor").value(beaconId.getMinor());
+            out.endObject();
+            out.name("distance").value(distance);
+            out.name("measurements").beginArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+        try {
+            out.beginObject();
+            out.name("timestamp").value(timestamp);
+            out.name("rssi").value(rssi);
+            out.name("txPower").value(txPower);
+            out.name("calcDistance").value(calcDistance);
+            out.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void endBeacon() {
+        try {
+            out.endArray();
+            out.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void endLog() {
+        try {
+            begin();
+            if (!beacons) {
+                out.name("loggedBeacons").beginArray();
+            }
+            out.endArray();
+            if (orientation != null) {
+                out.name("averageOrientation").beginObject();
+                out.name("azimuth").value(orientation.getAzimuth());
+                out.name("pitch").value(orientation.getPitch());
+                out.name("roll").value(orientation.getRoll());
+                out.endObject();
+            }
+            if (distance != null) {
+                out.name("distance").value(distance);
+            }
+            out.endObject();
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void begin() throws IOException {
+        if (!begun) {
+            out.beginObject();
+            begun = true;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,269 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+
+/**
+ * Read-only view of a JSON log that only parses the beacons asked for.
+ *
+ * Identifiers, distances and everything else outside the measurements come
+ * from the {@link LogIndex} of the file, the {@code measurements} array of a
+ * beacon is read from its byte range on first access. Beacons nobody asks for
+ * are never read, which makes picking a few beacons out of a large log about
+ * as cheap as reading a log holding only those.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class LazyBeaconLog implements Closeable {
+
+    private static final int            BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel           channel;
+    private final Charset               encoding;
+    private final LogIndex              index;
+    private final BeaconLogObject[]     beacons;
+
+
+    private LazyBeaconLog(FileChannel channel, Charset encoding, LogIndex index) {
+        this.channel = channel;
+        this.encoding = encoding;
+        this.index = index;
+        this.beacons = new BeaconLogObject[index.getBeaconCount()];
+    }
+
+    /**
+     * Open the JSON log {@code path}, building its index if there is no valid one.
+     *
+     * @param   path        the JSON log to open
+     * @param   encoding    the charset of the log
+     * @param   directory   the directory of the index files, {@code null} to keep them next to the logs
+     * @return  a view of the log, to be closed after use
+     * @throws  IOException if the log could not be read or indexed
+     */
+    public static LazyBeaconLog open(Path path, Charset encoding, Path directory) throws IOException {
+        return open(path, encoding, LogIndex.open(path, encoding, directory));
+    }
+
+    /**
+     * Open the JSON log {@code path} with an index already at hand.
+     *
+     * @param   path        the JSON log to open
+     * @param   encoding    the charset of the log
+     * @param   index       the valid index of the log
+     * @return  a view of the log, to be closed after use
+     * @throws  IOException if the log could not be read or changed since it was indexed
+     */
+    public static LazyBeaconLog open(Path path, Charset encoding, LogIndex index) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() != index.getSize()) {
+            channel.close();
+            throw new IOException(path + " changed while it was indexed");
+        }
+        return new LazyBeaconLog(channel, encoding, index);
+    }
+
+    /**
+     * @return  the index of the log
+     */
+    public LogIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return  details of the mobile phone
+     */
+    public BeaconLog.AndroidModel getModel() {
+        return index.getModel();
+    }
+
+    /**
+     * @return  the average orientation, {@code null} if it was not logged
+     */
+    public BeaconLog.Orientation getAverageOrientation() {
+        return index.getAverageOrientation();
+    }
+
+    /**
+     * @return  the nominal distance of the log
+     */
+    public double getDistance() {
+        return index.getDistance();
+    }
+
+    /**
+     * @return  number of beacons in the log
+     */
+    public int getBeaconCount() {
+        return index.getBeaconCount();
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  the {@code i}th beacon with all its measurements, read on first access
+     * @throws  IOException if the measurements could not be read
+     */
+    public synchronized BeaconLogObject getBeacon(int i) throws IOException {
+        if (beacons[i] == null) {
+            BeaconLogObject beacon = new BeaconLogObject(index.getIdentifier(i), index.getBeaconDistance(i));
+            beacon.getSeries().ensureCapacity(index.getCount(i));
+            read(i, new BeaconLogHandler() {
+                @Override
+                public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+                    beacon.addMeasurement(timestamp, rssi, txPower, calcDistance);
+                }
+            });
+            beacons[i] = beacon;
+        }
+        return beacons[i];
+    }
+
+    /**
+     * Hand the measurements of the {@code i}th beacon to {@code handler},
+     * without keeping them. Only {@link BeaconLogHandler#measurement} is called.
+     *
+     * @param   i       index of the beacon
+     * @param   handler the {@link BeaconLogHandler} to hand the measurements to
+     * @throws  IOException if the measurements could not be read
+     */
+    public void read(int i, BeaconLogHandler handler) throws IOException {
+        read(i, handler, LogFilter.ALL);
+    }
+
+    /**
+     * Hand the measurements of the {@code i}th beacon {@code filter} accepts
+     * by their timestamp to {@code handler}.
+     *
+     * @param   i       index of the beacon
+     * @param   handler the {@link BeaconLogHandler} to hand the measurements to
+     * @param   filter  selects the measurements by their timestamp
+     * @throws  IOException if the measurements could not be read
+     */
+    public void read(int i, BeaconLogHandler handler, LogFilter filter) throws IOException {
+        if (index.getStart(i) < 0) {
+            return;
+        }
+        InputStream in = new RangeInputStream(index.getStart(i), index.getEnd(i));
+        new BeaconLogReader(handler, filter).readMeasurements(
+            new BufferedReader(new InputStreamReader(in, encoding), BUFFER_SIZE));
+    }
+
+    /**
+     * Hand what {@code filter} accepts to {@code handler}, in the same order
+     * as the {@link BeaconLogReader} would. Phone and distance are known from
+     * the index, a rejected log is not read at all; rejected beacons are
+     * skipped without being read.
+     *
+     * @param   handler the {@link BeaconLogHandler} to hand everything to
+     * @param   filter  the {@link LogFilter} to apply
+     * @return  whether the filter accepted phone and distance of the log,
+     *          nothing was handed on if not
+     * @throws  IOException if the measurements could not be read
+     */
+    public boolean replay(BeaconLogHandler handler, LogFilter filter) throws IOException {
+        if (!filter.acceptsModel(getModel()) || !filter.acceptsDistance(getDistance())) {
+            return false;
+        }
+        handler.model(getModel());
+        for (int b = 0; b < getBeaconCount(); b++) {
+            if (!filter.acceptsBeacon(index.getIdentifier(b))) {
+                continue;
+            }
+            handler.beginBeacon(index.getIdentifier(b), index.getBeaconDistance(b));
+            read(b, handler, filter);
+            handler.endBeacon();
+        }
+        if (getAverageOrientation() != null) {
+            handler.averageOrientation(getAverageOrientation());
+        }
+        handler.distance(getDistance());
+        handler.endLog();
+        return true;
+    }
+
+    /**
+     * A {@link BeaconLog} whose {@code loggedBeacons} are read on first access
+     * through {@link #getBeacon(int)}. Failing reads are thrown as
+     * {@link UncheckedIOException}. The list is only usable while the view is open.
+     *
+     * @return  the log backed by this view
+     */
+    public BeaconLog asBeaconLog() {
+        BeaconLog bLog = new BeaconLog();
+        bLog.setModel(getModel());
+        bLog.setAverageOrientation(getAverageOrientation());
+        bLog.setDistance(getDistance());
+        bLog.setLoggedBeacons(new AbstractList<BeaconLogObject>() {
+            @Override
+            public BeaconLogObject get(int i) {
+                try {
+                    return getBeacon(i);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public int size() {
+                return getBeaconCount();
+            }
+        });
+        return bLog;
+    }
+
+    /**
+     * Close the file, beacons already read stay valid.
+     *
+     * @throws  IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a byte range of the file with positional reads, so several
+     * beacons may be read at once.
+     */
+    private class RangeInputStream extends InputStream {
+
+        private long        position;
+        private final long  end;
+
+        RangeInputStream(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                throw new IOException("unexpected end of log, the index is outdated");
+            }
+            position += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utility methods to find log files on disk.
+ *
+ * Logs may be compressed with gzip ({@code .json.gz}) or zstd
+ * ({@code .json.zst}), and bundled in zip archives whose entries are handed
+ * out as paths of a zip {@link FileSystem}, so archives never need to be
+ * unpacked. Compressed logs are decompressed on a separate thread while
+ * they are parsed, see {@link ReadAheadInputStream}; entries of an archive
+ * are independent paths and are read in parallel like any other files.
+ * zstd needs {@code com.github.luben:zstd-jni} on the class path, it is not
+ * a dependency of its own.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class LogFiles {
+
+    /** files picked up when a directory is given */
+    public static final String  LOG_PATTERN = "glob:**.{json,blog,json.gz,json.zst}";
+
+    /** archives whose logs are picked up when a directory is given */
+    public static final String  ARCHIVE_PATTERN = "glob:**.zip";
+
+    private static final int    BUFFER_SIZE = 64 * 1024;
+    private static final int    READ_AHEAD_CHUNKS = 4;
+
+    // the archive of every zip file system opened, kept open until the JVM exits
+    private static final Map<FileSystem, Path>  archives = new ConcurrentHashMap<>();
+
+    private LogFiles() {}
+
+    /**
+     * Expand files, directories and glob patterns to the list of log files
+     * they denote. Directories are searched recursively for {@link #LOG_PATTERN},
+     * globs like {@code logs/campaign?/*.json} are resolved relative to the
+     * longest leading part without wildcards. Files of every directory and
+     * glob are sorted by path, so the result is stable between runs. Zip
+     * archives, given or found by {@link #ARCHIVE_PATTERN}, are replaced by
+     * the logs they contain, sorted by path as well.
+     *
+     * @param   specs   files, directories or glob patterns
+     * @return  all log files in the order given
+     * @throws  IOException if a directory could not be read
+     */
+    public static List<Path> expand(List<String> specs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String spec : specs) {
+            List<Path> found;
+            if (isGlob(spec)) {
+                found = glob(spec);
+            } else {
+                Path path = Paths.get(spec);
+                found = Files.isDirectory(path) ? find(path, logsOrArchives()) : Collections.singletonList(path);
+            }
+            for (Path path : found) {
+                if (isArchive(path)) {
+                    files.addAll(entries(path));
+                } else {
+                    files.add(path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static PathMatcher logsOrArchives() {
+        PathMatcher logs = FileSystems.getDefault().getPathMatcher(LOG_PATTERN);
+        PathMatcher archives = FileSystems.getDefault().getPathMatcher(ARCHIVE_PATTERN);
+        return (p) -> logs.matches(p) || archives.matches(p);
+    }
+
+    private static boolean isArchive(Path path) {
+        return FileSystems.getDefault().getPathMatcher(ARCHIVE_PATTERN).matches(path) && Files.isRegularFile(path);
+    }
+
+    /**
+     * @param   archive a zip archive
+     * @return  the logs in {@code archive}, sorted by path
+     * @throws  IOException if the archive could not be opened
+     */
+    private static List<Path> entries(Path archive) throws IOException {
+        FileSystem zip = FileSystems.newFileSystem(archive, (ClassLoader) null);
+        archives.put(zip, archive);
+        List<Path> files = new ArrayList<>();
+        for (Path root : zip.getRootDirectories()) {
+            files.addAll(find(root, zip.getPathMatcher(LOG_PATTERN)));
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @param   file    a log file, possibly in an archive
+     * @return  the file on disk holding {@code file}: the archive for logs in
+     *          an archive, else {@code file} itself
+     */
+    public static Path location(Path file) {
+        Path archive = archives.get(file.getFileSystem());
+        return archive != null ? archive : file;
+    }
+
+    /**
+     * @param   file    a log file
+     * @return  whether {@code file} is stored as is on disk, i.e. neither
+     *          compressed nor in an archive, so it can be mapped or indexed
+     */
+    public static boolean isPlain(Path file) {
+        String name = file.getFileName().toString();
+        return file.getFileSystem() == FileSystems.getDefault() && !name.endsWith(".gz") && !name.endsWith(".zst");
+    }
+
+    /**
+     * Open {@code file} for reading, decompressing it if it starts with the
+     * magic bytes of gzip or zstd. Compressed files are decompressed on a
+     * separate thread while the caller reads, as are logs in archives.
+     *
+     * @param   file    the file to open
+     * @return  the content of the file, buffered
+     * @throws  IOException if the file could not be opened, or is compressed with zstd and zstd-jni is missing
+     */
+    public static InputStream open(Path file) throws IOException {
+        return open(file, null);
+    }
+
+    /**
+     * Open {@code file} like {@link #open(Path)}, updating {@code digest}
+     * with the bytes of the file as stored while they are read.
+     *
+     * @param   file    the file to open
+     * @param   digest  the digest to update, {@code null} for none
+     * @return  the content of the file, buffered
+     * @throws  IOException if the file could not be opened, or is compressed with zstd and zstd-jni is missing
+     */
+    public static InputStream open(Path file, MessageDigest digest) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        if (digest != null) {
+            raw = new DigestInputStream(raw, digest);
+        }
+        BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+        try {
+            byte[]  magic = new byte[4];
+            int     n = 0;
+            int     read;
+            in.mark(magic.length);
+            while (n < magic.length && (read = in.read(magic, n, magic.length - n)) > 0) {
+                n += read;
+            }
+            in.reset();
+            InputStream decompressed;
+            if (n >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+                decompressed = new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (n == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                    && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+                decompressed = zstd(in);
+            } else if (file.getFileSystem() != FileSystems.getDefault()) {
+                decompressed = in;
+            } else {
+                return in;
+            }
+            return new ReadAheadInputStream(decompressed, READ_AHEAD_CHUNKS, BUFFER_SIZE);
+        } catch (IOException | RuntimeException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    private static InputStream zstd(InputStream in) throws IOException {
+        try {
+            return (InputStream) Class.forName("com.github.luben.zstd.ZstdInputStream")
+                .getConstructor(InputStream.class).newInstance(in);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("reading zstd compressed logs needs com.github.luben:zstd-jni on the class path");
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("could not start zstd decompression", ex);
+        }
+    }
+
+    /**
+     * Read the log file {@code file} and hand its content to {@code handler},
+     * binary logs ({@link BinaryLogFormat#EXTENSION}) are mapped, everything
+     * else is read as JSON, see {@link #open(Path)}.
+     *
+     * @param   file        the log file to read
+     * @param   encoding    the charset of JSON logs
+     * @param   handler     the {@link BeaconLogHandler} to hand everything to
+     * @throws  IOException if the file could not be read
+     */
+    public static void read(Path file, Charset encoding, BeaconLogHandler handler) throws IOException {
+        read(file, encoding, handler, null);
+    }
+
+    /**
+     * Read the log file {@code file} like
+     * {@link #read(Path, Charset, BeaconLogHandler)}, updating {@code digest}
+     * with the bytes of the file as stored on the way, so hashing a log needs
+     * no read of its own.
+     *
+     * @param   file        the log file to read
+     * @param   encoding    the charset of JSON logs
+     * @param   handler     the {@link BeaconLogHandler} to hand everything to
+     * @param   digest      the digest to update, {@code null} for none
+     * @throws  IOException if the file could not be read
+     */
+    public static void read(Path file, Charset encoding, BeaconLogHandler handler, MessageDigest digest)
+            throws IOException {
+        if (isBinary(file)) {
+            try (MappedBeaconLog log = MappedBeaconLog.open(file)) {
+                log.replay(handler);
+                if (digest != null) {
+                    log.digest(digest);
+                }
+            }
+        } else {
+            InputStream stream = open(file, digest);
+            try (InputStreamReader in = new InputStreamReader(stream, encoding)) {
+                new BeaconLogReader(handler).read(in);
+                if (digest != null) {
+                    // whatever follows the log, e.g. a final line break, is part of the file as well
+                    byte[] rest = new byte[BUFFER_SIZE];
+                    while (stream.read(rest) >= 0) {
+                        // drained into the digest
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read what {@code filter} accepts of {@code file} and hand it to
+     * {@code handler}, pushing the filter down as far as the format allows:
+     * binary logs only map the accepted beacons, plain JSON logs are read
+     * through their {@link LogIndex}, so both skip rejected logs and beacons
+     * without reading them. Indexes are only built and written in
+     * {@code indexDirectory}; without one, an index next to the log is used if
+     * it is still valid, e.g. written by {@code index}, but none is created
+     * there. Logs without an index, compressed and archived logs are
+     * streamed, rejected beacons are skipped by the {@link BeaconLogReader}.
+     *
+     * @param   file            the log file to read
+     * @param   encoding        the charset of JSON logs
+     * @param   handler         the {@link BeaconLogHandler} to hand everything to
+     * @param   filter          the {@link LogFilter} to push down
+     * @param   indexDirectory  the directory to keep the index files in, {@code null} to only use valid ones next to the logs
+     * @return  whether the filter accepted phone and distance of the log;
+     *          if not, whatever the handler got is to be discarded
+     * @throws  IOException if the file could not be read
+     */
+    public static boolean read(Path file, Charset encoding, BeaconLogHandler handler, LogFilter filter,
+            Path indexDirectory) throws IOException {
+        if (isBinary(file)) {
+            try (MappedBeaconLog log = MappedBeaconLog.open(file)) {
+                return log.replay(handler, filter);
+            }
+        }
+        LogIndex index = null;
+        if (isPlain(file)) {
+            index = indexDirectory != null
+                ? LogIndex.open(file, encoding, indexDirectory) : LogIndex.find(file, encoding, null);
+        }
+        if (index != null) {
+            try (LazyBeaconLog log = LazyBeaconLog.open(file, encoding, index)) {
+                return log.replay(handler, filter);
+            }
+        }
+        try (InputStreamReader in = new InputStreamReader(open(file), encoding)) {
+            return new BeaconLogReader(handler, filter).read(in);
+        }
+    }
+
+    /**
+     * @param   file    a log file
+     * @return  whether {@code file} is a binary log, by its extension
+     */
+    public static boolean isBinary(Path file) {
+        return file.getFileName().toString().endsWith(BinaryLogFormat.EXTENSION);
+    }
+
+    private static boolean isGlob(String spec) {
+        return spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0
+                || spec.indexOf('[') >= 0 || spec.indexOf('{') >= 0;
+    }
+
+    private static List<Path> glob(String spec) throws IOException {
+        Path pattern = Paths.get(spec);
+        Path base = pattern.isAbsolute() ? pattern.getRoot() : Paths.get("");
+        for (Path part : pattern) {
+            if (isGlob(part.toString())) {
+                break;
+            }
+            base = base.resolve(part);
+        }
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+        String absolute = pattern.toAbsolutePath().toString().replace("\\", "\\\\");
+        return find(base, FileSystems.getDefault().getPathMatcher("glob:" + absolute));
+    }
+
+    private static List<Path> find(Path dir, PathMatcher matcher) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk
+                .filter(Files::isRegularFile)
+                .filter((p) -> matcher.matches(p.toAbsolutePath()))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+}
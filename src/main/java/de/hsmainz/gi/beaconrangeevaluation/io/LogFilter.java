@@ -0,0 +1,52 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+/**
+ * Predicates the readers push down into parsing a log: a log of a rejected
+ * phone or distance is not read any further where the format allows it,
+ * rejected beacons are skipped without parsing their measurements, rejected
+ * measurements never reach the {@link BeaconLogHandler}.
+ *
+ * All methods default to accepting everything, implement the ones you need.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public interface LogFilter {
+
+    /** accepts everything */
+    LogFilter ALL = new LogFilter() {};
+
+    /**
+     * @param   model   details of the mobile phone, {@code null} if the log has none
+     * @return  whether logs of {@code model} are wanted
+     */
+    default boolean acceptsModel(BeaconLog.AndroidModel model) {
+        return true;
+    }
+
+    /**
+     * @param   distance    the nominal distance of the log
+     * @return  whether logs at {@code distance} are wanted
+     */
+    default boolean acceptsDistance(double distance) {
+        return true;
+    }
+
+    /**
+     * @param   beaconId    the identifier of a beacon, {@code null} if it has none
+     * @return  whether the measurements of the beacon are wanted
+     */
+    default boolean acceptsBeacon(BeaconLogObject.Identifier beaconId) {
+        return true;
+    }
+
+    /**
+     * @param   timestamp   the timestamp of a measurement in milliseconds since the epoch
+     * @return  whether the measurement is wanted
+     */
+    default boolean acceptsTimestamp(long timestamp) {
+        return true;
+    }
+}
@@ -0,0 +1,578 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Byte ranges of the {@code measurements} array of every beacon of a JSON
+ * log, found in a single scan over the file.
+ *
+ * The scan only looks at the bytes making up the structure of the JSON
+ * ({@code {}[]":,} and escapes in strings). Everything but the content of the
+ * measurements arrays is kept as a skeleton and parsed with the
+ * {@link BeaconLogReader} afterwards, so model, orientation, distances and
+ * identifiers come out exactly as if the whole file was read. The offsets are
+ * only meaningful for charsets encoding these characters as single ASCII
+ * bytes, like UTF-8 or ISO-8859-1.
+ *
+ * An index is stored next to its log as {@code <name>.idx} or in a separate
+ * directory, and rebuilt once size, modification time or charset of the log
+ * changed. Reading logs only ever writes indexes into a directory given for
+ * them, indexes next to the logs are written by {@link #main(String...)}
+ * alone, see {@link #find(Path, Charset, Path)}. The file is written with a
+ * {@link DataOutputStream}:
+ * <pre>
+ * int magic "BIDX", int version, long size, long modified, string charset,
+ * string manufacturer, string model, string buildNumber, string version,
+ * byte hasOrientation, double azimuth, double pitch, double roll,
+ * double distance, int beacon count, per beacon:
+ *     string uuid, string major, string minor, double distance,
+ *     long start, long end, int count
+ * </pre>
+ * Strings are a byte whether they are present followed by modified UTF-8, a
+ * beacon without {@code beaconId} has all three strings absent. Start and end
+ * enclose the brackets of the array, they are {@code -1} for beacons without one.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class LogIndex {
+
+    private static final Logger     L = Logger.getLogger(LogIndex.class);
+
+    /** "BIDX" */
+    public static final int         MAGIC = 0x58444942;
+    public static final int         VERSION = 1;
+
+    /** file extension of index files */
+    public static final String      EXTENSION = ".idx";
+
+    private static final int        BUFFER_SIZE = 64 * 1024;
+
+    private final long              size;
+    private final long              modified;
+    private final String            charset;
+    private final BeaconLog         skeleton;
+    private final long[]            starts;
+    private final long[]            ends;
+    private final int[]             counts;
+
+
+    private LogIndex(long size, long modified, String charset, BeaconLog skeleton,
+            long[] starts, long[] ends, int[] counts) {
+        this.size = size;
+        this.modified = modified;
+        this.charset = charset;
+        this.skeleton = skeleton;
+        this.starts = starts;
+        this.ends = ends;
+        this.counts = counts;
+    }
+
+    /**
+     * The index of {@code file}, read from its index file if that is still
+     * valid, else built and written, see {@link #path(Path, Path)}. An index
+     * that could not be written is only logged.
+     *
+     * @param   file        the JSON log
+     * @param   encoding    the charset of the log
+     * @param   directory   the directory of the index files, {@code null} to keep them next to the logs
+     * @return  the index of {@code file}
+     * @throws  IOException if the log could not be read
+     */
+    public static LogIndex open(Path file, Charset encoding, Path directory) throws IOException {
+        LogIndex index = find(file, encoding, directory);
+        if (index != null) {
+            return index;
+        }
+        Path target = path(file, directory);
+        index = build(file, encoding);
+        try {
+            index.write(target);
+        } catch (IOException ex) {
+            L.warn("could not write index " + target + ": " + ex);
+        }
+        return index;
+    }
+
+    /**
+     * The index of {@code file} from its index file, nothing is built or written.
+     *
+     * @param   file        the JSON log
+     * @param   encoding    the charset of the log
+     * @param   directory   the directory of the index files, {@code null} for next to the logs
+     * @return  the index of {@code file}, {@code null} if there is no index file or it is no longer valid
+     * @throws  IOException if the attributes of the log could not be read
+     */
+    public static LogIndex find(Path file, Charset encoding, Path directory) throws IOException {
+        Path target = path(file, directory);
+        if (!Files.isRegularFile(target)) {
+            return null;
+        }
+        LogIndex index;
+        try {
+            index = read(target);
+        } catch (IOException ex) {
+            L.debug("ignoring unreadable index " + target, ex);
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (index.size == attributes.size() && index.modified == attributes.lastModifiedTime().toMillis()
+                && index.charset.equals(encoding.name())) {
+            return index;
+        }
+        return null;
+    }
+
+    /**
+     * @param   file        a JSON log
+     * @param   directory   the directory of the index files, {@code null} to keep them next to the logs
+     * @return  the path of the index file of {@code file}; in a directory its
+     *          name is made unique by a hash of the absolute path of the log
+     */
+    public static Path path(Path file, Path directory) {
+        String name = file.getFileName().toString();
+        if (directory == null) {
+            return file.resolveSibling(name + EXTENSION);
+        }
+        byte[]          hash = digest().digest(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder   sb = new StringBuilder(name).append('-');
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return directory.resolve(sb.append(EXTENSION).toString());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    /**
+     * Scan {@code file} and build its index.
+     *
+     * @param   file        the JSON log
+     * @param   encoding    the charset of the log, has to encode the JSON structure in ASCII
+     * @return  the index of {@code file}
+     * @throws  IOException if the log could not be read, is no complete JSON document or not plain on disk
+     * @throws  IllegalArgumentException if {@code encoding} does not encode the JSON structure in ASCII
+     */
+    public static LogIndex build(Path file, Charset encoding) throws IOException {
+        if (!LogFiles.isPlain(file)) {
+            throw new IOException("can only index plain files, not " + file.toUri());
+        }
+        String structure = "{}[]\":,\\ ";
+        if (!Arrays.equals(structure.getBytes(encoding), structure.getBytes(StandardCharsets.US_ASCII))) {
+            throw new IllegalArgumentException("can not index logs encoded in " + encoding);
+        }
+        // taken before reading, a file changing meanwhile is not mistaken for the indexed one
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Scanner             scanner = new Scanner();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer  buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long        position = 0;
+            int         read;
+            while ((read = channel.read(buffer)) >= 0) {
+                scanner.scan(buffer.array(), read, position);
+                position += read;
+                buffer.clear();
+            }
+        }
+        if (scanner.depth != 0 || scanner.inString) {
+            throw new IOException("incomplete JSON log " + file);
+        }
+
+        BeaconLogCollector collector = new BeaconLogCollector();
+        new BeaconLogReader(collector).read(new InputStreamReader(
+            new ByteArrayInputStream(scanner.skeleton.toByteArray()), encoding));
+        BeaconLog skeleton = collector.getBeaconLog();
+        if (skeleton.getLoggedBeacons().size() != scanner.beacons) {
+            throw new IOException("found " + scanner.beacons + " beacons in " + file + " but read "
+                + skeleton.getLoggedBeacons().size());
+        }
+        return new LogIndex(attributes.size(), attributes.lastModifiedTime().toMillis(), encoding.name(), skeleton,
+            Arrays.copyOf(scanner.starts, scanner.beacons), Arrays.copyOf(scanner.ends, scanner.beacons),
+            Arrays.copyOf(scanner.counts, scanner.beacons));
+    }
+
+    /**
+     * Read an index file.
+     *
+     * @param   path    the index file
+     * @return  the index stored in {@code path}
+     * @throws  IOException if the file could not be read or is no index
+     */
+    public static LogIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a log index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported log index version " + version);
+            }
+            long    size = in.readLong();
+            long    modified = in.readLong();
+            String  charset = in.readUTF();
+
+            BeaconLog               skeleton = new BeaconLog();
+            BeaconLog.AndroidModel  model = new BeaconLog.AndroidModel();
+            model.setmManufacturer(readString(in));
+            model.setmModel(readString(in));
+            model.setmBuildNumber(readString(in));
+            model.setmVersion(readString(in));
+            skeleton.setModel(model);
+            boolean hasOrientation = in.readBoolean();
+            BeaconLog.Orientation orientation = new BeaconLog.Orientation();
+            orientation.setAzimuth(in.readDouble());
+            orientation.setPitch(in.readDouble());
+            orientation.setRoll(in.readDouble());
+            skeleton.setAverageOrientation(hasOrientation ? orientation : null);
+            skeleton.setDistance(in.readDouble());
+
+            int     count = in.readInt();
+            long[]  starts = new long[count];
+            long[]  ends = new long[count];
+            int[]   counts = new int[count];
+            skeleton.setLoggedBeacons(new ArrayList<>(count));
+            for (int b = 0; b < count; b++) {
+                String uuid = readString(in);
+                String major = readString(in);
+                String minor = readString(in);
+                BeaconLogObject.Identifier beaconId = uuid == null && major == null && minor == null
+                    ? null : BeaconLogObject.Identifier.of(uuid, major, minor);
+                skeleton.getLoggedBeacons().add(new BeaconLogObject(beaconId, in.readDouble()));
+                starts[b] = in.readLong();
+                ends[b] = in.readLong();
+                counts[b] = in.readInt();
+            }
+            return new LogIndex(size, modified, charset, skeleton, starts, ends, counts);
+        }
+    }
+
+    /**
+     * Write the index to {@code path}, replacing it atomically.
+     *
+     * @param   path    the index file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void write(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "index", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeUTF(charset);
+
+                BeaconLog.AndroidModel model = skeleton.getModel();
+                writeString(out, model == null ? null : model.getmManufacturer());
+                writeString(out, model == null ? null : model.getmModel());
+                writeString(out, model == null ? null : model.getmBuildNumber());
+                writeString(out, model == null ? null : model.getmVersion());
+                BeaconLog.Orientation orientation = skeleton.getAverageOrientation();
+                out.writeBoolean(orientation != null);
+                out.writeDouble(orientation == null ? 0.0 : orientation.getAzimuth());
+                out.writeDouble(orientation == null ? 0.0 : orientation.getPitch());
+                out.writeDouble(orientation == null ? 0.0 : orientation.getRoll());
+                out.writeDouble(skeleton.getDistance());
+
+                out.writeInt(starts.length);
+                for (int b = 0; b < starts.length; b++) {
+                    BeaconLogObject.Identifier beaconId = getIdentifier(b);
+                    writeString(out, beaconId == null ? null : beaconId.getUuid());
+                    writeString(out, beaconId == null ? null : beaconId.getMajor());
+                    writeString(out, beaconId == null ? null : beaconId.getMinor());
+                    out.writeDouble(getBeaconDistance(b));
+                    out.writeLong(starts[b]);
+                    out.writeLong(ends[b]);
+                    out.writeInt(counts[b]);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * @return  details of the mobile phone
+     */
+    public BeaconLog.AndroidModel getModel() {
+        return skeleton.getModel();
+    }
+
+    /**
+     * @return  the average orientation, {@code null} if it was not logged
+     */
+    public BeaconLog.Orientation getAverageOrientation() {
+        return skeleton.getAverageOrientation();
+    }
+
+    /**
+     * @return  the nominal distance of the log
+     */
+    public double getDistance() {
+        return skeleton.getDistance();
+    }
+
+    /**
+     * @return  number of beacons in the log
+     */
+    public int getBeaconCount() {
+        return starts.length;
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  the identifier of the {@code i}th beacon, {@code null} if it has none
+     */
+    public BeaconLogObject.Identifier getIdentifier(int i) {
+        return skeleton.getLoggedBeacons().get(i).getIdentifier();
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  the nominal distance of the {@code i}th beacon
+     */
+    public double getBeaconDistance(int i) {
+        return skeleton.getLoggedBeacons().get(i).getDistance();
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  offset of the opening bracket of the measurements of the {@code i}th beacon, {@code -1} if it has none
+     */
+    public long getStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  offset behind the closing bracket of the measurements of the {@code i}th beacon, {@code -1} if it has none
+     */
+    public long getEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  number of measurements of the {@code i}th beacon
+     */
+    public int getCount(int i) {
+        return counts[i];
+    }
+
+    /**
+     * @return  the size of the log when it was indexed
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Walks the bytes of a JSON document, copying everything but the content
+     * of the measurements arrays to the skeleton. Depth 1 is the log, 2 the
+     * {@code loggedBeacons} array, 3 a beacon, 4 its measurements array and
+     * 5 a measurement.
+     */
+    private static class Scanner {
+
+        private static final byte[]         LOGGED_BEACONS = "loggedBeacons".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[]         MEASUREMENTS = "measurements".getBytes(StandardCharsets.US_ASCII);
+
+        private final ByteArrayOutputStream skeleton = new ByteArrayOutputStream();
+        private int                         depth;
+        private boolean                     inString;
+        private boolean                     escaped;
+
+        // the last string on depth 1 or 3, the key when followed by a colon
+        private final byte[]                name = new byte[16];
+        private int                         nameLength;
+        private boolean                     capture;
+        private boolean                     beaconsKey;
+        private boolean                     measurementsKey;
+        private boolean                     inBeacons;
+        private boolean                     inMeasurements;
+
+        private long[]                      starts = new long[16];
+        private long[]                      ends = new long[16];
+        private int[]                       counts = new int[16];
+        private int                         beacons;
+
+        void scan(byte[] bytes, int length, long position) {
+            int copied = 0;
+            for (int i = 0; i < length; i++) {
+                byte c = bytes[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    } else if (capture) {
+                        if (nameLength < name.length) {
+                            name[nameLength++] = c;
+                        } else {
+                            capture = false;
+                            nameLength = -1;
+                        }
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '"':
+                        inString = true;
+                        capture = depth == 1 || depth == 3;
+                        if (capture) {
+                            nameLength = 0;
+                        }
+                        break;
+                    case ':':
+                        if (depth == 1) {
+                            beaconsKey = isName(LOGGED_BEACONS);
+                        } else if (depth == 3) {
+                            measurementsKey = isName(MEASUREMENTS);
+                        }
+                        break;
+                    case '{':
+                    case '[':
+                        depth++;
+                        if (depth == 2 && c == '[' && beaconsKey) {
+                            inBeacons = true;
+                        } else if (depth == 3 && c == '{' && inBeacons) {
+                            beginBeacon();
+                        } else if (depth == 4 && c == '[' && inBeacons && measurementsKey) {
+                            inMeasurements = true;
+                            starts[beacons - 1] = position + i;
+                            skeleton.write(bytes, copied, i + 1 - copied);
+                        } else if (depth == 5 && c == '{' && inMeasurements) {
+                            counts[beacons - 1]++;
+                        }
+                        break;
+                    case '}':
+                    case ']':
+                        if (depth == 4 && inMeasurements) {
+                            inMeasurements = false;
+                            ends[beacons - 1] = position + i + 1;
+                            copied = i;
+                        } else if (depth == 2 && inBeacons) {
+                            inBeacons = false;
+                        }
+                        depth--;
+                        break;
+                    default:
+                }
+            }
+            if (!inMeasurements) {
+                skeleton.write(bytes, copied, length - copied);
+            }
+        }
+
+        private boolean isName(byte[] key) {
+            if (nameLength != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (name[i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void beginBeacon() {
+            if (beacons == starts.length) {
+                starts = Arrays.copyOf(starts, beacons * 2);
+                ends = Arrays.copyOf(ends, beacons * 2);
+                counts = Arrays.copyOf(counts, beacons * 2);
+            }
+            starts[beacons] = -1;
+            ends[beacons] = -1;
+            counts[beacons] = 0;
+            beacons++;
+            measurementsKey = false;
+        }
+    }
+
+    /**
+     * Entry point of the {@code index} command, builds the index of every
+     * JSON log that has none or an outdated one.
+     *
+     * <pre>
+     * index [--index dir] [--encoding charset] file|dir|glob...
+     * </pre>
+     *
+     * Binary logs given among the files are skipped, they are indexed by
+     * their own header, see {@link MappedBeaconLog}. So are compressed and
+     * archived logs, offsets into them are of no use.
+     *
+     * @param   args    the arguments following {@code index}
+     * @throws  IOException if the files could not be listed
+     */
+    public static void main(String... args) throws IOException {
+        Arguments   arguments = new Arguments(args);
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        String      dir = arguments.get("index", null);
+        Path        directory = dir != null ? Paths.get(dir) : null;
+
+        int indexed = 0;
+        for (Path file : files) {
+            if (LogFiles.isBinary(file) || !LogFiles.isPlain(file)) {
+                continue;
+            }
+            try {
+                LogIndex index = open(file, encoding, directory);
+                indexed++;
+                L.debug(file + ": " + index.getBeaconCount() + " beacons");
+            } catch (IOException | RuntimeException ex) {
+                L.warn("could not index " + file, ex);
+            }
+        }
+        L.info(indexed + " files indexed");
+    }
+}
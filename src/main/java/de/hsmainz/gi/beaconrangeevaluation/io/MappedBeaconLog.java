@@ -0,0 +1,353 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Read-only view of a binary log as described in {@link BinaryLogFormat}.
+ *
+ * The header is read on {@link #open(Path)}, the block of a beacon is
+ * memory-mapped on first access. The columns are handed out as primitive
+ * buffers on the mapping, so statistics run straight over the file content
+ * without creating a single {@link BeaconLogObject.Measurement}.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class MappedBeaconLog implements Closeable {
+
+    private final FileChannel               channel;
+    private final BeaconLog.AndroidModel    model;
+    private final BeaconLog.Orientation     averageOrientation;
+    private final double                    distance;
+    private final long[]                    offsets;
+    private final Beacon[]                  beacons;
+
+
+    private MappedBeaconLog(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer preamble = read(0, BinaryLogFormat.PREAMBLE_SIZE);
+        if (preamble.getInt() != BinaryLogFormat.MAGIC) {
+            throw new IOException("not a binary beacon log");
+        }
+        int version = preamble.getInt();
+        if (version != BinaryLogFormat.VERSION) {
+            throw new IOException("unsupported binary beacon log version " + version);
+        }
+        long header = preamble.getLong();
+        if (header < BinaryLogFormat.PREAMBLE_SIZE || header >= channel.size()) {
+            throw new IOException("binary beacon log is incomplete");
+        }
+
+        ByteBuffer buffer = read(header, (int) (channel.size() - header));
+        model = new BeaconLog.AndroidModel();
+        model.setmManufacturer(BinaryLogFormat.getString(buffer));
+        model.setmModel(BinaryLogFormat.getString(buffer));
+        model.setmBuildNumber(BinaryLogFormat.getString(buffer));
+        model.setmVersion(BinaryLogFormat.getString(buffer));
+        boolean hasOrientation = buffer.get() != 0;
+        BeaconLog.Orientation orientation = new BeaconLog.Orientation();
+        orientation.setAzimuth(buffer.getDouble());
+        orientation.setPitch(buffer.getDouble());
+        orientation.setRoll(buffer.getDouble());
+        averageOrientation = hasOrientation ? orientation : null;
+        distance = buffer.getDouble();
+        offsets = new long[buffer.getInt()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffer.getLong();
+            if (offsets[i] < BinaryLogFormat.PREAMBLE_SIZE || offsets[i] >= header) {
+                throw new IOException("binary beacon log is corrupt, block " + i + " is outside the file");
+            }
+        }
+        // a block ends at the latest where the next one or the header starts, each is mapped as one buffer
+        long[] sorted = offsets.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            long end = i + 1 < sorted.length ? sorted[i + 1] : header;
+            if (end - sorted[i] > Integer.MAX_VALUE) {
+                throw new IOException("binary beacon log has a block of more than 2 GiB at " + sorted[i]
+                    + ", split the beacon into several logs");
+            }
+        }
+        beacons = new Beacon[offsets.length];
+    }
+
+    /**
+     * Open the binary log {@code path}.
+     *
+     * @param   path    the binary log to open
+     * @return  a view of the binary log, to be closed after use
+     * @throws  IOException if the file could not be read, is no binary log or is not plain on disk
+     */
+    public static MappedBeaconLog open(Path path) throws IOException {
+        if (!LogFiles.isPlain(path)) {
+            throw new IOException("binary logs can only be mapped from plain files, not from " + path.toUri());
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedBeaconLog(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(BinaryLogFormat.ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of binary beacon log");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return  details of the mobile phone
+     */
+    public BeaconLog.AndroidModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return  the average orientation, {@code null} if it was not logged
+     */
+    public BeaconLog.Orientation getAverageOrientation() {
+        return averageOrientation;
+    }
+
+    /**
+     * @return  the nominal distance of the log
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return  number of beacons in the log
+     */
+    public int getBeaconCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @param   i   index of the beacon
+     * @return  the {@code i}th beacon, mapped on first access
+     * @throws  IOException if the block of the beacon could not be mapped
+     */
+    public Beacon getBeacon(int i) throws IOException {
+        if (beacons[i] == null) {
+            beacons[i] = new Beacon(offsets[i]);
+        }
+        return beacons[i];
+    }
+
+    /**
+     * Hand the whole log to {@code handler}, in the same order as the
+     * {@link BeaconLogReader} would.
+     *
+     * @param   handler the {@link BeaconLogHandler} to hand everything to
+     * @throws  IOException if a block could not be mapped
+     */
+    public void replay(BeaconLogHandler handler) throws IOException {
+        replay(handler, LogFilter.ALL);
+    }
+
+    /**
+     * Hand what {@code filter} accepts to {@code handler}. Phone and distance
+     * are known from the header, a rejected log is not read at all; the
+     * columns of rejected beacons are never touched.
+     *
+     * @param   handler the {@link BeaconLogHandler} to hand everything to
+     * @param   filter  the {@link LogFilter} to apply
+     * @return  whether the filter accepted phone and distance of the log,
+     *          nothing was handed on if not
+     * @throws  IOException if a block could not be mapped
+     */
+    public boolean replay(BeaconLogHandler handler, LogFilter filter) throws IOException {
+        if (!filter.acceptsModel(model) || !filter.acceptsDistance(distance)) {
+            return false;
+        }
+        handler.model(model);
+        for (int b = 0; b < getBeaconCount(); b++) {
+            Beacon beacon = getBeacon(b);
+            if (!filter.acceptsBeacon(beacon.getIdentifier())) {
+                continue;
+            }
+            handler.beginBeacon(beacon.getIdentifier(), beacon.getDistance());
+            for (int i = 0; i < beacon.size(); i++) {
+                long timestamp = beacon.timestamp.get(i);
+                if (filter.acceptsTimestamp(timestamp)) {
+                    handler.measurement(timestamp, beacon.rssi.get(i), beacon.txPower.get(i), beacon.calcDistance.get(i));
+                }
+            }
+            handler.endBeacon();
+        }
+        if (averageOrientation != null) {
+            handler.averageOrientation(averageOrientation);
+        }
+        handler.distance(distance);
+        handler.endLog();
+        return true;
+    }
+
+    /**
+     * Update {@code digest} with the whole file. Once the log has been
+     * analysed its pages are in memory, so this does not read it again.
+     *
+     * @param   digest  the digest to update
+     * @throws  IOException if the file could not be mapped
+     */
+    public void digest(MessageDigest digest) throws IOException {
+        long size = channel.size();
+        for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(Integer.MAX_VALUE, size - position)));
+        }
+    }
+
+    /**
+     * Close the file, mapped blocks stay valid until they are garbage collected.
+     *
+     * @throws  IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * One beacon of the binary log, its columns mapped into memory.
+     */
+    public class Beacon {
+
+        private final BeaconLogObject.Identifier    identifier;
+        private final double                        distance;
+        private final int                           size;
+        private final LongBuffer                    timestamp;
+        private final DoubleBuffer                  rssi;
+        private final DoubleBuffer                  calcDistance;
+        private final IntBuffer                     txPower;
+
+        private Beacon(long offset) throws IOException {
+            ByteBuffer head = read(offset, (int) Math.min(channel.size() - offset, 4096));
+            String uuid = BinaryLogFormat.getString(head);
+            String major = BinaryLogFormat.getString(head);
+            String minor = BinaryLogFormat.getString(head);
+            identifier = BeaconLogObject.Identifier.of(uuid, major, minor);
+            distance = head.getDouble();
+            size = head.getInt();
+
+            long columns = offset + BinaryLogFormat.align(head.position());
+            long n = size;
+            long bytes = n * BinaryLogFormat.MEASUREMENT_SIZE;
+            if (size < 0 || bytes > Integer.MAX_VALUE || columns + bytes > channel.size()) {
+                throw new IOException("binary beacon log is corrupt, block at " + offset + " claims "
+                    + size + " measurements");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, columns, bytes);
+            map.order(BinaryLogFormat.ORDER);
+            timestamp = slice(map, 0, n * 8).asLongBuffer();
+            rssi = slice(map, n * 8, n * 8).asDoubleBuffer();
+            calcDistance = slice(map, n * 16, n * 8).asDoubleBuffer();
+            txPower = slice(map, n * 24, n * 4).asIntBuffer();
+        }
+
+        /**
+         * @param   from    start in {@code map}, within the 2 GiB of a mapped buffer
+         * @param   length  number of bytes, within the 2 GiB of a mapped buffer
+         */
+        private ByteBuffer slice(ByteBuffer map, long from, long length) {
+            ByteBuffer view = map.duplicate();
+            view.position((int) from);
+            view.limit((int) (from + length));
+            return view.slice().order(BinaryLogFormat.ORDER);
+        }
+
+        /**
+         * @return  the beacon's identifier
+         */
+        public BeaconLogObject.Identifier getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * @return  the nominal distance of the beacon
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        /**
+         * @return  number of measurements
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return  the mapped timestamp column
+         */
+        public LongBuffer getTimestamps() {
+            return timestamp.duplicate();
+        }
+
+        /**
+         * @return  the mapped rssi column
+         */
+        public DoubleBuffer getRssi() {
+            return rssi.duplicate();
+        }
+
+        /**
+         * @return  the mapped txPower column
+         */
+        public IntBuffer getTxPower() {
+            return txPower.duplicate();
+        }
+
+        /**
+         * @return  the mapped calcDistance column
+         */
+        public DoubleBuffer getCalcDistance() {
+            return calcDistance.duplicate();
+        }
+
+        /**
+         * @return  statistics of the calculated distances, computed straight from the mapping
+         */
+        public StreamingStatistics calcDistanceStatistics() {
+            return statistics(calcDistance);
+        }
+
+        /**
+         * @return  statistics of the rssi values, computed straight from the mapping
+         */
+        public StreamingStatistics rssiStatistics() {
+            return statistics(rssi);
+        }
+
+        private StreamingStatistics statistics(DoubleBuffer column) {
+            StreamingStatistics stats = new StreamingStatistics();
+            for (int i = 0; i < size; i++) {
+                stats.addValue(column.get(i));
+            }
+            return stats;
+        }
+    }
+}
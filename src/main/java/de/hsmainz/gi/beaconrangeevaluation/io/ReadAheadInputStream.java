@@ -0,0 +1,182 @@
+package de.hsmainz.gi.beaconrangeevaluation.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads another stream ahead on a separate thread, so e.g. decompressing a
+ * log overlaps with parsing it.
+ *
+ * The source is read into a few fixed chunks handed back and forth between
+ * the two threads, so no more than {@code chunks * chunkSize} bytes are ever
+ * buffered and nothing is allocated once the stream runs. The source is
+ * closed by the reading thread once it is exhausted, failed, or this stream
+ * was closed, and by {@link #close()} if the reading thread never started.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final ExecutorService    READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BlockingQueue<Chunk>      filled;
+    private final BlockingQueue<Chunk>      empty;
+    private final InputStream               source;
+    /** set by whoever takes over the source, the reading thread or {@link #close()} */
+    private final AtomicBoolean             claimed = new AtomicBoolean();
+    private final Future<?>                 reader;
+    private Chunk                           current;
+    private int                             position;
+    private boolean                         closed;
+
+
+    /**
+     * Default Constructor for a ReadAheadInputStream, starts reading right away.
+     *
+     * @param   source      the stream to read ahead, owned by this stream from now on
+     * @param   chunks      number of chunks, at least 2 for reading to overlap
+     * @param   chunkSize   bytes per chunk
+     */
+    public ReadAheadInputStream(InputStream source, int chunks, int chunkSize) {
+        this.filled = new ArrayBlockingQueue<>(chunks);
+        this.empty = new ArrayBlockingQueue<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            empty.add(new Chunk(chunkSize));
+        }
+        this.source = source;
+        this.reader = READERS.submit(this::fill);
+    }
+
+    private void fill() {
+        if (!claimed.compareAndSet(false, true)) {
+            return;
+        }
+        try (InputStream in = source) {
+            while (true) {
+                Chunk chunk = empty.take();
+                chunk.length = 0;
+                int read = 0;
+                while (chunk.length < chunk.data.length
+                        && (read = in.read(chunk.data, chunk.length, chunk.data.length - chunk.length)) >= 0) {
+                    chunk.length += read;
+                }
+                if (chunk.length > 0) {
+                    filled.put(chunk);
+                }
+                if (read < 0) {
+                    filled.put(Chunk.END);
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // closed by the consumer
+        } catch (IOException | RuntimeException ex) {
+            filled.clear();
+            filled.offer(new Chunk(ex));
+        }
+    }
+
+    /**
+     * @return  the chunk to read from, {@code null} at the end of the stream
+     */
+    private Chunk current() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (current != null && position < current.length) {
+            return current;
+        }
+        if (current == Chunk.END) {
+            return null;
+        }
+        if (current != null) {
+            empty.add(current);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for data");
+        }
+        position = 0;
+        if (current.error != null) {
+            Throwable error = current.error;
+            current = Chunk.END;
+            throw error instanceof IOException ? (IOException) error : new IOException(error);
+        }
+        return current == Chunk.END ? null : current;
+    }
+
+    @Override
+    public int read() throws IOException {
+        Chunk chunk = current();
+        return chunk == null ? -1 : chunk.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        Chunk chunk = current();
+        if (chunk == null) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed || current == null ? 0 : Math.max(0, current.length - position);
+    }
+
+    /**
+     * Stop reading ahead, the source is closed by the reading thread if it
+     * already started, else right here.
+     *
+     * @throws  IOException if the source could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            reader.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                source.close();
+            }
+        }
+    }
+
+    private static class Chunk {
+
+        static final Chunk  END = new Chunk(0);
+
+        final byte[]        data;
+        int                 length;
+        final Throwable     error;
+
+        Chunk(int size) {
+            this.data = new byte[size];
+            this.error = null;
+        }
+
+        Chunk(Throwable error) {
+            this.data = new byte[0];
+            this.error = error;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import java.util.List;
  * @author KekS
  */
 public class BeaconLog implements Serializable {
+    private static final long       serialVersionUID = 1L;
+
     private AndroidModel            model;
     private List<BeaconLogObject>   loggedBeacons;
     private Orientation             averageOrientation;
@@ -69,7 +71,9 @@ public class BeaconLog implements Serializable {
         this.distance = distance;
     }
     
-    public static class AndroidModel {
+    public static class AndroidModel implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private String mManufacturer;
         private String mModel;
         private String mBuildNumber;
@@ -132,7 +136,9 @@ public class BeaconLog implements Serializable {
         }
     }
 
-    public static class Orientation {
+    public static class Orientation implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         /** rotation around Z axis */ private double azimuth = 0.0;
         /** rotation around Y axis */ private double pitch = 0.0;
         /** rotation around X axis */ private double roll = 0.0;
@@ -1,10 +1,14 @@
 package de.hsmainz.gi.beaconrangeevaluation.model;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
 
 /**
  * *LIGHT* version of the Android-
@@ -19,7 +23,7 @@ public class BeaconLogObject implements Serializable,
 
     private Identifier        beaconId;
     private double            distance;
-    private List<Measurement> measurements;
+    private MeasurementSeries measurements;
     private double            averageDistance;
 
 
@@ -37,7 +41,7 @@ public class BeaconLogObject implements Serializable,
         String minor,
         int distance
     ) {
-        this(new Identifier(uuid, major, minor), distance);
+        this(Identifier.of(uuid, major, minor), distance);
     }
 
 
@@ -53,7 +57,7 @@ public class BeaconLogObject implements Serializable,
     ) {
         this.beaconId = beaconId;
         this.distance = distance;
-        this.measurements = new ArrayList<>();
+        this.measurements = new MeasurementSeries();
     }
 
     /**
@@ -84,7 +88,7 @@ public class BeaconLogObject implements Serializable,
      * @param   calcDistance    calculated distance
      */
     public void addMeasurement(long timestamp, double rssi, int txPower, double calcDistance) {
-        addMeasurement(new Measurement(timestamp, rssi, txPower, calcDistance));
+        measurements.add(timestamp, rssi, txPower, calcDistance);
     }
 
 
@@ -95,7 +99,7 @@ public class BeaconLogObject implements Serializable,
      * @param   measurement     a {@link de.hsmainz.geoinform.hsmainzranging.BeaconLogObject.Measurement}
      */
     public void addMeasurement(Measurement measurement) {
-        getMeasurements().add(measurement);
+        measurements.add(measurement);
     }
 
 
@@ -110,11 +114,22 @@ public class BeaconLogObject implements Serializable,
 
 
     /**
-     * Getter for {@link #measurements}
+     * Getter for {@link #measurements} as {@link java.util.List} view, every
+     * element is created on access. Prefer {@link #getSeries()} for scans.
      *
      * @return  a {@link java.util.List} of all {@link de.hsmainz.geoinform.hsmainzranging.BeaconLogObject.Measurement}s so far
      */
     public List<Measurement> getMeasurements() {
+        return measurements.asList();
+    }
+
+
+    /**
+     * Getter for {@link #measurements}
+     *
+     * @return  the columnar {@link MeasurementSeries} of all measurements so far
+     */
+    public MeasurementSeries getSeries() {
         return measurements;
     }
 
@@ -153,12 +168,12 @@ public class BeaconLogObject implements Serializable,
     }
 
     /**
-     * String representation for the id consisting of {@link #major} &amp; {@link #minor}.
+     * String representation for the id consisting of major &amp; minor.
      *
      * @return  String representation of this
      */
     public String getID(){
-        return  this.beaconId.major + "/" + this.beaconId.minor;
+        return  this.beaconId.getMajor() + "/" + this.beaconId.getMinor();
     }
 
     /**
@@ -205,12 +220,7 @@ public class BeaconLogObject implements Serializable,
      * @return  average distance
      */
     public double getAverageDistance() {
-        //return measurements.parallelStream().mapToDouble(Measurement::getCalcDistance).average().getAsDouble();
-        double dist = 0.0;
-        for (Measurement m : measurements) {
-            dist += m.getCalcDistance();
-        }
-        averageDistance = dist / measurements.size();
+        averageDistance = measurements.averageCalcDistance();
         return averageDistance;
     }
 
@@ -237,13 +247,37 @@ public class BeaconLogObject implements Serializable,
     /**
      * Uniquely identified Beacon.
      *
+     * The uuid is kept as two longs and major/minor as ints, equality, hashing
+     * and ordering thus only compare primitives. Values not in canonical form
+     * (upper case uuids, leading zeros, numbers beyond 16 bit, ...) are kept
+     * as they were given, so the string form always round-trips unchanged.
+     * Use {@link #of(String, String, String)} to share one instance per beacon,
+     * deserialized instances are shared the same way.
+     *
      * @author  KekS (mailto:keks@keksfabrik.eu), 22.10.2014.
      */
-    public static class Identifier implements Comparable<Identifier> {
+    public static class Identifier implements Serializable, Comparable<Identifier> {
+
+        private static final long serialVersionUID = 17_10_2026L;
+
+        /** canonical instances, held weakly so beacons no longer in use anywhere are dropped */
+        private static final Map<Identifier, WeakReference<Identifier>> CANONICAL = new WeakHashMap<>();
 
-        private String uuid;
-        private String major;
-        private String minor;
+        private static final int    RAW_UUID = 1;
+        private static final int    RAW_MAJOR = 2;
+        private static final int    RAW_MINOR = 4;
+
+        private final long          uuidHigh;
+        private final long          uuidLow;
+        private final int           major;
+        private final int           minor;
+        /** bits of the values only available in {@link #raw} */
+        private final int           rawMask;
+        /** uuid, major and minor as given, {@code null} if all are canonical */
+        private final String[]      raw;
+        private final int           hash;
+
+        private transient String    uuidString;
 
 
         /**
@@ -254,41 +288,164 @@ public class BeaconLogObject implements Serializable,
          * @param   minor   the beacon's minor version
          */
         public Identifier(String uuid, String major, String minor) {
-            this.uuid = uuid;
-            this.major = major;
-            this.minor = minor;
+            int mask = 0;
+            long high = 0L;
+            long low = 0L;
+            if (isCanonicalUuid(uuid)) {
+                high = hex(uuid, 0, 8) << 32 | hex(uuid, 9, 13) << 16 | hex(uuid, 14, 18);
+                low = hex(uuid, 19, 23) << 48 | hex(uuid, 24, 36);
+            } else {
+                mask |= RAW_UUID;
+            }
+            int maj = shortValue(major);
+            if (maj < 0) {
+                mask |= RAW_MAJOR;
+            }
+            int min = shortValue(minor);
+            if (min < 0) {
+                mask |= RAW_MINOR;
+            }
+
+            this.uuidHigh = high;
+            this.uuidLow = low;
+            this.major = maj;
+            this.minor = min;
+            this.rawMask = mask;
+            this.raw = mask == 0 ? null : new String[] {
+                (mask & RAW_UUID) != 0 ? uuid : null,
+                (mask & RAW_MAJOR) != 0 ? major : null,
+                (mask & RAW_MINOR) != 0 ? minor : null
+            };
+
+            int h = Long.hashCode(high);
+            h = 31 * h + Long.hashCode(low);
+            h = 31 * h + (maj << 16 | min);
+            h = 31 * h + (raw == null ? 0 : Arrays.hashCode(raw));
+            this.hash = h;
         }
 
         /**
-         * Getter for {@link #uuid}
+         * The canonical Identifier for {@code uuid}, {@code major} &amp; {@code minor},
+         * all readers share the same instance per beacon.
+         *
+         * @param   uuid    the beacon's uuid
+         * @param   major   the beacon's major version
+         * @param   minor   the beacon's minor version
+         * @return  the shared Identifier
+         */
+        public static Identifier of(String uuid, String major, String minor) {
+            return intern(new Identifier(uuid, major, minor));
+        }
+
+        /**
+         * @param   id  some Identifier
+         * @return  the shared Identifier equal to {@code id}
+         */
+        public static Identifier intern(Identifier id) {
+            synchronized (CANONICAL) {
+                WeakReference<Identifier> reference = CANONICAL.get(id);
+                Identifier canonical = reference != null ? reference.get() : null;
+                if (canonical == null) {
+                    CANONICAL.put(id, new WeakReference<>(id));
+                    canonical = id;
+                }
+                return canonical;
+            }
+        }
+
+        /**
+         * Rebuilt from its string form and interned, so a deserialized
+         * Identifier is the shared instance and its hash is recomputed
+         * rather than trusted.
+         *
+         * @return  the shared Identifier equal to this one
+         */
+        private Object readResolve() {
+            return of(getUuid(), getMajor(), getMinor());
+        }
+
+        private static boolean isCanonicalUuid(String uuid) {
+            if (uuid == null || uuid.length() != 36) {
+                return false;
+            }
+            for (int i = 0; i < 36; i++) {
+                char c = uuid.charAt(i);
+                if (i == 8 || i == 13 || i == 18 || i == 23) {
+                    if (c != '-') {
+                        return false;
+                    }
+                } else if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long hex(String s, int from, int to) {
+            long value = 0L;
+            for (int i = from; i < to; i++) {
+                value = value << 4 | Character.digit(s.charAt(i), 16);
+            }
+            return value;
+        }
+
+        /**
+         * @return  the value of {@code s} if it is a plain decimal between 0 and 65535, -1 otherwise
+         */
+        private static int shortValue(String s) {
+            if (s == null || s.isEmpty() || s.length() > 5 || (s.length() > 1 && s.charAt(0) == '0')) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value <= 0xffff ? value : -1;
+        }
+
+        /**
+         * Getter for the uuid
          *
          * @return  the universally unique identifier
          */
         public String getUuid() {
-            return uuid;
+            if ((rawMask & RAW_UUID) != 0) {
+                return raw[0];
+            }
+            String s = uuidString;
+            if (s == null) {
+                s = new UUID(uuidHigh, uuidLow).toString();
+                uuidString = s;
+            }
+            return s;
         }
 
         /**
-         * Getter for {@link #major}
+         * Getter for the major version
          *
          * @return  the major version
          */
         public String getMajor() {
-            return major;
+            return (rawMask & RAW_MAJOR) != 0 ? raw[1] : Integer.toString(major);
         }
 
         /**
-         * Getter for {@link #minor}
+         * Getter for the minor version
          *
-         * @return  the major
+         * @return  the minor version
          */
         public String getMinor() {
-            return minor;
+            return (rawMask & RAW_MINOR) != 0 ? raw[2] : Integer.toString(minor);
         }
 
         /**
          * Compares this object to the specified object to determine their relative
-         * order.
+         * order: by uuid, major and minor, canonical values numerically before
+         * values kept as given.
          *
          * @param   other   the object to compare to this instance.
          * @return  a negative integer if this instance is less than {@code another};
@@ -300,11 +457,34 @@ public class BeaconLogObject implements Serializable,
          */
         @Override
         public int compareTo(Identifier other) {
-            if (this.uuid.compareTo(other.getUuid()) != 0)
-                return this.uuid.compareTo(other.getUuid());
-            if (this.getMajor().compareTo(other.getMajor()) != 0)
-                return this.getMajor().compareTo(other.getMajor());
-            return this.getMinor().compareTo(other.getMinor());
+            if (this == other) {
+                return 0;
+            }
+            int c = compareRaw(RAW_UUID, 0, other);
+            if (c == 0) c = Long.compareUnsigned(uuidHigh, other.uuidHigh);
+            if (c == 0) c = Long.compareUnsigned(uuidLow, other.uuidLow);
+            if (c == 0) c = compareRaw(RAW_MAJOR, 1, other);
+            if (c == 0) c = Integer.compare(major, other.major);
+            if (c == 0) c = compareRaw(RAW_MINOR, 2, other);
+            if (c == 0) c = Integer.compare(minor, other.minor);
+            return c;
+        }
+
+        private int compareRaw(int bit, int index, Identifier other) {
+            boolean mine = (rawMask & bit) != 0;
+            boolean theirs = (other.rawMask & bit) != 0;
+            if (mine != theirs) {
+                return mine ? 1 : -1;
+            }
+            if (!mine) {
+                return 0;
+            }
+            String a = raw[index];
+            String b = other.raw[index];
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
         }
 
         /**
@@ -315,11 +495,20 @@ public class BeaconLogObject implements Serializable,
          */
         @Override
         public boolean equals(Object other) {
-            try {
-                return this.compareTo((Identifier) other) == 0;
-            } catch(Exception ex) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Identifier)) {
                 return false;
             }
+            Identifier id = (Identifier) other;
+            return hash == id.hash
+                && uuidHigh == id.uuidHigh
+                && uuidLow == id.uuidLow
+                && major == id.major
+                && minor == id.minor
+                && rawMask == id.rawMask
+                && (raw == null || Arrays.equals(raw, id.raw));
         }
 
         /**
@@ -329,21 +518,17 @@ public class BeaconLogObject implements Serializable,
          */
         @Override
         public int hashCode() {
-            int hash = 7;
-            hash = 79 * hash + this.uuid.hashCode();
-            hash = 79 * hash + this.major.hashCode();
-            hash = 79 * hash + this.minor.hashCode();
             return hash;
         }
 
         /**
-         * String representation for the id consisting of {@link #uuid}, {@link #major} &amp; {@link #minor}.
+         * String representation for the id consisting of uuid, major &amp; minor.
          *
          * @return  String representation of this
          */
         @Override
         public String toString() {
-            return "UUID: " + this.uuid + ", major: " + this.major + ", minor: " + this.minor;
+            return "UUID: " + getUuid() + ", major: " + getMajor() + ", minor: " + getMinor();
         }
     }
 
@@ -493,13 +678,16 @@ public class BeaconLogObject implements Serializable,
          */
         @Override
         public int compareTo(Measurement other) {
-            if (this.timestamp - other.getTimestamp() != 0)
-                return new Long(this.timestamp - other.getTimestamp()).intValue();
-            if (this.rssi - other.getRssi() != 0)
-                return new Double(this.rssi - other.getRssi()).intValue();
-            if (this.txPower - other.getTxPower() != 0)
-                return this.txPower - other.getTxPower();
-            return this.calcDistance > other.getCalcDistance() ? 1 : this.calcDistance < other.getCalcDistance() ? -1 : 0;
+            int c = Long.compare(this.timestamp, other.getTimestamp());
+            if (c != 0)
+                return c;
+            c = Double.compare(this.rssi, other.getRssi());
+            if (c != 0)
+                return c;
+            c = Integer.compare(this.txPower, other.getTxPower());
+            if (c != 0)
+                return c;
+            return Double.compare(this.calcDistance, other.getCalcDistance());
         }
     }
 }
@@ -0,0 +1,247 @@
+package de.hsmainz.gi.beaconrangeevaluation.model;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar storage for the {@link BeaconLogObject.Measurement}s of one beacon.
+ *
+ * Instead of one object per sample the four values are kept in primitive
+ * arrays, which grow by doubling. This needs a fraction of the heap of a
+ * {@code List<Measurement>} and keeps scans over one column sequential in memory.
+ * {@link #asList()} provides a {@link List} view for code still working on
+ * {@link BeaconLogObject.Measurement}s.
+ *
+ * Not thread safe.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class MeasurementSeries implements Serializable, TimestampMerge.Source {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int    DEFAULT_CAPACITY = 16;
+
+    private long[]              timestamp;
+    private double[]            rssi;
+    private int[]               txPower;
+    private double[]            calcDistance;
+    private int                 size;
+
+    private transient List<BeaconLogObject.Measurement> view;
+
+
+    /**
+     * Default Constructor for an empty MeasurementSeries
+     */
+    public MeasurementSeries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty MeasurementSeries with room for {@code capacity}
+     * measurements before the columns have to grow.
+     *
+     * @param   capacity    initial capacity
+     */
+    public MeasurementSeries(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.timestamp = new long[capacity];
+        this.rssi = new double[capacity];
+        this.txPower = new int[capacity];
+        this.calcDistance = new double[capacity];
+    }
+
+    /**
+     * Append a measurement.
+     *
+     * @param   timestamp       timestamp of the Measurement
+     * @param   rssi            received signal strength indicator
+     * @param   txPower         transmit power
+     * @param   calcDistance    calculated distance
+     */
+    public void add(long timestamp, double rssi, int txPower, double calcDistance) {
+        if (size == this.timestamp.length) {
+            grow(size + 1);
+        }
+        this.timestamp[size] = timestamp;
+        this.rssi[size] = rssi;
+        this.txPower[size] = txPower;
+        this.calcDistance[size] = calcDistance;
+        size++;
+    }
+
+    /**
+     * Append a {@link BeaconLogObject.Measurement}.
+     *
+     * @param   measurement     the measurement to add
+     */
+    public void add(BeaconLogObject.Measurement measurement) {
+        add(measurement.getTimestamp(), measurement.getRssi(), measurement.getTxPower(), measurement.getCalcDistance());
+    }
+
+    /**
+     * Make sure there is room for at least {@code capacity} measurements.
+     *
+     * @param   capacity    the required capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > timestamp.length) {
+            grow(capacity);
+        }
+    }
+
+    /**
+     * Shrink the columns to the number of measurements.
+     */
+    public void trimToSize() {
+        if (size < timestamp.length) {
+            resize(Math.max(size, 1));
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = timestamp.length << 1;
+        if (capacity < minCapacity || capacity < 0) {
+            capacity = minCapacity;
+        }
+        resize(capacity);
+    }
+
+    private void resize(int capacity) {
+        timestamp = Arrays.copyOf(timestamp, capacity);
+        rssi = Arrays.copyOf(rssi, capacity);
+        txPower = Arrays.copyOf(txPower, capacity);
+        calcDistance = Arrays.copyOf(calcDistance, capacity);
+    }
+
+    /**
+     * @return  number of measurements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return  whether or not there are no measurements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all measurements, the capacity is kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param   i   index of the measurement
+     * @return  the timestamp of the {@code i}th measurement
+     */
+    public long getTimestamp(int i) {
+        checkIndex(i);
+        return timestamp[i];
+    }
+
+    /**
+     * @param   i   index of the measurement
+     * @return  the received signal strength indicator of the {@code i}th measurement
+     */
+    public double getRssi(int i) {
+        checkIndex(i);
+        return rssi[i];
+    }
+
+    /**
+     * @param   i   index of the measurement
+     * @return  the transmit power of the {@code i}th measurement
+     */
+    public int getTxPower(int i) {
+        checkIndex(i);
+        return txPower[i];
+    }
+
+    /**
+     * @param   i   index of the measurement
+     * @return  the calculated distance of the {@code i}th measurement
+     */
+    public double getCalcDistance(int i) {
+        checkIndex(i);
+        return calcDistance[i];
+    }
+
+    /**
+     * @param   i   index of the measurement
+     * @return  a new {@link BeaconLogObject.Measurement} holding the values of the {@code i}th measurement
+     */
+    public BeaconLogObject.Measurement get(int i) {
+        checkIndex(i);
+        return new BeaconLogObject.Measurement(timestamp[i], rssi[i], txPower[i], calcDistance[i]);
+    }
+
+    /**
+     * Sum of all calculated distances, a single sequential pass over one column.
+     *
+     * @return  the sum of all calculated distances
+     */
+    public double sumCalcDistance() {
+        double sum = 0.0;
+        double[] column = calcDistance;
+        for (int i = 0; i < size; i++) {
+            sum += column[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return  the average calculated distance, {@code NaN} if there are no measurements
+     */
+    public double averageCalcDistance() {
+        return sumCalcDistance() / size;
+    }
+
+    /**
+     * A {@link List} view of this series. Every {@code get} creates a new
+     * {@link BeaconLogObject.Measurement}, {@code add} appends to this series,
+     * all other modifications are not supported.
+     *
+     * @return  the measurements as a list
+     */
+    public List<BeaconLogObject.Measurement> asList() {
+        if (view == null) {
+            view = new View();
+        }
+        return view;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+    }
+
+    private class View extends AbstractList<BeaconLogObject.Measurement> implements RandomAccess {
+
+        @Override
+        public BeaconLogObject.Measurement get(int index) {
+            return MeasurementSeries.this.get(index);
+        }
+
+        @Override
+        public boolean add(BeaconLogObject.Measurement measurement) {
+            MeasurementSeries.this.add(measurement);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package de.hsmainz.gi.beaconrangeevaluation.model;
+
+import java.util.List;
+
+/**
+ * Streams the entries of several series, e.g. the {@link MeasurementSeries}
+ * of all beacons of a log, as one series in ascending order of time.
+ *
+ * A binary heap holds the next entry of every series, so each step costs
+ * {@code O(log k)} for {@code k} series and nothing is copied or allocated.
+ * Entries with the same timestamp come in the order of their series, the
+ * entries of one series in their own order. A series that is not in order
+ * of time is walked through a sorted permutation of its indices, only then
+ * an {@code int} per entry is kept, sorting it takes a copy of the
+ * timestamps and a second {@code int} per entry for the time being.
+ *
+ * <pre>
+ * TimestampMerge merge = new TimestampMerge(series);
+ * while (merge.next()) {
+ *     series.get(merge.getSource()).getRssi(merge.getIndex());
+ * }
+ * </pre>
+ *
+ * The series must not change while merged. Not thread safe.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class TimestampMerge {
+
+    /**
+     * A series of entries with a timestamp.
+     */
+    public interface Source {
+
+        /**
+         * @return  number of entries
+         */
+        int size();
+
+        /**
+         * @param   i   index of the entry
+         * @return  timestamp of the entry
+         */
+        long getTimestamp(int i);
+    }
+
+    /** length of the runs sorted by insertion before merging */
+    private static final int    RUN = 32;
+
+    private final Source[]  sources;
+    private final int[][]   order;
+    private final int[]     cursor;
+    private final long[]    head;
+    private final int[]     heap;
+    private int             heapSize;
+    private boolean         started;
+    private int             source = -1;
+    private int             index = -1;
+
+
+    /**
+     * Default Constructor for a TimestampMerge
+     *
+     * @param   sources the series to merge, numbered in the order of the list
+     */
+    public TimestampMerge(List<? extends Source> sources) {
+        this.sources = sources.toArray(new Source[sources.size()]);
+        this.order = new int[this.sources.length][];
+        this.cursor = new int[this.sources.length];
+        this.head = new long[this.sources.length];
+        this.heap = new int[this.sources.length];
+        for (int s = 0; s < this.sources.length; s++) {
+            Source series = this.sources[s];
+            if (series.size() == 0) {
+                continue;
+            }
+            if (!isSorted(series)) {
+                order[s] = sortedOrder(series);
+            }
+            head[s] = series.getTimestamp(position(s));
+            heap[heapSize++] = s;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Move on to the next entry.
+     *
+     * @return  {@code false} if all entries have been merged
+     */
+    public boolean next() {
+        if (started && heapSize > 0) {
+            int s = heap[0];
+            if (++cursor[s] < sources[s].size()) {
+                head[s] = sources[s].getTimestamp(position(s));
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(0);
+        }
+        started = true;
+        if (heapSize == 0) {
+            source = -1;
+            index = -1;
+            return false;
+        }
+        source = heap[0];
+        index = position(source);
+        return true;
+    }
+
+    /**
+     * @return  number of the series of the current entry
+     */
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * @return  index of the current entry within its series
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return  timestamp of the current entry
+     */
+    public long getTimestamp() {
+        return head[source];
+    }
+
+    private int position(int s) {
+        return order[s] != null ? order[s][cursor[s]] : cursor[s];
+    }
+
+    private boolean less(int a, int b) {
+        return head[a] < head[b] || head[a] == head[b] && a < b;
+    }
+
+    private void siftDown(int i) {
+        if (heapSize == 0) {
+            return;
+        }
+        int s = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], s)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = s;
+    }
+
+    private static boolean isSorted(Source series) {
+        for (int i = 1; i < series.size(); i++) {
+            if (series.getTimestamp(i) < series.getTimestamp(i - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indices of {@code series} in ascending order of time, stable for equal
+     * timestamps. A bottom-up merge sort of the indices by a copy of the
+     * timestamps, runs of {@link #RUN} entries are sorted by insertion first.
+     */
+    private static int[] sortedOrder(Source series) {
+        int     n = series.size();
+        long[]  time = new long[n];
+        int[]   from = new int[n];
+        for (int i = 0; i < n; i++) {
+            time[i] = series.getTimestamp(i);
+            from[i] = i;
+        }
+        for (int lo = 0; lo < n; lo += RUN) {
+            int hi = Math.min(lo + RUN, n);
+            for (int i = lo + 1; i < hi; i++) {
+                int x = from[i];
+                int j = i;
+                for (; j > lo && time[from[j - 1]] > time[x]; j--) {
+                    from[j] = from[j - 1];
+                }
+                from[j] = x;
+            }
+        }
+        int[] to = new int[n];
+        for (int width = RUN; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi) {
+                    // the left one first on equal timestamps
+                    to[k++] = time[from[j]] < time[from[i]] ? from[j++] : from[i++];
+                }
+                System.arraycopy(from, i, to, k, mid - i);
+                System.arraycopy(from, j, to, k + mid - i, hi - j);
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+}
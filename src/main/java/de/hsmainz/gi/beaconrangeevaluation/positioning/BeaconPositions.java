@@ -0,0 +1,160 @@
+package de.hsmainz.gi.beaconrangeevaluation.positioning;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coordinates of the beacons of a test site in a local metric frame.
+ *
+ * Stored as a tab separated text file with a header line, one beacon per line:
+ *
+ * <pre>
+ * uuid    major   minor   x   y   z
+ * </pre>
+ *
+ * Beacons are numbered in the order of the file, see {@link #indexOf(BeaconLogObject.Identifier)}.
+ * Immutable once loaded, so one table can be shared by any number of threads.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class BeaconPositions {
+
+    private static final String                         HEADER = "uuid\tmajor\tminor\tx\ty\tz";
+
+    private final List<BeaconLogObject.Identifier>      identifiers;
+    private final Map<BeaconLogObject.Identifier, Integer> index = new HashMap<>();
+    private final double[]                              x;
+    private final double[]                              y;
+    private final double[]                              z;
+
+
+    /**
+     * Default Constructor for BeaconPositions
+     *
+     * @param   identifiers the beacons, each at most once
+     * @param   x           east or first coordinate of every beacon in metres
+     * @param   y           north or second coordinate of every beacon in metres
+     * @param   z           height of every beacon in metres
+     */
+    public BeaconPositions(List<BeaconLogObject.Identifier> identifiers, double[] x, double[] y, double[] z) {
+        if (x.length != identifiers.size() || y.length != identifiers.size() || z.length != identifiers.size()) {
+            throw new IllegalArgumentException("need one coordinate per beacon");
+        }
+        this.identifiers = new ArrayList<>(identifiers);
+        this.x = x.clone();
+        this.y = y.clone();
+        this.z = z.clone();
+        for (int i = 0; i < identifiers.size(); i++) {
+            if (index.put(identifiers.get(i), i) != null) {
+                throw new IllegalArgumentException("beacon listed twice: " + identifiers.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param   identifier  a beacon
+     * @return  the number of the beacon, -1 if its position is unknown
+     */
+    public int indexOf(BeaconLogObject.Identifier identifier) {
+        Integer i = identifier != null ? index.get(identifier) : null;
+        return i != null ? i : -1;
+    }
+
+    /**
+     * @return  number of beacons
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @param   beacon  number of the beacon
+     * @return  the beacon
+     */
+    public BeaconLogObject.Identifier getIdentifier(int beacon) {
+        return identifiers.get(beacon);
+    }
+
+    /**
+     * @param   beacon  number of the beacon
+     * @return  east or first coordinate in metres
+     */
+    public double getX(int beacon) {
+        return x[beacon];
+    }
+
+    /**
+     * @param   beacon  number of the beacon
+     * @return  north or second coordinate in metres
+     */
+    public double getY(int beacon) {
+        return y[beacon];
+    }
+
+    /**
+     * @param   beacon  number of the beacon
+     * @return  height in metres
+     */
+    public double getZ(int beacon) {
+        return z[beacon];
+    }
+
+    /**
+     * Read a table of beacon positions.
+     *
+     * @param   file    the file to read
+     * @return  the table
+     * @throws  IOException if the file could not be read or is not a table of beacon positions
+     */
+    public static BeaconPositions load(Path file) throws IOException {
+        List<BeaconLogObject.Identifier>    identifiers = new ArrayList<>();
+        List<double[]>                      coordinates = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("not a table of beacon positions, expected header " + HEADER + ": " + file);
+            }
+            int number = 1;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] f = line.split("\t", -1);
+                if (f.length != 6) {
+                    throw new IOException(file + ":" + number + ": expected 6 fields, got " + f.length);
+                }
+                try {
+                    identifiers.add(BeaconLogObject.Identifier.of(f[0], f[1], f[2]));
+                    coordinates.add(new double[] {
+                        Double.parseDouble(f[3]), Double.parseDouble(f[4]), Double.parseDouble(f[5])
+                    });
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(file + ":" + number + ": " + ex.getMessage(), ex);
+                }
+            }
+        }
+        double[] x = new double[coordinates.size()];
+        double[] y = new double[coordinates.size()];
+        double[] z = new double[coordinates.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = coordinates.get(i)[0];
+            y[i] = coordinates.get(i)[1];
+            z[i] = coordinates.get(i)[2];
+        }
+        try {
+            return new BeaconPositions(identifiers, x, y, z);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(file + ": " + ex.getMessage(), ex);
+        }
+    }
+}
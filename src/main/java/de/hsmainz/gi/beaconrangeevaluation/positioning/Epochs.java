@@ -0,0 +1,314 @@
+package de.hsmainz.gi.beaconrangeevaluation.positioning;
+
+import de.hsmainz.gi.beaconrangeevaluation.calibration.CalibrationTable;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.TimestampMerge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The ranges of one log grouped into epochs of equal length, the input of
+ * {@link Trilateration}.
+ *
+ * Within an epoch the distances of every beacon with a known position are
+ * averaged into one range, weighted by {@code n / range^2}: the mean of
+ * {@code n} measurements, whose error grows with the distance. Beacons of
+ * unknown position, measurements without a positive distance and epochs
+ * without any range are dropped.
+ *
+ * Fill by handing a whole log to this handler, e.g. with
+ * {@link de.hsmainz.gi.beaconrangeevaluation.io.LogFiles#read(java.nio.file.Path, java.nio.charset.Charset, BeaconLogHandler)},
+ * the epochs are there once the log ended. Epochs are stored in flat
+ * primitive arrays, the ranges of epoch {@code e} are those from
+ * {@link #getStart(int) getStart(e)} to {@link #getStart(int) getStart(e + 1)}.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Epochs implements BeaconLogHandler {
+
+    private final BeaconPositions   positions;
+    private final long              length;
+    private final CalibrationTable  calibration;
+
+    // while reading: the ranges of every beacon, in order of its measurements
+    private final Series[]          series;
+    private BeaconLog.AndroidModel  model;
+    private Series                  current;
+    private CalibrationTable.Entry  currentCalibration;
+
+    // once the log ended
+    private long[]                  epoch = new long[0];
+    private int[]                   start = {0};
+    private int[]                   beacon = new int[0];
+    private double[]                range = new double[0];
+    private double[]                weight = new double[0];
+    private int                     maxBeacons;
+
+
+    /**
+     * Default Constructor for Epochs
+     *
+     * @param   positions   the beacons to take ranges to
+     * @param   length      length of an epoch in milliseconds
+     * @param   calibration the path loss parameters to recompute the distances with, {@code null} to take them as logged
+     */
+    public Epochs(BeaconPositions positions, long length, CalibrationTable calibration) {
+        if (length < 1) {
+            throw new IllegalArgumentException("epochs have to be at least 1 ms long, got " + length);
+        }
+        this.positions = positions;
+        this.length = length;
+        this.calibration = calibration;
+        this.series = new Series[positions.size()];
+    }
+
+    @Override
+    public void model(BeaconLog.AndroidModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public void beginBeacon(BeaconLogObject.Identifier beaconId, double distance) {
+        int i = positions.indexOf(beaconId);
+        if (i < 0) {
+            current = null;
+            return;
+        }
+        if (series[i] == null) {
+            series[i] = new Series();
+        }
+        current = series[i];
+        // the model precedes the beacons
+        currentCalibration = calibration != null ? calibration.get(model, beaconId) : null;
+    }
+
+    @Override
+    public void measurement(long timestamp, double rssi, int txPower, double calcDistance) {
+        if (current == null) {
+            return;
+        }
+        double d = currentCalibration != null ? currentCalibration.distance(rssi, txPower) : calcDistance;
+        if (!(d > 0) || Double.isInfinite(d)) {
+            return;
+        }
+        current.add(Math.floorDiv(timestamp, length) * length, d);
+    }
+
+    @Override
+    public void endBeacon() {
+        if (current != null) {
+            current.flush();
+            current = null;
+        }
+    }
+
+    @Override
+    public void endLog() {
+        int total = 0;
+        for (Series s : series) {
+            if (s != null) {
+                s.sort();
+                total += s.size;
+            }
+        }
+        long[]      epochs = new long[total];
+        int[]       starts = new int[total + 1];
+        beacon = new int[total];
+        range = new double[total];
+        weight = new double[total];
+
+        // merge the series of all beacons by epoch, within an epoch in order of the beacons
+        List<Series>    present = new ArrayList<>();
+        List<Integer>   numbers = new ArrayList<>();
+        for (int b = 0; b < series.length; b++) {
+            if (series[b] != null) {
+                present.add(series[b]);
+                numbers.add(b);
+            }
+        }
+        TimestampMerge  merge = new TimestampMerge(present);
+        int             n = 0;
+        int             e = -1;
+        while (merge.next()) {
+            long next = merge.getTimestamp() / length;
+            if (e < 0 || epochs[e] != next) {
+                if (e >= 0) {
+                    maxBeacons = Math.max(maxBeacons, n - starts[e]);
+                }
+                epochs[++e] = next;
+                starts[e] = n;
+            }
+            Series  s = present.get(merge.getSource());
+            int     c = merge.getIndex();
+            double  mean = s.sum[c] / s.count[c];
+            beacon[n] = numbers.get(merge.getSource());
+            range[n] = mean;
+            weight[n] = s.count[c] / Math.max(mean * mean, 0.01);
+            n++;
+        }
+        if (e >= 0) {
+            maxBeacons = Math.max(maxBeacons, n - starts[e]);
+        }
+        epoch = Arrays.copyOf(epochs, e + 1);
+        start = Arrays.copyOf(starts, e + 2);
+        start[e + 1] = n;
+        Arrays.fill(series, null);
+    }
+
+    /**
+     * @return  the beacon positions the ranges refer to
+     */
+    public BeaconPositions getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return  the phone of the log, {@code null} if it had none
+     */
+    public BeaconLog.AndroidModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return  number of epochs
+     */
+    public int size() {
+        return epoch.length;
+    }
+
+    /**
+     * @param   e   number of the epoch
+     * @return  the middle of the epoch in milliseconds since the epoch
+     */
+    public long getTime(int e) {
+        return epoch[e] * length + length / 2;
+    }
+
+    /**
+     * @param   e   number of the epoch, up to {@link #size()} for the end of the last one
+     * @return  index of the first range of epoch {@code e}
+     */
+    public int getStart(int e) {
+        return start[e];
+    }
+
+    /**
+     * @param   r   index of a range
+     * @return  number of the beacon in the {@link BeaconPositions}
+     */
+    public int getBeacon(int r) {
+        return beacon[r];
+    }
+
+    /**
+     * @param   r   index of a range
+     * @return  the mean distance to the beacon in metres
+     */
+    public double getRange(int r) {
+        return range[r];
+    }
+
+    /**
+     * @param   r   index of a range
+     * @return  the weight of the range in the adjustment
+     */
+    public double getWeight(int r) {
+        return weight[r];
+    }
+
+    /**
+     * @return  the largest number of ranges of an epoch
+     */
+    public int getMaxBeacons() {
+        return maxBeacons;
+    }
+
+    /**
+     * Sum and count of the distances per epoch of one beacon, by the start of the epoch.
+     */
+    private static class Series implements TimestampMerge.Source {
+        long[]      epoch = new long[64];
+        double[]    sum = new double[64];
+        int[]       count = new int[64];
+        int         size;
+        boolean     sorted = true;
+
+        // the epoch being accumulated
+        long        pendingEpoch;
+        double      pendingSum;
+        int         pendingCount;
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long getTimestamp(int i) {
+            return epoch[i];
+        }
+
+        void add(long e, double distance) {
+            if (pendingCount > 0 && e != pendingEpoch) {
+                flush();
+            }
+            pendingEpoch = e;
+            pendingSum += distance;
+            pendingCount++;
+        }
+
+        void flush() {
+            if (pendingCount == 0) {
+                return;
+            }
+            if (size > 0 && pendingEpoch <= epoch[size - 1]) {
+                sorted = false;
+            }
+            if (size == epoch.length) {
+                epoch = Arrays.copyOf(epoch, 2 * size);
+                sum = Arrays.copyOf(sum, 2 * size);
+                count = Arrays.copyOf(count, 2 * size);
+            }
+            epoch[size] = pendingEpoch;
+            sum[size] = pendingSum;
+            count[size] = pendingCount;
+            size++;
+            pendingSum = 0.0;
+            pendingCount = 0;
+        }
+
+        /**
+         * Order by epoch and join entries of the same epoch, only needed if
+         * the measurements were not in order of time.
+         */
+        void sort() {
+            if (sorted) {
+                return;
+            }
+            Map<Long, double[]> joined = new TreeMap<>();
+            for (int i = 0; i < size; i++) {
+                double[] entry = joined.get(epoch[i]);
+                if (entry == null) {
+                    joined.put(epoch[i], new double[] {sum[i], count[i]});
+                } else {
+                    entry[0] += sum[i];
+                    entry[1] += count[i];
+                }
+            }
+            size = 0;
+            for (Map.Entry<Long, double[]> e : joined.entrySet()) {
+                epoch[size] = e.getKey();
+                sum[size] = e.getValue()[0];
+                count[size] = (int) e.getValue()[1];
+                size++;
+            }
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package de.hsmainz.gi.beaconrangeevaluation.positioning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The known positions of the receiver during a test, in the frame of the
+ * {@link BeaconPositions}.
+ *
+ * Stored as a tab separated text file with a header line, one fix per line
+ * in ascending order of time:
+ *
+ * <pre>
+ * timestamp   x   y   z
+ * </pre>
+ *
+ * Between two fixes the receiver is assumed to move in a straight line at
+ * constant speed. A single fix is a static test, the receiver stayed there
+ * all the time. Immutable once loaded.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class GroundTruth {
+
+    private static final String HEADER = "timestamp\tx\ty\tz";
+
+    private final long[]        timestamp;
+    private final double[]      x;
+    private final double[]      y;
+    private final double[]      z;
+
+
+    /**
+     * Default Constructor for a GroundTruth
+     *
+     * @param   timestamp   time of every fix in milliseconds since the epoch, ascending
+     * @param   x           east or first coordinate of every fix in metres
+     * @param   y           north or second coordinate of every fix in metres
+     * @param   z           height of every fix in metres
+     */
+    public GroundTruth(long[] timestamp, double[] x, double[] y, double[] z) {
+        if (timestamp.length == 0) {
+            throw new IllegalArgumentException("need at least one fix");
+        }
+        if (x.length != timestamp.length || y.length != timestamp.length || z.length != timestamp.length) {
+            throw new IllegalArgumentException("need one coordinate per fix");
+        }
+        for (int i = 1; i < timestamp.length; i++) {
+            if (timestamp[i] <= timestamp[i - 1]) {
+                throw new IllegalArgumentException("fixes not in ascending order of time at " + timestamp[i]);
+            }
+        }
+        this.timestamp = timestamp.clone();
+        this.x = x.clone();
+        this.y = y.clone();
+        this.z = z.clone();
+    }
+
+    /**
+     * Position of the receiver at {@code time}.
+     *
+     * @param   time        milliseconds since the epoch
+     * @param   position    receives x, y and z, at least 3 long
+     * @return  {@code false} if {@code time} is outside the track, {@code position} is untouched then
+     */
+    public boolean at(long time, double[] position) {
+        if (timestamp.length == 1) {
+            position[0] = x[0];
+            position[1] = y[0];
+            position[2] = z[0];
+            return true;
+        }
+        int i = Arrays.binarySearch(timestamp, time);
+        if (i >= 0) {
+            position[0] = x[i];
+            position[1] = y[i];
+            position[2] = z[i];
+            return true;
+        }
+        i = -i - 1;
+        if (i == 0 || i == timestamp.length) {
+            return false;
+        }
+        double f = (double) (time - timestamp[i - 1]) / (timestamp[i] - timestamp[i - 1]);
+        position[0] = x[i - 1] + f * (x[i] - x[i - 1]);
+        position[1] = y[i - 1] + f * (y[i] - y[i - 1]);
+        position[2] = z[i - 1] + f * (z[i] - z[i - 1]);
+        return true;
+    }
+
+    /**
+     * @return  number of fixes
+     */
+    public int size() {
+        return timestamp.length;
+    }
+
+    /**
+     * Read a track of known positions.
+     *
+     * @param   file    the file to read
+     * @return  the track
+     * @throws  IOException if the file could not be read or is not a track
+     */
+    public static GroundTruth load(Path file) throws IOException {
+        int         n = 0;
+        long[]      timestamp = new long[1024];
+        double[]    x = new double[1024];
+        double[]    y = new double[1024];
+        double[]    z = new double[1024];
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("not a track, expected header " + HEADER + ": " + file);
+            }
+            int number = 1;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] f = line.split("\t", -1);
+                if (f.length != 4) {
+                    throw new IOException(file + ":" + number + ": expected 4 fields, got " + f.length);
+                }
+                if (n == timestamp.length) {
+                    timestamp = Arrays.copyOf(timestamp, 2 * n);
+                    x = Arrays.copyOf(x, 2 * n);
+                    y = Arrays.copyOf(y, 2 * n);
+                    z = Arrays.copyOf(z, 2 * n);
+                }
+                try {
+                    timestamp[n] = Long.parseLong(f[0]);
+                    x[n] = Double.parseDouble(f[1]);
+                    y[n] = Double.parseDouble(f[2]);
+                    z[n] = Double.parseDouble(f[3]);
+                } catch (NumberFormatException ex) {
+                    throw new IOException(file + ":" + number + ": " + ex.getMessage(), ex);
+                }
+                n++;
+            }
+        }
+        try {
+            return new GroundTruth(Arrays.copyOf(timestamp, n), Arrays.copyOf(x, n), Arrays.copyOf(y, n),
+                Arrays.copyOf(z, n));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(file + ": " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package de.hsmainz.gi.beaconrangeevaluation.positioning;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.calibration.CalibrationTable;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFilter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.query.LogQuery;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSink;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Turns logs of several beacons into positions of the receiver and compares
+ * them to the known positions of a test.
+ *
+ * Every log is grouped into {@link Epochs}, all epochs are solved by a
+ * {@link Trilateration} and, given a {@link GroundTruth}, the distance of
+ * every position to the true one at the middle of its epoch is accumulated
+ * per log and over all logs. The error is horizontal in two dimensions and
+ * spatial in three. Logs are read concurrently, their epochs solved on a
+ * shared fork/join pool, the results written in the order of the files, so
+ * they do not depend on the number of threads. Given a pool, the logs are
+ * read on it as well, so reading and solving share its workers.
+ *
+ * The report has the "Fehler" sheet with the statistics of every log and
+ * all logs, optionally followed by the "Positionen" sheet with the position
+ * of every epoch.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Locator {
+
+    private static final Logger     L = Logger.getLogger(Locator.class);
+
+    /** name of the sheet with the error statistics */
+    public static final String      ERRORS = "Fehler";
+
+    /** name of the sheet with the position of every epoch */
+    public static final String      POSITIONS = "Positionen";
+
+    private static final String[]   ERROR_LABELS = {
+        "Datei", "Hersteller", "Modell", "# Epochen", "# berechnet", "# mit Soll", "Mittelwert [m]",
+        "Stdabw. [m]", "RMSE [m]", "Median [m]", "95%-Quantil [m]", "Max [m]", "Mittl. Residuum [m]"
+    };
+
+    private static final String[]   POSITION_LABELS = {
+        "Datei", "Zeit", "# Beacons", "x [m]", "y [m]", "z [m]", "Residuum [m]", "Iterationen",
+        "Soll x [m]", "Soll y [m]", "Soll z [m]", "Fehler [m]"
+    };
+
+    private final Charset           encoding;
+    private final BeaconPositions   positions;
+    private final Trilateration     trilateration;
+    private final long              epochLength;
+    private final CalibrationTable  calibration;
+    private final GroundTruth       truth;
+    private ForkJoinPool            pool;
+    private LogFilter               filter;
+    private Path                    indexDirectory;
+
+
+    /**
+     * Default Constructor for a Locator
+     *
+     * @param   encoding        the charset to use when reading the files
+     * @param   positions       the positions of the beacons
+     * @param   trilateration   the solver
+     * @param   epochLength     length of an epoch in milliseconds
+     * @param   calibration     the path loss parameters to recompute the distances with, {@code null} for none
+     * @param   truth           the known positions of the receiver, {@code null} for none
+     */
+    public Locator(Charset encoding, BeaconPositions positions, Trilateration trilateration, long epochLength,
+            CalibrationTable calibration, GroundTruth truth) {
+        this.encoding = encoding;
+        this.positions = positions;
+        this.trilateration = trilateration;
+        this.epochLength = epochLength;
+        this.calibration = calibration;
+        this.truth = truth;
+    }
+
+    /**
+     * @param   pool    the pool to solve the epochs on, {@code null} to solve them on the reading thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Only use what {@code filter} accepts, see {@link de.hsmainz.gi.beaconrangeevaluation.batch.FileAnalyzer#setFilter(LogFilter, Path)}.
+     *
+     * @param   filter          selects the logs, beacons and measurements to use, {@code null} for all
+     * @param   indexDirectory  the directory to keep the index files in, {@code null} to only use valid ones next to the logs
+     */
+    public void setFilter(LogFilter filter, Path indexDirectory) {
+        this.filter = filter;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * Locate the receiver in every epoch of a single log.
+     *
+     * @param   file    the log file
+     * @return  the positions and their errors, {@code null} if the log does not match the filter
+     * @throws  IOException if the file could not be read
+     */
+    public Track locate(Path file) throws IOException {
+        Epochs epochs = new Epochs(positions, epochLength, calibration);
+        if (filter == null) {
+            LogFiles.read(file, encoding, epochs);
+        } else if (!LogFiles.read(file, encoding, epochs, filter, indexDirectory)) {
+            return null;
+        }
+        Trilateration.Solution  solution = trilateration.solve(epochs, pool);
+        Track                   track = new Track(file, epochs.getModel(), epochs, solution);
+        double[]                t = new double[3];
+        for (int e = 0; e < solution.size(); e++) {
+            if (!solution.isSolved(e)) {
+                continue;
+            }
+            track.solved++;
+            track.residuals.addValue(solution.getRms(e));
+            if (truth != null && truth.at(epochs.getTime(e), t)) {
+                track.errors.addValue(error(solution, e, t));
+            }
+        }
+        return track;
+    }
+
+    private double error(Trilateration.Solution solution, int e, double[] t) {
+        double dx = solution.getX(e) - t[0];
+        double dy = solution.getY(e) - t[1];
+        double dz = trilateration.getDimensions() == 3 ? solution.getZ(e) - t[2] : 0.0;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Locate the receiver in all {@code files} and write the report.
+     *
+     * @param   files           the log files
+     * @param   sink            the {@link ReportSink} to write to, closed when done
+     * @param   threads         number of files read at once, without a pool the number of reading threads
+     * @param   writePositions  whether to write the position of every epoch
+     * @return  number of logs located
+     * @throws  IOException             if the report could not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public int run(List<Path> files, ReportSink sink, int threads, boolean writePositions)
+            throws IOException, InterruptedException {
+        ExecutorService         readers = pool != null ? pool : Executors.newFixedThreadPool(threads);
+        Deque<Future<Track>>    inFlight = new ArrayDeque<>();
+        int                     next = 0;
+        int                     located = 0;
+        Sheet                   sheet = writePositions ? new Sheet(sink) : null;
+        Track[]                 summary = new Track[files.size()];
+        StreamingStatistics     errors = new StreamingStatistics();
+        StreamingStatistics     residuals = new StreamingStatistics();
+        long                    epochs = 0;
+        long                    solved = 0;
+
+        try {
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < 2 * threads) {
+                    Path file = files.get(next++);
+                    inFlight.add(readers.submit(() -> locate(file)));
+                }
+                Track track;
+                try {
+                    track = inFlight.poll().get();
+                } catch (ExecutionException ex) {
+                    L.warn("failed to read file", ex.getCause());
+                    continue;
+                }
+                if (track == null) {
+                    continue;
+                }
+                if (sheet != null) {
+                    sheet.write(track);
+                }
+                errors.merge(track.errors);
+                residuals.merge(track.residuals);
+                epochs += track.epochs.size();
+                solved += track.solved;
+                // only the statistics are kept for the summary
+                summary[located++] = track.release();
+                L.info("Located file: " + track.file + ", " + track.solved + "/" + track.size + " epochs"
+                    + (track.errors.getN() > 0 ? ", mean error " + track.errors.getMean() + " m" : ""));
+            }
+            if (sheet != null) {
+                sink.endSheet();
+            }
+            writeErrors(sink, summary, located, errors, residuals, epochs, solved);
+        } finally {
+            for (Future<Track> future : inFlight) {
+                future.cancel(true);
+            }
+            if (readers != pool) {
+                readers.shutdownNow();
+            }
+            sink.close();
+        }
+        return located;
+    }
+
+    private void writeErrors(ReportSink sink, Track[] tracks, int n, StreamingStatistics errors,
+            StreamingStatistics residuals, long epochs, long solved) throws IOException {
+        sink.beginSheet(ERRORS, 0);
+        sink.beginRow(0);
+        for (int c = 0; c < ERROR_LABELS.length; c++) {
+            sink.text(c, ERROR_LABELS[c]);
+        }
+        sink.endRow();
+        for (int i = 0; i < n; i++) {
+            Track track = tracks[i];
+            sink.beginRow(i + 1);
+            sink.text(0, track.file.getFileName().toString());
+            sink.text(1, track.model != null ? track.model.getmManufacturer() : null);
+            sink.text(2, track.model != null ? track.model.getmModel() : null);
+            writeStatistics(sink, track.size, track.solved, track.errors, track.residuals);
+            sink.endRow();
+        }
+        sink.beginRow(n + 1);
+        sink.text(0, "Gesamt");
+        writeStatistics(sink, epochs, solved, errors, residuals);
+        sink.endRow();
+        sink.endSheet();
+    }
+
+    private static void writeStatistics(ReportSink sink, long epochs, long solved, StreamingStatistics errors,
+            StreamingStatistics residuals) throws IOException {
+        long n = errors.getN();
+        sink.integer(3, epochs);
+        sink.integer(4, solved);
+        sink.integer(5, n);
+        sink.number(6, errors.getMean());
+        sink.number(7, errors.getStandardDeviation());
+        // sqrt(E[e^2]) from mean and sample variance
+        sink.number(8, n > 0 ? Math.sqrt(errors.getMean() * errors.getMean() + errors.getVariance() * (n - 1) / n)
+            : Double.NaN);
+        sink.number(9, errors.getMedian());
+        sink.number(10, errors.getPercentile(95));
+        sink.number(11, errors.getMax());
+        sink.number(12, residuals.getMean());
+    }
+
+    /**
+     * The "Positionen" sheet, continued on further sheets once full.
+     */
+    private final class Sheet {
+
+        private final ReportSink    sink;
+        private final double[]      t = new double[3];
+        private int                 part = 1;
+        private int                 row;
+
+        Sheet(ReportSink sink) throws IOException {
+            this.sink = sink;
+            begin(POSITIONS);
+        }
+
+        private void begin(String name) throws IOException {
+            sink.beginSheet(name, part);
+            sink.beginRow(0);
+            for (int c = 0; c < POSITION_LABELS.length; c++) {
+                sink.text(c, POSITION_LABELS[c]);
+            }
+            sink.endRow();
+            row = 1;
+        }
+
+        void write(Track track) throws IOException {
+            String                  name = track.file.getFileName().toString();
+            Trilateration.Solution  solution = track.solution;
+            for (int e = 0; e < solution.size(); e++) {
+                if (row >= sink.getMaxRows()) {
+                    sink.endSheet();
+                    begin(POSITIONS + " (" + ++part + ")");
+                }
+                sink.beginRow(row++);
+                sink.text(0, name);
+                sink.integer(1, track.epochs.getTime(e));
+                sink.integer(2, solution.getBeacons(e));
+                if (solution.isSolved(e)) {
+                    sink.number(3, solution.getX(e));
+                    sink.number(4, solution.getY(e));
+                    sink.number(5, solution.getZ(e));
+                    sink.number(6, solution.getRms(e));
+                    sink.integer(7, solution.getIterations(e));
+                }
+                if (truth != null && truth.at(track.epochs.getTime(e), t)) {
+                    sink.number(8, t[0]);
+                    sink.number(9, t[1]);
+                    sink.number(10, t[2]);
+                    if (solution.isSolved(e)) {
+                        sink.number(11, error(solution, e, t));
+                    }
+                }
+                sink.endRow();
+            }
+        }
+    }
+
+    /**
+     * Positions of the receiver during one log and their errors.
+     */
+    public static final class Track {
+
+        private final Path                      file;
+        private final BeaconLog.AndroidModel    model;
+        private Epochs                          epochs;
+        private Trilateration.Solution          solution;
+        private final int                       size;
+        private int                             solved;
+        private final StreamingStatistics       errors = new StreamingStatistics();
+        private final StreamingStatistics       residuals = new StreamingStatistics();
+
+        Track(Path file, BeaconLog.AndroidModel model, Epochs epochs, Trilateration.Solution solution) {
+            this.file = file;
+            this.model = model;
+            this.epochs = epochs;
+            this.solution = solution;
+            this.size = epochs.size();
+        }
+
+        /**
+         * Drop epochs and positions, only the statistics are kept.
+         *
+         * @return  this
+         */
+        Track release() {
+            epochs = null;
+            solution = null;
+            return this;
+        }
+
+        /**
+         * @return  the log file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return  the epochs of the log, {@code null} once released
+         */
+        public Epochs getEpochs() {
+            return epochs;
+        }
+
+        /**
+         * @return  the position of every epoch, {@code null} once released
+         */
+        public Trilateration.Solution getSolution() {
+            return solution;
+        }
+
+        /**
+         * @return  distances of the positions to the true ones
+         */
+        public StreamingStatistics getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return  weighted root mean square range residuals of the epochs
+         */
+        public StreamingStatistics getResiduals() {
+            return residuals;
+        }
+    }
+
+    /**
+     * Entry point of the {@code locate} command.
+     *
+     * <pre>
+     * locate --beacon-positions table.tsv [--truth track.tsv] [--epoch ms] [--dimensions 2|3] [--height m]
+     *        [--iterations n] [--tolerance m] [--calibration table.tsv] [--threads n]
+     *        [--output file.xlsx|.csv|.xls] [--positions] [--encoding charset] [--index dir]
+     *        [query criteria...] file|dir|glob...
+     * </pre>
+     *
+     * The beacon positions are read by {@link BeaconPositions#load(Path)},
+     * the track by {@link GroundTruth#load(Path)}. Epochs are {@code --epoch}
+     * long (default 1000 ms), the receiver is located in {@code --dimensions}
+     * (default 2) at a height of {@code --height} (default 0 m) with at most
+     * {@code --iterations} (default 20) until a step is shorter than
+     * {@code --tolerance} (default 0.001 m). With {@code --positions} the
+     * report gets the position of every epoch. The query criteria select the
+     * logs and beacons to use, see {@link LogQuery#parse(Arguments)}.
+     *
+     * @param   args    the arguments following {@code locate}
+     * @throws  IOException             if the files could not be listed or the report not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args, "positions");
+        String      positionsFile = arguments.get("beacon-positions", null);
+        if (positionsFile == null) {
+            throw new IllegalArgumentException("--beacon-positions is required");
+        }
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        if (files.isEmpty()) {
+            L.warn("no log files given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        File        output = new File(arguments.get("output",
+                new File(LogFiles.location(files.get(0)).toAbsolutePath().getParent().toFile(), "positions.xlsx").getPath()));
+        String      truthFile = arguments.get("truth", null);
+        String      calibrationFile = arguments.get("calibration", null);
+        String      indexDir = arguments.get("index", null);
+        LogQuery    query = LogQuery.parse(arguments);
+
+        Locator locator = new Locator(encoding, BeaconPositions.load(Paths.get(positionsFile)),
+            new Trilateration(arguments.getInt("dimensions", 2), arguments.getDouble("height", 0.0),
+                arguments.getInt("iterations", 20), arguments.getDouble("tolerance", 0.001)),
+            arguments.getInt("epoch", 1000),
+            calibrationFile == null ? null : CalibrationTable.load(Paths.get(calibrationFile)),
+            truthFile == null ? null : GroundTruth.load(Paths.get(truthFile)));
+        if (query != null) {
+            locator.setFilter(query, indexDir == null ? null : Paths.get(indexDir));
+        }
+
+        long start = System.currentTimeMillis();
+        int located;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            locator.setPool(pool);
+            located = locator.run(files, ReportSinks.open(output), threads, arguments.has("positions"));
+        } finally {
+            pool.shutdown();
+        }
+        L.info(located + "/" + files.size() + " files located on " + threads + " threads in "
+            + (System.currentTimeMillis() - start) + "ms, report written to " + output);
+    }
+}
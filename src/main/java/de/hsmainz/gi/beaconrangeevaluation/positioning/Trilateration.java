@@ -0,0 +1,394 @@
+package de.hsmainz.gi.beaconrangeevaluation.positioning;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Estimates the position of the receiver in every epoch from its ranges to
+ * beacons of known position by weighted nonlinear least squares
+ *
+ * <pre>
+ * minimise sum( w_i * (|p - b_i| - r_i)^2 )
+ * </pre>
+ *
+ * solved by Levenberg-Marquardt, starting at the weighted centroid of the
+ * beacons. In two dimensions the height of the receiver is fixed, the
+ * beacons' heights still count. An epoch needs at least one range more than
+ * there are unknowns.
+ *
+ * Epochs are solved independently on a fork/join pool. Every task works on
+ * a run of epochs with a single {@link Workspace} allocated up front, so
+ * nothing is allocated per epoch, and writes into the arrays of a
+ * {@link Solution} allocated for all epochs at once. Immutable, so one
+ * instance can be shared by any number of threads.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Trilateration {
+
+    /** largest run of epochs solved by a single task */
+    public static final int         CHUNK = 4096;
+
+    private static final double     MAX_DAMPING = 1e10;
+
+    private final int               dimensions;
+    private final double            height;
+    private final int               maxIterations;
+    private final double            tolerance;
+
+
+    /**
+     * Default Constructor for a Trilateration
+     *
+     * @param   dimensions      2 to solve for x and y at a fixed height, 3 to solve for the height too
+     * @param   height          the height of the receiver in two dimensions in metres
+     * @param   maxIterations   maximum number of iterations per epoch
+     * @param   tolerance       an epoch is solved once a step is shorter than this, in metres
+     */
+    public Trilateration(int dimensions, double height, int maxIterations, double tolerance) {
+        if (dimensions != 2 && dimensions != 3) {
+            throw new IllegalArgumentException("can solve in 2 or 3 dimensions, not " + dimensions);
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("need at least one iteration, got " + maxIterations);
+        }
+        this.dimensions = dimensions;
+        this.height = height;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return  number of unknowns, 2 or 3
+     */
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Solve all epochs.
+     *
+     * @param   epochs  the ranges of every epoch
+     * @param   pool    the pool to solve on, {@code null} to solve on the calling thread
+     * @return  the position of every epoch
+     */
+    public Solution solve(Epochs epochs, ForkJoinPool pool) {
+        Solution    solution = new Solution(epochs.size());
+        Task        task = new Task(epochs, solution, 0, epochs.size());
+        if (pool != null) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+        return solution;
+    }
+
+    /**
+     * Solve a single epoch.
+     *
+     * @param   epochs      the ranges of every epoch
+     * @param   e           number of the epoch
+     * @param   workspace   scratch space for at least as many ranges as the epoch has
+     * @param   solution    receives the position of the epoch
+     */
+    public void solve(Epochs epochs, int e, Workspace workspace, Solution solution) {
+        BeaconPositions positions = epochs.getPositions();
+        int             from = epochs.getStart(e);
+        int             m = epochs.getStart(e + 1) - from;
+        double[]        bx = workspace.x;
+        double[]        by = workspace.y;
+        double[]        bz = workspace.z;
+        double[]        r = workspace.range;
+        double[]        w = workspace.weight;
+
+        solution.beacons[e] = m;
+        if (m <= dimensions) {
+            solution.iterations[e] = -1;
+            solution.x[e] = solution.y[e] = solution.z[e] = solution.rms[e] = Double.NaN;
+            return;
+        }
+
+        double px = 0.0, py = 0.0, pz = 0.0, sw = 0.0;
+        for (int i = 0; i < m; i++) {
+            int b = epochs.getBeacon(from + i);
+            bx[i] = positions.getX(b);
+            by[i] = positions.getY(b);
+            bz[i] = positions.getZ(b);
+            r[i] = epochs.getRange(from + i);
+            w[i] = epochs.getWeight(from + i);
+            px += w[i] * bx[i];
+            py += w[i] * by[i];
+            pz += w[i] * bz[i];
+            sw += w[i];
+        }
+        px /= sw;
+        py /= sw;
+        pz = dimensions == 3 ? pz / sw : height;
+
+        double  cost = cost(bx, by, bz, r, w, m, px, py, pz);
+        double  lambda = 1e-3;
+        int     iteration = 0;
+        while (iteration < maxIterations) {
+            iteration++;
+            // normal equations J'WJ d = -J'Wr, upper triangle of the symmetric matrix
+            double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+            double g0 = 0, g1 = 0, g2 = 0;
+            for (int i = 0; i < m; i++) {
+                double dx = px - bx[i];
+                double dy = py - by[i];
+                double dz = pz - bz[i];
+                double d = Math.max(Math.sqrt(dx * dx + dy * dy + dz * dz), 1e-9);
+                double jx = dx / d, jy = dy / d, jz = dz / d;
+                double res = d - r[i];
+                a00 += w[i] * jx * jx;
+                a01 += w[i] * jx * jy;
+                a11 += w[i] * jy * jy;
+                g0 += w[i] * jx * res;
+                g1 += w[i] * jy * res;
+                if (dimensions == 3) {
+                    a02 += w[i] * jx * jz;
+                    a12 += w[i] * jy * jz;
+                    a22 += w[i] * jz * jz;
+                    g2 += w[i] * jz * res;
+                }
+            }
+
+            boolean improved = false;
+            double  step = 0.0;
+            while (lambda <= MAX_DAMPING) {
+                double[] delta = workspace.delta;
+                if (!solveDamped(a00, a01, a02, a11, a12, a22, -g0, -g1, -g2, lambda, delta)) {
+                    lambda *= 10;
+                    continue;
+                }
+                double nx = px + delta[0];
+                double ny = py + delta[1];
+                double nz = dimensions == 3 ? pz + delta[2] : pz;
+                double next = cost(bx, by, bz, r, w, m, nx, ny, nz);
+                if (next <= cost) {
+                    step = Math.sqrt(delta[0] * delta[0] + delta[1] * delta[1] + delta[2] * delta[2]);
+                    px = nx;
+                    py = ny;
+                    pz = nz;
+                    cost = next;
+                    lambda = Math.max(lambda / 10, 1e-12);
+                    improved = true;
+                    break;
+                }
+                lambda *= 10;
+            }
+            if (!improved || step < tolerance) {
+                break;
+            }
+        }
+
+        solution.x[e] = px;
+        solution.y[e] = py;
+        solution.z[e] = pz;
+        solution.rms[e] = Math.sqrt(cost / sw);
+        solution.iterations[e] = iteration;
+    }
+
+    private static double cost(double[] bx, double[] by, double[] bz, double[] r, double[] w, int m,
+            double px, double py, double pz) {
+        double cost = 0.0;
+        for (int i = 0; i < m; i++) {
+            double dx = px - bx[i];
+            double dy = py - by[i];
+            double dz = pz - bz[i];
+            double res = Math.sqrt(dx * dx + dy * dy + dz * dz) - r[i];
+            cost += w[i] * res * res;
+        }
+        return cost;
+    }
+
+    /**
+     * Solve {@code (A + lambda * diag(A)) delta = g} for the symmetric 2x2 or
+     * 3x3 matrix {@code A} by Cholesky decomposition.
+     *
+     * @return  {@code false} if the matrix is not positive definite
+     */
+    private boolean solveDamped(double a00, double a01, double a02, double a11, double a12, double a22,
+            double g0, double g1, double g2, double lambda, double[] delta) {
+        a00 += lambda * a00;
+        a11 += lambda * a11;
+        if (a00 <= 0 || a11 <= 0) {
+            return false;
+        }
+        double l00 = Math.sqrt(a00);
+        double l10 = a01 / l00;
+        double s11 = a11 - l10 * l10;
+        if (s11 <= 0) {
+            return false;
+        }
+        double l11 = Math.sqrt(s11);
+        if (dimensions == 2) {
+            double y0 = g0 / l00;
+            double y1 = (g1 - l10 * y0) / l11;
+            delta[1] = y1 / l11;
+            delta[0] = (y0 - l10 * delta[1]) / l00;
+            delta[2] = 0.0;
+            return true;
+        }
+        a22 += lambda * a22;
+        double l20 = a02 / l00;
+        double l21 = (a12 - l20 * l10) / l11;
+        double s22 = a22 - l20 * l20 - l21 * l21;
+        if (s22 <= 0) {
+            return false;
+        }
+        double l22 = Math.sqrt(s22);
+        double y0 = g0 / l00;
+        double y1 = (g1 - l10 * y0) / l11;
+        double y2 = (g2 - l20 * y0 - l21 * y1) / l22;
+        delta[2] = y2 / l22;
+        delta[1] = (y1 - l21 * delta[2]) / l11;
+        delta[0] = (y0 - l10 * delta[1] - l20 * delta[2]) / l00;
+        return true;
+    }
+
+    /**
+     * Scratch space of the solver, to be used by one thread at a time.
+     */
+    public static final class Workspace {
+
+        final double[]  x;
+        final double[]  y;
+        final double[]  z;
+        final double[]  range;
+        final double[]  weight;
+        final double[]  delta = new double[3];
+
+        /**
+         * Default Constructor for a Workspace
+         *
+         * @param   maxBeacons  the largest number of ranges of an epoch to solve
+         */
+        public Workspace(int maxBeacons) {
+            this.x = new double[maxBeacons];
+            this.y = new double[maxBeacons];
+            this.z = new double[maxBeacons];
+            this.range = new double[maxBeacons];
+            this.weight = new double[maxBeacons];
+        }
+    }
+
+    /**
+     * The estimated positions of all epochs, {@code NaN} for epochs that
+     * could not be solved.
+     */
+    public static final class Solution {
+
+        final double[]  x;
+        final double[]  y;
+        final double[]  z;
+        final double[]  rms;
+        final int[]     beacons;
+        final int[]     iterations;
+
+        Solution(int epochs) {
+            this.x = new double[epochs];
+            this.y = new double[epochs];
+            this.z = new double[epochs];
+            this.rms = new double[epochs];
+            this.beacons = new int[epochs];
+            this.iterations = new int[epochs];
+        }
+
+        /**
+         * @return  number of epochs
+         */
+        public int size() {
+            return x.length;
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  whether the epoch had enough ranges to be solved
+         */
+        public boolean isSolved(int e) {
+            return iterations[e] > 0;
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  east or first coordinate in metres
+         */
+        public double getX(int e) {
+            return x[e];
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  north or second coordinate in metres
+         */
+        public double getY(int e) {
+            return y[e];
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  height in metres, the fixed one in two dimensions
+         */
+        public double getZ(int e) {
+            return z[e];
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  weighted root mean square of the range residuals in metres
+         */
+        public double getRms(int e) {
+            return rms[e];
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  number of ranges of the epoch
+         */
+        public int getBeacons(int e) {
+            return beacons[e];
+        }
+
+        /**
+         * @param   e   number of the epoch
+         * @return  number of iterations, -1 if the epoch was not solved
+         */
+        public int getIterations(int e) {
+            return iterations[e];
+        }
+    }
+
+    /**
+     * Solves a run of epochs, halved until it holds at most {@link #CHUNK} epochs.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long   serialVersionUID = 1L;
+
+        private final Epochs        epochs;
+        private final Solution      solution;
+        private final int           from;
+        private final int           to;
+
+        Task(Epochs epochs, Solution solution, int from, int to) {
+            this.epochs = epochs;
+            this.solution = solution;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                Workspace workspace = new Workspace(epochs.getMaxBeacons());
+                for (int e = from; e < to; e++) {
+                    solve(epochs, e, workspace, solution);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(epochs, solution, from, mid), new Task(epochs, solution, mid, to));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package de.hsmainz.gi.beaconrangeevaluation.query;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.batch.AggregationIndex;
+import de.hsmainz.gi.beaconrangeevaluation.batch.BatchRunner;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileAnalyzer;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFilter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.report.Report;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A narrow question to a set of logs, like "uuid X, major 3, nominal distance
+ * 5 m, between 10:00 and 10:30, across all phones".
+ *
+ * Criteria left unset accept everything. The query is a {@link LogFilter}
+ * pushed down into reading the logs, see
+ * {@link LogFiles#read(Path, Charset, de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler, LogFilter, Path)}:
+ * logs of other phones or distances, other beacons and measurements outside
+ * the time window are skipped without being materialised, what matches
+ * streams straight into the statistics of a {@link FileAnalyzer}.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class LogQuery implements LogFilter {
+
+    private static final Logger     L = Logger.getLogger(LogQuery.class);
+
+    // uuid, major, minor; null or "*" for any
+    private final List<String[]>    beacons = new ArrayList<>();
+    private double                  minDistance = Double.NEGATIVE_INFINITY;
+    private double                  maxDistance = Double.POSITIVE_INFINITY;
+    private String                  manufacturer;
+    private String                  model;
+    private long                    from = Long.MIN_VALUE;
+    private long                    to = Long.MAX_VALUE;
+
+
+    /**
+     * Default Constructor for a LogQuery accepting everything
+     */
+    public LogQuery() {
+    }
+
+    /**
+     * Accept the beacons matching {@code spec}, in addition to those added
+     * before. Major and minor may be left out or given as {@code *} to match
+     * all, so may the uuid. Numbers match with and without leading zeros,
+     * uuids regardless of case.
+     *
+     * @param   spec    comma separated {@code uuid[:major[:minor]]}
+     */
+    public void addBeacons(String spec) {
+        for (String pattern : spec.split(",")) {
+            String[] parts = pattern.trim().split(":");
+            if (parts.length > 3 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("expected uuid[:major[:minor]], got " + pattern);
+            }
+            beacons.add(new String[] {
+                parts[0], parts.length > 1 ? parts[1] : null, parts.length > 2 ? parts[2] : null
+            });
+        }
+    }
+
+    /**
+     * @param   min the smallest nominal distance of a log to accept, inclusive
+     * @param   max the largest nominal distance of a log to accept, inclusive
+     */
+    public void setDistance(double min, double max) {
+        if (min > max) {
+            throw new IllegalArgumentException("empty distance range " + min + " to " + max);
+        }
+        this.minDistance = min;
+        this.maxDistance = max;
+    }
+
+    /**
+     * @param   manufacturer    the manufacturer of the phones to accept, regardless of case; {@code null} for any
+     */
+    public void setManufacturer(String manufacturer) {
+        this.manufacturer = manufacturer;
+    }
+
+    /**
+     * @param   model   the model of the phones to accept, regardless of case; {@code null} for any
+     */
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /**
+     * @param   from    the first timestamp to accept in milliseconds since the epoch, inclusive
+     * @param   to      the end of the time window in milliseconds since the epoch, exclusive
+     */
+    public void setTime(long from, long to) {
+        if (from >= to) {
+            throw new IllegalArgumentException("empty time window " + from + " to " + to);
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean acceptsModel(BeaconLog.AndroidModel model) {
+        if (manufacturer == null && this.model == null) {
+            return true;
+        }
+        return model != null
+            && (manufacturer == null || manufacturer.equalsIgnoreCase(model.getmManufacturer()))
+            && (this.model == null || this.model.equalsIgnoreCase(model.getmModel()));
+    }
+
+    @Override
+    public boolean acceptsDistance(double distance) {
+        return distance >= minDistance && distance <= maxDistance;
+    }
+
+    @Override
+    public boolean acceptsBeacon(BeaconLogObject.Identifier beaconId) {
+        if (beacons.isEmpty()) {
+            return true;
+        }
+        if (beaconId == null) {
+            return false;
+        }
+        for (String[] pattern : beacons) {
+            if (matches(pattern[0], beaconId.getUuid(), false)
+                    && matches(pattern[1], beaconId.getMajor(), true)
+                    && matches(pattern[2], beaconId.getMinor(), true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean acceptsTimestamp(long timestamp) {
+        return timestamp >= from && timestamp < to;
+    }
+
+    /**
+     * @return  whether {@code value} matches {@code pattern}: any value for
+     *          {@code null} or {@code *}, else equal regardless of case, or
+     *          the same number with or without leading zeros
+     */
+    private static boolean matches(String pattern, String value, boolean number) {
+        if (pattern == null || pattern.equals("*")) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        if (pattern.equalsIgnoreCase(value)) {
+            return true;
+        }
+        if (!number) {
+            return false;
+        }
+        try {
+            return Long.parseLong(pattern) == Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return  whether the query accepts everything
+     */
+    public boolean isEmpty() {
+        return beacons.isEmpty() && minDistance == Double.NEGATIVE_INFINITY && maxDistance == Double.POSITIVE_INFINITY
+            && manufacturer == null && model == null && from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+    }
+
+    /**
+     * Parse a point in time: milliseconds since the epoch, an ISO date and
+     * time with offset like {@code 2014-11-14T10:00:00+01:00}, or without one
+     * in the zone of this machine like {@code 2014-11-14T10:00}.
+     *
+     * @param   spec    the point in time
+     * @return  milliseconds since the epoch
+     */
+    public static long parseTime(String spec) {
+        if (spec.matches("-?\\d+")) {
+            return Long.parseLong(spec);
+        }
+        try {
+            return OffsetDateTime.parse(spec).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            try {
+                return Instant.parse(spec).toEpochMilli();
+            } catch (DateTimeParseException ex2) {
+                return LocalDateTime.parse(spec).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+        }
+    }
+
+    /**
+     * The query given on the command line by
+     * <pre>
+     * [--beacons uuid[:major[:minor]],...] [--uuid uuid] [--major n] [--minor n]
+     * [--distance m | --min-distance m --max-distance m] [--manufacturer name] [--model name]
+     * [--from time] [--to time]
+     * </pre>
+     * {@code --uuid}, {@code --major} and {@code --minor} add one more beacon
+     * pattern, each defaulting to any. For times see {@link #parseTime(String)}.
+     *
+     * @param   arguments   the command line
+     * @return  the query, {@code null} if no criterion was given
+     */
+    public static LogQuery parse(Arguments arguments) {
+        LogQuery query = new LogQuery();
+        String spec = arguments.get("beacons", null);
+        if (spec != null) {
+            query.addBeacons(spec);
+        }
+        if (arguments.has("uuid") || arguments.has("major") || arguments.has("minor")) {
+            query.addBeacons(arguments.get("uuid", "*") + ":" + arguments.get("major", "*") + ":"
+                + arguments.get("minor", "*"));
+        }
+        if (arguments.has("distance")) {
+            double distance = arguments.getDouble("distance", 0.0);
+            query.setDistance(distance, distance);
+        } else if (arguments.has("min-distance") || arguments.has("max-distance")) {
+            query.setDistance(arguments.getDouble("min-distance", Double.NEGATIVE_INFINITY),
+                arguments.getDouble("max-distance", Double.POSITIVE_INFINITY));
+        }
+        query.setManufacturer(arguments.get("manufacturer", null));
+        query.setModel(arguments.get("model", null));
+        if (arguments.has("from") || arguments.has("to")) {
+            String fromSpec = arguments.get("from", null);
+            String toSpec = arguments.get("to", null);
+            query.setTime(fromSpec == null ? Long.MIN_VALUE : parseTime(fromSpec),
+                toSpec == null ? Long.MAX_VALUE : parseTime(toSpec));
+        }
+        return query.isEmpty() ? null : query;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LogQuery[");
+        for (String[] pattern : beacons) {
+            sb.append("beacon=").append(pattern[0]).append(':').append(pattern[1] == null ? "*" : pattern[1])
+                .append(':').append(pattern[2] == null ? "*" : pattern[2]).append(", ");
+        }
+        if (minDistance != Double.NEGATIVE_INFINITY || maxDistance != Double.POSITIVE_INFINITY) {
+            sb.append("distance=").append(minDistance).append("..").append(maxDistance).append(", ");
+        }
+        if (manufacturer != null) {
+            sb.append("manufacturer=").append(manufacturer).append(", ");
+        }
+        if (model != null) {
+            sb.append("model=").append(model).append(", ");
+        }
+        if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+            sb.append("time=").append(from).append("..").append(to).append(", ");
+        }
+        if (sb.charAt(sb.length() - 1) == ' ') {
+            sb.setLength(sb.length() - 2);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Entry point of the {@code query} command: the statistics of everything
+     * matching the query, per file and merged across files and phones.
+     *
+     * <pre>
+     * query [--threads n] [--output file.xlsx|.csv|.xls] [--sheets] [--encoding charset] [--index dir]
+     *       [--histograms] [--rssi-bins lin|log:lower:upper:bins] [--distance-bins lin|log:lower:upper:bins]
+     *       criteria... file|dir|glob...
+     * </pre>
+     *
+     * For the criteria see {@link #parse(Arguments)}. Files not matching at
+     * all are left out of the report, the aggregation sheet merges each
+     * beacon at each distance across all files, see {@link AggregationIndex},
+     * with {@code --histograms} their distributions as in {@link BatchRunner#main(String...)}.
+     *
+     * @param   args    the arguments following {@code query}
+     * @throws  IOException             if the files could not be listed or the report not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args, "sheets", "histograms");
+        LogQuery    query = parse(arguments);
+        if (query == null) {
+            throw new IllegalArgumentException("no query criteria given");
+        }
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        if (files.isEmpty()) {
+            L.warn("no log files given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        boolean     sheets = arguments.has("sheets");
+        String      indexDir = arguments.get("index", null);
+        File        output = new File(arguments.get("output",
+                new File(LogFiles.location(files.get(0)).toAbsolutePath().getParent().toFile(), "query.xlsx").getPath()));
+
+        long start = System.currentTimeMillis();
+        int matched;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (Report report = new Report(ReportSinks.open(output), sheets, new AggregationIndex())) {
+            FileAnalyzer analyzer = new FileAnalyzer(encoding, sheets);
+            analyzer.setPool(pool);
+            analyzer.setFilter(query, indexDir == null ? null : Paths.get(indexDir));
+            if (arguments.has("histograms") || arguments.has("rssi-bins") || arguments.has("distance-bins")) {
+                analyzer.setHistograms(Histogram.parse(arguments.get("rssi-bins", FileAnalyzer.DEFAULT_RSSI_BINS)),
+                    Histogram.parse(arguments.get("distance-bins", FileAnalyzer.DEFAULT_DISTANCE_BINS)));
+            }
+            matched = new BatchRunner(analyzer, threads).run(files, report);
+        } finally {
+            pool.shutdown();
+        }
+        L.info(query + " matched " + matched + "/" + files.size() + " files in "
+            + (System.currentTimeMillis() - start) + "ms, report written to " + output);
+    }
+}
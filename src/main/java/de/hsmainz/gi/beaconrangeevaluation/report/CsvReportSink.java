@@ -0,0 +1,130 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * {@link ReportSink} writing every sheet to its own CSV file.
+ *
+ * The sheet at position 0 goes to the file given, every other sheet to a
+ * file next to it named {@code <base>_<sheet>.csv}. Only the current row is
+ * kept in memory and sheets have no row limit.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class CsvReportSink implements ReportSink {
+
+    private static final char   SEPARATOR = ',';
+
+    private final File          output;
+    private final String        base;
+
+    private Writer              out;
+    private String[]            cells = new String[8];
+    private int                 width;
+    private int                 row = -1;
+
+
+    /**
+     * Default Constructor for a CsvReportSink
+     *
+     * @param   output  the file to write the first sheet to
+     */
+    public CsvReportSink(File output) {
+        this.output = output;
+        String name = output.getName();
+        this.base = name.toLowerCase().endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    @Override
+    public void beginSheet(String name, int position) throws IOException {
+        endSheet();
+        File file = position == 0
+            ? output
+            : new File(output.getAbsoluteFile().getParentFile(), base + "_" + name.replaceAll("[^\\w.()\\- ]", "_") + ".csv");
+        out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        row = -1;
+    }
+
+    @Override
+    public void beginRow(int row) throws IOException {
+        // rows not written are empty lines
+        for (int r = this.row + 1; r < row; r++) {
+            out.write('\n');
+        }
+        this.row = row;
+        width = 0;
+    }
+
+    @Override
+    public void text(int col, String value) {
+        set(col, value == null ? null : quote(value));
+    }
+
+    @Override
+    public void number(int col, double value) {
+        set(col, Double.isNaN(value) || Double.isInfinite(value) ? null : Double.toString(value));
+    }
+
+    @Override
+    public void integer(int col, long value) {
+        set(col, Long.toString(value));
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        for (int c = 0; c < width; c++) {
+            if (c > 0) {
+                out.write(SEPARATOR);
+            }
+            if (cells[c] != null) {
+                out.write(cells[c]);
+            }
+        }
+        out.write('\n');
+        Arrays.fill(cells, 0, width, null);
+    }
+
+    @Override
+    public void endSheet() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    @Override
+    public int getMaxRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getMaxColumns() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endSheet();
+    }
+
+    private void set(int col, String value) {
+        if (col >= cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(col + 1, cells.length << 1));
+        }
+        cells[col] = value;
+        width = Math.max(width, col + 1);
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(SEPARATOR) < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
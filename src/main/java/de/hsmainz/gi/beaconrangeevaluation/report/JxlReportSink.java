@@ -0,0 +1,116 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import jxl.Workbook;
+import jxl.write.*;
+import jxl.write.Number;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link ReportSink} writing a classic Excel workbook ({@code .xls}) with jxl.
+ *
+ * jxl keeps every cell in memory until the workbook is closed and a sheet
+ * can not hold more than 65,536 rows and 256 columns, use
+ * {@link XlsxReportSink} or {@link CsvReportSink} for large reports.
+ *
+ * @author  KekS, Martin Saufaus
+ */
+public class JxlReportSink implements ReportSink {
+
+    private static final int            MAX_ROWS = 65_536;
+    private static final int            MAX_COLUMNS = 256;
+
+    private final WritableWorkbook      workbook;
+    private final WritableCellFormat    textformat;
+    private final WritableCellFormat    floatFormat;
+
+    private WritableSheet               sheet;
+    private int                         row;
+
+
+    /**
+     * Default Constructor for a JxlReportSink
+     *
+     * @param   output  the file to write the workbook to
+     * @throws  IOException if the workbook could not be created
+     */
+    public JxlReportSink(File output) throws IOException {
+        this.workbook = Workbook.createWorkbook(output);
+
+        // Create cell formats
+        WritableFont arial12font = new WritableFont(WritableFont.ARIAL, 12);
+        textformat = new WritableCellFormat(arial12font);                           // Text
+        NumberFormat fivedps = new NumberFormat("#.#####");
+        floatFormat = new WritableCellFormat(fivedps);                              // Numbers
+    }
+
+    @Override
+    public void beginSheet(String name, int position) {
+        sheet = workbook.createSheet(name, position);
+    }
+
+    @Override
+    public void beginRow(int row) {
+        this.row = row;
+    }
+
+    @Override
+    public void text(int col, String value) throws IOException {
+        if (value != null) {
+            add(new Label(col, row, value, textformat));
+        }
+    }
+
+    @Override
+    public void number(int col, double value) throws IOException {
+        add(new Number(col, row, value, floatFormat));
+    }
+
+    @Override
+    public void integer(int col, long value) throws IOException {
+        add(new Number(col, row, value));
+    }
+
+    @Override
+    public void endRow() {
+    }
+
+    @Override
+    public void endSheet() {
+        sheet = null;
+    }
+
+    @Override
+    public int getMaxRows() {
+        return MAX_ROWS;
+    }
+
+    @Override
+    public int getMaxColumns() {
+        return MAX_COLUMNS;
+    }
+
+    /**
+     * Compile and save the workbook.
+     *
+     * @throws  IOException if the workbook could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            workbook.write();
+            workbook.close();
+        } catch (WriteException e) {
+            throw new IOException("Writing the woorkbook failed. Check your rights!", e);
+        }
+    }
+
+    private void add(WritableCell cell) throws IOException {
+        try {
+            sheet.addCell(cell);
+        } catch (WriteException e) {
+            throw new IOException("Writing cell " + cell.getColumn() + "/" + cell.getRow() + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import de.hsmainz.gi.beaconrangeevaluation.batch.AggregationIndex;
+import de.hsmainz.gi.beaconrangeevaluation.batch.FileResult;
+import de.hsmainz.gi.beaconrangeevaluation.calibration.CalibrationTable;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+import de.hsmainz.gi.beaconrangeevaluation.stats.Histogram;
+import de.hsmainz.gi.beaconrangeevaluation.stats.KalmanFilter;
+import de.hsmainz.gi.beaconrangeevaluation.stats.SlidingWindow;
+import de.hsmainz.gi.beaconrangeevaluation.stats.StreamingStatistics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Report with one sheet of observations per log file and the
+ * "Zusammenfassung" summary sheet holding the statistics of every beacon,
+ * optionally followed by the "Aggregiert" sheet with one row per beacon,
+ * distance and phone merged across all files. With a rolling window set the
+ * observation sheets get columns of statistics over the most recent
+ * observations of each beacon, see {@link #setRollingWindow(int, long)}, with
+ * a filter set they get the filtered RSSI and the distance derived from it
+ * next to the observations, see {@link #setRssiFilter(KalmanFilter, CalibrationTable)}.
+ * If the files come with histograms the summary gets a block of their
+ * counts below the statistics and the aggregation is followed by the
+ * "Histogramme" sheet listing the merged histograms bin by bin, one row each.
+ *
+ * Observations are streamed to the {@link ReportSink} as soon as a file is
+ * added, only the summary (one small entry per beacon) is kept until
+ * {@link #close()}. Sheets longer than the sink allows are continued on
+ * further sheets, summaries wider than the sink allows are continued below.
+ *
+ * Not thread safe, files have to be added by a single writer.
+ *
+ * @author  KekS, Martin Saufaus
+ */
+public class Report implements Closeable {
+
+    /** name of the summary sheet */
+    public static final String          SUMMARY = "Zusammenfassung";
+
+    private static final String[]       SUMMARY_LABELS = {
+        "UUID", "Major", "Minor", "# der Messungen", "Mittelwert", "Stdabw.", "Min", "Max",
+        "Median", "5%-Quantil", "95%-Quantil"
+    };
+
+    /** label of the row added to the summary if outliers were filtered */
+    private static final String         REJECTED_LABEL = "# verworfen";
+
+    /** name of the sheet with the statistics merged across files */
+    public static final String          AGGREGATION = "Aggregiert";
+
+    private static final String[]       AGGREGATION_LABELS = {
+        "UUID", "Major", "Minor", "Distanz [m]", "Hersteller", "Modell", "Build", "Android Ver.",
+        "# der Dateien", "# der Messungen", "Mittelwert", "Stdabw.", "Min", "Max",
+        "Median", "5%-Quantil", "95%-Quantil"
+    };
+
+    /** name of the sheet with the histograms merged across files */
+    public static final String          HISTOGRAMS = "Histogramme";
+
+    private static final String[]       HISTOGRAM_LABELS = {
+        "UUID", "Major", "Minor", "Distanz [m]", "Hersteller", "Modell", "Build", "Android Ver.",
+        "Messwert", "von", "bis", "Anzahl"
+    };
+
+    private static final String         RSSI_LABEL = "RSSI [dBm]";
+    private static final String         DISTANCE_LABEL = "Distanz [m]";
+
+    /** first column of the rolling statistics, right of the side columns */
+    private static final int            ROLLING_COLUMN = 8;
+
+    private static final String[]       ROLLING_LABELS = {
+        "gl. Mittelwert Distanz [m]", "gl. Median Distanz [m]", "gl. Stdabw. Distanz [m]",
+        "gl. Min Distanz [m]", "gl. Max Distanz [m]",
+        "gl. Mittelwert RSSI [dBm]", "gl. Median RSSI [dBm]", "gl. Stdabw. RSSI [dBm]"
+    };
+
+    /** sheet names are limited to 31 characters by Excel */
+    private static final int            MAX_SHEET_NAME = 31;
+
+    private final ReportSink            sink;
+    private final boolean               fileSheets;
+    private final AggregationIndex      aggregation;
+    private final boolean               aggregateFiles;
+    private final List<SummaryColumn>   summary = new ArrayList<>();
+    private final Set<String>           sheetNames = new HashSet<>();
+
+    private int                         position = 1;
+    private boolean                     rejected;
+
+    // bins of the histograms in the summary, null if the files have none
+    private Histogram                   rssiBins;
+    private Histogram                   distanceBins;
+
+    // current observation sheet
+    private String                      sheetName;
+    private int                         part;
+    private int                         offset;
+    private int                         currentRow;
+    private final TreeMap<Integer, String[]> side = new TreeMap<>();
+
+    // rolling statistics of the current beacon, null if not wanted
+    private SlidingWindow               distanceWindow;
+    private SlidingWindow               rssiWindow;
+    private boolean                     rollingHeader;
+    private boolean                     rollingValues;
+
+    // filtered RSSI of the current beacon, null if not wanted
+    private KalmanFilter                rssiFilter;
+    private CalibrationTable            calibration;
+
+
+    /**
+     * Default Constructor for a Report
+     *
+     * @param   sink        the {@link ReportSink} to write to
+     * @param   fileSheets  whether or not to add a sheet with all observations for every file
+     */
+    public Report(ReportSink sink, boolean fileSheets) {
+        this(sink, fileSheets, null);
+    }
+
+    /**
+     * Constructor for a Report with an additional sheet of the statistics
+     * merged across files.
+     *
+     * @param   sink        the {@link ReportSink} to write to
+     * @param   fileSheets  whether or not to add a sheet with all observations for every file
+     * @param   aggregation the {@link AggregationIndex} to add all files to, {@code null} for none
+     */
+    public Report(ReportSink sink, boolean fileSheets, AggregationIndex aggregation) {
+        this(sink, fileSheets, aggregation, true);
+    }
+
+    /**
+     * Constructor for a Report with an additional sheet of the statistics
+     * merged across files, possibly merged before.
+     *
+     * @param   sink            the {@link ReportSink} to write to
+     * @param   fileSheets      whether or not to add a sheet with all observations for every file
+     * @param   aggregation     the {@link AggregationIndex} to write, {@code null} for none
+     * @param   aggregateFiles  whether or not to add the files of the report to {@code aggregation},
+     *                          {@code false} if it already holds them
+     */
+    public Report(ReportSink sink, boolean fileSheets, AggregationIndex aggregation, boolean aggregateFiles) {
+        this.sink = sink;
+        this.fileSheets = fileSheets;
+        this.aggregation = aggregation;
+        this.aggregateFiles = aggregateFiles;
+        sheetNames.add(SUMMARY.toLowerCase());
+        if (aggregation != null) {
+            sheetNames.add(AGGREGATION.toLowerCase());
+            sheetNames.add(HISTOGRAMS.toLowerCase());
+        }
+    }
+
+    /**
+     * Add rolling statistics of distance and RSSI to the observation sheets.
+     * Every observation gets mean, median, standard deviation, min and max of
+     * the distance and mean, median and standard deviation of the RSSI over
+     * the observations of the same beacon within the window ending at it.
+     *
+     * @param   samples the maximum number of observations in the window, 0 for no limit
+     * @param   millis  the maximum age of an observation in the window in milliseconds, 0 for no limit
+     */
+    public void setRollingWindow(int samples, long millis) {
+        this.distanceWindow = new SlidingWindow(samples, millis);
+        this.rssiWindow = new SlidingWindow(samples, millis);
+    }
+
+    /**
+     * Add the RSSI filtered by {@code filter} and the distance derived from it
+     * to the observation sheets. The filter starts anew for every beacon.
+     *
+     * @param   filter      the filter to run over the RSSI of each beacon
+     * @param   calibration the path loss parameters to derive the distance with,
+     *                      {@code null} or phones without an entry use {@link CalibrationTable#FREE_SPACE}
+     */
+    public void setRssiFilter(KalmanFilter filter, CalibrationTable calibration) {
+        this.rssiFilter = filter;
+        this.calibration = calibration;
+    }
+
+    /**
+     * Add the observations and statistics of one file.
+     *
+     * @param   result  the {@link FileResult} to add
+     * @throws  IOException if the observations could not be written
+     */
+    public void addFile(FileResult result) throws IOException {
+        List<BeaconLogObject>       blist = result.getBeaconLog().getLoggedBeacons();
+        List<StreamingStatistics>   stats = result.getStats();
+        long[]                      rejected = result.getRejected();
+        List<Histogram>             rssi = result.getRssiHistograms();
+        List<Histogram>             distance = result.getDistanceHistograms();
+
+        for (int i = 0; i < stats.size(); i++) {
+            if (stats.get(i).getN() > 0) {
+                summary.add(new SummaryColumn(blist.get(i).getIdentifier(), stats.get(i),
+                    rejected != null ? rejected[i] : -1,
+                    rssi != null ? rssi.get(i) : null, distance != null ? distance.get(i) : null));
+            }
+        }
+        if (rssiBins == null && rssi != null && !rssi.isEmpty()) {
+            rssiBins = rssi.get(0);
+            distanceBins = distance.get(0);
+        }
+        if (rejected != null) {
+            this.rejected = true;
+        }
+
+        if (aggregation != null && aggregateFiles) {
+            aggregation.add(result);
+        }
+
+        if (fileSheets) {
+            addFileSheet(result);
+        }
+    }
+
+    private void addFileSheet(FileResult result) throws IOException {
+        BeaconLog               bLog = result.getBeaconLog();
+        List<BeaconLogObject>   blist = bLog.getLoggedBeacons();
+        String                  name = result.getFile().getFileName().toString();
+        BeaconLog.AndroidModel  model = bLog.getModel() != null ? bLog.getModel() : new BeaconLog.AndroidModel();
+
+        sheetName = uniqueSheetName(name.length() > 6 ? name.substring(6) : name);
+        part = 1;
+        offset = 0;
+        sink.beginSheet(sheetName, position++);
+
+        // Header
+        side.put(0, new String[] {"Hersteller:", model.getmManufacturer() + " / " + model.getmModel()});
+        side.put(1, new String[] {"Android Ver.:", model.getmVersion()});
+
+        // Observations
+        int row = 0;
+        for (int i = 0; i < blist.size(); i++) {
+            MeasurementSeries measurements = blist.get(i).getSeries();
+
+            if (measurements.size() > 0) {
+                // Details for beacon
+                side.put(row + 2, new String[] {"Beacon Major/Minor:", blist.get(i).getID()});
+
+                // Header
+                beginRow(row);
+                sink.text(0, "Zeit");
+                sink.text(1, "Distanz [m]");
+                sink.text(2, "RSSI [dBm]");
+                sink.text(3, "txPower [dBm]");
+                if (rssiFilter != null) {
+                    sink.text(4, "gef. RSSI [dBm]");
+                    sink.text(5, "gef. Distanz [m]");
+                }
+                rollingHeader = distanceWindow != null;
+                endRow();
+
+                if (distanceWindow != null) {
+                    distanceWindow.clear();
+                    rssiWindow.clear();
+                }
+                CalibrationTable.Entry pathLoss = null;
+                if (rssiFilter != null) {
+                    rssiFilter.reset();
+                    pathLoss = calibration != null ? calibration.get(model, blist.get(i).getIdentifier()) : null;
+                    if (pathLoss == null) {
+                        pathLoss = CalibrationTable.FREE_SPACE;
+                    }
+                }
+                for (int j = 0; j < measurements.size(); j++) {
+                    beginRow(j + row + 1);
+                    sink.number(1, measurements.getCalcDistance(j));    // Distance
+                    sink.number(2, measurements.getRssi(j));            // RSSI
+                    sink.number(3, measurements.getTxPower(j));         // txPower
+                    if (rssiFilter != null) {
+                        double rssi = rssiFilter.filter(measurements.getTimestamp(j), measurements.getRssi(j));
+                        sink.number(4, rssi);                                           // filtered RSSI
+                        sink.number(5, pathLoss.distance(rssi, measurements.getTxPower(j))); // its distance
+                    }
+                    if (distanceWindow != null) {
+                        distanceWindow.add(measurements.getTimestamp(j), measurements.getCalcDistance(j));
+                        rssiWindow.add(measurements.getTimestamp(j), measurements.getRssi(j));
+                        rollingValues = true;
+                    }
+                    endRow();
+                }
+            }
+
+            // Padding between multiple beacons in one .json
+            row += measurements.size() + 2;
+        }
+        beginRow(Integer.MAX_VALUE);
+        sink.endSheet();
+    }
+
+    /**
+     * Start row {@code row} of the current observation sheet. Pending rows of
+     * the side columns are written first, a new sheet is started once the
+     * sink's row limit is reached. {@link Integer#MAX_VALUE} only writes the
+     * pending rows.
+     */
+    private void beginRow(int row) throws IOException {
+        while (!side.isEmpty() && side.firstKey() < row) {
+            physicalRow(side.firstKey());
+            endRow();
+        }
+        if (row != Integer.MAX_VALUE) {
+            physicalRow(row);
+        }
+    }
+
+    /**
+     * Finish the current row of the observation sheet, side columns and the
+     * rolling statistics come last as cells have to be written in column order.
+     */
+    private void endRow() throws IOException {
+        String[] cells = side.remove(currentRow);
+        if (cells != null) {
+            sink.text(6, cells[0]);
+            sink.text(7, cells[1]);
+        }
+        if (rollingHeader) {
+            for (int c = 0; c < ROLLING_LABELS.length; c++) {
+                sink.text(ROLLING_COLUMN + c, ROLLING_LABELS[c]);
+            }
+            rollingHeader = false;
+        } else if (rollingValues) {
+            sink.number(ROLLING_COLUMN, distanceWindow.getMean());
+            sink.number(ROLLING_COLUMN + 1, distanceWindow.getMedian());
+            sink.number(ROLLING_COLUMN + 2, distanceWindow.getStandardDeviation());
+            sink.number(ROLLING_COLUMN + 3, distanceWindow.getMin());
+            sink.number(ROLLING_COLUMN + 4, distanceWindow.getMax());
+            sink.number(ROLLING_COLUMN + 5, rssiWindow.getMean());
+            sink.number(ROLLING_COLUMN + 6, rssiWindow.getMedian());
+            sink.number(ROLLING_COLUMN + 7, rssiWindow.getStandardDeviation());
+            rollingValues = false;
+        }
+        sink.endRow();
+    }
+
+    private void physicalRow(int row) throws IOException {
+        currentRow = row;
+        if (row - offset >= sink.getMaxRows()) {
+            sink.endSheet();
+            sink.beginSheet(uniqueSheetName(sheetName + " (" + ++part + ")"), position++);
+            offset = row;
+        }
+        sink.beginRow(row - offset);
+    }
+
+    private String uniqueSheetName(String name) {
+        String cleaned = name.replaceAll("[\\[\\]:*?/\\\\]", "_");
+        String candidate = cleaned.length() > MAX_SHEET_NAME ? cleaned.substring(0, MAX_SHEET_NAME) : cleaned;
+        for (int i = 2; !sheetNames.add(candidate.toLowerCase()); i++) {
+            String suffix = "~" + i;
+            candidate = (cleaned.length() > MAX_SHEET_NAME - suffix.length()
+                ? cleaned.substring(0, MAX_SHEET_NAME - suffix.length())
+                : cleaned) + suffix;
+        }
+        return candidate;
+    }
+
+    /**
+     * Write the summary sheet, the aggregation sheet if any and close the sink.
+     *
+     * @throws  IOException if the report could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeSummary();
+            if (aggregation != null) {
+                writeAggregation();
+                if (rssiBins != null) {
+                    writeHistograms();
+                }
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    private void writeSummary() throws IOException {
+        sink.beginSheet(SUMMARY, 0);
+        List<String> labels = new ArrayList<>(Arrays.asList(SUMMARY_LABELS));
+        if (rejected) {
+            labels.add(REJECTED_LABEL);
+        }
+        int statistics = labels.size();
+        if (rssiBins != null) {
+            addBinLabels(labels, RSSI_LABEL, rssiBins);
+            addBinLabels(labels, DISTANCE_LABEL, distanceBins);
+        }
+        int perBlock = Math.max(1, sink.getMaxColumns() - 1);
+        int blocks = Math.max(1, (summary.size() + perBlock - 1) / perBlock);
+        for (int block = 0; block < blocks; block++) {
+            int sRow = block * (labels.size() + 1);
+            int from = block * perBlock;
+            int to = Math.min(summary.size(), from + perBlock);
+            for (int r = 0; r < labels.size(); r++) {
+                sink.beginRow(sRow + r);
+                sink.text(0, labels.get(r));
+                for (int i = from; i < to; i++) {
+                    if (r < statistics) {
+                        summary.get(i).write(sink, 1 + i - from, r);
+                    } else {
+                        summary.get(i).writeBin(sink, 1 + i - from, r - statistics);
+                    }
+                }
+                sink.endRow();
+            }
+        }
+        sink.endSheet();
+    }
+
+    /**
+     * Labels of the under- and overflow and every bin of {@code bins}, in the
+     * order of {@link SummaryColumn#writeBin(ReportSink, int, int)}.
+     */
+    private static void addBinLabels(List<String> labels, String quantity, Histogram bins) {
+        labels.add(quantity + " < " + bound(bins.getLowerBound(0)));
+        for (int b = 0; b < bins.getBins(); b++) {
+            labels.add(quantity + " [" + bound(bins.getLowerBound(b)) + "; " + bound(bins.getUpperBound(b)) + ")");
+        }
+        labels.add(quantity + " >= " + bound(bins.getUpperBound(bins.getBins() - 1)));
+    }
+
+    /**
+     * @return  {@code value} rounded to four significant digits, log bins have odd bounds
+     */
+    private static String bound(double value) {
+        return new BigDecimal(value).round(new MathContext(4)).stripTrailingZeros().toPlainString();
+    }
+
+    private void writeAggregation() throws IOException {
+        sheetName = AGGREGATION;
+        part = 1;
+        offset = 0;
+        sink.beginSheet(AGGREGATION, position++);
+
+        beginRow(0);
+        for (int c = 0; c < AGGREGATION_LABELS.length; c++) {
+            sink.text(c, AGGREGATION_LABELS[c]);
+        }
+        endRow();
+
+        int row = 1;
+        for (Map.Entry<AggregationIndex.Key, AggregationIndex.Group> e : aggregation.sorted()) {
+            AggregationIndex.Key    key = e.getKey();
+            StreamingStatistics     stats = e.getValue().getStats();
+            beginRow(row++);
+            sink.text(0, key.getIdentifier().getUuid());
+            sink.text(1, key.getIdentifier().getMajor());
+            sink.text(2, key.getIdentifier().getMinor());
+            sink.number(3, key.getDistance());
+            sink.text(4, key.getManufacturer());
+            sink.text(5, key.getModel());
+            sink.text(6, key.getBuildNumber());
+            sink.text(7, key.getVersion());
+            sink.integer(8, e.getValue().getFiles());
+            sink.integer(9, stats.getN());
+            sink.number(10, stats.getMean());
+            sink.number(11, stats.getStandardDeviation());
+            sink.number(12, stats.getMin());
+            sink.number(13, stats.getMax());
+            sink.number(14, stats.getMedian());
+            sink.number(15, stats.getPercentile(5));
+            sink.number(16, stats.getPercentile(95));
+            endRow();
+        }
+        sink.endSheet();
+    }
+
+    private void writeHistograms() throws IOException {
+        sheetName = HISTOGRAMS;
+        part = 1;
+        offset = 0;
+        sink.beginSheet(HISTOGRAMS, position++);
+
+        beginRow(0);
+        for (int c = 0; c < HISTOGRAM_LABELS.length; c++) {
+            sink.text(c, HISTOGRAM_LABELS[c]);
+        }
+        endRow();
+
+        int row = 1;
+        for (Map.Entry<AggregationIndex.Key, AggregationIndex.Group> e : aggregation.sorted()) {
+            Histogram rssi = e.getValue().getRssiHistogram();
+            if (rssi != null) {
+                row = writeHistogram(row, e.getKey(), RSSI_LABEL, rssi);
+                row = writeHistogram(row, e.getKey(), DISTANCE_LABEL, e.getValue().getDistanceHistogram());
+            }
+        }
+        sink.endSheet();
+    }
+
+    /**
+     * One row for the underflow, every bin and the overflow of {@code histogram},
+     * the open bounds of under- and overflow are left empty.
+     *
+     * @return  the next row
+     */
+    private int writeHistogram(int row, AggregationIndex.Key key, String quantity, Histogram histogram)
+            throws IOException {
+        for (int b = -1; b <= histogram.getBins(); b++) {
+            beginRow(row++);
+            sink.text(0, key.getIdentifier().getUuid());
+            sink.text(1, key.getIdentifier().getMajor());
+            sink.text(2, key.getIdentifier().getMinor());
+            sink.number(3, key.getDistance());
+            sink.text(4, key.getManufacturer());
+            sink.text(5, key.getModel());
+            sink.text(6, key.getBuildNumber());
+            sink.text(7, key.getVersion());
+            sink.text(8, quantity);
+            if (b < 0) {
+                sink.number(10, histogram.getLowerBound(0));
+                sink.integer(11, histogram.getUnderflow());
+            } else if (b == histogram.getBins()) {
+                sink.number(9, histogram.getUpperBound(b - 1));
+                sink.integer(11, histogram.getOverflow());
+            } else {
+                sink.number(9, histogram.getLowerBound(b));
+                sink.number(10, histogram.getUpperBound(b));
+                sink.integer(11, histogram.getCount(b));
+            }
+            endRow();
+        }
+        return row;
+    }
+
+    /**
+     * Statistics of one beacon of one file for the summary sheet.
+     */
+    private static class SummaryColumn {
+        final String    uuid;
+        final String    major;
+        final String    minor;
+        final long      n;
+        final double    mean;
+        final double    standardDeviation;
+        final double    min;
+        final double    max;
+        final double    median;
+        final double    p5;
+        final double    p95;
+        final long      rejected;
+        final Histogram rssi;
+        final Histogram distance;
+
+        SummaryColumn(BeaconLogObject.Identifier id, StreamingStatistics stats, long rejected,
+                Histogram rssi, Histogram distance) {
+            this.uuid = id.getUuid();
+            this.major = id.getMajor();
+            this.minor = id.getMinor();
+            this.n = stats.getN();
+            this.mean = stats.getMean();
+            this.standardDeviation = stats.getStandardDeviation();
+            this.min = stats.getMin();
+            this.max = stats.getMax();
+            this.median = stats.getMedian();
+            this.p5 = stats.getPercentile(5);
+            this.p95 = stats.getPercentile(95);
+            this.rejected = rejected;
+            this.rssi = rssi;
+            this.distance = distance;
+        }
+
+        void write(ReportSink sink, int sCol, int row) throws IOException {
+            switch (row) {
+                case 0:     sink.text(sCol, uuid);                      break;  // UUID
+                case 1:     sink.text(sCol, major);                     break;  // Major
+                case 2:     sink.text(sCol, minor);                     break;  // Minor
+                case 3:     sink.integer(sCol, n);                      break;  // # of measurements
+                case 4:     sink.number(sCol, mean);                    break;  // Mean value
+                case 5:     sink.number(sCol, standardDeviation);       break;  // Standard deviation
+                case 6:     sink.number(sCol, min);                     break;  // Minimum value
+                case 7:     sink.number(sCol, max);                     break;  // Maximum value
+                case 8:     sink.number(sCol, median);                  break;  // Median
+                case 9:     sink.number(sCol, p5);                      break;  // 5th percentile
+                case 10:    sink.number(sCol, p95);                     break;  // 95th percentile
+                case 11:    if (rejected >= 0) sink.integer(sCol, rejected); break;  // # of outliers
+                default:
+            }
+        }
+
+        /**
+         * @param   bin underflow, bins and overflow of the RSSI, then those of the distance
+         */
+        void writeBin(ReportSink sink, int sCol, int bin) throws IOException {
+            if (rssi == null) {
+                return;
+            }
+            int         size = rssi.getBins() + 2;
+            Histogram   histogram = bin < size ? rssi : distance;
+            int         b = (bin < size ? bin : bin - size) - 1;
+            if (b < 0) {
+                sink.integer(sCol, histogram.getUnderflow());
+            } else if (b == histogram.getBins()) {
+                sink.integer(sCol, histogram.getOverflow());
+            } else if (b < histogram.getBins()) {
+                sink.integer(sCol, histogram.getCount(b));
+            }
+        }
+    }
+}
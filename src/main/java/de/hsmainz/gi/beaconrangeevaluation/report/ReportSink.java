@@ -0,0 +1,78 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Backend a {@link Report} streams its sheets to, row by row.
+ *
+ * Sheets are written one after another, rows of a sheet and cells of a row
+ * in ascending order. Rows and cells not written stay empty. Nothing
+ * already written may be changed, so implementations can stream to disk.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public interface ReportSink extends Closeable {
+
+    /**
+     * Start a new sheet, the previous sheet is finished.
+     *
+     * @param   name        the sheet's name, unique within the report
+     * @param   position    position of the sheet within the report, 0 is the first
+     * @throws  IOException if the sheet could not be created
+     */
+    void beginSheet(String name, int position) throws IOException;
+
+    /**
+     * Start a new row of the current sheet.
+     *
+     * @param   row     index of the row, greater than the previous one
+     * @throws  IOException if the row could not be written
+     */
+    void beginRow(int row) throws IOException;
+
+    /**
+     * @param   col     column of the cell within the current row
+     * @param   value   the text to put in the cell
+     * @throws  IOException if the cell could not be written
+     */
+    void text(int col, String value) throws IOException;
+
+    /**
+     * @param   col     column of the cell within the current row
+     * @param   value   the number to put in the cell, formatted with up to five decimals
+     * @throws  IOException if the cell could not be written
+     */
+    void number(int col, double value) throws IOException;
+
+    /**
+     * @param   col     column of the cell within the current row
+     * @param   value   the whole number to put in the cell
+     * @throws  IOException if the cell could not be written
+     */
+    void integer(int col, long value) throws IOException;
+
+    /**
+     * Finish the current row.
+     *
+     * @throws  IOException if the row could not be written
+     */
+    void endRow() throws IOException;
+
+    /**
+     * Finish the current sheet.
+     *
+     * @throws  IOException if the sheet could not be written
+     */
+    void endSheet() throws IOException;
+
+    /**
+     * @return  the number of rows a single sheet may hold
+     */
+    int getMaxRows();
+
+    /**
+     * @return  the number of columns a single sheet may hold
+     */
+    int getMaxColumns();
+}
@@ -0,0 +1,34 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Factory for {@link ReportSink}s.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public final class ReportSinks {
+
+    private ReportSinks() {}
+
+    /**
+     * Open the {@link ReportSink} matching the extension of {@code output}:
+     * {@code .csv} for {@link CsvReportSink}, {@code .xls} for
+     * {@link JxlReportSink} and {@link XlsxReportSink} for everything else.
+     *
+     * @param   output  the file to write the report to
+     * @return  a new {@link ReportSink}
+     * @throws  IOException if the file could not be created
+     */
+    public static ReportSink open(File output) throws IOException {
+        String name = output.getName().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return new CsvReportSink(output);
+        }
+        if (name.endsWith(".xls")) {
+            return new JxlReportSink(output);
+        }
+        return new XlsxReportSink(output);
+    }
+}
@@ -0,0 +1,287 @@
+package de.hsmainz.gi.beaconrangeevaluation.report;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * {@link ReportSink} streaming an Office Open XML workbook ({@code .xlsx}).
+ *
+ * Every sheet is written straight into its zip entry, strings are stored
+ * inline instead of in a shared string table, so nothing but the list of
+ * sheet names is kept in memory. Sheets may hold up to 1,048,576 rows.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class XlsxReportSink implements ReportSink {
+
+    private static final int    MAX_ROWS = 1_048_576;
+    private static final int    MAX_COLUMNS = 16_384;
+
+    /** style ids as defined in {@link #STYLES} */
+    private static final int    STYLE_TEXT = 1;
+    private static final int    STYLE_FLOAT = 2;
+
+    private static final String NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String NS_R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PKG = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    private static final String STYLES =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+        + "<styleSheet xmlns=\"" + NS + "\">"
+        + "<numFmts count=\"1\"><numFmt numFmtId=\"164\" formatCode=\"#.#####\"/></numFmts>"
+        + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font><font><sz val=\"12\"/><name val=\"Arial\"/></font></fonts>"
+        + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>"
+        + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+        + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+        + "<cellXfs count=\"3\">"
+        + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+        + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>"
+        + "<xf numFmtId=\"164\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyNumberFormat=\"1\"/>"
+        + "</cellXfs>"
+        + "</styleSheet>";
+
+    private final ZipOutputStream   zip;
+    private final Writer            out;
+    private final List<Sheet>       sheets = new ArrayList<>();
+
+    private boolean                 inSheet;
+    private int                     row;
+
+
+    /**
+     * Default Constructor for a XlsxReportSink
+     *
+     * @param   output  the file to write the workbook to
+     * @throws  IOException if the file could not be created
+     */
+    public XlsxReportSink(File output) throws IOException {
+        this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+        this.out = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void beginSheet(String name, int position) throws IOException {
+        if (inSheet) {
+            endSheet();
+        }
+        Sheet sheet = new Sheet(name, position, sheets.size() + 1);
+        sheets.add(sheet);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheet.id + ".xml"));
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        out.write("<worksheet xmlns=\"" + NS + "\" xmlns:r=\"" + NS_R + "\"><sheetData>");
+        inSheet = true;
+    }
+
+    @Override
+    public void beginRow(int row) throws IOException {
+        this.row = row + 1;
+        out.write("<row r=\"");
+        out.write(Integer.toString(this.row));
+        out.write("\">");
+    }
+
+    @Override
+    public void text(int col, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        beginCell(col, STYLE_TEXT, "inlineStr");
+        out.write("<is><t xml:space=\"preserve\">");
+        escape(value);
+        out.write("</t></is></c>");
+    }
+
+    @Override
+    public void number(int col, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        beginCell(col, STYLE_FLOAT, null);
+        out.write("<v>");
+        out.write(Double.toString(value));
+        out.write("</v></c>");
+    }
+
+    @Override
+    public void integer(int col, long value) throws IOException {
+        beginCell(col, 0, null);
+        out.write("<v>");
+        out.write(Long.toString(value));
+        out.write("</v></c>");
+    }
+
+    @Override
+    public void endRow() throws IOException {
+        out.write("</row>");
+    }
+
+    @Override
+    public void endSheet() throws IOException {
+        if (!inSheet) {
+            return;
+        }
+        out.write("</sheetData></worksheet>");
+        out.flush();
+        zip.closeEntry();
+        inSheet = false;
+    }
+
+    @Override
+    public int getMaxRows() {
+        return MAX_ROWS;
+    }
+
+    @Override
+    public int getMaxColumns() {
+        return MAX_COLUMNS;
+    }
+
+    /**
+     * Finish the last sheet and write the workbook structure.
+     *
+     * @throws  IOException if the workbook could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            endSheet();
+            List<Sheet> ordered = new ArrayList<>(sheets);
+            ordered.sort(Comparator.comparingInt((Sheet s) -> s.position).thenComparingInt((s) -> s.id));
+
+            entry("[Content_Types].xml", contentTypes());
+            entry("_rels/.rels",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Relationships xmlns=\"" + NS_PKG + "\">"
+                + "<Relationship Id=\"rId1\" Type=\"" + NS_R + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+            entry("xl/workbook.xml", workbook(ordered));
+            entry("xl/_rels/workbook.xml.rels", workbookRels());
+            entry("xl/styles.xml", STYLES);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void beginCell(int col, int style, String type) throws IOException {
+        out.write("<c r=\"");
+        out.write(columnName(col));
+        out.write(Integer.toString(row));
+        out.write('"');
+        if (style != 0) {
+            out.write(" s=\"");
+            out.write(Integer.toString(style));
+            out.write('"');
+        }
+        if (type != null) {
+            out.write(" t=\"");
+            out.write(type);
+            out.write('"');
+        }
+        out.write('>');
+    }
+
+    private void escape(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<':   out.write("&lt;");      break;
+                case '>':   out.write("&gt;");      break;
+                case '&':   out.write("&amp;");     break;
+                case '"':   out.write("&quot;");    break;
+                default:
+                    if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                        out.write(' ');
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+    }
+
+    private void entry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    private String contentTypes() {
+        StringBuilder sb = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+            .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+            .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+            .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+            .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (Sheet sheet : sheets) {
+            sb.append("<Override PartName=\"/xl/worksheets/sheet").append(sheet.id)
+              .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return sb.append("</Types>").toString();
+    }
+
+    private String workbook(List<Sheet> ordered) {
+        StringBuilder sb = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<workbook xmlns=\"").append(NS).append("\" xmlns:r=\"").append(NS_R).append("\"><sheets>");
+        for (Sheet sheet : ordered) {
+            sb.append("<sheet name=\"").append(attribute(sheet.name))
+              .append("\" sheetId=\"").append(sheet.id)
+              .append("\" r:id=\"rId").append(sheet.id).append("\"/>");
+        }
+        return sb.append("</sheets></workbook>").toString();
+    }
+
+    private String workbookRels() {
+        StringBuilder sb = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<Relationships xmlns=\"").append(NS_PKG).append("\">");
+        for (Sheet sheet : sheets) {
+            sb.append("<Relationship Id=\"rId").append(sheet.id)
+              .append("\" Type=\"").append(NS_R).append("/worksheet\" Target=\"worksheets/sheet")
+              .append(sheet.id).append(".xml\"/>");
+        }
+        int styles = sheets.size() + 1;
+        sb.append("<Relationship Id=\"rId").append(styles)
+          .append("\" Type=\"").append(NS_R).append("/styles\" Target=\"styles.xml\"/>");
+        return sb.append("</Relationships>").toString();
+    }
+
+    private static String attribute(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * @param   col     zero based column index
+     * @return  the spreadsheet name of the column, A, B, ..., Z, AA, ...
+     */
+    static String columnName(int col) {
+        StringBuilder sb = new StringBuilder(3);
+        for (int c = col + 1; c > 0; c = (c - 1) / 26) {
+            sb.append((char) ('A' + (c - 1) % 26));
+        }
+        return sb.reverse().toString();
+    }
+
+    private static class Sheet {
+        final String    name;
+        final int       position;
+        final int       id;
+
+        Sheet(String name, int position, int id) {
+            this.name = name;
+            this.position = position;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Hampel filter: a value is an outlier if it is further than
+ * {@code threshold} scaled median absolute deviations from the median of the
+ * window of {@code halfWidth} values on either side of it.
+ *
+ * A value is decided once {@code halfWidth} later values arrived, the last
+ * ones of a series with the window cut short. Only the window is held, in
+ * primitive arrays allocated once. Windows whose median absolute deviation
+ * is 0, i.e. mostly the same value as is common for distances derived from
+ * whole dBm, reject nothing.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class HampelFilter extends OutlierFilter {
+
+    private final int           halfWidth;
+    private final double        threshold;
+
+    // the last 2 * halfWidth + 1 values, value n is at n % window.length
+    private final double[]      window;
+    private final double[]      scratch;
+    private long                count;
+
+
+    /**
+     * Default Constructor for a HampelFilter
+     *
+     * @param   halfWidth   number of values on either side of a value making up its window
+     * @param   threshold   number of scaled median absolute deviations from the median a value may be off
+     */
+    public HampelFilter(int halfWidth, double threshold) {
+        if (halfWidth < 1 || !(threshold > 0)) {
+            throw new IllegalArgumentException("need a positive half width and threshold, got "
+                + halfWidth + " and " + threshold);
+        }
+        this.halfWidth = halfWidth;
+        this.threshold = threshold;
+        this.window = new double[2 * halfWidth + 1];
+        this.scratch = new double[window.length];
+    }
+
+    @Override
+    public void add(double value, DoubleConsumer accepted) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        window[(int) (count % window.length)] = value;
+        long candidate = count++ - halfWidth;
+        if (candidate >= 0) {
+            decide(candidate, accepted);
+        }
+    }
+
+    @Override
+    public void finish(DoubleConsumer accepted) {
+        for (long candidate = Math.max(0, count - halfWidth); candidate < count; candidate++) {
+            decide(candidate, accepted);
+        }
+        count = 0;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        count = 0;
+    }
+
+    private void decide(long candidate, DoubleConsumer accepted) {
+        long    from = Math.max(0, candidate - halfWidth);
+        long    to = Math.min(count, candidate + halfWidth + 1);
+        int     n = (int) (to - from);
+        int     start = (int) (from % window.length);
+        for (int i = 0, j = start; i < n; i++, j = j + 1 == window.length ? 0 : j + 1) {
+            scratch[i] = window[j];
+        }
+        sort(scratch, n);
+        double median = median(scratch, n);
+        for (int i = 0; i < n; i++) {
+            scratch[i] = Math.abs(scratch[i] - median);
+        }
+        sort(scratch, n);
+        double mad = median(scratch, n);
+
+        double value = window[(int) (candidate % window.length)];
+        if (mad > 0 && Math.abs(value - median) > threshold * MAD_SCALE * mad) {
+            rejected++;
+        } else {
+            accepted.accept(value);
+        }
+    }
+
+    /**
+     * Insertion sort, faster than {@link java.util.Arrays#sort(double[], int, int)}
+     * for the few values of a window.
+     */
+    private static void sort(double[] a, int n) {
+        for (int i = 1; i < n; i++) {
+            double  v = a[i];
+            int     j = i - 1;
+            while (j >= 0 && a[j] > v) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    private static double median(double[] sorted, int n) {
+        return (n & 1) == 1 ? sorted[n >> 1] : (sorted[(n >> 1) - 1] + sorted[n >> 1]) / 2.0;
+    }
+}
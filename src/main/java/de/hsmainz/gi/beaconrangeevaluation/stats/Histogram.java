@@ -0,0 +1,310 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Histogram with a fixed number of equally wide bins, either linear or on a
+ * logarithmic scale.
+ *
+ * Only a {@code long} counter per bin and one each for the values below and
+ * above the range are kept, so memory is {@code O(bins)} no matter how many
+ * values are added. Histograms with the same bins can be combined with
+ * {@link #merge(Histogram)}, so they can be filled per thread, file or run
+ * and merged afterwards, see {@link ParallelHistogram}.
+ *
+ * Not thread safe, use one instance per thread and merge them.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Histogram implements DoubleConsumer, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean   logarithmic;
+    private final double    lower;
+    private final double    upper;
+    private final long[]    counts;
+    private long            underflow;
+    private long            overflow;
+
+    // bounds of all bins, bounds[bins] is the upper bound
+    private final double[]  bounds;
+    // bins per unit of the (logarithmic) scale, to guess the bin of a value
+    private final double    scale;
+
+
+    /**
+     * Constructor for a Histogram
+     *
+     * @param   logarithmic whether the bins are equally wide on a logarithmic scale
+     * @param   lower       lower bound of the first bin, inclusive, positive if logarithmic
+     * @param   upper       upper bound of the last bin, exclusive
+     * @param   bins        number of bins
+     */
+    private Histogram(boolean logarithmic, double lower, double upper, int bins) {
+        if (bins < 1) {
+            throw new IllegalArgumentException("need at least one bin, got " + bins);
+        }
+        if (!(lower < upper) || Double.isInfinite(lower) || Double.isInfinite(upper)) {
+            throw new IllegalArgumentException("empty or unbounded range " + lower + " to " + upper);
+        }
+        if (logarithmic && lower <= 0) {
+            throw new IllegalArgumentException("logarithmic bins need a positive lower bound, got " + lower);
+        }
+        this.logarithmic = logarithmic;
+        this.lower = lower;
+        this.upper = upper;
+        this.counts = new long[bins];
+        this.bounds = new double[bins + 1];
+        // interpolated rather than accumulated, so e.g. decades and 10^0.1 come out exact
+        double from = logarithmic ? Math.log10(lower) : lower;
+        double to = logarithmic ? Math.log10(upper) : upper;
+        for (int b = 1; b < bins; b++) {
+            double x = (from * (bins - b) + to * b) / bins;
+            bounds[b] = logarithmic ? Math.pow(10, x) : x;
+        }
+        bounds[0] = lower;
+        bounds[bins] = upper;
+        this.scale = bins / (position(upper) - position(lower));
+    }
+
+    /**
+     * @param   lower   lower bound of the first bin, inclusive
+     * @param   upper   upper bound of the last bin, exclusive
+     * @param   bins    number of bins
+     * @return  an empty histogram of {@code bins} bins equally wide
+     */
+    public static Histogram linear(double lower, double upper, int bins) {
+        return new Histogram(false, lower, upper, bins);
+    }
+
+    /**
+     * @param   lower   lower bound of the first bin, inclusive, positive
+     * @param   upper   upper bound of the last bin, exclusive
+     * @param   bins    number of bins
+     * @return  an empty histogram of {@code bins} bins whose bounds grow by the same factor
+     */
+    public static Histogram logarithmic(double lower, double upper, int bins) {
+        return new Histogram(true, lower, upper, bins);
+    }
+
+    /**
+     * Parse a histogram specification of the command line:
+     *
+     * <pre>
+     * lin:lower:upper:bins     {@link #linear(double, double, int)}
+     * log:lower:upper:bins     {@link #logarithmic(double, double, int)}
+     * </pre>
+     *
+     * @param   spec    the specification
+     * @return  an empty histogram as specified
+     */
+    public static Histogram parse(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("expected lin|log:lower:upper:bins, got " + spec);
+        }
+        try {
+            double  lower = Double.parseDouble(parts[1]);
+            double  upper = Double.parseDouble(parts[2]);
+            int     bins = Integer.parseInt(parts[3]);
+            switch (parts[0].toLowerCase()) {
+                case "lin":
+                    return linear(lower, upper, bins);
+                case "log":
+                    return logarithmic(lower, upper, bins);
+                default:
+                    throw new IllegalArgumentException("unknown histogram scale " + parts[0] + ", expected lin or log");
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid histogram " + spec, ex);
+        }
+    }
+
+    /**
+     * @return  an empty histogram with the same bins as this one
+     */
+    public Histogram emptyCopy() {
+        return new Histogram(logarithmic, lower, upper, counts.length);
+    }
+
+    private double position(double value) {
+        return logarithmic ? Math.log(value) : value;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param   value   the value to add, {@code NaN} is ignored
+     */
+    public void addValue(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Add a value several times.
+     *
+     * @param   value   the value to add, {@code NaN} is ignored
+     * @param   n       how often to add it
+     */
+    public void add(double value, long n) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (value < lower) {
+            underflow += n;
+        } else if (value >= upper) {
+            overflow += n;
+        } else {
+            counts[bin(value)] += n;
+        }
+    }
+
+    /**
+     * @return  the bin of a value within the range, guessed and then
+     *          corrected by the bounds, so values on a bound are counted in the bin above
+     */
+    private int bin(double value) {
+        int b = Math.max(0, Math.min(counts.length - 1, (int) ((position(value) - position(lower)) * scale)));
+        while (value < bounds[b]) {
+            b--;
+        }
+        while (value >= bounds[b + 1]) {
+            b++;
+        }
+        return b;
+    }
+
+    @Override
+    public void accept(double value) {
+        addValue(value);
+    }
+
+    /**
+     * Add all values of {@code other}, {@code other} is not changed.
+     *
+     * @param   other   a histogram with the same bins
+     * @return  this
+     */
+    public Histogram merge(Histogram other) {
+        if (!hasSameBins(other)) {
+            throw new IllegalArgumentException("cannot merge " + other.describe() + " into " + describe());
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        underflow += other.underflow;
+        overflow += other.overflow;
+        return this;
+    }
+
+    /**
+     * @param   other   another histogram
+     * @return  whether values fall into the same bins of both histograms
+     */
+    public boolean hasSameBins(Histogram other) {
+        return other != null && logarithmic == other.logarithmic && counts.length == other.counts.length
+            && Double.compare(lower, other.lower) == 0 && Double.compare(upper, other.upper) == 0;
+    }
+
+    /**
+     * @return  the number of bins, under- and overflow not included
+     */
+    public int getBins() {
+        return counts.length;
+    }
+
+    /**
+     * @param   bin index of the bin
+     * @return  the number of values in the bin
+     */
+    public long getCount(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * @param   bin index of the bin
+     * @return  the lower bound of the bin, inclusive
+     */
+    public double getLowerBound(int bin) {
+        return bounds[bin];
+    }
+
+    /**
+     * @param   bin index of the bin
+     * @return  the upper bound of the bin, exclusive
+     */
+    public double getUpperBound(int bin) {
+        return bounds[bin + 1];
+    }
+
+    /**
+     * @return  the number of values below the lower bound of the first bin
+     */
+    public long getUnderflow() {
+        return underflow;
+    }
+
+    /**
+     * @return  the number of values at or above the upper bound of the last bin
+     */
+    public long getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return  the number of values, under- and overflow included
+     */
+    public long getN() {
+        long n = underflow + overflow;
+        for (long count : counts) {
+            n += count;
+        }
+        return n;
+    }
+
+    /**
+     * Estimate a percentile, interpolating within the bin it falls into.
+     *
+     * @param   p   the percentile, between 0 and 100
+     * @return  the estimated percentile, {@code NaN} if there are no values
+     *          or it falls below or above the bins
+     */
+    public double getPercentile(double p) {
+        long n = getN();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        double rank = p / 100.0 * n;
+        double seen = underflow;
+        if (rank < seen) {
+            return Double.NaN;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && rank <= seen + counts[i]) {
+                double fraction = (rank - seen) / counts[i];
+                double from = position(getLowerBound(i));
+                double to = position(getUpperBound(i));
+                double x = from + fraction * (to - from);
+                return logarithmic ? Math.exp(x) : x;
+            }
+            seen += counts[i];
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return  the scale, range and number of bins in the form accepted by {@link #parse(String)}
+     */
+    public String describe() {
+        return (logarithmic ? "log:" : "lin:") + lower + ":" + upper + ":" + counts.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram[" + describe() + ", underflow=" + underflow + ", counts=" + Arrays.toString(counts)
+            + ", overflow=" + overflow + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+/**
+ * Kalman filter for a single noisy series, e.g. the RSSI of one beacon.
+ *
+ * The default model is a random walk: the true value drifts by
+ * {@code processNoise} (variance per second) and is observed with
+ * {@code measurementNoise} (variance). The constant velocity model also
+ * estimates the rate of change, the rate drifting by {@code processNoise}
+ * (variance of the acceleration per second), and follows a phone moving
+ * towards or away from a beacon with less lag.
+ *
+ * The state is a handful of primitives, nothing is allocated per value.
+ * Values have to be filtered in time order, {@link #reset()} before the next
+ * series. Not thread safe.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class KalmanFilter {
+
+    private final double        processNoise;
+    private final double        measurementNoise;
+    private final boolean       constantVelocity;
+
+    private boolean             initialised;
+    private long                time;
+    private double              value;
+    private double              rate;
+    // covariance of value and rate
+    private double              p00, p01, p11;
+
+
+    /**
+     * Default Constructor for a KalmanFilter
+     *
+     * @param   processNoise        variance the value (or its rate) drifts by per second
+     * @param   measurementNoise    variance of a single measurement
+     * @param   constantVelocity    whether or not to estimate the rate of change as well
+     */
+    public KalmanFilter(double processNoise, double measurementNoise, boolean constantVelocity) {
+        if (!(processNoise >= 0) || !(measurementNoise > 0)) {
+            throw new IllegalArgumentException("need a non-negative process and a positive measurement noise, got "
+                + processNoise + " and " + measurementNoise);
+        }
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        this.constantVelocity = constantVelocity;
+    }
+
+    /**
+     * Add a measurement.
+     *
+     * @param   timestamp   time of the measurement in milliseconds
+     * @param   measurement the measured value, {@code NaN} is ignored
+     * @return  the filtered value, {@code NaN} before the first measurement
+     */
+    public double filter(long timestamp, double measurement) {
+        if (Double.isNaN(measurement)) {
+            return getValue();
+        }
+        if (!initialised) {
+            initialised = true;
+            time = timestamp;
+            value = measurement;
+            rate = 0.0;
+            p00 = measurementNoise;
+            p01 = 0.0;
+            p11 = constantVelocity ? measurementNoise : 0.0;
+            return value;
+        }
+
+        // predict
+        double dt = Math.max(0L, timestamp - time) / 1000.0;
+        time = Math.max(time, timestamp);
+        if (constantVelocity) {
+            value += rate * dt;
+            double dt2 = dt * dt;
+            p00 += dt * (2 * p01 + dt * p11) + processNoise * dt2 * dt / 3;
+            p01 += dt * p11 + processNoise * dt2 / 2;
+            p11 += processNoise * dt;
+        } else {
+            p00 += processNoise * dt;
+        }
+
+        // update
+        double s = p00 + measurementNoise;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        double residual = measurement - value;
+        value += k0 * residual;
+        rate += k1 * residual;
+        p11 -= k1 * p01;
+        p01 -= k0 * p01;
+        p00 -= k0 * p00;
+        return value;
+    }
+
+    /**
+     * Forget the series, the next measurement starts a new one.
+     */
+    public void reset() {
+        initialised = false;
+        value = 0.0;
+        rate = 0.0;
+        p00 = p01 = p11 = 0.0;
+    }
+
+    /**
+     * @return  the current estimate of the value, {@code NaN} before the first measurement
+     */
+    public double getValue() {
+        return initialised ? value : Double.NaN;
+    }
+
+    /**
+     * @return  the current estimate of the rate of change per second, always 0 for the random
+     *          walk model, {@code NaN} before the first measurement
+     */
+    public double getRate() {
+        return initialised ? rate : Double.NaN;
+    }
+
+    /**
+     * @return  the variance of the current estimate of the value, {@code NaN} before the first measurement
+     */
+    public double getVariance() {
+        return initialised ? p00 : Double.NaN;
+    }
+}
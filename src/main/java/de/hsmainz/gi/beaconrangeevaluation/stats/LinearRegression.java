@@ -0,0 +1,147 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.io.Serializable;
+
+/**
+ * Single pass simple linear regression {@code y = intercept + slope * x} by
+ * ordinary least squares with constant memory.
+ *
+ * Only the means and the centred sums of squares and products are kept,
+ * updated like {@link StreamingStatistics} updates its variance, so the fit
+ * is numerically stable no matter how many points are added. Instances of
+ * different files or threads can be combined with {@link #merge(LinearRegression)},
+ * a block of points sharing the same {@code x} can be added at once with
+ * {@link #addBlock(double, long, double, double)}.
+ *
+ * Not thread safe, use one instance per thread and merge them.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class LinearRegression implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long            n;
+    private double          meanX;
+    private double          meanY;
+    private double          sxx;
+    private double          sxy;
+    private double          syy;
+
+
+    /**
+     * Add a point.
+     *
+     * @param   x   the independent value
+     * @param   y   the dependent value
+     */
+    public void add(double x, double y) {
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return;
+        }
+        n++;
+        double dx = x - meanX;
+        double dy = y - meanY;
+        meanX += dx / n;
+        meanY += dy / n;
+        sxx += dx * (x - meanX);
+        sxy += dx * (y - meanY);
+        syy += dy * (y - meanY);
+    }
+
+    /**
+     * Add {@code count} points with the same {@code x} whose {@code y}
+     * values were accumulated beforehand with Welford's algorithm.
+     *
+     * @param   x       the independent value of all points
+     * @param   count   number of points
+     * @param   mean    mean of their {@code y}
+     * @param   m2      sum of squared deviations of their {@code y} from {@code mean}
+     */
+    public void addBlock(double x, long count, double mean, double m2) {
+        if (count == 0 || Double.isNaN(x)) {
+            return;
+        }
+        merge(count, x, mean, 0.0, 0.0, m2);
+    }
+
+    /**
+     * Add all points of {@code other} (Chan et al.), {@code other} is not changed.
+     *
+     * @param   other   the regression to merge into this one
+     * @return  this
+     */
+    public LinearRegression merge(LinearRegression other) {
+        if (other.n > 0) {
+            merge(other.n, other.meanX, other.meanY, other.sxx, other.sxy, other.syy);
+        }
+        return this;
+    }
+
+    private void merge(long count, double mx, double my, double cxx, double cxy, double cyy) {
+        if (n == 0) {
+            n = count;
+            meanX = mx;
+            meanY = my;
+            sxx = cxx;
+            sxy = cxy;
+            syy = cyy;
+            return;
+        }
+        long    total = n + count;
+        double  dx = mx - meanX;
+        double  dy = my - meanY;
+        double  f = (double) n * count / total;
+        sxx += cxx + dx * dx * f;
+        sxy += cxy + dx * dy * f;
+        syy += cyy + dy * dy * f;
+        meanX += dx * count / total;
+        meanY += dy * count / total;
+        n = total;
+    }
+
+    /**
+     * @return  the number of points
+     */
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return  the slope, {@code NaN} unless there are at least two different {@code x}
+     */
+    public double getSlope() {
+        return sxx > 0 ? sxy / sxx : Double.NaN;
+    }
+
+    /**
+     * @return  the intercept, {@code NaN} unless there are at least two different {@code x}
+     */
+    public double getIntercept() {
+        return meanY - getSlope() * meanX;
+    }
+
+    /**
+     * @return  the coefficient of determination, {@code NaN} if {@code x} or {@code y} does not vary
+     */
+    public double getRSquared() {
+        return sxx > 0 && syy > 0 ? sxy * sxy / (sxx * syy) : Double.NaN;
+    }
+
+    /**
+     * @return  the standard deviation of the residuals, {@code NaN} for fewer than three points
+     */
+    public double getResidualStandardDeviation() {
+        if (n < 3 || !(sxx > 0)) {
+            return Double.NaN;
+        }
+        return Math.sqrt(Math.max(0.0, syy - sxy * sxy / sxx) / (n - 2));
+    }
+
+    /**
+     * @return  whether there are at least two different {@code x}, i.e. slope and intercept exist
+     */
+    public boolean isDetermined() {
+        return sxx > 0;
+    }
+}
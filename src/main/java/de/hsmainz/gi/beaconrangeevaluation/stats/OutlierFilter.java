@@ -0,0 +1,123 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * Stage between the values of a series and whatever accumulates them, e.g.
+ * {@link StreamingStatistics}, passing on only the values it does not
+ * consider outliers.
+ *
+ * Values are passed on as soon as the filter can decide on them, which may
+ * be later than they were added, the rest when the series is
+ * {@link #finish(DoubleConsumer) finished}. Filters that are not
+ * {@link #isStreaming() streaming} need the whole series at once, as a
+ * column that is already stored or mapped, see
+ * {@link #filter(IntToDoubleFunction, int, DoubleConsumer)}. Not thread
+ * safe, use one instance per thread, {@link #reset()} it for the next series.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public abstract class OutlierFilter {
+
+    /** scales the median absolute deviation to the standard deviation of a normal distribution */
+    protected static final double   MAD_SCALE = 1.4826;
+
+    /** number of values rejected from the current series */
+    protected long                  rejected;
+
+
+    /**
+     * Add the next value of the series.
+     *
+     * @param   value       the value, {@code NaN} is ignored
+     * @param   accepted    receives every value no longer in question that is not an outlier
+     */
+    public abstract void add(double value, DoubleConsumer accepted);
+
+    /**
+     * Decide on all values still in question, the series is complete.
+     *
+     * @param   accepted    receives every value that is not an outlier
+     */
+    public abstract void finish(DoubleConsumer accepted);
+
+    /**
+     * Filter a whole series, which is finished afterwards. Unless overridden
+     * its values are added one after the other.
+     *
+     * @param   column      the values of the series by index, {@code NaN} is ignored
+     * @param   size        number of values
+     * @param   accepted    receives every value that is not an outlier
+     */
+    public void filter(IntToDoubleFunction column, int size, DoubleConsumer accepted) {
+        for (int i = 0; i < size; i++) {
+            add(column.applyAsDouble(i), accepted);
+        }
+        finish(accepted);
+    }
+
+    /**
+     * @return  whether values can be {@link #add(double, DoubleConsumer) added}
+     *          one by one as they are read, if not the series is to be
+     *          {@link #filter(IntToDoubleFunction, int, DoubleConsumer) filtered} as a whole
+     */
+    public boolean isStreaming() {
+        return true;
+    }
+
+    /**
+     * Forget the current series, buffers are kept for the next one.
+     */
+    public void reset() {
+        rejected = 0;
+    }
+
+    /**
+     * @return  number of values of the current series rejected so far
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Parse a filter specification of the command line:
+     *
+     * <pre>
+     * hampel[:halfWidth[:threshold]]   {@link HampelFilter}, default 5 and 3
+     * mad[:threshold]                  {@link TrimmingFilter#mad(double)}, default 3
+     * iqr[:factor]                     {@link TrimmingFilter#iqr(double)}, default 1.5
+     * </pre>
+     *
+     * mad and iqr trim whole series, they only filter measurements that are
+     * kept or mapped anyway, see {@link #isStreaming()}.
+     *
+     * @param   spec    the specification
+     * @return  a factory of new filters as specified, one is needed per thread
+     */
+    public static Supplier<OutlierFilter> parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "hampel":
+                    int     halfWidth = parts.length > 1 ? Integer.parseInt(parts[1]) : 5;
+                    double  threshold = parts.length > 2 ? Double.parseDouble(parts[2]) : 3.0;
+                    new HampelFilter(halfWidth, threshold);     // fail here rather than in every worker
+                    return () -> new HampelFilter(halfWidth, threshold);
+                case "mad":
+                    double  madThreshold = parts.length > 1 ? Double.parseDouble(parts[1]) : 3.0;
+                    TrimmingFilter.mad(madThreshold);
+                    return () -> TrimmingFilter.mad(madThreshold);
+                case "iqr":
+                    double  factor = parts.length > 1 ? Double.parseDouble(parts[1]) : 1.5;
+                    TrimmingFilter.iqr(factor);
+                    return () -> TrimmingFilter.iqr(factor);
+                default:
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("invalid outlier filter " + spec, ex);
+        }
+        throw new IllegalArgumentException("unknown outlier filter " + spec + ", expected hampel, mad or iqr");
+    }
+}
@@ -0,0 +1,57 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Fork/join task filling a {@link Histogram} from a column of values, e.g.
+ * the RSSI of one beacon.
+ *
+ * Like {@link ParallelStatistics} the range is halved until it holds at most
+ * {@link ParallelStatistics#CHUNK} values, every task counts into a
+ * histogram of its own and the partial histograms are merged, so no counter
+ * is ever shared between threads.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class ParallelHistogram extends RecursiveTask<Histogram> {
+
+    private static final long           serialVersionUID = 1L;
+
+    private final Histogram             bins;
+    private final IntToDoubleFunction   values;
+    private final int                   from;
+    private final int                   to;
+
+
+    /**
+     * Default Constructor for a ParallelHistogram
+     *
+     * @param   bins    a histogram with the bins to count into, not changed
+     * @param   values  the column, has to be safe to read from several threads at once
+     * @param   from    first index, inclusive
+     * @param   to      last index, exclusive
+     */
+    public ParallelHistogram(Histogram bins, IntToDoubleFunction values, int from, int to) {
+        this.bins = bins;
+        this.values = values;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected Histogram compute() {
+        if (to - from <= ParallelStatistics.CHUNK) {
+            Histogram histogram = bins.emptyCopy();
+            for (int i = from; i < to; i++) {
+                histogram.addValue(values.applyAsDouble(i));
+            }
+            return histogram;
+        }
+        int                 mid = (from + to) >>> 1;
+        ParallelHistogram   right = new ParallelHistogram(bins, values, mid, to);
+        right.fork();
+        Histogram           left = new ParallelHistogram(bins, values, from, mid).compute();
+        return left.merge(right.join());
+    }
+}
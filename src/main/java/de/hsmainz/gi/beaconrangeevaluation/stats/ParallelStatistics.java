@@ -0,0 +1,57 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Fork/join task accumulating {@link StreamingStatistics} over a column of
+ * values, e.g. the distances of one beacon.
+ *
+ * The range is halved until it holds at most {@link #CHUNK} values, the
+ * partial statistics are merged left to right. Where the range is split only
+ * depends on its size, so the result is the same no matter how many threads
+ * ran the task.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class ParallelStatistics extends RecursiveTask<StreamingStatistics> {
+
+    private static final long      serialVersionUID = 1L;
+
+    /** largest range accumulated by a single task */
+    public static final int         CHUNK = 1 << 15;
+
+    private final IntToDoubleFunction   values;
+    private final int                   from;
+    private final int                   to;
+
+
+    /**
+     * Default Constructor for ParallelStatistics
+     *
+     * @param   values  the column, has to be safe to read from several threads at once
+     * @param   from    first index, inclusive
+     * @param   to      last index, exclusive
+     */
+    public ParallelStatistics(IntToDoubleFunction values, int from, int to) {
+        this.values = values;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected StreamingStatistics compute() {
+        if (to - from <= CHUNK) {
+            StreamingStatistics stats = new StreamingStatistics();
+            for (int i = from; i < to; i++) {
+                stats.addValue(values.applyAsDouble(i));
+            }
+            return stats;
+        }
+        int                 mid = (from + to) >>> 1;
+        ParallelStatistics  right = new ParallelStatistics(values, mid, to);
+        right.fork();
+        StreamingStatistics left = new ParallelStatistics(values, from, mid).compute();
+        return left.merge(right.join());
+    }
+}
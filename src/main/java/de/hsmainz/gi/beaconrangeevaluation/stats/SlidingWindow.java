@@ -0,0 +1,247 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.Arrays;
+
+/**
+ * Rolling statistics over the most recent values of a time series, limited
+ * by number of samples, by time span or both.
+ *
+ * Values live in a ring buffer, mean and variance are updated with Welford's
+ * algorithm on every value entering and leaving the window, minimum and
+ * maximum come from monotonic deques (amortised O(1)) and the median from a
+ * sorted copy of the window (O(size) moves, fine for the few dozen to few
+ * hundred samples such windows hold). Once the buffers have grown to the
+ * largest window seen nothing is allocated any more.
+ *
+ * Values have to be added in time order. Not thread safe.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class SlidingWindow {
+
+    /** evictions after which mean and variance are recomputed from the window, against drift */
+    private static final int    RECOMPUTE = 1 << 16;
+
+    private final int           maxCount;
+    private final long          maxMillis;
+
+    // ring buffer, element with sequence number s is at s & mask
+    private long[]              timestamps;
+    private double[]            values;
+    private int                 mask;
+    private long                head;
+    private long                tail;
+
+    // monotonic deques of sequence numbers, front is the current min/max
+    private long[]              minDeque;
+    private long[]              maxDeque;
+    private long                minHead, minTail;
+    private long                maxHead, maxTail;
+
+    private double[]            sorted;
+
+    private double              mean;
+    private double              m2;
+    private int                 evictions;
+
+
+    /**
+     * Default Constructor for a SlidingWindow
+     *
+     * @param   maxCount    maximum number of samples in the window, 0 for no limit
+     * @param   maxMillis   maximum age of a sample relative to the newest one in milliseconds, 0 for no limit
+     */
+    public SlidingWindow(int maxCount, long maxMillis) {
+        if (maxCount < 0 || maxMillis < 0 || (maxCount == 0 && maxMillis == 0)) {
+            throw new IllegalArgumentException("need a positive sample count or time span, got "
+                + maxCount + " samples, " + maxMillis + "ms");
+        }
+        this.maxCount = maxCount;
+        this.maxMillis = maxMillis;
+        allocate(maxCount > 0 ? Integer.highestOneBit(Math.max(1, maxCount - 1)) << 1 : 64);
+    }
+
+    private void allocate(int capacity) {
+        long[]      t = new long[capacity];
+        double[]    v = new double[capacity];
+        long[]      min = new long[capacity];
+        long[]      max = new long[capacity];
+        for (long s = head; s < tail; s++) {
+            t[(int) s & (capacity - 1)] = timestamps[(int) s & mask];
+            v[(int) s & (capacity - 1)] = values[(int) s & mask];
+        }
+        for (long i = minHead; i < minTail; i++) {
+            min[(int) i & (capacity - 1)] = minDeque[(int) i & mask];
+        }
+        for (long i = maxHead; i < maxTail; i++) {
+            max[(int) i & (capacity - 1)] = maxDeque[(int) i & mask];
+        }
+        timestamps = t;
+        values = v;
+        minDeque = min;
+        maxDeque = max;
+        sorted = sorted == null ? new double[capacity] : Arrays.copyOf(sorted, capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add a value and drop everything that falls out of the window.
+     *
+     * @param   timestamp   time of the value in milliseconds
+     * @param   value       the value, {@code NaN} is ignored
+     */
+    public void add(long timestamp, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (maxMillis > 0) {
+            while (head < tail && timestamp - timestamps[(int) head & mask] > maxMillis) {
+                evict();
+            }
+        }
+        if (maxCount > 0 && size() == maxCount) {
+            evict();
+        }
+        if (size() == mask + 1) {
+            allocate((mask + 1) << 1);
+        }
+
+        long s = tail++;
+        timestamps[(int) s & mask] = timestamp;
+        values[(int) s & mask] = value;
+
+        int n = size();
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+
+        while (minTail > minHead && values[(int) minDeque[(int) (minTail - 1) & mask] & mask] >= value) {
+            minTail--;
+        }
+        minDeque[(int) minTail++ & mask] = s;
+        while (maxTail > maxHead && values[(int) maxDeque[(int) (maxTail - 1) & mask] & mask] <= value) {
+            maxTail--;
+        }
+        maxDeque[(int) maxTail++ & mask] = s;
+
+        int pos = Arrays.binarySearch(sorted, 0, n - 1, value);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        System.arraycopy(sorted, pos, sorted, pos + 1, n - 1 - pos);
+        sorted[pos] = value;
+    }
+
+    private void evict() {
+        long    s = head++;
+        double  value = values[(int) s & mask];
+        int     n = size();
+
+        if (n == 0) {
+            mean = 0.0;
+            m2 = 0.0;
+        } else {
+            double delta = value - mean;
+            mean -= delta / n;
+            m2 = Math.max(0.0, m2 - delta * (value - mean));
+        }
+
+        if (minDeque[(int) minHead & mask] == s) {
+            minHead++;
+        }
+        if (maxDeque[(int) maxHead & mask] == s) {
+            maxHead++;
+        }
+
+        int pos = Arrays.binarySearch(sorted, 0, n + 1, value);
+        System.arraycopy(sorted, pos + 1, sorted, pos, n - pos);
+
+        if (++evictions == RECOMPUTE) {
+            recompute();
+        }
+    }
+
+    private void recompute() {
+        evictions = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        long n = 0;
+        for (long s = head; s < tail; s++) {
+            double value = values[(int) s & mask];
+            n++;
+            double delta = value - mean;
+            mean += delta / n;
+            m2 += delta * (value - mean);
+        }
+    }
+
+    /**
+     * Empty the window, the buffers are kept.
+     */
+    public void clear() {
+        head = tail = 0;
+        minHead = minTail = 0;
+        maxHead = maxTail = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        evictions = 0;
+    }
+
+    /**
+     * @return  number of values in the window
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return  the mean of the window, {@code NaN} if empty
+     */
+    public double getMean() {
+        return size() == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return  the sample variance of the window, {@code NaN} if empty
+     */
+    public double getVariance() {
+        int n = size();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n == 1 ? 0.0 : m2 / (n - 1);
+    }
+
+    /**
+     * @return  the sample standard deviation of the window, {@code NaN} if empty
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return  the smallest value in the window, {@code NaN} if empty
+     */
+    public double getMin() {
+        return size() == 0 ? Double.NaN : values[(int) minDeque[(int) minHead & mask] & mask];
+    }
+
+    /**
+     * @return  the largest value in the window, {@code NaN} if empty
+     */
+    public double getMax() {
+        return size() == 0 ? Double.NaN : values[(int) maxDeque[(int) maxHead & mask] & mask];
+    }
+
+    /**
+     * @return  the median of the window, the mean of the two middle values
+     *          for an even size, {@code NaN} if empty
+     */
+    public double getMedian() {
+        int n = size();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return (n & 1) == 1 ? sorted[n >> 1] : (sorted[(n >> 1) - 1] + sorted[n >> 1]) / 2.0;
+    }
+}
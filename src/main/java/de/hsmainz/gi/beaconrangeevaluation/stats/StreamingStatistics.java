@@ -0,0 +1,169 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.io.Serializable;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Single pass statistics with constant memory.
+ *
+ * Mean and variance are accumulated with Welford's algorithm, minimum and
+ * maximum directly and quantiles are estimated by a {@link TDigest}. Unlike
+ * {@code DescriptiveStatistics} no value is kept, so memory does not depend
+ * on the number of values. Instances of different files or threads can be
+ * combined with {@link #merge(StreamingStatistics)}.
+ *
+ * Not thread safe, use one instance per thread and merge them.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class StreamingStatistics implements DoubleConsumer, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long            n;
+    private double          mean;
+    private double          m2;
+    private double          min = Double.NaN;
+    private double          max = Double.NaN;
+    private final TDigest   digest;
+
+
+    /**
+     * Default Constructor for empty StreamingStatistics
+     */
+    public StreamingStatistics() {
+        this(TDigest.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor for empty StreamingStatistics estimating quantiles with the given compression
+     *
+     * @param   compression     compression of the {@link TDigest}, see {@link TDigest#TDigest(double)}
+     */
+    public StreamingStatistics(double compression) {
+        this.digest = new TDigest(compression);
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param   value   the value to add, {@code NaN} is ignored
+     */
+    public void addValue(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        n++;
+        double delta = value - mean;
+        mean += delta / n;
+        m2 += delta * (value - mean);
+        if (n == 1) {
+            min = value;
+            max = value;
+        } else {
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        digest.add(value);
+    }
+
+    @Override
+    public void accept(double value) {
+        addValue(value);
+    }
+
+    /**
+     * Add all values of {@code other} (Chan et al.), {@code other} is not changed.
+     *
+     * @param   other   the statistics to merge into these
+     * @return  this
+     */
+    public StreamingStatistics merge(StreamingStatistics other) {
+        if (other.n == 0) {
+            return this;
+        }
+        if (n == 0) {
+            n = other.n;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+        } else {
+            long   total = n + other.n;
+            double delta = other.mean - mean;
+            mean += delta * other.n / total;
+            m2 += other.m2 + delta * delta * ((double) n * other.n / total);
+            n = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        digest.merge(other.digest);
+        return this;
+    }
+
+    /**
+     * @return  the number of values
+     */
+    public long getN() {
+        return n;
+    }
+
+    /**
+     * @return  the arithmetic mean, {@code NaN} if there are no values
+     */
+    public double getMean() {
+        return n > 0 ? mean : Double.NaN;
+    }
+
+    /**
+     * @return  the sample variance, 0 for a single value and {@code NaN} if there are no values
+     */
+    public double getVariance() {
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n > 1 ? m2 / (n - 1) : 0.0;
+    }
+
+    /**
+     * @return  the sample standard deviation, 0 for a single value and {@code NaN} if there are no values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return  the smallest value, {@code NaN} if there are no values
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return  the largest value, {@code NaN} if there are no values
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Estimate a percentile from the quantile sketch.
+     *
+     * @param   p   the percentile, between 0 and 100
+     * @return  the estimated percentile, {@code NaN} if there are no values
+     */
+    public double getPercentile(double p) {
+        return digest.quantile(p / 100.0);
+    }
+
+    /**
+     * @return  the estimated median, {@code NaN} if there are no values
+     */
+    public double getMedian() {
+        return getPercentile(50);
+    }
+}
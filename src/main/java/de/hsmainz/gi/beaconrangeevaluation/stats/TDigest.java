@@ -0,0 +1,358 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch after Dunning's t-digest (merging variant).
+ *
+ * Values are collected in a small buffer which is merged into at most about
+ * {@code compression} centroids whenever it is full. Centroids near the
+ * tails are kept small (k1 scale function), so extreme quantiles stay
+ * accurate. Memory is {@code O(compression)} regardless of how many values
+ * are added, digests of different threads or files can be merged. Nothing
+ * is allocated before the first value, the buffer grows with the values up
+ * to its full size and is released by {@link #compress()} along with the
+ * scratch space of merging, so digests of short or finished series stay
+ * small; only merging on a full buffer keeps it for the next values.
+ *
+ * Only the centroids in use are serialised, compressed first.
+ *
+ * Not thread safe.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class TDigest implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    /** default compression, about 1% relative error around the median and much less at the tails */
+    public static final double  DEFAULT_COMPRESSION = 100.0;
+
+    /** length the buffer and the centroids start with */
+    private static final int    INITIAL_LENGTH = 16;
+
+    private final double        compression;
+
+    private transient double[]  mean;
+    private transient double[]  weight;
+    private int                 centroids;
+
+    private transient double[]  bufferMean;
+    private transient double[]  bufferWeight;
+    private int                 buffered;
+
+    private transient double[]  sortMean;
+    private transient double[]  sortWeight;
+
+    private double              totalWeight;
+    private double              min = Double.POSITIVE_INFINITY;
+    private double              max = Double.NEGATIVE_INFINITY;
+
+
+    /**
+     * Default Constructor for a TDigest with {@link #DEFAULT_COMPRESSION}
+     */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor for a TDigest
+     *
+     * @param   compression     upper bound of the number of centroids, higher is more accurate
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("compression must be at least 10, got " + compression);
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * @return  number of values buffered before they are merged into the centroids
+     */
+    private int bufferLimit() {
+        return 4 * ((int) Math.ceil(2 * compression) + 10);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        compress();
+        // compression, centroid count, count, min and max
+        out.defaultWriteObject();
+        for (int i = 0; i < centroids; i++) {
+            out.writeDouble(mean[i]);
+            out.writeDouble(weight[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (centroids < 0 || buffered != 0) {
+            throw new InvalidObjectException("corrupt t-digest");
+        }
+        mean = new double[centroids];
+        weight = new double[centroids];
+        for (int i = 0; i < centroids; i++) {
+            mean[i] = in.readDouble();
+            weight[i] = in.readDouble();
+        }
+    }
+
+    /**
+     * Add a single value.
+     *
+     * @param   x   the value to add, {@code NaN} is ignored
+     */
+    public void add(double x) {
+        add(x, 1.0);
+    }
+
+    /**
+     * Add a value with a weight.
+     *
+     * @param   x   the value to add, {@code NaN} is ignored
+     * @param   w   the weight of the value
+     */
+    public void add(double x, double w) {
+        if (Double.isNaN(x) || w <= 0) {
+            return;
+        }
+        if (bufferMean == null || buffered == bufferMean.length) {
+            int limit = bufferLimit();
+            if (bufferMean == null) {
+                bufferMean = new double[Math.min(INITIAL_LENGTH, limit)];
+                bufferWeight = new double[bufferMean.length];
+            } else if (bufferMean.length < limit) {
+                bufferMean = Arrays.copyOf(bufferMean, Math.min(bufferMean.length << 1, limit));
+                bufferWeight = Arrays.copyOf(bufferWeight, bufferMean.length);
+            } else {
+                flush();
+            }
+        }
+        bufferMean[buffered] = x;
+        bufferWeight[buffered] = w;
+        buffered++;
+        totalWeight += w;
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+    }
+
+    /**
+     * Add all values of {@code other} to this digest, {@code other} is not changed
+     * apart from being compressed.
+     *
+     * @param   other   the digest to merge into this one
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.mean[i], other.weight[i]);
+        }
+        if (other.totalWeight > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    /**
+     * @return  the number (total weight) of values added
+     */
+    public double size() {
+        return totalWeight;
+    }
+
+    /**
+     * Estimate the {@code q} quantile of all values added.
+     *
+     * @param   q   the quantile, between 0 and 1
+     * @return  the estimated quantile, {@code NaN} if no values were added
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("quantile must be between 0 and 1, got " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return mean[0];
+        }
+
+        double target = q * totalWeight;
+
+        // left tail, between min and the center of the first centroid
+        double half = weight[0] / 2;
+        if (target <= half) {
+            return half <= 1 ? min : min + (mean[0] - min) * Math.max(0, target - 1) / (half - 1);
+        }
+
+        double cumulative = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double center = cumulative + weight[i] / 2;
+            double nextCenter = cumulative + weight[i] + weight[i + 1] / 2;
+            if (target <= nextCenter) {
+                double fraction = (target - center) / (nextCenter - center);
+                return mean[i] + fraction * (mean[i + 1] - mean[i]);
+            }
+            cumulative += weight[i];
+        }
+
+        // right tail, between the center of the last centroid and max
+        half = weight[centroids - 1] / 2;
+        double remaining = totalWeight - target;
+        if (half <= 1 || remaining <= 1) {
+            return max;
+        }
+        return max - (max - mean[centroids - 1]) * (remaining - 1) / (half - 1);
+    }
+
+    /**
+     * @return  the smallest value added, {@code NaN} if no values were added
+     */
+    public double getMin() {
+        return totalWeight > 0 ? min : Double.NaN;
+    }
+
+    /**
+     * @return  the largest value added, {@code NaN} if no values were added
+     */
+    public double getMax() {
+        return totalWeight > 0 ? max : Double.NaN;
+    }
+
+    /**
+     * Merge the buffered values into the centroids and release the buffer,
+     * it is allocated again by the next value added.
+     */
+    public void compress() {
+        flush();
+        bufferMean = null;
+        bufferWeight = null;
+        sortMean = null;
+        sortWeight = null;
+    }
+
+    /**
+     * Merge the buffered values into the centroids, keeping the buffer.
+     */
+    private void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        // all centroids and buffered values, sorted by mean
+        int n = centroids + buffered;
+        if (sortMean == null || sortMean.length < n) {
+            sortMean = new double[Math.max(n, (mean == null ? 0 : mean.length) + bufferMean.length)];
+            sortWeight = new double[sortMean.length];
+        }
+        double[] m = sortMean;
+        double[] w = sortWeight;
+        if (centroids > 0) {
+            System.arraycopy(mean, 0, m, 0, centroids);
+            System.arraycopy(weight, 0, w, 0, centroids);
+        }
+        System.arraycopy(bufferMean, 0, m, centroids, buffered);
+        System.arraycopy(bufferWeight, 0, w, centroids, buffered);
+        sort(m, w, 0, n - 1);
+        buffered = 0;
+
+        centroids = 0;
+        double current = m[0];
+        double currentWeight = w[0];
+        double soFar = 0;
+        double limit = limit(0);
+        for (int i = 1; i < n; i++) {
+            double proposed = currentWeight + w[i];
+            if ((soFar + proposed) / totalWeight <= limit) {
+                currentWeight = proposed;
+                current += (m[i] - current) * w[i] / proposed;
+            } else {
+                emit(current, currentWeight);
+                soFar += currentWeight;
+                limit = limit(soFar / totalWeight);
+                current = m[i];
+                currentWeight = w[i];
+            }
+        }
+        emit(current, currentWeight);
+    }
+
+    private void emit(double m, double w) {
+        if (mean == null) {
+            mean = new double[INITIAL_LENGTH];
+            weight = new double[INITIAL_LENGTH];
+        } else if (centroids == mean.length) {
+            mean = Arrays.copyOf(mean, Math.max(INITIAL_LENGTH, centroids << 1));
+            weight = Arrays.copyOf(weight, mean.length);
+        }
+        mean[centroids] = m;
+        weight[centroids] = w;
+        centroids++;
+    }
+
+    /**
+     * k1 scale function: the largest quantile a centroid starting at {@code q} may reach.
+     */
+    private double limit(double q) {
+        double k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        double kMax = compression / 4;
+        if (k >= kMax) {
+            return 1.0;
+        }
+        return (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+
+    /**
+     * Sort {@code m} ascending and {@code w} along with it.
+     */
+    private static void sort(double[] m, double[] w, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = m[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) {
+                    i++;
+                }
+                while (m[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(m, w, i++, j--);
+                }
+            }
+            // recurse into the smaller part, loop on the larger one
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && m[j - 1] > m[j]; j--) {
+                swap(m, w, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] m, double[] w, int i, int j) {
+        double t = m[i];
+        m[i] = m[j];
+        m[j] = t;
+        t = w[i];
+        w[i] = w[j];
+        w[j] = t;
+    }
+}
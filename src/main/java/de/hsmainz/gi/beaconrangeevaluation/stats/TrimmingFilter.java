@@ -0,0 +1,189 @@
+package de.hsmainz.gi.beaconrangeevaluation.stats;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Trims a whole series to fences derived from all of its values, either
+ * {@code threshold} scaled median absolute deviations around the median or
+ * Tukey's fences {@code factor} interquartile ranges outside the quartiles.
+ *
+ * The fences are only known once the series is complete, so this filter
+ * does not stream: it takes the series as a column that is already stored
+ * or mapped, see {@link #filter(IntToDoubleFunction, int, DoubleConsumer)},
+ * and never copies its values. The quantiles the fences derive from are
+ * selected exactly by a radix selection over the bits of the doubles: each
+ * of its eight passes over the column counts the remaining candidates into
+ * 256 buckets by the next byte. The values within the fences are passed on
+ * in the order of the column. A median absolute deviation or
+ * interquartile range of 0 rejects nothing.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class TrimmingFilter extends OutlierFilter {
+
+    private final boolean       iqr;
+    private final double        threshold;
+
+
+    private TrimmingFilter(boolean iqr, double threshold) {
+        if (!(threshold > 0)) {
+            throw new IllegalArgumentException("need a positive threshold, got " + threshold);
+        }
+        this.iqr = iqr;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param   threshold   number of scaled median absolute deviations from the median a value may be off
+     * @return  a filter trimming by the median absolute deviation
+     */
+    public static TrimmingFilter mad(double threshold) {
+        return new TrimmingFilter(false, threshold);
+    }
+
+    /**
+     * @param   factor  number of interquartile ranges a value may be below the first or above the third quartile
+     * @return  a filter trimming to Tukey's fences
+     */
+    public static TrimmingFilter iqr(double factor) {
+        return new TrimmingFilter(true, factor);
+    }
+
+    /**
+     * @return  {@code false}, the fences need the whole series
+     */
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Not supported, the fences need the whole series.
+     *
+     * @throws  UnsupportedOperationException always
+     */
+    @Override
+    public void add(double value, DoubleConsumer accepted) {
+        throw new UnsupportedOperationException("trimming needs the whole series as column");
+    }
+
+    @Override
+    public void finish(DoubleConsumer accepted) {
+        // nothing in question, see filter
+    }
+
+    @Override
+    public void filter(IntToDoubleFunction column, int size, DoubleConsumer accepted) {
+        DoubleUnaryOperator identity = x -> x;
+        int                 count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!Double.isNaN(column.applyAsDouble(i))) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        double low, high;
+        if (iqr) {
+            double q1 = quantile(column, size, count, identity, 0.25);
+            double q3 = quantile(column, size, count, identity, 0.75);
+            double range = q3 - q1;
+            low = range > 0 ? q1 - threshold * range : Double.NEGATIVE_INFINITY;
+            high = range > 0 ? q3 + threshold * range : Double.POSITIVE_INFINITY;
+        } else {
+            double median = quantile(column, size, count, identity, 0.5);
+            double mad = quantile(column, size, count, x -> Math.abs(x - median), 0.5);
+            low = mad > 0 ? median - threshold * MAD_SCALE * mad : Double.NEGATIVE_INFINITY;
+            high = mad > 0 ? median + threshold * MAD_SCALE * mad : Double.POSITIVE_INFINITY;
+        }
+
+        for (int i = 0; i < size; i++) {
+            double value = column.applyAsDouble(i);
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (value < low || value > high) {
+                rejected++;
+            } else {
+                accepted.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Quantile of {@code f} of the values of the column that are no NaN,
+     * linearly interpolated between the two values it falls between.
+     */
+    private static double quantile(IntToDoubleFunction column, int size, int count, DoubleUnaryOperator f,
+            double p) {
+        double  pos = p * (count - 1);
+        int     k = (int) pos;
+        long    lower = select(column, size, f, k);
+        if (k + 1 == count || pos == k) {
+            return value(lower);
+        }
+        // the next value is the same one unless it was the last of its kind
+        long    next = -1L;
+        int     atMost = 0;
+        for (int i = 0; i < size; i++) {
+            double x = column.applyAsDouble(i);
+            if (Double.isNaN(x)) {
+                continue;
+            }
+            long key = key(f.applyAsDouble(x));
+            if (Long.compareUnsigned(key, lower) <= 0) {
+                atMost++;
+            } else if (Long.compareUnsigned(key, next) < 0) {
+                next = key;
+            }
+        }
+        if (atMost > k + 1) {
+            next = lower;
+        }
+        return value(lower) + (pos - k) * (value(next) - value(lower));
+    }
+
+    /**
+     * @return  the {@link #key(double)} of the {@code k}-th smallest value of {@code f}, counted from 0
+     */
+    private static long select(IntToDoubleFunction column, int size, DoubleUnaryOperator f, int k) {
+        int[]   counts = new int[256];
+        long    prefix = 0;
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            // the bytes above shift are those of the k-th value already
+            long mask = shift == 56 ? 0 : -1L << (shift + 8);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                double x = column.applyAsDouble(i);
+                if (!Double.isNaN(x)) {
+                    long key = key(f.applyAsDouble(x));
+                    if ((key & mask) == prefix) {
+                        counts[(int) (key >>> shift) & 0xff]++;
+                    }
+                }
+            }
+            int digit = 0;
+            while (k >= counts[digit]) {
+                k -= counts[digit++];
+            }
+            prefix |= (long) digit << shift;
+        }
+        return prefix;
+    }
+
+    /**
+     * @return  the bits of {@code value} as a long ordered like the doubles when compared unsigned
+     */
+    private static long key(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+    }
+
+    private static double value(long key) {
+        return Double.longBitsToDouble(key < 0 ? key ^ Long.MIN_VALUE : ~key);
+    }
+}
@@ -0,0 +1,184 @@
+package de.hsmainz.gi.beaconrangeevaluation.sync;
+
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.model.MeasurementSeries;
+import de.hsmainz.gi.beaconrangeevaluation.model.TimestampMerge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The measurements of all beacons of a log side by side: one row per epoch
+ * of equal length, one column per beacon holding the number of measurements,
+ * the mean RSSI and the mean calculated distance within the epoch.
+ *
+ * Built in a single pass over the {@link TimestampMerge} of the beacons'
+ * {@link MeasurementSeries}, so the rows are in ascending order of time.
+ * Epochs without any measurement are left out, cells of a beacon without a
+ * measurement in the epoch have a count of 0 and {@code NaN} means. Cells
+ * are stored row by row in flat primitive arrays.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class EpochTable {
+
+    private final long                  length;
+    private final List<BeaconLogObject> beacons;
+    private final int                   columns;
+    private long[]                      epoch = new long[64];
+    private int[]                       count;
+    private double[]                    rssi;
+    private double[]                    distance;
+    private int                         size;
+    private long                        measurements;
+
+
+    /**
+     * Default Constructor for an EpochTable
+     *
+     * @param   log     the log to synchronise, all beacons become columns in the order of the log
+     * @param   length  length of an epoch in milliseconds
+     */
+    public EpochTable(BeaconLog log, long length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("epochs have to be at least 1 ms long, got " + length);
+        }
+        this.length = length;
+        this.beacons = log.getLoggedBeacons() != null
+            ? new ArrayList<>(log.getLoggedBeacons())
+            : new ArrayList<>();
+        this.columns = beacons.size();
+        this.count = new int[epoch.length * columns];
+        this.rssi = new double[epoch.length * columns];
+        this.distance = new double[epoch.length * columns];
+
+        List<MeasurementSeries> series = new ArrayList<>(columns);
+        for (BeaconLogObject beacon : beacons) {
+            series.add(beacon.getSeries());
+        }
+        TimestampMerge merge = new TimestampMerge(series);
+        long current = Long.MIN_VALUE;
+        while (merge.next()) {
+            long e = Math.floorDiv(merge.getTimestamp(), length);
+            if (size == 0 || e != current) {
+                finishRow();
+                addRow(e);
+                current = e;
+            }
+            MeasurementSeries   s = series.get(merge.getSource());
+            int                 cell = (size - 1) * columns + merge.getSource();
+            count[cell]++;
+            rssi[cell] += s.getRssi(merge.getIndex());
+            distance[cell] += s.getCalcDistance(merge.getIndex());
+            measurements++;
+        }
+        finishRow();
+    }
+
+    private void addRow(long e) {
+        if (size == epoch.length) {
+            epoch = Arrays.copyOf(epoch, 2 * size);
+            count = Arrays.copyOf(count, epoch.length * columns);
+            rssi = Arrays.copyOf(rssi, epoch.length * columns);
+            distance = Arrays.copyOf(distance, epoch.length * columns);
+        }
+        epoch[size++] = e;
+    }
+
+    /**
+     * Turn the sums of the last row into means.
+     */
+    private void finishRow() {
+        if (size == 0) {
+            return;
+        }
+        for (int cell = (size - 1) * columns; cell < size * columns; cell++) {
+            if (count[cell] > 0) {
+                rssi[cell] /= count[cell];
+                distance[cell] /= count[cell];
+            } else {
+                rssi[cell] = Double.NaN;
+                distance[cell] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * @return  length of an epoch in milliseconds
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return  the beacons, one per column
+     */
+    public List<BeaconLogObject> getBeacons() {
+        return beacons;
+    }
+
+    /**
+     * @return  number of epochs with at least one measurement
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return  number of measurements over all epochs
+     */
+    public long getMeasurements() {
+        return measurements;
+    }
+
+    /**
+     * @param   row number of the epoch
+     * @return  the start of the epoch in milliseconds since the epoch
+     */
+    public long getTime(int row) {
+        return epoch[row] * length;
+    }
+
+    /**
+     * @param   row number of the epoch
+     * @return  number of beacons measured in the epoch
+     */
+    public int getBeaconCount(int row) {
+        int n = 0;
+        for (int cell = row * columns; cell < (row + 1) * columns; cell++) {
+            if (count[cell] > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @param   row     number of the epoch
+     * @param   beacon  number of the beacon
+     * @return  number of measurements of the beacon in the epoch
+     */
+    public int getCount(int row, int beacon) {
+        return count[row * columns + beacon];
+    }
+
+    /**
+     * @param   row     number of the epoch
+     * @param   beacon  number of the beacon
+     * @return  mean RSSI of the beacon in the epoch, {@code NaN} if not measured
+     */
+    public double getRssi(int row, int beacon) {
+        return rssi[row * columns + beacon];
+    }
+
+    /**
+     * @param   row     number of the epoch
+     * @param   beacon  number of the beacon
+     * @return  mean calculated distance to the beacon in the epoch, {@code NaN} if not measured
+     */
+    public double getDistance(int row, int beacon) {
+        return distance[row * columns + beacon];
+    }
+}
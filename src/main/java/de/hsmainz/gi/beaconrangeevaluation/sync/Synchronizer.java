@@ -0,0 +1,335 @@
+package de.hsmainz.gi.beaconrangeevaluation.sync;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogCollector;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFiles;
+import de.hsmainz.gi.beaconrangeevaluation.io.LogFilter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import de.hsmainz.gi.beaconrangeevaluation.query.LogQuery;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSink;
+import de.hsmainz.gi.beaconrangeevaluation.report.ReportSinks;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the {@link EpochTable} of every log, the measurements of all its
+ * beacons synchronised into epochs.
+ *
+ * Every log gets a sheet with one row per epoch and, per beacon, the number
+ * of measurements, mean RSSI and mean distance. Sheets too long or too wide
+ * for the sink are continued on further sheets. The "Dateien" sheet lists
+ * every log with its sheet. Logs are read concurrently and written in the
+ * order of the files.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class Synchronizer {
+
+    private static final Logger     L = Logger.getLogger(Synchronizer.class);
+
+    /** name of the sheet listing the logs */
+    public static final String      FILES = "Dateien";
+
+    /** sheet names are limited to 31 characters by Excel */
+    private static final int        MAX_SHEET_NAME = 31;
+
+    private static final String[]   FILE_LABELS = {
+        "Datei", "Hersteller", "Modell", "# Beacons", "# Messungen", "# Epochen", "Beginn", "Ende", "Tabelle"
+    };
+
+    private final Charset           encoding;
+    private final long              epochLength;
+    private final Set<String>       sheetNames = new HashSet<>();
+    private LogFilter               filter;
+    private Path                    indexDirectory;
+
+
+    /**
+     * Default Constructor for a Synchronizer
+     *
+     * @param   encoding    the charset to use when reading the files
+     * @param   epochLength length of an epoch in milliseconds
+     */
+    public Synchronizer(Charset encoding, long epochLength) {
+        if (epochLength < 1) {
+            throw new IllegalArgumentException("epochs have to be at least 1 ms long, got " + epochLength);
+        }
+        this.encoding = encoding;
+        this.epochLength = epochLength;
+    }
+
+    /**
+     * Only use what {@code filter} accepts, see {@link de.hsmainz.gi.beaconrangeevaluation.batch.FileAnalyzer#setFilter(LogFilter, Path)}.
+     *
+     * @param   filter          selects the logs, beacons and measurements to use, {@code null} for all
+     * @param   indexDirectory  the directory to keep the index files in, {@code null} to only use valid ones next to the logs
+     */
+    public void setFilter(LogFilter filter, Path indexDirectory) {
+        this.filter = filter;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     * Synchronise the beacons of a single log.
+     *
+     * @param   file    the log file
+     * @return  the log and its epochs, {@code null} if the log does not match the filter
+     * @throws  IOException if the file could not be read
+     */
+    public Synchronized synchronize(Path file) throws IOException {
+        BeaconLogCollector collector = new BeaconLogCollector();
+        if (filter == null) {
+            LogFiles.read(file, encoding, collector);
+        } else if (!LogFiles.read(file, encoding, collector, filter, indexDirectory)) {
+            return null;
+        }
+        BeaconLog log = collector.getBeaconLog();
+        return new Synchronized(file, log.getModel(), new EpochTable(log, epochLength));
+    }
+
+    /**
+     * Synchronise all {@code files} and write the report.
+     *
+     * @param   files   the log files
+     * @param   sink    the {@link ReportSink} to write to, closed when done
+     * @param   threads number of files read at once
+     * @return  number of logs written
+     * @throws  IOException             if the report could not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public int run(List<Path> files, ReportSink sink, int threads) throws IOException, InterruptedException {
+        ExecutorService                 readers = Executors.newFixedThreadPool(threads);
+        Deque<Future<Synchronized>>     inFlight = new ArrayDeque<>();
+        List<String[]>                  rows = new ArrayList<>();
+        List<long[]>                    numbers = new ArrayList<>();
+        int                             next = 0;
+        int                             position = 1;
+
+        sheetNames.add(FILES.toLowerCase());
+        try {
+            while (next < files.size() || !inFlight.isEmpty()) {
+                while (next < files.size() && inFlight.size() < 2 * threads) {
+                    Path file = files.get(next++);
+                    inFlight.add(readers.submit(() -> synchronize(file)));
+                }
+                Synchronized result;
+                try {
+                    result = inFlight.poll().get();
+                } catch (ExecutionException ex) {
+                    L.warn("failed to read file", ex.getCause());
+                    continue;
+                }
+                if (result == null) {
+                    continue;
+                }
+                EpochTable  table = result.table;
+                String      name = result.file.getFileName().toString();
+                String      sheet = uniqueSheetName(name.length() > 6 ? name.substring(6) : name);
+                position = writeTable(sink, sheet, table, position);
+                rows.add(new String[] {
+                    name,
+                    result.model != null ? result.model.getmManufacturer() : null,
+                    result.model != null ? result.model.getmModel() : null,
+                    sheet
+                });
+                numbers.add(new long[] {
+                    table.getBeacons().size(), table.getMeasurements(), table.size(),
+                    table.size() > 0 ? table.getTime(0) : -1,
+                    table.size() > 0 ? table.getTime(table.size() - 1) + epochLength : -1
+                });
+                L.info("Synchronized file: " + result.file + ", " + table.getBeacons().size() + " beacons in "
+                    + table.size() + " epochs");
+            }
+            writeFiles(sink, rows, numbers);
+        } finally {
+            readers.shutdownNow();
+            sink.close();
+        }
+        return rows.size();
+    }
+
+    /**
+     * Write the table of one log, split into parts of as many rows and
+     * beacons as fit on a sheet.
+     *
+     * @return  the position of the next sheet
+     */
+    private int writeTable(ReportSink sink, String sheet, EpochTable table, int position) throws IOException {
+        List<BeaconLogObject>   beacons = table.getBeacons();
+        int                     perSheet = Math.max(1, (sink.getMaxColumns() - 2) / 3);
+        int                     rowsPerSheet = sink.getMaxRows() - 1;
+        int                     part = 1;
+        int                     from = 0;
+        do {
+            int to = Math.min(beacons.size(), from + perSheet);
+            int row = 0;
+            do {
+                sink.beginSheet(part == 1 ? sheet : uniqueSheetName(sheet + " (" + part + ")"), position++);
+                part++;
+                sink.beginRow(0);
+                sink.text(0, "Beginn");
+                sink.text(1, "# Beacons");
+                for (int b = from; b < to; b++) {
+                    String  label = beacons.get(b).getID();
+                    int     c = 2 + 3 * (b - from);
+                    sink.text(c, label + " Anzahl");
+                    sink.text(c + 1, label + " RSSI [dBm]");
+                    sink.text(c + 2, label + " Distanz [m]");
+                }
+                sink.endRow();
+                int end = Math.min(table.size(), row + rowsPerSheet);
+                for (int r = 1; row < end; row++, r++) {
+                    sink.beginRow(r);
+                    sink.integer(0, table.getTime(row));
+                    sink.integer(1, table.getBeaconCount(row));
+                    for (int b = from; b < to; b++) {
+                        int c = 2 + 3 * (b - from);
+                        int n = table.getCount(row, b);
+                        sink.integer(c, n);
+                        if (n > 0) {
+                            sink.number(c + 1, table.getRssi(row, b));
+                            sink.number(c + 2, table.getDistance(row, b));
+                        }
+                    }
+                    sink.endRow();
+                }
+                sink.endSheet();
+            } while (row < table.size());
+            from = to;
+        } while (from < beacons.size());
+        return position;
+    }
+
+    private void writeFiles(ReportSink sink, List<String[]> rows, List<long[]> numbers) throws IOException {
+        sink.beginSheet(FILES, 0);
+        sink.beginRow(0);
+        for (int c = 0; c < FILE_LABELS.length; c++) {
+            sink.text(c, FILE_LABELS[c]);
+        }
+        sink.endRow();
+        for (int i = 0; i < rows.size(); i++) {
+            String[]    text = rows.get(i);
+            long[]      n = numbers.get(i);
+            sink.beginRow(i + 1);
+            sink.text(0, text[0]);
+            sink.text(1, text[1]);
+            sink.text(2, text[2]);
+            sink.integer(3, n[0]);
+            sink.integer(4, n[1]);
+            sink.integer(5, n[2]);
+            if (n[2] > 0) {
+                sink.integer(6, n[3]);
+                sink.integer(7, n[4]);
+            }
+            sink.text(8, text[3]);
+            sink.endRow();
+        }
+        sink.endSheet();
+    }
+
+    private String uniqueSheetName(String name) {
+        String cleaned = name.replaceAll("[\\[\\]:*?/\\\\]", "_");
+        String candidate = cleaned.length() > MAX_SHEET_NAME ? cleaned.substring(0, MAX_SHEET_NAME) : cleaned;
+        for (int i = 2; !sheetNames.add(candidate.toLowerCase()); i++) {
+            String suffix = "~" + i;
+            candidate = (cleaned.length() > MAX_SHEET_NAME - suffix.length()
+                ? cleaned.substring(0, MAX_SHEET_NAME - suffix.length())
+                : cleaned) + suffix;
+        }
+        return candidate;
+    }
+
+    /**
+     * A log with its {@link EpochTable}.
+     */
+    public static final class Synchronized {
+
+        private final Path                      file;
+        private final BeaconLog.AndroidModel    model;
+        private final EpochTable                table;
+
+        Synchronized(Path file, BeaconLog.AndroidModel model, EpochTable table) {
+            this.file = file;
+            this.model = model;
+            this.table = table;
+        }
+
+        /**
+         * @return  the log file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return  the phone of the log, {@code null} if it had none
+         */
+        public BeaconLog.AndroidModel getModel() {
+            return model;
+        }
+
+        /**
+         * @return  the synchronised measurements
+         */
+        public EpochTable getTable() {
+            return table;
+        }
+    }
+
+    /**
+     * Entry point of the {@code sync} command.
+     *
+     * <pre>
+     * sync [--epoch ms] [--threads n] [--output file.xlsx|.csv|.xls] [--encoding charset] [--index dir]
+     *      [query criteria...] file|dir|glob...
+     * </pre>
+     *
+     * Epochs are {@code --epoch} long, default 1000 ms. The query criteria
+     * select the logs and beacons to use, see {@link LogQuery#parse(Arguments)}.
+     *
+     * @param   args    the arguments following {@code sync}
+     * @throws  IOException             if the files could not be listed or the report not be written
+     * @throws  InterruptedException    if interrupted while waiting for a worker
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments   arguments = new Arguments(args);
+        List<Path>  files = LogFiles.expand(arguments.getPositional());
+        if (files.isEmpty()) {
+            L.warn("no log files given");
+            return;
+        }
+
+        int         threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Charset     encoding = Charset.forName(arguments.get("encoding", Charset.defaultCharset().name()));
+        File        output = new File(arguments.get("output",
+                new File(LogFiles.location(files.get(0)).toAbsolutePath().getParent().toFile(), "epochs.xlsx").getPath()));
+        String      indexDir = arguments.get("index", null);
+        LogQuery    query = LogQuery.parse(arguments);
+
+        Synchronizer synchronizer = new Synchronizer(encoding, arguments.getInt("epoch", 1000));
+        if (query != null) {
+            synchronizer.setFilter(query, indexDir == null ? null : Paths.get(indexDir));
+        }
+
+        long start = System.currentTimeMillis();
+        int written = synchronizer.run(files, ReportSinks.open(output), threads);
+        L.info(written + "/" + files.size() + " files synchronized on " + threads + " threads in "
+            + (System.currentTimeMillis() - start) + "ms, report written to " + output);
+    }
+}
@@ -0,0 +1,445 @@
+package de.hsmainz.gi.beaconrangeevaluation.synth;
+
+import de.hsmainz.gi.beaconrangeevaluation.Arguments;
+import de.hsmainz.gi.beaconrangeevaluation.io.BeaconLogHandler;
+import de.hsmainz.gi.beaconrangeevaluation.io.BinaryLogFormat;
+import de.hsmainz.gi.beaconrangeevaluation.io.BinaryLogWriter;
+import de.hsmainz.gi.beaconrangeevaluation.io.JsonLogWriter;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLog;
+import de.hsmainz.gi.beaconrangeevaluation.model.BeaconLogObject;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic beacon logs for load and scale tests.
+ *
+ * The RSSI follows the log-distance path loss model
+ * <pre>
+ * rssi = txPower + offset(phone) - 10 * exponent * log10(distance) + N(0, noise)
+ * </pre>
+ * rounded to whole dBm like the phones report it, the calculated distance is
+ * the model solved for the distance without the phone's offset. Measurements
+ * drop out with the given probability, the timestamp still advances.
+ *
+ * Log {@code i} of a campaign is fully determined by the seed and {@code i}:
+ * its nominal distance is {@code distances[i % distances.length]}, its phone
+ * is {@code i / distances.length % phones}, so every phone logs every
+ * distance. Logs can be handed to any {@link BeaconLogHandler}, written as
+ * JSON or binary files or read as a JSON {@link InputStream} without touching
+ * the disk.
+ *
+ * @author  KekS (mailto:keks@keksfabrik.eu)
+ */
+public class LogGenerator {
+
+    private static final Logger     L = Logger.getLogger(LogGenerator.class);
+
+    private static final String     UUID = "f7826da6-4fa2-4e98-8024-bc5b71e0893e";
+
+    /** manufacturer, model, build number and Android version of phones seen in the field */
+    private static final String[][] PHONES = {
+        {"LGE", "Nexus 5", "LRX21O", "5.0"},
+        {"samsung", "SM-G900F", "KOT49H", "4.4.2"},
+        {"motorola", "XT1068", "KXB21.14-L1.40", "4.4.4"},
+        {"HTC", "HTC One_M8", "KOT49H", "4.4.3"},
+        {"Sony", "D6603", "23.0.1.A.0.167", "4.4.4"},
+        {"asus", "Nexus 7", "LRX21P", "5.0"}
+    };
+
+    /** events between two refills of a generated stream */
+    private static final int        CHUNK = 4096;
+
+    private final long              seed;
+    private int                     beacons = 3;
+    private int                     measurements = 1000;
+    private double[]                distances = {1, 2, 3, 5, 10};
+    private int                     phones = PHONES.length;
+    private int                     txPower = -59;
+    private double                  exponent = 2.0;
+    private double                  noise = 4.0;
+    private double                  dropout = 0.05;
+    private double                  phoneOffset = 3.0;
+    private int                     interval = 100;
+
+
+    /**
+     * Default Constructor for a LogGenerator
+     *
+     * @param   seed    the seed all logs are derived from
+     */
+    public LogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param   beacons number of beacons per log, majors 1 to {@code beacons}
+     */
+    public void setBeacons(int beacons) {
+        this.beacons = beacons;
+    }
+
+    /**
+     * @param   measurements    measurements per beacon before dropout
+     */
+    public void setMeasurements(int measurements) {
+        this.measurements = measurements;
+    }
+
+    /**
+     * @param   distances   the nominal distances in metres, one per log in turn
+     */
+    public void setDistances(double... distances) {
+        if (distances.length == 0) {
+            throw new IllegalArgumentException("need at least one distance");
+        }
+        this.distances = distances.clone();
+    }
+
+    /**
+     * @param   phones  number of different phones
+     */
+    public void setPhones(int phones) {
+        this.phones = Math.max(1, phones);
+    }
+
+    /**
+     * @param   txPower the calibrated RSSI at one metre in dBm
+     */
+    public void setTxPower(int txPower) {
+        this.txPower = txPower;
+    }
+
+    /**
+     * @param   exponent    the path loss exponent, 2 in free space
+     */
+    public void setExponent(double exponent) {
+        this.exponent = exponent;
+    }
+
+    /**
+     * @param   noise   standard deviation of the RSSI noise in dB
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @param   dropout probability of a measurement to be missing
+     */
+    public void setDropout(double dropout) {
+        this.dropout = dropout;
+    }
+
+    /**
+     * @param   phoneOffset standard deviation of the per phone RSSI offset in dB
+     */
+    public void setPhoneOffset(double phoneOffset) {
+        this.phoneOffset = phoneOffset;
+    }
+
+    /**
+     * @param   interval    milliseconds between two measurements, jittered by up to 20%
+     */
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Hand log {@code log} to {@code handler}.
+     *
+     * @param   log     index of the log in the campaign
+     * @param   handler the {@link BeaconLogHandler} to hand everything to
+     */
+    public void generate(int log, BeaconLogHandler handler) {
+        Generation generation = new Generation(log);
+        while (generation.step(handler, Integer.MAX_VALUE)) {
+            // everything in one step
+        }
+    }
+
+    /**
+     * Write log {@code log} as JSON.
+     *
+     * @param   log     index of the log in the campaign
+     * @param   output  the file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void writeJson(int log, Path output) throws IOException {
+        try (JsonLogWriter writer = new JsonLogWriter(
+                new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8), 1 << 16))) {
+            generate(log, writer);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Write log {@code log} as binary log.
+     *
+     * @param   log     index of the log in the campaign
+     * @param   output  the file to write
+     * @throws  IOException if the file could not be written
+     */
+    public void writeBinary(int log, Path output) throws IOException {
+        try (BinaryLogWriter writer = new BinaryLogWriter(output)) {
+            generate(log, writer);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Log {@code log} as UTF-8 JSON, generated while it is read, so logs
+     * larger than memory can be streamed into a reader.
+     *
+     * @param   log     index of the log in the campaign
+     * @return  the JSON of the log
+     */
+    public InputStream stream(int log) {
+        return new GeneratedStream(new Generation(log));
+    }
+
+    /**
+     * @param   log the index of the log in the campaign
+     * @return  the file name of log {@code log}, without extension
+     */
+    public static String name(int log) {
+        return String.format("BLOG__synth_%05d", log);
+    }
+
+    /**
+     * State of one log being generated, so it can be produced in steps.
+     */
+    private class Generation {
+
+        private final Random                    random;
+        private final BeaconLog.AndroidModel    model = new BeaconLog.AndroidModel();
+        private final double                    offset;
+        private final double                    distance;
+        /** calculated distance per whole dBm, the RSSI is always rounded */
+        private final double[]                  calcDistance = new double[256];
+
+        private boolean                         started;
+        private int                             beacon;
+        private int                             measurement;
+        private boolean                         inBeacon;
+        private long                            timestamp;
+
+        Generation(int log) {
+            int phone = log / distances.length % phones;
+            String[] details = PHONES[phone % PHONES.length];
+            model.setmManufacturer(details[0]);
+            model.setmModel(phone < PHONES.length ? details[1] : details[1] + " #" + (phone / PHONES.length + 1));
+            model.setmBuildNumber(details[2]);
+            model.setmVersion(details[3]);
+            // the phone's offset has to be the same in every log of the phone
+            offset = phoneOffset * new Random(seed * 31 + phone).nextGaussian();
+            distance = distances[log % distances.length];
+            random = new Random(seed ^ (log + 1) * 0x9E3779B97F4A7C15L);
+            timestamp = 1416000000000L + log * 3600000L;
+            for (int i = 0; i < calcDistance.length; i++) {
+                calcDistance[i] = Math.pow(10, (txPower + i) / (10 * exponent));
+            }
+        }
+
+        /**
+         * Hand the next part of the log to {@code handler}.
+         *
+         * @param   handler the {@link BeaconLogHandler} to hand the part to
+         * @param   budget  maximum number of measurements to generate
+         * @return  whether or not there is more to come
+         */
+        boolean step(BeaconLogHandler handler, int budget) {
+            if (!started) {
+                handler.model(model);
+                started = true;
+            }
+            double mean = txPower + offset - 10 * exponent * Math.log10(distance);
+            while (beacon < beacons) {
+                if (!inBeacon) {
+                    handler.beginBeacon(BeaconLogObject.Identifier.of(UUID, Integer.toString(beacon + 1), "7"), distance);
+                    inBeacon = true;
+                    measurement = 0;
+                }
+                for (; measurement < measurements; measurement++) {
+                    if (budget-- <= 0) {
+                        return true;
+                    }
+                    timestamp += interval + random.nextInt(interval / 5 + 1);
+                    if (random.nextDouble() < dropout) {
+                        continue;
+                    }
+                    double rssi = Math.rint(mean + noise * random.nextGaussian());
+                    int dBm = (int) -rssi;
+                    handler.measurement(timestamp, rssi, txPower, dBm >= 0 && dBm < calcDistance.length
+                        ? calcDistance[dBm]
+                        : Math.pow(10, (txPower - rssi) / (10 * exponent)));
+                }
+                handler.endBeacon();
+                inBeacon = false;
+                beacon++;
+            }
+            BeaconLog.Orientation orientation = new BeaconLog.Orientation();
+            orientation.setAzimuth(360 * random.nextDouble());
+            orientation.setPitch(10 * random.nextGaussian());
+            orientation.setRoll(10 * random.nextGaussian());
+            handler.averageOrientation(orientation);
+            handler.distance(distance);
+            handler.endLog();
+            return false;
+        }
+    }
+
+    /**
+     * JSON of a {@link Generation}, produced in chunks as it is read.
+     */
+    private static class GeneratedStream extends InputStream {
+
+        private final Generation        generation;
+        private final Chunk             chunk = new Chunk();
+        private final Writer            writer = new OutputStreamWriter(chunk, StandardCharsets.UTF_8);
+        private final JsonLogWriter     json = new JsonLogWriter(writer);
+        private boolean                 more = true;
+        private int                     position;
+
+        GeneratedStream(Generation generation) {
+            this.generation = generation;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == chunk.size()) {
+                if (!more) {
+                    return false;
+                }
+                chunk.reset();
+                position = 0;
+                more = generation.step(json, CHUNK);
+                json.flush();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk.buffer()[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.size() - position);
+            System.arraycopy(chunk.buffer(), position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} handing out its buffer instead of a copy.
+     */
+    private static class Chunk extends ByteArrayOutputStream {
+
+        Chunk() {
+            super(1 << 18);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /**
+     * Entry point of the {@code generate} command.
+     *
+     * <pre>
+     * generate [--output dir] [--logs n] [--beacons n] [--measurements n] [--distances 1,2,3]
+     *          [--phones n] [--seed s] [--tx-power dBm] [--exponent n] [--noise dB]
+     *          [--dropout p] [--threads n] [--binary]
+     * </pre>
+     *
+     * Logs are independent, so {@code --threads} generates them in parallel
+     * with exactly the same result.
+     *
+     * @param   args    the arguments following {@code generate}
+     * @throws  IOException if a log could not be written
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        Arguments       arguments = new Arguments(args, "binary");
+        LogGenerator    generator = new LogGenerator(Long.parseLong(arguments.get("seed", "0")));
+        generator.setBeacons(arguments.getInt("beacons", generator.beacons));
+        generator.setMeasurements(arguments.getInt("measurements", generator.measurements));
+        generator.setPhones(arguments.getInt("phones", generator.phones));
+        generator.setTxPower(arguments.getInt("tx-power", generator.txPower));
+        generator.setExponent(arguments.getDouble("exponent", generator.exponent));
+        generator.setNoise(arguments.getDouble("noise", generator.noise));
+        generator.setDropout(arguments.getDouble("dropout", generator.dropout));
+        if (arguments.has("distances")) {
+            String[] parts = arguments.get("distances", "").split(",");
+            double[] distances = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                distances[i] = Double.parseDouble(parts[i].trim());
+            }
+            generator.setDistances(distances);
+        }
+
+        Path    dir = Paths.get(arguments.get("output", "."));
+        int     logs = arguments.getInt("logs", 1);
+        boolean binary = arguments.has("binary");
+
+        int     threads = arguments.getInt("threads", Runtime.getRuntime().availableProcessors());
+        Files.createDirectories(dir);
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> sizes = new ArrayList<>(logs);
+        for (int i = 0; i < logs; i++) {
+            int log = i;
+            sizes.add(pool.submit(() -> {
+                Path output = dir.resolve(name(log) + (binary ? BinaryLogFormat.EXTENSION : ".json"));
+                if (binary) {
+                    generator.writeBinary(log, output);
+                } else {
+                    generator.writeJson(log, output);
+                }
+                L.debug("generated " + output);
+                return Files.size(output);
+            }));
+        }
+        long bytes = 0;
+        try {
+            for (Future<Long> size : sizes) {
+                bytes += size.get();
+            }
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        L.info(logs + " logs, " + (bytes >> 20) + " MiB generated in " + millis + "ms ("
+                + (bytes * 1000 / millis >> 20) + " MiB/s)");
+    }
+}